@@ -45,6 +45,12 @@
  */
 package fr.lirmm.graphik.graal.api.forward_chaining;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.Rule;
@@ -61,6 +67,9 @@ public abstract class AbstractChase<T1 extends Rule, T2 extends AtomSet> impleme
 
 	private RuleApplier<T1, ? super T2> ruleApplier;
 	private Profiler    profiler = NoProfiler.instance();
+	private int          parallelism = 1;
+	private ForkJoinPool pool;
+	private boolean      ownsPool = false;
 
 	protected AbstractChase(RuleApplier<T1, ? super T2> ruleApplier) {
 		this.ruleApplier = ruleApplier;
@@ -111,6 +120,89 @@ public abstract class AbstractChase<T1 extends Rule, T2 extends AtomSet> impleme
 		this.ruleApplier = applier;
 	}
 
+	/**
+	 * Sets the number of threads used to apply the rules of a step. With more
+	 * than one thread, the rule applications of a step are run concurrently
+	 * against the atom set, which is not modified before the end of the step,
+	 * so the atom set must support concurrent reads.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 (the default) means sequential
+	 *            application.
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		this.releasePool();
+		this.parallelism = parallelism;
+		if (parallelism > 1) {
+			this.pool = new ForkJoinPool(parallelism);
+			this.ownsPool = true;
+		}
+	}
+
+	/**
+	 * Makes this chase apply its rules with the threads of the specified one,
+	 * for a chase run as a sub-process of another one.
+	 */
+	public synchronized void shareParallelismWith(AbstractChase<?, ?> chase) {
+		this.releasePool();
+		synchronized (chase) {
+			this.parallelism = chase.parallelism;
+			this.pool = chase.pool;
+		}
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Runs the specified tasks, concurrently if a parallelism greater than 1 is
+	 * set, one after another otherwise.
+	 * 
+	 * @return the results of the tasks, in the same order.
+	 * @throws ChaseException
+	 *             if a task fails.
+	 */
+	protected <V> List<V> invokeAll(List<Callable<V>> tasks) throws ChaseException {
+		List<V> results = new ArrayList<V>(tasks.size());
+		ForkJoinPool pool = this.pool;
+		try {
+			if (pool == null || tasks.size() < 2) {
+				for (Callable<V> task : tasks) {
+					results.add(task.call());
+				}
+			} else {
+				for (Future<V> f : pool.invokeAll(tasks)) {
+					results.add(f.get());
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ChaseException) {
+				throw (ChaseException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ChaseException("An error occured during a rule application.", (Exception) cause);
+		} catch (ChaseException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ChaseException("An error occured during a rule application.", e);
+		}
+		return results;
+	}
+
+	private void releasePool() {
+		if (this.pool != null && this.ownsPool) {
+			this.pool.shutdown();
+		}
+		this.pool = null;
+		this.ownsPool = false;
+	}
+
 	@Override
 	public void setProfiler(Profiler profiler) {
 		this.profiler = profiler;
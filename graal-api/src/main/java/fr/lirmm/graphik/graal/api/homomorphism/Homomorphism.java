@@ -45,9 +45,13 @@
  */
 package fr.lirmm.graphik.graal.api.homomorphism;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
 
 /**
  * @author Clément Sipieter (INRIA) {@literal <clement@6pi.fr>}
@@ -81,5 +85,49 @@ public interface Homomorphism<T1 extends Object, T2 extends AtomSet> extends Exi
 	 */
 	CloseableIterator<Substitution> execute(T1 q, T2 a, Substitution s) throws HomomorphismException;
 
+	/**
+	 * Count the different answers of the specified object into the specified
+	 * atomset, i.e. the number of different substitutions returned by
+	 * {@link #execute(Object, AtomSet)}. For boolean query, return 1 for true
+	 * and 0 for false. The default implementation enumerates the answers and
+	 * keeps the different ones, implementations should override it to count
+	 * them without building them.
+	 * 
+	 * @param q
+	 * @param a
+	 * @return the number of different answers of q into a.
+	 * @throws HomomorphismException
+	 */
+	default long count(T1 q, T2 a) throws HomomorphismException {
+		Set<Substitution> answers = new HashSet<Substitution>();
+		CloseableIterator<Substitution> results = this.execute(q, a);
+		try {
+			while (results.hasNext()) {
+				answers.add(results.next());
+			}
+		} catch (IteratorException e) {
+			throw new HomomorphismException(e);
+		} finally {
+			results.close();
+		}
+		return answers.size();
+	}
+
+	/**
+	 * Estimate the number of answers of the specified object into the
+	 * specified atomset, without evaluating it when possible. The result is
+	 * only a hint (for instance to display an order of magnitude or to choose
+	 * an evaluation strategy) and may differ from {@link #count(Object, AtomSet)}.
+	 * The default implementation returns the exact count.
+	 * 
+	 * @param q
+	 * @param a
+	 * @return an estimation of the number of answers of q into a.
+	 * @throws HomomorphismException
+	 */
+	default long estimateCount(T1 q, T2 a) throws HomomorphismException {
+		return this.count(q, a);
+	}
+
 };
 
@@ -48,6 +48,7 @@ package fr.lirmm.graphik.graal.api.kb;
 import java.io.Closeable;
 import java.util.Set;
 
+import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.Query;
 import fr.lirmm.graphik.graal.api.core.Rule;
@@ -105,6 +106,16 @@ public interface KnowledgeBase extends Profilable, Closeable {
 	 */
 	void saturate() throws KnowledgeBaseException;
 
+	/**
+	 * Add the specified atoms to the facts of this knowledge base. If it has
+	 * already been saturated, only the consequences of the new atoms are
+	 * computed, so that the facts reach the same fixpoint as a new saturation.
+	 * 
+	 * @param atoms
+	 * @throws KnowledgeBaseException
+	 */
+	void addAndPropagate(CloseableIterator<Atom> atoms) throws KnowledgeBaseException;
+
 	/**
 	 * Find an homomorphism of the query in the fact base associated with this
 	 * knowledge base.
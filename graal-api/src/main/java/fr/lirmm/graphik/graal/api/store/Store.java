@@ -68,7 +68,7 @@ public interface Store extends AtomSet {
 	/**
 	 * Returns the number of atoms related to the specified predicate or a
 	 * greater estimation of it. In the worst case, this method can return
-	 * {@link Integer.MAX_VALUE}.
+	 * {@link Integer#MAX_VALUE}.
 	 * 
 	 * @param p
 	 *            a predicate
@@ -79,12 +79,29 @@ public interface Store extends AtomSet {
 	/**
 	 * Returns the numbers of different terms referenced by atoms in this store
 	 * or a greater estimation of it. In the worst case, this method can return
-	 * {@link Integer.MAX_VALUE}.
+	 * {@link Integer#MAX_VALUE}.
 	 * 
 	 * @return the numbers of different terms referenced by atoms in this store.
 	 */
 	int getDomainSize();
 
+	/**
+	 * Returns the numbers of different terms appearing at the specified
+	 * position of the atoms related to the specified predicate, or a greater
+	 * estimation of it. In the worst case, this method can return
+	 * {@link Integer#MAX_VALUE}. The default implementation returns the
+	 * estimation of the number of atoms related to the predicate.
+	 * 
+	 * @param p
+	 *            a predicate
+	 * @param position
+	 *            a position in the predicate, starting at 0
+	 * @return the numbers of different terms at the specified position.
+	 */
+	default int getDomainSize(Predicate p, int position) {
+		return this.size(p);
+	}
+
 	@Override
 	CloseableIterator<Atom> iterator();
 
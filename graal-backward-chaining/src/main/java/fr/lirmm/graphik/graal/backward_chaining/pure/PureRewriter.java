@@ -68,6 +68,8 @@ public class PureRewriter extends AbstractProfilable implements QueryRewriterWit
 
 	private boolean unfolding = true;
 	private RewritingOperator operator;
+	private int parallelism = 1;
+	private boolean streaming = false;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -101,6 +103,8 @@ public class PureRewriter extends AbstractProfilable implements QueryRewriterWit
 		compilation.compile(newRulSet.iterator());
 		RewritinCloseableIterator it = new RewritinCloseableIterator(true, query, newRulSet, compilation, this.operator);
 		it.setProfiler(this.getProfiler());
+		it.setParallelism(this.parallelism);
+		it.setStreaming(this.streaming);
 		return it;
 	}
 
@@ -113,6 +117,8 @@ public class PureRewriter extends AbstractProfilable implements QueryRewriterWit
 	public CloseableIteratorWithoutException<EffectiveConjunctiveQuery> execute(ConjunctiveQuery query, Iterable<Rule> rules, RulesCompilation compilation) {
 		RewritinCloseableIterator it = new RewritinCloseableIterator(this.unfolding, query, rules, compilation, this.operator);
 		it.setProfiler(this.getProfiler());
+		it.setParallelism(this.parallelism);
+		it.setStreaming(this.streaming);
 		return it;
 	}
 
@@ -141,6 +147,49 @@ public class PureRewriter extends AbstractProfilable implements QueryRewriterWit
 		return exec.getResult();
 	}
 
+	/**
+	 * Sets the number of threads used to compute the rewritings. With more
+	 * than one thread, the rewritings are computed breadth first: all the
+	 * queries of a rewriting level are rewritten concurrently, then the
+	 * subsumption checks between the new queries and the previous ones are run
+	 * concurrently. The result does not depend on the number of threads.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 (the default) means sequential
+	 *            rewriting.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1: " + parallelism);
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * Sets the streaming mode. In streaming mode, the rewriting runs in its
+	 * own thread and the execute methods return at once: each rewriting is
+	 * returned as soon as it is added to the rewriting set, before the end of
+	 * the rewriting. The returned rewritings are sound and include the most
+	 * general ones, but the returned union is not minimal: a rewriting
+	 * subsumed by a rewriting returned later is not retracted. Closing the
+	 * returned iterator stops the rewriting; the timeout of
+	 * {@link #execute(ConjunctiveQuery, Iterable, RulesCompilation, long)}
+	 * does not apply to this mode.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
 	public static CloseableIteratorWithoutException<EffectiveConjunctiveQuery> unfold(CloseableIterable<EffectiveConjunctiveQuery> pivotRewritingSet, RulesCompilation compilation) {
 		return new CloseableIteratorAdapter<EffectiveConjunctiveQuery>(Utils.unfold(new IterableAdapter<>(pivotRewritingSet), compilation).iterator());
 	}
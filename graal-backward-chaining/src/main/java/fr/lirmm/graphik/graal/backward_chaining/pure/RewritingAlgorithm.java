@@ -45,10 +45,16 @@
 */
 package fr.lirmm.graphik.graal.backward_chaining.pure;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
@@ -67,6 +73,10 @@ class RewritingAlgorithm implements Profilable {
 	private Profiler profiler;
 
 	private RewritingOperator operator;
+	private int parallelism = 1;
+	private Listener listener = null;
+
+	private static final int CHUNKS_PER_THREAD = 4;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -76,10 +86,30 @@ class RewritingAlgorithm implements Profilable {
 		this.operator = operator;
 	}
 
+	/**
+	 * @param parallelism
+	 *            the number of threads, with more than one thread the
+	 *            rewritings are computed breadth first, see
+	 *            {@link #executeInParallel(ConjunctiveQuery, IndexedByHeadPredicatesRuleSet, RulesCompilation)}.
+	 */
+	public RewritingAlgorithm(RewritingOperator operator, int parallelism) {
+		this.operator = operator;
+		this.parallelism = parallelism;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Sets a listener notified of each query added to the rewriting set. The
+	 * final rewriting set is included in the notified queries, the other ones
+	 * are later found to be subsumed.
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
 	/**
 	 * Compute and returns all the most general rewrites of the object's query
 	 * 
@@ -89,11 +119,14 @@ class RewritingAlgorithm implements Profilable {
 	 * @author Mélanie KÖNIG
 	 */
 	public Collection<ConjunctiveQuery> execute(ConjunctiveQuery query, IndexedByHeadPredicatesRuleSet ruleSet, RulesCompilation compilation) {
+		if (this.parallelism > 1) {
+			return this.executeInParallel(query, ruleSet, compilation);
+		}
 		if (this.verbose) {
 			this.profiler.trace(query.toString());
 			this.profiler.put("CONFIG", operator.getClass().getSimpleName());
 		}
-		LinkedList<ConjunctiveQuery> finalRewritingSet = new LinkedList<ConjunctiveQuery>();
+		SubsumptionIndex<ConjunctiveQuery> finalRewritingSet = new SubsumptionIndex<ConjunctiveQuery>(compilation);
 		Queue<ConjunctiveQuery> rewriteSetToExplore = new LinkedList<ConjunctiveQuery>();
 		Collection<ConjunctiveQuery> currentRewriteSet;
 
@@ -110,7 +143,8 @@ class RewritingAlgorithm implements Profilable {
 
 		pquery.addAnswerPredicate();
 		rewriteSetToExplore.add(pquery);
-		finalRewritingSet.add(pquery);
+		finalRewritingSet.add(pquery, pquery.getAtomSet());
+		this.notifyAdded(pquery);
 
 		while (!Thread.currentThread().isInterrupted() && !rewriteSetToExplore.isEmpty()) {
 
@@ -134,7 +168,11 @@ class RewritingAlgorithm implements Profilable {
 			 * keep only the query just computed that are more general than
 			 * query already compute
 			 */
-			selectMostGeneralFromRelativeTo(currentRewriteSet, finalRewritingSet, compilation);
+			Iterator<ConjunctiveQuery> it = currentRewriteSet.iterator();
+			while (it.hasNext()) {
+				if (finalRewritingSet.containsMoreGeneral(it.next().getAtomSet()))
+					it.remove();
+			}
 
 			// keep to explore only most general query
 			selectMostGeneralFromRelativeTo(rewriteSetToExplore, currentRewriteSet, compilation);
@@ -146,23 +184,159 @@ class RewritingAlgorithm implements Profilable {
 			 * keep in final rewrite set only query more general than query just
 			 * computed
 			 */
-			selectMostGeneralFromRelativeTo(finalRewritingSet, currentRewriteSet, compilation);
+			for (ConjunctiveQuery rew : currentRewriteSet)
+				finalRewritingSet.removeLessGeneral(rew.getAtomSet());
 
 			// add in final rewrite set the query just compute that we keep
-			finalRewritingSet.addAll(currentRewriteSet);
+			for (ConjunctiveQuery rew : currentRewriteSet) {
+				finalRewritingSet.add(rew, rew.getAtomSet());
+				this.notifyAdded(rew);
+			}
+
+		}
+		/* clean the rewrites to return */
+		LinkedList<ConjunctiveQuery> result = new LinkedList<ConjunctiveQuery>(finalRewritingSet.toList());
+		Utils.computeQueriesCover(result);
+
+		if (this.verbose) {
+			this.profiler.stop("Rewriting time");
+			this.profiler.put("Generated rewritings", generatedRewrites);
+			this.profiler.put("Explored rewritings", exploredRewrites);
+			this.profiler.put("Pivotal rewritings", result.size());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes the most general rewrites breadth first: all the queries of the
+	 * frontier are rewritten concurrently, then the new queries are filtered
+	 * concurrently. The new queries are merged in the order of the frontier
+	 * and a query is removed only if a query more general than it is kept, the
+	 * first one of equivalent new queries being kept, so the result does not
+	 * depend on the scheduling of the threads.
+	 */
+	Collection<ConjunctiveQuery> executeInParallel(ConjunctiveQuery query, final IndexedByHeadPredicatesRuleSet ruleSet,
+	    final RulesCompilation compilation) {
+		if (this.verbose) {
+			this.profiler.trace(query.toString());
+			this.profiler.put("CONFIG", operator.getClass().getSimpleName());
+			this.profiler.clear("Rewriting time");
+			this.profiler.start("Rewriting time");
+		}
+		int exploredRewrites = 0;
+		int generatedRewrites = 0;
+
+		// remove some basic redundancy
+		PureQuery pquery = new PureQuery(compilation.getIrredondant(query.getAtomSet()), query.getAnswerVariables());
+		pquery.addAnswerPredicate();
 
+		final SubsumptionIndex<ConjunctiveQuery> finalRewritingSet = new SubsumptionIndex<ConjunctiveQuery>(compilation);
+		finalRewritingSet.add(pquery, pquery.getAtomSet());
+		this.notifyAdded(pquery);
+		List<ConjunctiveQuery> frontier = finalRewritingSet.toList();
+
+		ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+		try {
+			while (!Thread.currentThread().isInterrupted() && !frontier.isEmpty()) {
+				exploredRewrites += frontier.size();
+
+				/* compute all the rewrites from the frontier */
+				List<Callable<Collection<ConjunctiveQuery>>> expansions = new ArrayList<Callable<Collection<ConjunctiveQuery>>>(frontier.size());
+				for (final ConjunctiveQuery q : frontier) {
+					expansions.add(new Callable<Collection<ConjunctiveQuery>>() {
+						@Override
+						public Collection<ConjunctiveQuery> call() {
+							return operator.getRewritesFrom(q, ruleSet, compilation);
+						}
+					});
+				}
+				final List<ConjunctiveQuery> current = new ArrayList<ConjunctiveQuery>();
+				for (Collection<ConjunctiveQuery> rewrites : invokeAll(pool, expansions)) {
+					current.addAll(rewrites);
+				}
+				generatedRewrites += current.size();
+
+				/* keep only the most general among queries just computed */
+				boolean[] removed = this.test(pool, current, new QueryTest() {
+					@Override
+					boolean test(int i, InMemoryAtomSet f) {
+						for (int j = 0; j < current.size(); ++j) {
+							InMemoryAtomSet o = current.get(j).getAtomSet();
+							if (j != i && Utils.isMoreGeneralThan(o, f, compilation)
+							    && (j < i || !Utils.isMoreGeneralThan(f, o, compilation))) {
+								return true;
+							}
+						}
+						return false;
+					}
+				});
+				/*
+				 * keep only the query just computed that are more general than
+				 * query already compute
+				 */
+				List<ConjunctiveQuery> kept = new ArrayList<ConjunctiveQuery>();
+				for (int i = 0; i < current.size(); ++i) {
+					if (!removed[i]) {
+						kept.add(current.get(i));
+					}
+				}
+				final List<ConjunctiveQuery> selected = new ArrayList<ConjunctiveQuery>();
+				removed = this.test(pool, kept, new QueryTest() {
+					@Override
+					boolean test(int i, InMemoryAtomSet f) {
+						return finalRewritingSet.containsMoreGeneral(f);
+					}
+				});
+				for (int i = 0; i < kept.size(); ++i) {
+					if (!removed[i]) {
+						selected.add(kept.get(i));
+					}
+				}
+
+				/*
+				 * keep in final rewrite set only query more general than query
+				 * just computed
+				 */
+				final SubsumptionIndex<ConjunctiveQuery> selectedIndex = new SubsumptionIndex<ConjunctiveQuery>(compilation);
+				for (ConjunctiveQuery q : selected) {
+					selectedIndex.add(q, q.getAtomSet());
+				}
+				List<ConjunctiveQuery> previous = finalRewritingSet.toList();
+				removed = this.test(pool, previous, new QueryTest() {
+					@Override
+					boolean test(int i, InMemoryAtomSet f) {
+						return selectedIndex.containsMoreGeneral(f);
+					}
+				});
+				for (int i = 0; i < previous.size(); ++i) {
+					if (removed[i]) {
+						finalRewritingSet.remove(previous.get(i).getAtomSet());
+					}
+				}
+
+				// the queries just computed that we keep are the next frontier
+				for (ConjunctiveQuery q : selected) {
+					finalRewritingSet.add(q, q.getAtomSet());
+					this.notifyAdded(q);
+				}
+				frontier = selected;
+			}
+		} finally {
+			pool.shutdown();
 		}
 		/* clean the rewrites to return */
-		Utils.computeQueriesCover(finalRewritingSet);
+		LinkedList<ConjunctiveQuery> result = new LinkedList<ConjunctiveQuery>(finalRewritingSet.toList());
+		Utils.computeQueriesCover(result);
 
 		if (this.verbose) {
 			this.profiler.stop("Rewriting time");
 			this.profiler.put("Generated rewritings", generatedRewrites);
 			this.profiler.put("Explored rewritings", exploredRewrites);
-			this.profiler.put("Pivotal rewritings", finalRewritingSet.size());
+			this.profiler.put("Pivotal rewritings", result.size());
 		}
 
-		return finalRewritingSet;
+		return result;
 	}
 
 	/**
@@ -199,6 +373,82 @@ class RewritingAlgorithm implements Profilable {
 		return false;
 	}
 
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void notifyAdded(ConjunctiveQuery q) {
+		if (this.listener != null) {
+			this.listener.added(q);
+		}
+	}
+
+	/**
+	 * Applies the specified test to each query, the queries being split into
+	 * chunks tested concurrently.
+	 * 
+	 * @return the results of the test, indexed as the queries.
+	 */
+	private boolean[] test(ForkJoinPool pool, final List<ConjunctiveQuery> queries, final QueryTest test) {
+		final boolean[] results = new boolean[queries.size()];
+		int nbChunks = this.parallelism * CHUNKS_PER_THREAD;
+		int chunkSize = (queries.size() + nbChunks - 1) / nbChunks;
+		List<Callable<Void>> chunks = new ArrayList<Callable<Void>>(nbChunks);
+		for (int begin = 0; begin < queries.size(); begin += chunkSize) {
+			final int from = begin;
+			final int to = Math.min(queries.size(), begin + chunkSize);
+			chunks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = from; i < to; ++i) {
+						results[i] = test.test(i, queries.get(i).getAtomSet());
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, chunks);
+		return results;
+	}
+
+	private static <V> List<V> invokeAll(ForkJoinPool pool, List<Callable<V>> tasks) {
+		List<V> results = new ArrayList<V>(tasks.size());
+		for (Future<V> f : pool.invokeAll(tasks)) {
+			try {
+				results.add(f.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Error("The rewriting was interrupted", e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new Error("Error during parallel rewriting", cause);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Receives the queries added to the rewriting set, from the thread which
+	 * runs the rewriting. The queries are still used by the rewriting
+	 * algorithm, they must not be modified.
+	 */
+	static interface Listener {
+		void added(ConjunctiveQuery q);
+	}
+
+	/**
+	 * A test over the queries of a list.
+	 */
+	private static abstract class QueryTest {
+		abstract boolean test(int i, InMemoryAtomSet f);
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	//
 	// /////////////////////////////////////////////////////////////////////////}
@@ -42,8 +42,12 @@
  */
 package fr.lirmm.graphik.graal.backward_chaining.pure;
 
+import java.lang.ref.WeakReference;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
@@ -75,6 +79,11 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 	private boolean unfolding = true;
 	private RewritingOperator operator;
 	private Profiler profiler = NoProfiler.instance();
+	private int parallelism = 1;
+	private boolean streaming = false;
+
+	private static final int BUFFER_SIZE = 1024;
+	private static final Object END = new Object();
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -114,6 +123,9 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 
 	@Override
 	public void close() {
+		if (this.rewrites != null) {
+			this.rewrites.close();
+		}
 	}
 
 	@Override
@@ -129,6 +141,23 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 		return this.unfolding;
 	}
 
+	/**
+	 * Sets the number of threads used to compute the rewritings.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * In streaming mode, the rewriting runs in its own thread and each query
+	 * added to the rewriting set is returned as soon as it is computed. The
+	 * returned union is not minimal: a query subsumed by a query returned
+	 * later is not retracted.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	//
 	// /////////////////////////////////////////////////////////////////////////
@@ -154,11 +183,16 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 		IndexedByHeadPredicatesRuleSet indexedRuleSet = new IndexedByHeadPredicatesRuleSet(this.ruleset);
 
 		// rewriting
-		RewritingAlgorithm algo = new RewritingAlgorithm(this.operator);
+		RewritingAlgorithm algo = new RewritingAlgorithm(this.operator, this.parallelism);
 
 		operator.setProfiler(this.getProfiler());
 		algo.setProfiler(this.getProfiler());
 
+		if (this.streaming) {
+			this.rewrites = new StreamingRewrites(algo, indexedRuleSet);
+			return;
+		}
+
 		Iterable<ConjunctiveQuery> queries = algo.execute(pquery, indexedRuleSet, compilation);
 
 		if (this.unfolding) {
@@ -172,7 +206,7 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 	 * Note: Be careful, this method modify the $queries argument for speed purpose.
 	 * As this method is private and used
 	 */
-	private Iterable<EffectiveConjunctiveQuery> removeAnswerPredicate(Iterable<ConjunctiveQuery> queries) {
+	private static Iterable<EffectiveConjunctiveQuery> removeAnswerPredicate(Iterable<ConjunctiveQuery> queries) {
 		Collection<EffectiveConjunctiveQuery> c = new LinkedList<>();
 
 		for (ConjunctiveQuery q : queries) {
@@ -182,4 +216,145 @@ class RewritinCloseableIterator implements CloseableIteratorWithoutException<Eff
 		return c;
 	}
 
+	// /////////////////////////////////////////////////////////////////////////
+	// STREAMING
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Runs the rewriting algorithm in a thread, the rewritings are passed
+	 * through a bounded buffer as soon as they are added to the rewriting set.
+	 */
+	private class StreamingRewrites implements CloseableIteratorWithoutException<EffectiveConjunctiveQuery> {
+
+		private final Producer producer;
+		private final Thread thread;
+
+		private EffectiveConjunctiveQuery next = null;
+		private boolean isFinished = false;
+
+		StreamingRewrites(RewritingAlgorithm algo, IndexedByHeadPredicatesRuleSet indexedRuleSet) {
+			this.producer = new Producer(this, algo, indexedRuleSet, pquery, compilation, unfolding);
+			this.thread = new Thread(this.producer, "rewriting");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (this.next == null && !this.isFinished) {
+				Object o;
+				try {
+					o = this.producer.buffer.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while waiting for a rewriting", e);
+				}
+				if (o == END) {
+					this.isFinished = true;
+					Throwable error = this.producer.error;
+					if (error instanceof RuntimeException) {
+						throw (RuntimeException) error;
+					} else if (error != null) {
+						throw new RuntimeException("An error occurs during the rewriting", error);
+					}
+				} else {
+					this.next = (EffectiveConjunctiveQuery) o;
+				}
+			}
+			return this.next != null;
+		}
+
+		@Override
+		public EffectiveConjunctiveQuery next() {
+			EffectiveConjunctiveQuery tmp = null;
+			if (this.hasNext()) {
+				tmp = this.next;
+				this.next = null;
+			}
+			return tmp;
+		}
+
+		@Override
+		public void close() {
+			if (!this.producer.isClosed) {
+				this.producer.isClosed = true;
+				this.isFinished = true;
+				this.thread.interrupt();
+				this.producer.buffer.clear();
+			}
+		}
+	}
+
+	/**
+	 * The rewriting thread. It only holds a weak reference to the iterator
+	 * reading its buffer, so it stops as if the iterator was closed once the
+	 * iterator is no longer used.
+	 */
+	private static class Producer implements RewritingAlgorithm.Listener, Runnable {
+
+		private final BlockingQueue<Object> buffer = new LinkedBlockingQueue<Object>(BUFFER_SIZE);
+		private final WeakReference<StreamingRewrites> consumer;
+		private final RewritingAlgorithm algo;
+		private final IndexedByHeadPredicatesRuleSet indexedRuleSet;
+		private final ConjunctiveQuery query;
+		private final RulesCompilation compilation;
+		private final boolean unfolding;
+
+		private volatile boolean isClosed = false;
+		private volatile Throwable error = null;
+
+		Producer(StreamingRewrites consumer, RewritingAlgorithm algo, IndexedByHeadPredicatesRuleSet indexedRuleSet,
+		    ConjunctiveQuery query, RulesCompilation compilation, boolean unfolding) {
+			this.consumer = new WeakReference<StreamingRewrites>(consumer);
+			this.algo = algo;
+			this.indexedRuleSet = indexedRuleSet;
+			this.query = query;
+			this.compilation = compilation;
+			this.unfolding = unfolding;
+			algo.setListener(this);
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.algo.execute(this.query, this.indexedRuleSet, this.compilation);
+			} catch (Throwable e) {
+				this.error = e;
+			} finally {
+				this.publish(END);
+			}
+		}
+
+		@Override
+		public void added(ConjunctiveQuery q) {
+			Collection<ConjunctiveQuery> queries = new LinkedList<ConjunctiveQuery>();
+			queries.add(new PureQuery(q));
+			if (this.unfolding) {
+				queries = Utils.unfoldQueries(queries, this.compilation);
+			}
+			for (EffectiveConjunctiveQuery ecq : removeAnswerPredicate(queries)) {
+				this.publish(ecq);
+			}
+		}
+
+		/**
+		 * Waits for some room in the buffer, until the iterator is closed or
+		 * garbage collected. In the latter case, the thread is interrupted to
+		 * stop the rewriting algorithm.
+		 */
+		private void publish(Object o) {
+			try {
+				while (!this.isClosed && !this.buffer.offer(o, 10, TimeUnit.MILLISECONDS)) {
+					if (this.consumer.get() == null) {
+						this.isClosed = true;
+						this.buffer.clear();
+						Thread.currentThread().interrupt();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 }
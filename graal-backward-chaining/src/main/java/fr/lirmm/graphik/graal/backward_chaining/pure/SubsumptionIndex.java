@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.backward_chaining.pure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * An index over a set of queries which selects the candidates of the
+ * subsumption tests before running {@link Utils#isMoreGeneralThan}. A query h
+ * can be more general than a query f only if each predicate of h is mappable
+ * (see {@link RulesCompilation#isMappable(Predicate, Predicate)}) to a
+ * predicate of f, and, without compiled rules, if the constants of h appear in
+ * f. The queries are indexed by their predicates; the candidates are found by
+ * counting, for each indexed query, its predicates which are mappable, and the
+ * constants are compared through a 64 bits fingerprint.
+ * <br/>
+ * The iteration order is the insertion order. An item is identified by its
+ * atom set: an item is never tested against itself.
+ */
+class SubsumptionIndex<T> implements Iterable<T> {
+
+	private final RulesCompilation compilation;
+
+	private final Map<InMemoryAtomSet, Entry<T>> entries     = new IdentityHashMap<InMemoryAtomSet, Entry<T>>();
+	private final Set<Entry<T>>                  ordered     = new LinkedHashSet<Entry<T>>();
+	private final Map<Predicate, Set<Entry<T>>>  byPredicate = new LinkedHashMap<Predicate, Set<Entry<T>>>();
+	private final Set<Entry<T>>                  empty       = new LinkedHashSet<Entry<T>>();
+
+	private long nextRank = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SubsumptionIndex(RulesCompilation compilation) {
+		this.compilation = compilation;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public void add(T item, InMemoryAtomSet atomSet) {
+		Entry<T> e = new Entry<T>(item, atomSet, this.nextRank++);
+		Entry<T> old = this.entries.put(atomSet, e);
+		if (old != null) {
+			this.unindex(old);
+		}
+		this.ordered.add(e);
+		if (e.predicates.isEmpty()) {
+			this.empty.add(e);
+		}
+		for (Predicate p : e.predicates) {
+			Set<Entry<T>> set = this.byPredicate.get(p);
+			if (set == null) {
+				set = new LinkedHashSet<Entry<T>>();
+				this.byPredicate.put(p, set);
+			}
+			set.add(e);
+		}
+	}
+
+	/**
+	 * @return true if an item with the specified atom set was indexed.
+	 */
+	public boolean remove(InMemoryAtomSet atomSet) {
+		Entry<T> e = this.entries.remove(atomSet);
+		if (e == null) {
+			return false;
+		}
+		this.unindex(e);
+		return true;
+	}
+
+	public int size() {
+		return this.ordered.size();
+	}
+
+	public boolean isEmpty() {
+		return this.ordered.isEmpty();
+	}
+
+	/**
+	 * Returns true if this index contains a query more general than f. This
+	 * method does not modify the index, it can be called concurrently.
+	 *
+	 * @param f
+	 * @return true if this index contains a query more general than f, false
+	 *         otherwise.
+	 */
+	public boolean containsMoreGeneral(InMemoryAtomSet f) {
+		Set<Predicate> predicates = getPredicates(f);
+		long constants = this.compilation.isEmpty() ? getConstantsFingerprint(f) : -1L;
+
+		for (Entry<T> e : this.empty) {
+			if (e.atomSet != f) {
+				return true;
+			}
+		}
+
+		Map<Entry<T>, Integer> counts = new HashMap<Entry<T>, Integer>();
+		for (Map.Entry<Predicate, Set<Entry<T>>> p : this.byPredicate.entrySet()) {
+			if (!this.isMappableToOneOf(p.getKey(), predicates)) {
+				continue;
+			}
+			for (Entry<T> e : p.getValue()) {
+				Integer c = counts.get(e);
+				int count = (c == null) ? 1 : c + 1;
+				counts.put(e, count);
+				if (count == e.predicates.size() && e.atomSet != f && (e.constants & ~constants) == 0
+				    && Utils.isMoreGeneralThan(e.atomSet, f, this.compilation)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes from this index the queries which h is more general than.
+	 *
+	 * @param h
+	 * @return the removed items, in insertion order.
+	 */
+	public List<T> removeLessGeneral(InMemoryAtomSet h) {
+		long constants = this.compilation.isEmpty() ? getConstantsFingerprint(h) : 0L;
+
+		Set<Entry<T>> candidates = null;
+		for (Predicate p : getPredicates(h)) {
+			Set<Entry<T>> images = new HashSet<Entry<T>>();
+			for (Map.Entry<Predicate, Set<Entry<T>>> q : this.byPredicate.entrySet()) {
+				if (this.isMappable(p, q.getKey())) {
+					images.addAll(q.getValue());
+				}
+			}
+			if (candidates == null) {
+				candidates = images;
+			} else {
+				candidates.retainAll(images);
+			}
+			if (candidates.isEmpty()) {
+				return new ArrayList<T>(0);
+			}
+		}
+
+		List<Entry<T>> sorted = new ArrayList<Entry<T>>((candidates == null) ? this.ordered : candidates);
+		Collections.sort(sorted, RANK_ORDER);
+
+		List<T> removed = new ArrayList<T>();
+		for (Entry<T> e : sorted) {
+			if (e.atomSet != h && (constants & ~e.constants) == 0
+			    && Utils.isMoreGeneralThan(h, e.atomSet, this.compilation)) {
+				removed.add(e.item);
+				this.entries.remove(e.atomSet);
+				this.unindex(e);
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<Entry<T>> it = this.ordered.iterator();
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public T next() {
+				return it.next().item;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return the indexed items, in insertion order.
+	 */
+	public List<T> toList() {
+		List<T> list = new ArrayList<T>(this.ordered.size());
+		for (Entry<T> e : this.ordered) {
+			list.add(e.item);
+		}
+		return list;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void unindex(Entry<T> e) {
+		this.ordered.remove(e);
+		this.empty.remove(e);
+		for (Predicate p : e.predicates) {
+			Set<Entry<T>> set = this.byPredicate.get(p);
+			set.remove(e);
+			if (set.isEmpty()) {
+				this.byPredicate.remove(p);
+			}
+		}
+	}
+
+	private boolean isMappableToOneOf(Predicate father, Collection<Predicate> sons) {
+		if (this.compilation.isEmpty()) {
+			return sons.contains(father);
+		}
+		for (Predicate son : sons) {
+			if (this.compilation.isMappable(father, son)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isMappable(Predicate father, Predicate son) {
+		return this.compilation.isEmpty() ? father.equals(son) : this.compilation.isMappable(father, son);
+	}
+
+	private static Set<Predicate> getPredicates(InMemoryAtomSet atomSet) {
+		Set<Predicate> predicates = new HashSet<Predicate>();
+		CloseableIteratorWithoutException<Atom> it = atomSet.iterator();
+		while (it.hasNext()) {
+			predicates.add(it.next().getPredicate());
+		}
+		return predicates;
+	}
+
+	private static long getConstantsFingerprint(InMemoryAtomSet atomSet) {
+		long fingerprint = 0L;
+		CloseableIteratorWithoutException<Atom> it = atomSet.iterator();
+		while (it.hasNext()) {
+			for (Term t : it.next()) {
+				if (t.isConstant()) {
+					fingerprint |= 1L << (t.hashCode() & 63);
+				}
+			}
+		}
+		return fingerprint;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final Comparator<Entry<?>> RANK_ORDER = new Comparator<Entry<?>>() {
+		@Override
+		public int compare(Entry<?> e1, Entry<?> e2) {
+			return Long.compare(e1.rank, e2.rank);
+		}
+	};
+
+	private static class Entry<T> {
+
+		final T               item;
+		final InMemoryAtomSet atomSet;
+		final long            rank;
+		final Set<Predicate>  predicates;
+		final long            constants;
+
+		Entry(T item, InMemoryAtomSet atomSet, long rank) {
+			this.item = item;
+			this.atomSet = atomSet;
+			this.rank = rank;
+			this.predicates = getPredicates(atomSet);
+			this.constants = getConstantsFingerprint(atomSet);
+		}
+	}
+
+}
@@ -54,7 +54,6 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.commons.collections4.IteratorUtils;
-import org.apache.commons.collections4.iterators.IteratorIterable;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -284,7 +283,19 @@ final class Utils {
 	}
 
 	public static void computeQueriesCover(Iterable<ConjunctiveQuery> queries, RulesCompilation comp) {
-		computeCover(new IteratorIterable<EffectiveConjunctiveQuery>(new ConjunctiveQuery2EffCQJavaIterator(queries.iterator())), comp);
+		SubsumptionIndex<ConjunctiveQuery> index = new SubsumptionIndex<ConjunctiveQuery>(comp);
+		for (ConjunctiveQuery q : queries) {
+			index.add(q, q.getAtomSet());
+		}
+
+		Iterator<ConjunctiveQuery> it = queries.iterator();
+		while (it.hasNext()) {
+			InMemoryAtomSet q = it.next().getAtomSet();
+			if (index.containsMoreGeneral(q)) {
+				it.remove();
+				index.remove(q);
+			}
+		}
 	}
 
 	public static void computeQueriesCover(Iterable<ConjunctiveQuery> set) {
@@ -292,28 +303,24 @@ final class Utils {
 	}
 
 	/**
-	 * Remove the fact that are not the most general (taking account of compiled rules) in the given facts
+	 * Remove the fact that are not the most general (taking account of compiled rules) in the given facts.
+	 * The subsumption tests are restricted to the candidates selected by a {@link SubsumptionIndex}.
 	 * 
 	 * @param comp
 	 */
 	public static void computeCover(Iterable<EffectiveConjunctiveQuery> queries, RulesCompilation comp) {
-		Iterator<EffectiveConjunctiveQuery> beg = queries.iterator();
-		Iterator<EffectiveConjunctiveQuery> end;
-		InMemoryAtomSet q;
-		InMemoryAtomSet o;
+		SubsumptionIndex<EffectiveConjunctiveQuery> index = new SubsumptionIndex<EffectiveConjunctiveQuery>(comp);
+		for (EffectiveConjunctiveQuery q : queries) {
+			index.add(q, q.getQuery().getAtomSet());
+		}
 		// TODO: (Olivier) take account the Substitution ?
 
-		while (beg.hasNext()) {
-			q = beg.next().getQuery().getAtomSet();
-			end = queries.iterator();
-
-			while (end.hasNext()) {
-				o = end.next().getQuery().getAtomSet();
-
-				if (o != q && isMoreGeneralThan(o, q, comp)) {
-					beg.remove();
-					break;
-				}
+		Iterator<EffectiveConjunctiveQuery> it = queries.iterator();
+		while (it.hasNext()) {
+			InMemoryAtomSet q = it.next().getQuery().getAtomSet();
+			if (index.containsMoreGeneral(q)) {
+				it.remove();
+				index.remove(q);
 			}
 		}
 	}
@@ -497,4 +497,60 @@ public class BackwardChainingTest {
 		);
 		checkResult(result, IteratorUtils.toList(expected.iterator()));
 	}
+
+	@Theory
+	public void parallelRewriting(RulesCompilation compilation, RewritingOperator operator) throws Exception {
+		rules( //
+				"p(X,Y) :- q(X,Y).", //
+				"q(X,Y) :- a(X), p(X,Y)." //
+		);
+		query("?(X) :- q(X,Y), p(Y,Z).");
+
+		compilation.compile(rules.iterator());
+		PureRewriter bc = new PureRewriter(operator, true);
+		bc.setParallelism(4);
+		CloseableIterator<EffectiveConjunctiveQuery> it = bc.execute(query, rules, compilation);
+
+		result = IteratorUtils.toList(new IteratorAdapter<>(it));
+		expected( //
+				"?(X) :- q(X,Y), p(Y,Z).", //
+				"?(X) :- q(X,Y), q(Y,Z).", //
+				"?(X) :- a(X), p(X,Y), p(Y,Z).", //
+				"?(X) :- a(X), p(X,Y), q(Y,Z)." //
+		);
+		checkResult(result, IteratorUtils.toList(expected.iterator()));
+	}
+
+	/**
+	 * The streamed rewritings are not retracted: q(X), s(X) is returned before
+	 * q(X) is computed and is kept, the streamed union is not minimal.
+	 */
+	@Theory
+	public void streamingRewritingNotMinimal(RewritingOperator operator) throws Exception {
+		rules( //
+				"p(X) :- q(X), s(X).", //
+				"p(X) :- t(X).", //
+				"t(X) :- q(X)." //
+		);
+		query("?(X) :- p(X).");
+
+		PureRewriter bc = new PureRewriter(operator, true);
+		bc.setStreaming(true);
+		CloseableIterator<EffectiveConjunctiveQuery> it = bc.execute(query, rules, NoCompilation.instance());
+
+		result = IteratorUtils.toList(new IteratorAdapter<>(it));
+		expected( //
+				"?(X) :- p(X).", //
+				"?(X) :- t(X).", //
+				"?(X) :- q(X), s(X).", //
+				"?(X) :- q(X)." //
+		);
+		checkResult(result, IteratorUtils.toList(expected.iterator()));
+
+		bc.setStreaming(false);
+		it = bc.execute(query, rules, NoCompilation.instance());
+		result = IteratorUtils.toList(new IteratorAdapter<>(it));
+		expected.remove(2);
+		checkResult(result, IteratorUtils.toList(expected.iterator()));
+	}
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.backward_chaining.pure;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.io.ParseException;
+import fr.lirmm.graphik.graal.core.compilation.IDCompilation;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+
+public class SubsumptionIndexTest {
+
+	@Test
+	public void containsMoreGeneral() throws ParseException {
+		SubsumptionIndex<ConjunctiveQuery> index = index(NoCompilation.instance(), "?(X) :- p(X,Y).",
+		                                                 "?(X) :- q(X,a), r(X).");
+
+		Assert.assertTrue(index.containsMoreGeneral(query("?(X) :- p(X,b), s(X).").getAtomSet()));
+		Assert.assertTrue(index.containsMoreGeneral(query("?(X) :- q(X,a), r(X), r(Y).").getAtomSet()));
+		Assert.assertFalse(index.containsMoreGeneral(query("?(X) :- q(X,b), r(X).").getAtomSet()));
+		Assert.assertFalse(index.containsMoreGeneral(query("?(X) :- q(X,a).").getAtomSet()));
+	}
+
+	@Test
+	public void removeLessGeneral() throws ParseException {
+		SubsumptionIndex<ConjunctiveQuery> index = index(NoCompilation.instance(), "?(X) :- p(X,a), q(X).",
+		                                                 "?(X) :- p(X,Y).", "?(X) :- p(X,b), r(X).");
+
+		List<ConjunctiveQuery> removed = index.removeLessGeneral(query("?(X) :- p(X,Z), p(Z,W).").getAtomSet());
+		Assert.assertEquals(0, removed.size());
+		removed = index.removeLessGeneral(query("?(X) :- p(X,a).").getAtomSet());
+		Assert.assertEquals(1, removed.size());
+		Assert.assertEquals(2, index.size());
+	}
+
+	@Test
+	public void withCompilation() throws ParseException {
+		IDCompilation compilation = new IDCompilation();
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		rules.add(DlgpParser.parseRule("p(X,Y) :- q(Y,X)."));
+		compilation.compile(rules.iterator());
+
+		SubsumptionIndex<ConjunctiveQuery> index = index(compilation, "?(X) :- p(X,X).");
+		Assert.assertTrue(index.containsMoreGeneral(query("?(X) :- q(X,X).").getAtomSet()));
+		Assert.assertFalse(index.containsMoreGeneral(query("?(X) :- q(Y,X).").getAtomSet()));
+		Assert.assertFalse(index.containsMoreGeneral(query("?(X) :- r(X,X).").getAtomSet()));
+	}
+
+	@Test
+	public void computeCover() throws ParseException {
+		List<ConjunctiveQuery> queries = new LinkedList<ConjunctiveQuery>();
+		queries.add(query("?(X) :- p(X,Y), q(Y)."));
+		queries.add(query("?(X) :- p(X,Y)."));
+		queries.add(query("?(X) :- r(X)."));
+		queries.add(query("?(X) :- p(X,Z)."));
+		Utils.computeQueriesCover(queries);
+		Assert.assertEquals(2, queries.size());
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static ConjunctiveQuery query(String s) throws ParseException {
+		return DlgpParser.parseQuery(s);
+	}
+
+	private static SubsumptionIndex<ConjunctiveQuery> index(RulesCompilation compilation, String... queries) throws ParseException {
+		SubsumptionIndex<ConjunctiveQuery> index = new SubsumptionIndex<ConjunctiveQuery>(compilation);
+		for (String s : queries) {
+			ConjunctiveQuery q = query(s);
+			index.add(q, q.getAtomSet());
+		}
+		return index;
+	}
+
+}
@@ -147,6 +147,36 @@ public class ConjunctiveQueryWBPHomomorphismTest {
 		checkResult();
 	}
 
+	@Test
+	public void saturation_1() throws Exception {
+		// the built-in rule only fires on atoms produced by a previous step
+		rules( //
+				"parent(X,Y) :- child(Y,X).", //
+				"sibling(X,Y) :- parent(Z,X), parent(Z,Y), bt__neq(X,Y)." //
+		);
+		facts( //
+				"child(bob,ann).", //
+				"child(carl,ann).", //
+				"child(dan,bob)." //
+		);
+		expected( //
+				"child(bob,ann).", //
+				"child(carl,ann).", //
+				"child(dan,bob).", //
+				"parent(ann,bob).", //
+				"parent(ann,carl).", //
+				"parent(bob,dan).", //
+				"sibling(bob,carl).", //
+				"sibling(carl,bob)." //
+		);
+
+		result = new LinkedListAtomSet(facts);
+		BreadthFirstChase bf = new BreadthFirstChase(rules.iterator(), result, applier);
+		bf.execute();
+
+		checkResult();
+	}
+
 	@SuppressWarnings("resource")
 	@Test
 	public void goodQuery_0() throws Exception {
@@ -81,7 +81,7 @@ public class DefaultVariableGenerator implements VariableGenerator {
 	// PRIVATE METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
-	private int getFreshIndex() {
+	private synchronized int getFreshIndex() {
 		return index++;
 	}
 
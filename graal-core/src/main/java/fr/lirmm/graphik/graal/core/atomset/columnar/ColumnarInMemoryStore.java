@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Term.Type;
+import fr.lirmm.graphik.graal.api.core.TermGenerator;
+import fr.lirmm.graphik.graal.api.store.BatchProcessor;
+import fr.lirmm.graphik.graal.api.store.Store;
+import fr.lirmm.graphik.graal.core.DefaultVariableGenerator;
+import fr.lirmm.graphik.graal.core.atomset.AbstractInMemoryAtomSet;
+import fr.lirmm.graphik.graal.core.store.DefaultBatchProcessor;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAggregatorWithoutException;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.Iterators;
+
+/**
+ * In memory store with dictionary encoded terms. Each term is encoded once as
+ * an int and the atoms of each predicate are kept as packed int columns with a
+ * primitive hash index per position, so no object is kept per atom. Atoms are
+ * decoded on the fly when they are iterated.
+ *
+ * This store has the same {@link #match(Atom, Substitution)} semantics as
+ * {@link fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore}
+ * and is intended for large fact bases.
+ */
+@SuppressWarnings("deprecation")
+public class ColumnarInMemoryStore extends AbstractInMemoryAtomSet implements Store {
+
+	private int size = 0;
+
+	private final TermDictionary dictionary = new TermDictionary();
+	private final Map<Predicate, PredicateTable> tables = new HashMap<Predicate, PredicateTable>();
+
+	private TermGenerator freshSymbolGenerator = new DefaultVariableGenerator("EE");
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public ColumnarInMemoryStore() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Set<Predicate> getPredicates() {
+		return Collections.unmodifiableSet(this.tables.keySet());
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Predicate> predicatesIterator() {
+		return new CloseableIteratorAdapter<Predicate>(this.getPredicates().iterator());
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Atom> iterator() {
+		List<CloseableIteratorWithoutException<Atom>> list = new LinkedList<CloseableIteratorWithoutException<Atom>>();
+		for (PredicateTable table : this.tables.values()) {
+			list.add(new RowIterator(table, this.dictionary));
+		}
+		return new CloseableIteratorAggregatorWithoutException<Atom>(
+		    new CloseableIteratorAdapter<CloseableIteratorWithoutException<Atom>>(list.iterator()));
+	}
+
+	@Override
+	public boolean add(Atom atom) {
+		if (this.contains(atom)) {
+			return false;
+		}
+		PredicateTable table = this.tables.get(atom.getPredicate());
+		if (table == null) {
+			table = new PredicateTable(atom.getPredicate());
+			this.tables.put(table.getPredicate(), table);
+		}
+
+		int[] tuple = new int[table.getArity()];
+		int i = 0;
+		for (Term t : atom) {
+			tuple[i] = this.dictionary.encode(t);
+			this.dictionary.acquire(tuple[i++]);
+		}
+
+		table.add(tuple);
+		++this.size;
+		return true;
+	}
+
+	/**
+	 * Removes the specified atom. The iterators over the atoms of its predicate
+	 * which were started before must not be used after the removal.
+	 */
+	@Override
+	public boolean remove(Atom atom) {
+		PredicateTable table = this.tables.get(atom.getPredicate());
+		if (table == null) {
+			return false;
+		}
+		int[] tuple = this.encodeIfKnown(atom, table.getArity());
+		if (tuple == null || !table.remove(tuple)) {
+			return false;
+		}
+
+		for (int id : tuple) {
+			this.dictionary.release(id);
+		}
+		if (table.size() == 0) {
+			this.tables.remove(atom.getPredicate());
+		}
+		--this.size;
+		return true;
+	}
+
+	@Override
+	public boolean contains(Atom atom) {
+		PredicateTable table = this.tables.get(atom.getPredicate());
+		if (table == null) {
+			return false;
+		}
+		int[] tuple = this.encodeIfKnown(atom, table.getArity());
+		return tuple != null && table.contains(tuple);
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Atom> match(Atom atom, Substitution s) {
+		PredicateTable table = this.tables.get(atom.getPredicate());
+		if (table == null) {
+			return Iterators.<Atom> emptyIterator();
+		}
+
+		int arity = table.getArity();
+		int[] pattern = new int[arity];
+		int[] sameAs = new int[arity];
+		Map<Term, Integer> firstPositionMap = new HashMap<Term, Integer>();
+		int bestPosition = -1;
+		int bestSize = Integer.MAX_VALUE;
+
+		int i = -1;
+		for (Term t : atom) {
+			++i;
+			sameAs[i] = RowIterator.FREE;
+			pattern[i] = RowIterator.FREE;
+			if (t.isConstant() || s.getTerms().contains(t)) {
+				int id = this.dictionary.get(s.createImageOf(t));
+				if (id == TermDictionary.UNKNOWN) {
+					return Iterators.<Atom> emptyIterator();
+				}
+				pattern[i] = id;
+				int tmpSize = table.getIndex(i).count(id);
+				if (tmpSize < bestSize) {
+					bestSize = tmpSize;
+					bestPosition = i;
+				}
+			} else {
+				Integer firstPos = firstPositionMap.get(t);
+				if (firstPos == null) {
+					firstPositionMap.put(t, i);
+				} else {
+					sameAs[i] = firstPos;
+				}
+			}
+		}
+
+		if (bestPosition < 0) {
+			return new RowIterator(table, this.dictionary, null, 0, null, sameAs);
+		} else if (bestSize == 0) {
+			return Iterators.<Atom> emptyIterator();
+		} else {
+			return new RowIterator(table, this.dictionary, table.getIndex(bestPosition), pattern[bestPosition],
+			                       pattern, sameAs);
+		}
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Atom> atomsByPredicate(Predicate p) {
+		PredicateTable table = this.tables.get(p);
+		if (table == null) {
+			return Iterators.<Atom> emptyIterator();
+		}
+		return new RowIterator(table, this.dictionary);
+	}
+
+	@Override
+	public int size(Predicate p) {
+		PredicateTable table = this.tables.get(p);
+		return (table == null) ? 0 : table.size();
+	}
+
+	@Override
+	public int getDomainSize() {
+		return this.dictionary.size();
+	}
+
+	@Override
+	public int getDomainSize(Predicate p, int position) {
+		PredicateTable table = this.tables.get(p);
+		return (table == null) ? 0 : table.getIndex(position).distinct();
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Term> termsByPredicatePosition(Predicate p, int position) {
+		PredicateTable table = this.tables.get(p);
+		if (table == null) {
+			return Iterators.<Term> emptyIterator();
+		}
+		List<Term> terms = new LinkedList<Term>();
+		for (int id : table.getIndex(position).keys()) {
+			terms.add(this.dictionary.decode(id));
+		}
+		return new CloseableIteratorAdapter<Term>(terms.iterator());
+	}
+
+	@Override
+	public Set<Term> getTerms() {
+		return this.dictionary.getTerms();
+	}
+
+	@Override
+	public CloseableIteratorWithoutException<Term> termsIterator() {
+		return new CloseableIteratorAdapter<Term>(this.getTerms().iterator());
+	}
+
+	@Override
+	@Deprecated
+	public Set<Term> getTerms(Type type) {
+		Set<Term> set = new HashSet<Term>();
+		for (Term t : this.dictionary.getTerms())
+			if (type.equals(t.getType()))
+				set.add(t);
+
+		return set;
+	}
+
+	@Override
+	@Deprecated
+	public CloseableIteratorWithoutException<Term> termsIterator(Term.Type type) {
+		return new CloseableIteratorAdapter<Term>(this.getTerms(type).iterator());
+	}
+
+	@Override
+	public void clear() {
+		this.tables.clear();
+		this.dictionary.clear();
+		this.size = 0;
+	}
+
+	@Override
+	public TermGenerator getFreshSymbolGenerator() {
+		return freshSymbolGenerator;
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	public BatchProcessor createBatchProcessor() throws AtomSetException {
+		return new DefaultBatchProcessor(this);
+	}
+
+	@Override
+	public boolean isWriteable() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the encoding of the terms of the specified atom, or null if one
+	 *         of them is not in the dictionary.
+	 */
+	private int[] encodeIfKnown(Atom atom, int arity) {
+		int[] tuple = new int[arity];
+		int i = 0;
+		for (Term t : atom) {
+			int id = this.dictionary.get(t);
+			if (id == TermDictionary.UNKNOWN) {
+				return null;
+			}
+			tuple[i++] = id;
+		}
+		return tuple;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.Arrays;
+
+/**
+ * Primitive hash index from a term identifier to the rows of a
+ * {@link PredicateTable} holding this term at a given position. Rows sharing
+ * the same term are chained in insertion order through the {@code next}
+ * array, so the index costs one int per row plus four ints per distinct term.
+ * Removed rows stay in their chain until the table is compacted, only the
+ * counts are updated.
+ */
+final class PositionIndex {
+
+	static final int NONE = -1;
+
+	private static final int EMPTY = -1;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] keys;
+	private int[] heads;
+	private int[] tails;
+	private int[] counts;
+	private int distinct = 0;
+	private int used = 0;
+
+	private int[] next;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	PositionIndex() {
+		this.allocate(INITIAL_CAPACITY);
+		this.next = new int[INITIAL_CAPACITY];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Registers the specified row under the specified key. Rows must be added
+	 * in increasing order.
+	 */
+	void add(int key, int row) {
+		if (row >= this.next.length) {
+			this.next = Arrays.copyOf(this.next, Math.max(row + 1, this.next.length << 1));
+		}
+		this.next[row] = NONE;
+
+		int slot = this.slot(key);
+		if (this.keys[slot] == EMPTY) {
+			this.keys[slot] = key;
+			this.heads[slot] = row;
+			this.tails[slot] = row;
+			this.counts[slot] = 1;
+			++this.distinct;
+			if (++this.used * 4 > this.keys.length * 3) {
+				this.rehash();
+			}
+		} else {
+			this.next[this.tails[slot]] = row;
+			this.tails[slot] = row;
+			if (this.counts[slot]++ == 0) {
+				++this.distinct;
+			}
+		}
+	}
+
+	/**
+	 * Unregisters one row of the specified key. The row stays in the chain of
+	 * the key, it has to be skipped by the readers.
+	 */
+	void remove(int key) {
+		int slot = this.slot(key);
+		if (this.keys[slot] != EMPTY && this.counts[slot] > 0 && --this.counts[slot] == 0) {
+			--this.distinct;
+		}
+	}
+
+	/**
+	 * Returns the number of rows registered under the specified key.
+	 */
+	int count(int key) {
+		int slot = this.slot(key);
+		return (this.keys[slot] == EMPTY) ? 0 : this.counts[slot];
+	}
+
+	/**
+	 * Returns the first row registered under the specified key or
+	 * {@link #NONE}.
+	 */
+	int first(int key) {
+		int slot = this.slot(key);
+		return (this.keys[slot] == EMPTY) ? NONE : this.heads[slot];
+	}
+
+	/**
+	 * Returns the row following the specified one in its chain or
+	 * {@link #NONE}.
+	 */
+	int next(int row) {
+		return this.next[row];
+	}
+
+	/**
+	 * Returns the number of distinct keys.
+	 */
+	int distinct() {
+		return this.distinct;
+	}
+
+	/**
+	 * Returns a fresh array containing the distinct keys of this index.
+	 */
+	int[] keys() {
+		int[] result = new int[this.distinct];
+		int j = 0;
+		for (int i = 0; i < this.keys.length; ++i) {
+			if (this.keys[i] != EMPTY && this.counts[i] > 0) {
+				result[j++] = this.keys[i];
+			}
+		}
+		return result;
+	}
+
+	static int hash(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private int slot(int key) {
+		int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		while (this.keys[i] != EMPTY && this.keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new int[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.heads = new int[capacity];
+		this.tails = new int[capacity];
+		this.counts = new int[capacity];
+	}
+
+	private void rehash() {
+		int[] oldKeys = this.keys;
+		int[] oldHeads = this.heads;
+		int[] oldTails = this.tails;
+		int[] oldCounts = this.counts;
+		this.allocate(oldKeys.length << 1);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = this.slot(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.heads[slot] = oldHeads[i];
+				this.tails[slot] = oldTails[i];
+				this.counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+}
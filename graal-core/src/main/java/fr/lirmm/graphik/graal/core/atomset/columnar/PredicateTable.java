@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.Arrays;
+
+import fr.lirmm.graphik.graal.api.core.Predicate;
+
+/**
+ * Atoms of one predicate stored as packed int columns, one column per
+ * position, with a {@link PositionIndex} per position and an open addressing
+ * hash set over rows used for duplicate elimination.
+ * <br/>
+ * Removed rows are only flagged, they have to be skipped by the readers
+ * through {@link #isRemoved(int)}. The table is compacted when the removed
+ * rows outnumber the live ones, which renumbers the rows: the iterators
+ * started before a removal must not be used after it.
+ */
+final class PredicateTable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Predicate predicate;
+	private final int arity;
+	private final int[][] columns;
+	private final PositionIndex[] indexes;
+	private int capacity;
+	private int rows = 0;
+	private int size = 0;
+	private boolean[] removed;
+
+	// row + 1 for each used slot, 0 for free ones
+	private int[] rowSet;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	PredicateTable(Predicate predicate) {
+		this.predicate = predicate;
+		this.arity = predicate.getArity();
+		this.capacity = INITIAL_CAPACITY;
+		this.columns = new int[this.arity][];
+		this.indexes = new PositionIndex[this.arity];
+		for (int i = 0; i < this.arity; ++i) {
+			this.columns[i] = new int[this.capacity];
+			this.indexes[i] = new PositionIndex();
+		}
+		this.removed = new boolean[this.capacity];
+		this.rowSet = new int[INITIAL_CAPACITY];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	int getArity() {
+		return this.arity;
+	}
+
+	/**
+	 * Returns the number of atoms of this table.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of rows of this table, removed rows included.
+	 */
+	int rowCount() {
+		return this.rows;
+	}
+
+	boolean isRemoved(int row) {
+		return this.removed[row];
+	}
+
+	int get(int row, int position) {
+		return this.columns[position][row];
+	}
+
+	PositionIndex getIndex(int position) {
+		return this.indexes[position];
+	}
+
+	/**
+	 * Appends the specified tuple if it is not already in this table.
+	 *
+	 * @return true if the tuple was added, false if it was already there.
+	 */
+	boolean add(int[] tuple) {
+		int slot = this.slot(tuple);
+		if (this.rowSet[slot] != 0) {
+			return false;
+		}
+
+		int row = this.append(tuple);
+		++this.size;
+
+		this.rowSet[slot] = row + 1;
+		if (this.size * 4 > this.rowSet.length * 3) {
+			this.rehash(this.rowSet.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the specified tuple from this table.
+	 *
+	 * @return true if the tuple was removed, false if it was not there.
+	 */
+	boolean remove(int[] tuple) {
+		int slot = this.slot(tuple);
+		if (this.rowSet[slot] == 0) {
+			return false;
+		}
+
+		int row = this.rowSet[slot] - 1;
+		this.removed[row] = true;
+		for (int i = 0; i < this.arity; ++i) {
+			this.indexes[i].remove(tuple[i]);
+		}
+		--this.size;
+		this.deleteSlot(slot);
+
+		if (this.rows - this.size > Math.max(this.size, INITIAL_CAPACITY)) {
+			this.compact();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the specified tuple is in this table.
+	 */
+	boolean contains(int[] tuple) {
+		return this.rowSet[this.slot(tuple)] != 0;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private int append(int[] tuple) {
+		int row = this.rows;
+		if (row == this.capacity) {
+			this.capacity <<= 1;
+			for (int i = 0; i < this.arity; ++i) {
+				this.columns[i] = Arrays.copyOf(this.columns[i], this.capacity);
+			}
+			this.removed = Arrays.copyOf(this.removed, this.capacity);
+		}
+		for (int i = 0; i < this.arity; ++i) {
+			this.columns[i][row] = tuple[i];
+			this.indexes[i].add(tuple[i], row);
+		}
+		this.removed[row] = false;
+		++this.rows;
+		return row;
+	}
+
+	/**
+	 * Empties the specified slot of the row set, shifting back the following
+	 * slots of its probe sequence.
+	 */
+	private void deleteSlot(int slot) {
+		int mask = this.rowSet.length - 1;
+		int hole = slot;
+		int i = slot;
+		this.rowSet[hole] = 0;
+		while (true) {
+			i = (i + 1) & mask;
+			if (this.rowSet[i] == 0) {
+				return;
+			}
+			int home = this.hashRow(this.rowSet[i] - 1) & mask;
+			// the entry can fill the hole if its home is not in (hole, i]
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				this.rowSet[hole] = this.rowSet[i];
+				this.rowSet[i] = 0;
+				hole = i;
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the columns and the indexes without the removed rows.
+	 */
+	private void compact() {
+		int[][] oldColumns = new int[this.arity][];
+		for (int i = 0; i < this.arity; ++i) {
+			oldColumns[i] = this.columns[i];
+			this.columns[i] = new int[this.capacity];
+			this.indexes[i] = new PositionIndex();
+		}
+		boolean[] oldRemoved = this.removed;
+		int oldRows = this.rows;
+		this.removed = new boolean[this.capacity];
+		this.rows = 0;
+
+		int[] tuple = new int[this.arity];
+		for (int row = 0; row < oldRows; ++row) {
+			if (!oldRemoved[row]) {
+				for (int i = 0; i < this.arity; ++i) {
+					tuple[i] = oldColumns[i][row];
+				}
+				this.append(tuple);
+			}
+		}
+		this.rehash(this.rowSet.length);
+	}
+
+	private int slot(int[] tuple) {
+		int mask = this.rowSet.length - 1;
+		int i = hashTuple(tuple) & mask;
+		while (this.rowSet[i] != 0 && !this.rowEquals(this.rowSet[i] - 1, tuple)) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private boolean rowEquals(int row, int[] tuple) {
+		for (int i = 0; i < this.arity; ++i) {
+			if (this.columns[i][row] != tuple[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int hashTuple(int[] tuple) {
+		int h = 1;
+		for (int i = 0; i < this.arity; ++i) {
+			h = 31 * h + tuple[i];
+		}
+		return PositionIndex.hash(h);
+	}
+
+	private int hashRow(int row) {
+		int h = 1;
+		for (int i = 0; i < this.arity; ++i) {
+			h = 31 * h + this.columns[i][row];
+		}
+		return PositionIndex.hash(h);
+	}
+
+	private void rehash(int length) {
+		this.rowSet = new int[length];
+		int mask = this.rowSet.length - 1;
+		for (int row = 0; row < this.rows; ++row) {
+			if (this.removed[row]) {
+				continue;
+			}
+			int i = this.hashRow(row) & mask;
+			while (this.rowSet[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			this.rowSet[i] = row + 1;
+		}
+	}
+
+}
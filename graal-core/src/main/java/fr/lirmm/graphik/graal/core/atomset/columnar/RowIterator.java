@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.NoSuchElementException;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Iterates over the rows of a {@link PredicateTable}, either all of them or
+ * the chain of one {@link PositionIndex} key, and decodes the rows matching a
+ * pattern into atoms. Rows are checked on their int encoding, so only matching
+ * rows are materialized.
+ */
+class RowIterator extends AbstractCloseableIterator<Atom> implements CloseableIteratorWithoutException<Atom> {
+
+	/** pattern value for a position without constraint */
+	static final int FREE = -1;
+
+	private final PredicateTable table;
+	private final TermDictionary dictionary;
+	private final PositionIndex index;
+	private final int[] pattern;
+	private final int[] sameAs;
+	private final int end;
+
+	private int row;
+	private Atom next = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param table
+	 *            the table to iterate over.
+	 * @param dictionary
+	 *            the dictionary used to decode term identifiers.
+	 * @param index
+	 *            the index to follow or null to scan the whole table.
+	 * @param key
+	 *            the key to follow in the index, ignored if index is null.
+	 * @param pattern
+	 *            for each position, the required term identifier or
+	 *            {@link #FREE}, may be null.
+	 * @param sameAs
+	 *            for each position, a previous position which must hold the
+	 *            same term or {@link #FREE}, may be null.
+	 */
+	RowIterator(PredicateTable table, TermDictionary dictionary, PositionIndex index, int key, int[] pattern,
+	    int[] sameAs) {
+		this.table = table;
+		this.dictionary = dictionary;
+		this.index = index;
+		this.pattern = pattern;
+		this.sameAs = sameAs;
+		// atoms added during the iteration are not visited
+		this.end = table.rowCount();
+		this.row = (index == null) ? 0 : index.first(key);
+	}
+
+	RowIterator(PredicateTable table, TermDictionary dictionary) {
+		this(table, dictionary, null, 0, null, null);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() {
+		while (this.next == null && this.row != PositionIndex.NONE && this.row < this.end) {
+			int current = this.row;
+			this.row = (this.index == null) ? current + 1 : this.index.next(current);
+			if (this.matches(current)) {
+				this.next = this.decode(current);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Atom next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Atom a = this.next;
+		this.next = null;
+		return a;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private boolean matches(int r) {
+		if (this.table.isRemoved(r)) {
+			return false;
+		}
+		for (int i = 0; i < this.table.getArity(); ++i) {
+			if (this.pattern != null && this.pattern[i] != FREE && this.table.get(r, i) != this.pattern[i]) {
+				return false;
+			}
+			if (this.sameAs != null && this.sameAs[i] != FREE
+			    && this.table.get(r, i) != this.table.get(r, this.sameAs[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Atom decode(int r) {
+		Term[] terms = new Term[this.table.getArity()];
+		for (int i = 0; i < terms.length; ++i) {
+			terms[i] = this.dictionary.decode(this.table.get(r, i));
+		}
+		return new DefaultAtom(this.table.getPredicate(), terms);
+	}
+
+}
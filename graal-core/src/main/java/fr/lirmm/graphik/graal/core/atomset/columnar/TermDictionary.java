@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Term;
+
+/**
+ * Bijective encoding of terms into int identifiers starting at 0. Each
+ * identifier counts the occurrences of its term in the atoms of the store: a
+ * term is forgotten when its last occurrence is released, and its identifier
+ * is reused by the next encoded term.
+ */
+final class TermDictionary {
+
+	static final int UNKNOWN = -1;
+
+	private final Map<Term, Integer> ids = new HashMap<Term, Integer>();
+	private final List<Term> terms = new ArrayList<Term>();
+	private int[] occurrences = new int[16];
+	private int[] freeIds = new int[16];
+	private int nbFreeIds = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the identifier of the specified term, a new one is allocated if
+	 * the term is not yet known.
+	 */
+	int encode(Term term) {
+		Integer id = this.ids.get(term);
+		if (id == null) {
+			if (this.nbFreeIds > 0) {
+				id = this.freeIds[--this.nbFreeIds];
+				this.terms.set(id, term);
+			} else {
+				id = this.terms.size();
+				this.terms.add(term);
+				if (id >= this.occurrences.length) {
+					this.occurrences = Arrays.copyOf(this.occurrences, this.occurrences.length << 1);
+				}
+			}
+			this.ids.put(term, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Records one more occurrence of the term of the specified identifier.
+	 */
+	void acquire(int id) {
+		++this.occurrences[id];
+	}
+
+	/**
+	 * Releases one occurrence of the term of the specified identifier, the
+	 * term is forgotten if it has no more occurrence.
+	 */
+	void release(int id) {
+		if (--this.occurrences[id] == 0) {
+			this.ids.remove(this.terms.get(id));
+			this.terms.set(id, null);
+			if (this.nbFreeIds == this.freeIds.length) {
+				this.freeIds = Arrays.copyOf(this.freeIds, this.freeIds.length << 1);
+			}
+			this.freeIds[this.nbFreeIds++] = id;
+		}
+	}
+
+	/**
+	 * Returns the identifier of the specified term or {@link #UNKNOWN} if it
+	 * was never encoded.
+	 */
+	int get(Term term) {
+		Integer id = this.ids.get(term);
+		return (id == null) ? UNKNOWN : id;
+	}
+
+	Term decode(int id) {
+		return this.terms.get(id);
+	}
+
+	int size() {
+		return this.ids.size();
+	}
+
+	Set<Term> getTerms() {
+		return Collections.unmodifiableSet(this.ids.keySet());
+	}
+
+	void clear() {
+		this.ids.clear();
+		this.terms.clear();
+		Arrays.fill(this.occurrences, 0);
+		this.nbFreeIds = 0;
+	}
+
+}
@@ -128,6 +128,39 @@ abstract class AbstractTermVertex extends AbstractTerm implements TermVertex {
 		return res;
 	}
 
+	@Override
+	public boolean removeNeighbor(Atom a) {
+		Collection<Atom>[] map = this.index.get(a.getPredicate());
+		if (map == null) {
+			return false;
+		}
+
+		boolean res = false;
+		boolean isEmpty = true;
+		int i = -1;
+		for (Term t : a) {
+			++i;
+			Collection<Atom> collection = map[i];
+			if (collection != null && this.equals(t)) {
+				res = collection.remove(a) || res;
+				if (collection.isEmpty()) {
+					map[i] = null;
+					collection = null;
+				}
+			}
+			isEmpty = isEmpty && collection == null;
+		}
+		if (isEmpty) {
+			this.index.remove(a.getPredicate());
+		}
+		return res;
+	}
+
+	@Override
+	public boolean hasNeighbors() {
+		return !this.index.isEmpty();
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// TERM METHODS
 	// /////////////////////////////////////////////////////////////////////////
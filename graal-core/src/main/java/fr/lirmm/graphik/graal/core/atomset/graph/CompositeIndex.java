@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.graph;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Map;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Index of the atoms of one predicate by the pair of terms they hold at two
+ * given positions.
+ */
+class CompositeIndex {
+
+	private final Predicate predicate;
+	private final int posI;
+	private final int posJ;
+
+	private final Map<Term, Map<Term, Collection<Atom>>> index = CurrentIndexFactory.instance()
+	                                                                                .<Term, Map<Term, Collection<Atom>>>createMap();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param predicate
+	 * @param posI
+	 *            the first indexed position.
+	 * @param posJ
+	 *            the second indexed position, must be greater than posI.
+	 */
+	public CompositeIndex(Predicate predicate, int posI, int posJ) {
+		this.predicate = predicate;
+		this.posI = posI;
+		this.posJ = posJ;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	public int getPosI() {
+		return this.posI;
+	}
+
+	public int getPosJ() {
+		return this.posJ;
+	}
+
+	public void add(Atom a) {
+		Term ti = a.getTerm(this.posI);
+		Map<Term, Collection<Atom>> map = this.index.get(ti);
+		if (map == null) {
+			map = CurrentIndexFactory.instance().<Term, Collection<Atom>>createMap();
+			this.index.put(ti, map);
+		}
+		Term tj = a.getTerm(this.posJ);
+		Collection<Atom> collection = map.get(tj);
+		if (collection == null) {
+			collection = new LinkedList<Atom>();
+			map.put(tj, collection);
+		}
+		collection.add(a);
+	}
+
+	public void remove(Atom a) {
+		Term ti = a.getTerm(this.posI);
+		Map<Term, Collection<Atom>> map = this.index.get(ti);
+		if (map != null) {
+			Term tj = a.getTerm(this.posJ);
+			Collection<Atom> collection = map.get(tj);
+			if (collection != null && collection.remove(a) && collection.isEmpty()) {
+				map.remove(tj);
+				if (map.isEmpty()) {
+					this.index.remove(ti);
+				}
+			}
+		}
+	}
+
+	public int size(Term ti, Term tj) {
+		Collection<Atom> collection = this.getCollection(ti, tj);
+		return (collection == null) ? 0 : collection.size();
+	}
+
+	public CloseableIteratorWithoutException<Atom> getNeighbors(Term ti, Term tj) {
+		Collection<Atom> collection = this.getCollection(ti, tj);
+		if (collection == null) {
+			collection = Collections.<Atom>emptyList();
+		}
+		return new CloseableIteratorAdapter<Atom>(collection.iterator());
+	}
+
+	public void clear() {
+		this.index.clear();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private Collection<Atom> getCollection(Term ti, Term tj) {
+		Map<Term, Collection<Atom>> map = this.index.get(ti);
+		return (map == null) ? null : map.get(tj);
+	}
+
+}
@@ -42,6 +42,7 @@
  */
 package fr.lirmm.graphik.graal.core.atomset.graph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -63,7 +64,6 @@ import fr.lirmm.graphik.graal.core.DefaultVariableGenerator;
 import fr.lirmm.graphik.graal.core.TypeFilter;
 import fr.lirmm.graphik.graal.core.atomset.AbstractInMemoryAtomSet;
 import fr.lirmm.graphik.graal.core.store.DefaultBatchProcessor;
-import fr.lirmm.graphik.util.MethodNotImplementedError;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAggregatorWithoutException;
 import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
@@ -84,6 +84,8 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 	private Map<Predicate, PredicateVertex> predicates;
 
 	private Map<Predicate, Set<Term>[]> termsByPredicatePosition;
+	private Map<Predicate, List<CompositeIndex>> compositeIndexes;
+	private boolean lazyCompositeIndexes;
 	private TermGenerator freshSymbolGenerator = new DefaultVariableGenerator("EE");
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -91,9 +93,22 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 	// /////////////////////////////////////////////////////////////////////////
 
 	public DefaultInMemoryGraphStore() {
+		this(false);
+	}
+
+	/**
+	 * @param lazyCompositeIndexes
+	 *            if true, an index on a pair of positions of a predicate is
+	 *            built the first time a match query binds both positions.
+	 *            Otherwise, only indexes created through
+	 *            {@link #createCompositeIndex(Predicate, int, int)} are used.
+	 */
+	public DefaultInMemoryGraphStore(boolean lazyCompositeIndexes) {
 		this.terms = CurrentIndexFactory.instance().<Term, TermVertex>createMap();
 		this.predicates = CurrentIndexFactory.instance().<Predicate, PredicateVertex>createMap();
 		this.termsByPredicatePosition = CurrentIndexFactory.instance().<Predicate, Set<Term>[]>createMap();
+		this.compositeIndexes = CurrentIndexFactory.instance().<Predicate, List<CompositeIndex>>createMap();
+		this.lazyCompositeIndexes = lazyCompositeIndexes;
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -124,8 +139,44 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 
 	@Override
 	public boolean remove(Atom atom) {
-		// TODO implement this method
-		throw new MethodNotImplementedError();
+		Predicate p = atom.getPredicate();
+		PredicateVertex predicateVertex = this.predicates.get(p);
+		if (predicateVertex == null || !predicateVertex.removeNeighbor(atom)) {
+			return false;
+		}
+		--size;
+
+		Set<Term> atomTerms = new HashSet<Term>(atom.getTerms());
+		for (Term t : atomTerms) {
+			this.getTermVertex(t).removeNeighbor(atom);
+		}
+
+		Set<Term>[] sets = this.termsByPredicatePosition.get(p);
+		int i = -1;
+		for (Term t : atom) {
+			if (this.getTermVertex(t).neighborhoodSize(p, ++i) == 0) {
+				sets[i].remove(t);
+			}
+		}
+
+		for (Term t : atomTerms) {
+			if (!this.getTermVertex(t).hasNeighbors()) {
+				this.terms.remove(t);
+			}
+		}
+
+		List<CompositeIndex> indexes = this.compositeIndexes.get(p);
+		if (indexes != null) {
+			for (CompositeIndex index : indexes) {
+				index.remove(atom);
+			}
+		}
+
+		if (predicateVertex.getNeighbors().isEmpty()) {
+			this.predicates.remove(p);
+			this.termsByPredicatePosition.remove(p);
+		}
+		return true;
 	}
 
 	@Override
@@ -141,14 +192,18 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 	public CloseableIteratorWithoutException<Atom> match(Atom atom, Substitution s) {
 		CloseableIteratorWithoutException<Atom> it = null;
 		final AtomType atomType = new AtomType(atom, s);
+		final Atom image = atomType.isThereConstraint() ? s.createImageOf(atom) : atom;
 		if(atomType.isThereConstant()) {
 			// find smallest iterator
 			int i = -1;
 			int size = Integer.MAX_VALUE;
+			boolean fullyBound = true;
+			List<Integer> boundPositions = new ArrayList<Integer>(atom.getPredicate().getArity());
 			for (Term t : atom.getTerms()) {
 				++i;
 				if (t.isConstant() || s.getTerms().contains(t)) {
-					TermVertex tv = this.getTermVertex(s.createImageOf(t));
+					boundPositions.add(i);
+					TermVertex tv = this.getTermVertex(image.getTerm(i));
 					if (tv != null) {
 						int tmpSize = tv.neighborhoodSize(atom.getPredicate(), i);
 						if(tmpSize < size) {
@@ -159,6 +214,25 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 						size = 0;
 						it = Iterators.<Atom>emptyIterator();
 					}
+				} else {
+					fullyBound = false;
+				}
+			}
+
+			if (size > 0 && fullyBound) {
+				// direct lookup, no need to filter
+				return this.contains(image) ? Iterators.<Atom> singletonIterator(image)
+				                            : Iterators.<Atom> emptyIterator();
+			}
+
+			if (size > 1 && boundPositions.size() > 1) {
+				CompositeIndex index = this.getCompositeIndex(atom.getPredicate(), boundPositions);
+				if (index != null) {
+					Term ti = image.getTerm(index.getPosI());
+					Term tj = image.getTerm(index.getPosJ());
+					if (index.size(ti, tj) < size) {
+						it = index.getNeighbors(ti, tj);
+					}
 				}
 			}
 		} else {
@@ -166,12 +240,34 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 		}
 		
 		if(atomType.isThereConstraint()) {
-			return new FilterIteratorWithoutException<Atom, Atom>(it, new TypeFilter(atomType, s.createImageOf(atom)));
+			return new FilterIteratorWithoutException<Atom, Atom>(it, new TypeFilter(atomType, image));
 		} else {
 			return it;
 		}
 	}
 
+	/**
+	 * Creates, if it does not already exist, an index of the atoms of the
+	 * specified predicate by the pair of terms at the two specified positions.
+	 * It is then used by {@link #match(Atom, Substitution)} when both positions
+	 * are bound.
+	 * 
+	 * @param p
+	 *            a predicate
+	 * @param posI
+	 *            a position in p
+	 * @param posJ
+	 *            another position in p
+	 */
+	public void createCompositeIndex(Predicate p, int posI, int posJ) {
+		if (posI == posJ || posI < 0 || posJ < 0 || posI >= p.getArity() || posJ >= p.getArity()) {
+			throw new IllegalArgumentException("Invalid positions (" + posI + ", " + posJ + ") for " + p);
+		}
+		synchronized (this.compositeIndexes) {
+			this.addCompositeIndex(p, Math.min(posI, posJ), Math.max(posI, posJ));
+		}
+	}
+
 	@Override
 	public CloseableIteratorWithoutException<Atom> atomsByPredicate(Predicate p) {
 		PredicateVertex pv = this.getPredicateVertex(p);
@@ -198,6 +294,12 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 		return this.terms.size();
 	}
 
+	@Override
+	public int getDomainSize(Predicate p, int position) {
+		Set<Term>[] sets = this.termsByPredicatePosition.get(p);
+		return (sets == null) ? 0 : sets[position].size();
+	}
+
 	@Override
 	public CloseableIteratorWithoutException<Term> termsByPredicatePosition(Predicate p, int position) {
 		Set<Term>[] sets = this.termsByPredicatePosition.get(p);
@@ -254,6 +356,11 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 		this.terms.clear();
 		this.predicates.clear();
 		this.termsByPredicatePosition.clear();
+		for (List<CompositeIndex> indexes : this.compositeIndexes.values()) {
+			for (CompositeIndex index : indexes) {
+				index.clear();
+			}
+		}
 		this.size = 0;
 	}
 
@@ -279,6 +386,57 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 
 	}
 
+	/**
+	 * Returns an index on two of the specified bound positions, the first one
+	 * found among the existing indexes or, in lazy mode, a new one on the
+	 * first two bound positions. Returns null if there is no such index.
+	 * <br/>
+	 * The lookup and the lazy construction are synchronized on the indexes
+	 * map, so concurrent matches on this store build each index once and never
+	 * see a partially built one.
+	 */
+	private CompositeIndex getCompositeIndex(Predicate p, List<Integer> boundPositions) {
+		synchronized (this.compositeIndexes) {
+			List<CompositeIndex> indexes = this.compositeIndexes.get(p);
+			if (indexes != null) {
+				for (CompositeIndex index : indexes) {
+					if (boundPositions.contains(index.getPosI()) && boundPositions.contains(index.getPosJ())) {
+						return index;
+					}
+				}
+			}
+			if (this.lazyCompositeIndexes) {
+				return this.addCompositeIndex(p, boundPositions.get(0), boundPositions.get(1));
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock of the indexes map.
+	 */
+	private CompositeIndex addCompositeIndex(Predicate p, int posI, int posJ) {
+		List<CompositeIndex> indexes = this.compositeIndexes.get(p);
+		if (indexes == null) {
+			indexes = new ArrayList<CompositeIndex>();
+			this.compositeIndexes.put(p, indexes);
+		}
+		for (CompositeIndex index : indexes) {
+			if (index.getPosI() == posI && index.getPosJ() == posJ) {
+				return index;
+			}
+		}
+		CompositeIndex index = new CompositeIndex(p, posI, posJ);
+		PredicateVertex pv = this.getPredicateVertex(p);
+		if (pv != null) {
+			for (Edge e : pv.getNeighbors()) {
+				index.add((AtomEdge) e);
+			}
+		}
+		indexes.add(index);
+		return index;
+	}
+
 	private TermVertex addTermVertex(TermVertex term) {
 		TermVertex t = this.terms.get(term);
 		if (t == null) {
@@ -320,6 +478,13 @@ public class DefaultInMemoryGraphStore extends AbstractInMemoryAtomSet implement
 			for (Term t : atom) {
 				sets[++i].add(t);
 			}
+
+			List<CompositeIndex> indexes = this.compositeIndexes.get(atom.getPredicate());
+			if (indexes != null) {
+				for (CompositeIndex index : indexes) {
+					index.add(atom);
+				}
+			}
 		}
 		return val;
 	}
@@ -47,6 +47,7 @@ package fr.lirmm.graphik.graal.core.atomset.graph;
 
 import java.util.Set;
 
+import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.Predicate;
 
 class PredicateVertex extends Predicate implements Vertex {
@@ -83,6 +84,11 @@ class PredicateVertex extends Predicate implements Vertex {
 		return this.edges.add(a);
 	}
 
+	@Override
+	public boolean removeNeighbor(Atom a) {
+		return this.edges.remove(a);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		return super.equals(o);
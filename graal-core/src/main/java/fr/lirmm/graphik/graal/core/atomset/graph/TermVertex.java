@@ -65,4 +65,9 @@ interface TermVertex extends Term, Vertex {
 	 */
 	int neighborhoodSize(Predicate p, int position);
 
+	/**
+	 * @return true if at least one atom contains this term.
+	 */
+	boolean hasNeighbors();
+
 }
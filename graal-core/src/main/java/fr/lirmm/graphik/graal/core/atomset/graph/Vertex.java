@@ -45,7 +45,11 @@
 */
 package fr.lirmm.graphik.graal.core.atomset.graph;
 
+import fr.lirmm.graphik.graal.api.core.Atom;
+
 interface Vertex {
 
 	boolean addNeighbor(AtomEdge a);
+
+	boolean removeNeighbor(Atom a);
 }
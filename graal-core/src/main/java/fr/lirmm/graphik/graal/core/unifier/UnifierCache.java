@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.unifier;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.util.Partition;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * A bounded LRU cache of the admissible partitions between an atom and the
+ * head of a rule. Partitions are keyed by the rule, the rules compilation, the
+ * predicate of the atom and its pattern: its constants and the positions of
+ * its equal variables. They are computed once over placeholder variables and
+ * the variables of the rule, then instantiated onto the atom and a copy of the
+ * rule for each call.
+ * <br/>
+ * Rules and compilations are identified by reference, they must not be
+ * modified once used with the cache. They are weakly referenced: the entries
+ * of the rules and compilations which were garbage collected are removed.
+ */
+class UnifierCache {
+
+	private static final String PLACEHOLDER_PREFIX = "U" + Integer.toString(UnifierCache.class.hashCode()) + "_";
+
+	private final Map<Key, List<Partition<Term>>> partitions;
+	private final List<Variable>                  placeholders = new ArrayList<Variable>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param capacity
+	 *            the maximum number of (rule, atom pattern) pairs kept.
+	 */
+	UnifierCache(final int capacity) {
+		this.partitions = new LinkedHashMap<Key, List<Partition<Term>>>(16, 0.75f, true) {
+			private static final long serialVersionUID = -6180253911546204437L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, List<Partition<Term>>> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the admissible partitions between the specified atom and the head
+	 * of the specified rule, expressed over the terms of the atom and the
+	 * images of the rule variables by the specified renaming.
+	 *
+	 * @param a
+	 * @param rule
+	 * @param compilation
+	 * @param ruleRenaming
+	 *            a renaming of the variables of the rule, as used to build a
+	 *            safe copy of the rule.
+	 * @return the partitions, in the order of the head atoms.
+	 */
+	List<Partition<Term>> getPartitions(Atom a, Rule rule, RulesCompilation compilation, Substitution ruleRenaming) {
+		List<Variable> variables = new ArrayList<Variable>();
+		List<Term> pattern = new ArrayList<Term>(a.getPredicate().getArity());
+		for (Term t : a) {
+			if (t.isConstant()) {
+				pattern.add(t);
+			} else {
+				int i = variables.indexOf(t);
+				if (i < 0) {
+					i = variables.size();
+					variables.add((Variable) t);
+				}
+				pattern.add(this.getPlaceholder(i));
+			}
+		}
+
+		Key key = new Key(rule, compilation, a.getPredicate(), pattern);
+		List<Partition<Term>> cached;
+		synchronized (this.partitions) {
+			cached = this.partitions.get(key);
+		}
+		if (cached == null) {
+			this.expungeStaleEntries();
+			cached = computePartitions(new DefaultAtom(a.getPredicate(), pattern), rule, compilation);
+			synchronized (this.partitions) {
+				this.partitions.put(key, cached);
+			}
+		}
+
+		List<Partition<Term>> instances = new LinkedList<Partition<Term>>();
+		for (Partition<Term> partition : cached) {
+			Partition<Term> instance = new Partition<Term>();
+			for (List<Term> cl : partition) {
+				ArrayList<Term> instanceClass = new ArrayList<Term>(cl.size());
+				for (Term t : cl) {
+					int i = this.getPlaceholderIndex(t);
+					instanceClass.add((i >= 0) ? variables.get(i) : ruleRenaming.createImageOf(t));
+				}
+				instance.addClass(instanceClass);
+			}
+			instances.add(instance);
+		}
+		return instances;
+	}
+
+	int size() {
+		synchronized (this.partitions) {
+			return this.partitions.size();
+		}
+	}
+
+	void clear() {
+		synchronized (this.partitions) {
+			this.partitions.clear();
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Removes the partitions of the rules and compilations which were garbage
+	 * collected.
+	 */
+	private void expungeStaleEntries() {
+		synchronized (this.partitions) {
+			Iterator<Key> it = this.partitions.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().isStale()) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static List<Partition<Term>> computePartitions(Atom a, Rule rule, RulesCompilation compilation) {
+		List<Partition<Term>> res = new ArrayList<Partition<Term>>();
+		CloseableIteratorWithoutException<Atom> it = rule.getHead().iterator();
+		while (it.hasNext()) {
+			Atom b = it.next();
+			if (!compilation.isMappable(a.getPredicate(), b.getPredicate()))
+				continue;
+
+			for (Partition<Term> partition : compilation.getUnification(a, b)) {
+				if (TermPartitionUtils.isAdmissible(partition, rule))
+					res.add(partition);
+			}
+		}
+		return res;
+	}
+
+	private Variable getPlaceholder(int i) {
+		synchronized (this.placeholders) {
+			while (this.placeholders.size() <= i) {
+				this.placeholders.add(DefaultTermFactory.instance()
+				                                        .createVariable(PLACEHOLDER_PREFIX + this.placeholders.size()));
+			}
+			return this.placeholders.get(i);
+		}
+	}
+
+	/**
+	 * @return the index of the specified term if it is a placeholder, -1
+	 *         otherwise.
+	 */
+	private int getPlaceholderIndex(Term t) {
+		if (!t.isVariable()) {
+			return -1;
+		}
+		synchronized (this.placeholders) {
+			return this.placeholders.indexOf(t);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static class Key {
+
+		private final WeakReference<Rule>             rule;
+		private final WeakReference<RulesCompilation> compilation;
+		private final Predicate                       predicate;
+		private final List<Term>                      pattern;
+		private final int                             hashCode;
+
+		Key(Rule rule, RulesCompilation compilation, Predicate predicate, List<Term> pattern) {
+			this.rule = new WeakReference<Rule>(rule);
+			this.compilation = new WeakReference<RulesCompilation>(compilation);
+			this.predicate = predicate;
+			this.pattern = pattern;
+			this.hashCode = ((System.identityHashCode(rule) * 31 + System.identityHashCode(compilation)) * 31
+			                 + predicate.hashCode()) * 31 + pattern.hashCode();
+		}
+
+		boolean isStale() {
+			return this.rule.get() == null || this.compilation.get() == null;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			Rule rule = this.rule.get();
+			RulesCompilation compilation = this.compilation.get();
+			return rule != null && compilation != null && rule == other.rule.get()
+			       && compilation == other.compilation.get() && this.hashCode == other.hashCode && this.predicate.equals(other.predicate)
+			       && this.pattern.equals(other.pattern);
+		}
+	}
+
+}
@@ -69,6 +69,8 @@ import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
  */
 public final class UnifierUtils {
 
+	private static final UnifierCache unifierCache = new UnifierCache(4096);
+
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
 	// /////////////////////////////////////////////////////////////////////////
@@ -109,36 +111,25 @@ public final class UnifierUtils {
 		if (maxQueryUnifiers == 0)
 			return u;
 
-		Rule ruleCopy = getSafeCopy(r);
+		Substitution ruleRenaming = new FreshVarSubstitution(varGen);
+		Rule ruleCopy = getSafeCopy(r, ruleRenaming);
 		HashMap<Atom, LinkedList<Partition<Term>>> possibleUnification = new HashMap<Atom, LinkedList<Partition<Term>>>();
 		// compute possible unification between atoms of Q and head(R)
 		CloseableIteratorWithoutException<Atom> it = q.iterator();
 
 		/*
-		 * Pre-processing
+		 * Pre-processing: the admissible partitions only depend on the pattern
+		 * of the atom, they are memoized by the unifier cache
 		 */
 		while (it.hasNext()) {
 			Atom a = it.next();
-			CloseableIteratorWithoutException<Atom> it2 = ruleCopy.getHead().iterator();
-
-			while (it2.hasNext()) {
-				Atom b = it2.next();
-
-				if (!compilation.isMappable(a.getPredicate(), b.getPredicate()))
-					continue;
 
-				Collection<Partition<Term>> unification = compilation.getUnification(a, b);
+			for (Partition<Term> partition : unifierCache.getPartitions(a, r, compilation, ruleRenaming)) {
 
-				for (Partition<Term> partition : unification) {
+				if (possibleUnification.get(a) == null)
+					possibleUnification.put(a, new LinkedList<Partition<Term>>());
 
-					if (!TermPartitionUtils.isAdmissible(partition, ruleCopy))
-						continue;
-
-					if (possibleUnification.get(a) == null)
-						possibleUnification.put(a, new LinkedList<Partition<Term>>());
-
-					possibleUnification.get(a).add(partition);
-				}
+				possibleUnification.get(a).add(partition);
 			}
 		}
 
@@ -410,8 +401,18 @@ public final class UnifierUtils {
 	private static DefaultVariableGenerator varGen = new DefaultVariableGenerator("X" + UnifierUtils.class.hashCode());
 
 	public static Rule getSafeCopy(Rule rule) {
-		Substitution substitution = new FreshVarSubstitution(varGen);
+		return getSafeCopy(rule, new FreshVarSubstitution(varGen));
+	}
 
+	/**
+	 * @param rule
+	 * @param substitution
+	 *            the renaming to apply, it is filled with the images of the
+	 *            variables of the rule.
+	 * @return a copy of the specified rule renamed by the specified
+	 *         substitution.
+	 */
+	private static Rule getSafeCopy(Rule rule, Substitution substitution) {
 		InMemoryAtomSet body = rule.getBody();
 		InMemoryAtomSet head = rule.getHead();
 
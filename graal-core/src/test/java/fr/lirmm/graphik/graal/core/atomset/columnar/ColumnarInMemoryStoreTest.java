@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.columnar;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.Substitutions;
+import fr.lirmm.graphik.graal.core.TestUtils;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+public class ColumnarInMemoryStoreTest {
+
+	@Test
+	public void addAndContains() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+
+		// When
+		boolean first = store.add(TestUtils.pAB);
+		boolean second = store.add(new DefaultAtom(TestUtils.pAB));
+
+		// Then
+		Assert.assertTrue(first);
+		Assert.assertFalse(second);
+		Assert.assertEquals(1, store.size());
+		Assert.assertEquals(1, store.size(TestUtils.p));
+		Assert.assertTrue(store.contains(TestUtils.pAB));
+		Assert.assertFalse(store.contains(TestUtils.pBA));
+		Assert.assertEquals(2, store.getDomainSize());
+	}
+
+	@Test
+	public void termsByPredicatePosition() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		store.add(TestUtils.pAB);
+		store.add(TestUtils.pBA);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.A));
+
+		// When
+		Set<Term> terms = collect(store.termsByPredicatePosition(TestUtils.p, 0));
+
+		// Then
+		Assert.assertEquals(2, terms.size());
+		Assert.assertTrue(terms.contains(TestUtils.A));
+		Assert.assertTrue(terms.contains(TestUtils.B));
+	}
+
+	@Test
+	public void domainSizeByPosition() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		store.add(TestUtils.pAB);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.A));
+
+		// Then
+		Assert.assertEquals(1, store.getDomainSize(TestUtils.p, 0));
+		Assert.assertEquals(2, store.getDomainSize(TestUtils.p, 1));
+		Assert.assertEquals(0, store.getDomainSize(TestUtils.q, 0));
+	}
+
+	@Test
+	public void matchRepeatedVariable() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		store.add(TestUtils.pAB);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.A));
+
+		// When
+		Set<Atom> result = collect(store.match(TestUtils.pXX, Substitutions.emptySubstitution()));
+
+		// Then
+		Assert.assertEquals(1, result.size());
+		Assert.assertTrue(result.contains(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.A)));
+	}
+
+	@Test
+	public void matchSameAsDefaultInMemoryGraphStore() {
+		// Given
+		Random rand = new Random(42);
+		Predicate[] predicates = { TestUtils.p, TestUtils.q, TestUtils.r };
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		DefaultInMemoryGraphStore reference = new DefaultInMemoryGraphStore();
+		for (int i = 0; i < 2000; ++i) {
+			Predicate p = predicates[rand.nextInt(predicates.length)];
+			Term[] terms = new Term[p.getArity()];
+			for (int j = 0; j < terms.length; ++j) {
+				terms[j] = DefaultTermFactory.instance().createConstant(rand.nextInt(30));
+			}
+			Atom a = new DefaultAtom(p, terms);
+			Assert.assertEquals(reference.add(a), store.add(a));
+		}
+		Assert.assertEquals(reference.size(), store.size());
+
+		Variable x = TestUtils.X;
+		Variable y = TestUtils.Y;
+		Term c = DefaultTermFactory.instance().createConstant(7);
+		Substitution s = new HashMapSubstitution();
+		s.put(y, DefaultTermFactory.instance().createConstant(3));
+		Atom[] patterns = { new DefaultAtom(TestUtils.p, x, y), new DefaultAtom(TestUtils.p, x, x),
+		                    new DefaultAtom(TestUtils.p, c, x), new DefaultAtom(TestUtils.q, x, c),
+		                    new DefaultAtom(TestUtils.r, c), new DefaultAtom(TestUtils.s, x) };
+
+		for (Atom pattern : patterns) {
+			// When
+			Set<Atom> expected = collect(reference.match(pattern, Substitutions.emptySubstitution()));
+			Set<Atom> actual = collect(store.match(pattern, Substitutions.emptySubstitution()));
+			Set<Atom> expectedWithS = collect(reference.match(pattern, s));
+			Set<Atom> actualWithS = collect(store.match(pattern, s));
+
+			// Then
+			Assert.assertEquals(expected, actual);
+			Assert.assertEquals(expectedWithS, actualWithS);
+		}
+		Assert.assertEquals(reference.size(TestUtils.q), store.size(TestUtils.q));
+		Assert.assertEquals(collect(reference.iterator()), collect(store.iterator()));
+	}
+
+	@Test
+	public void remove() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		store.add(TestUtils.pAB);
+		store.add(TestUtils.pBA);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.ONE));
+
+		// When
+		boolean first = store.remove(TestUtils.pAB);
+		boolean second = store.remove(TestUtils.pAB);
+		boolean third = store.remove(new DefaultAtom(TestUtils.p, TestUtils.ONE, TestUtils.A));
+
+		// Then
+		Assert.assertTrue(first);
+		Assert.assertFalse(second);
+		Assert.assertFalse(third);
+		Assert.assertEquals(2, store.size());
+		Assert.assertFalse(store.contains(TestUtils.pAB));
+		Assert.assertTrue(store.contains(TestUtils.pBA));
+		Assert.assertEquals(2, store.getDomainSize(TestUtils.p, 0));
+		Assert.assertEquals(2, store.getDomainSize(TestUtils.p, 1));
+		Assert.assertEquals(1, collect(store.match(TestUtils.pXA, Substitutions.emptySubstitution())).size());
+	}
+
+	@Test
+	public void removeForgetsTerms() {
+		// Given
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		store.add(TestUtils.pAB);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.ONE));
+
+		// When
+		store.remove(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.ONE));
+
+		// Then
+		Assert.assertEquals(2, store.getTerms().size());
+		Assert.assertFalse(store.getTerms().contains(TestUtils.ONE));
+		Assert.assertEquals(2, store.getDomainSize());
+		Assert.assertEquals(1, collect(store.termsByPredicatePosition(TestUtils.p, 1)).size());
+
+		// When
+		store.remove(TestUtils.pAB);
+		store.add(TestUtils.pBA);
+
+		// Then
+		Assert.assertEquals(1, store.size());
+		Assert.assertEquals(2, store.getTerms().size());
+		Assert.assertTrue(store.contains(TestUtils.pBA));
+		Assert.assertFalse(store.contains(TestUtils.pAB));
+		Assert.assertEquals(Collections.singleton(TestUtils.B),
+		                    collect(store.termsByPredicatePosition(TestUtils.p, 0)));
+	}
+
+	@Test
+	public void removeSameAsDefaultInMemoryGraphStore() {
+		// Given
+		Random rand = new Random(7);
+		Predicate[] predicates = { TestUtils.p, TestUtils.q, TestUtils.r };
+		ColumnarInMemoryStore store = new ColumnarInMemoryStore();
+		DefaultInMemoryGraphStore reference = new DefaultInMemoryGraphStore();
+
+		for (int i = 0; i < 5000; ++i) {
+			Predicate p = predicates[rand.nextInt(predicates.length)];
+			Term[] terms = new Term[p.getArity()];
+			for (int j = 0; j < terms.length; ++j) {
+				terms[j] = DefaultTermFactory.instance().createConstant(rand.nextInt(10));
+			}
+			Atom a = new DefaultAtom(p, terms);
+
+			// When
+			if (rand.nextInt(3) == 0) {
+				Assert.assertEquals(reference.add(a), store.add(a));
+			} else {
+				Assert.assertEquals(reference.remove(a), store.remove(a));
+			}
+		}
+
+		// Then
+		Assert.assertEquals(reference.size(), store.size());
+		Assert.assertEquals(collect(reference.iterator()), collect(store.iterator()));
+		Assert.assertEquals(reference.getTerms(), store.getTerms());
+		Atom pattern = new DefaultAtom(TestUtils.p, TestUtils.X, DefaultTermFactory.instance().createConstant(3));
+		Assert.assertEquals(collect(reference.match(pattern, Substitutions.emptySubstitution())),
+		                    collect(store.match(pattern, Substitutions.emptySubstitution())));
+	}
+
+	private static <T> Set<T> collect(CloseableIteratorWithoutException<T> it) {
+		Set<T> set = new HashSet<T>();
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		it.close();
+		return set;
+	}
+
+}
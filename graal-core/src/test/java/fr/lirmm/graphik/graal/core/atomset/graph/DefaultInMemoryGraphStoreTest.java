@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.atomset.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.Substitutions;
+import fr.lirmm.graphik.graal.core.TestUtils;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+public class DefaultInMemoryGraphStoreTest {
+
+	private static final Predicate t = new Predicate("t", 3);
+
+	@Test
+	public void matchFullyBoundAtom() {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.add(TestUtils.pAB);
+		Substitution s = new HashMapSubstitution();
+		s.put(TestUtils.X, TestUtils.A);
+		s.put(TestUtils.Y, TestUtils.B);
+
+		// When
+		Set<Atom> found = collect(store.match(TestUtils.pXY, s));
+		Set<Atom> notFound = collect(store.match(TestUtils.pYX, s));
+
+		// Then
+		Assert.assertEquals(1, found.size());
+		Assert.assertTrue(found.contains(TestUtils.pAB));
+		Assert.assertTrue(notFound.isEmpty());
+	}
+
+	@Test
+	public void domainSizeByPosition() {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.add(TestUtils.pAB);
+		store.add(new DefaultAtom(TestUtils.p, TestUtils.A, TestUtils.A));
+
+		// Then
+		Assert.assertEquals(1, store.getDomainSize(TestUtils.p, 0));
+		Assert.assertEquals(2, store.getDomainSize(TestUtils.p, 1));
+		Assert.assertEquals(0, store.getDomainSize(TestUtils.q, 0));
+	}
+
+	@Test
+	public void matchWithCompositeIndexes() {
+		// Given
+		Random rand = new Random(42);
+		DefaultInMemoryGraphStore reference = new DefaultInMemoryGraphStore();
+		DefaultInMemoryGraphStore configured = new DefaultInMemoryGraphStore();
+		DefaultInMemoryGraphStore lazy = new DefaultInMemoryGraphStore(true);
+		configured.createCompositeIndex(t, 2, 0);
+		for (int i = 0; i < 3000; ++i) {
+			Atom a = new DefaultAtom(t, constant(rand.nextInt(10)), constant(rand.nextInt(10)),
+			                         constant(rand.nextInt(10)));
+			reference.add(a);
+			configured.add(a);
+			lazy.add(a);
+		}
+
+		Substitution s = new HashMapSubstitution();
+		s.put(TestUtils.Z, constant(4));
+		Atom[] patterns = { new DefaultAtom(t, constant(1), TestUtils.Y, constant(2)),
+		                    new DefaultAtom(t, constant(1), constant(3), TestUtils.Y),
+		                    new DefaultAtom(t, TestUtils.X, TestUtils.X, TestUtils.Z),
+		                    new DefaultAtom(t, constant(5), TestUtils.X, TestUtils.Z),
+		                    new DefaultAtom(t, constant(42), TestUtils.X, TestUtils.Z) };
+
+		for (Atom pattern : patterns) {
+			// When
+			Set<Atom> expected = collect(reference.match(pattern, Substitutions.emptySubstitution()));
+			Set<Atom> expectedWithS = collect(reference.match(pattern, s));
+
+			// Then
+			Assert.assertEquals(expected, collect(configured.match(pattern, Substitutions.emptySubstitution())));
+			Assert.assertEquals(expected, collect(lazy.match(pattern, Substitutions.emptySubstitution())));
+			Assert.assertEquals(expectedWithS, collect(configured.match(pattern, s)));
+			Assert.assertEquals(expectedWithS, collect(lazy.match(pattern, s)));
+		}
+
+		// indexes are maintained on insertion
+		Atom a = new DefaultAtom(t, constant(1), constant(3), constant(42));
+		lazy.add(a);
+		configured.add(a);
+		Assert.assertTrue(collect(lazy.match(new DefaultAtom(t, constant(1), constant(3), TestUtils.Y),
+		    Substitutions.emptySubstitution())).contains(a));
+		Assert.assertTrue(collect(configured.match(new DefaultAtom(t, constant(1), TestUtils.Y, constant(42)),
+		    Substitutions.emptySubstitution())).contains(a));
+	}
+
+	@Test
+	public void concurrentMatchWithLazyCompositeIndexes() throws Exception {
+		// Given
+		Random rand = new Random(42);
+		DefaultInMemoryGraphStore reference = new DefaultInMemoryGraphStore();
+		final DefaultInMemoryGraphStore lazy = new DefaultInMemoryGraphStore(true);
+		for (int i = 0; i < 3000; ++i) {
+			Atom a = new DefaultAtom(t, constant(rand.nextInt(10)), constant(rand.nextInt(10)),
+			                         constant(rand.nextInt(10)));
+			reference.add(a);
+			lazy.add(a);
+		}
+		final Atom pattern = new DefaultAtom(t, constant(1), TestUtils.Y, constant(2));
+		Set<Atom> expected = collect(reference.match(pattern, Substitutions.emptySubstitution()));
+
+		// When
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Set<Atom>>> results = new ArrayList<Future<Set<Atom>>>();
+		try {
+			for (int i = 0; i < 32; ++i) {
+				results.add(executor.submit(new Callable<Set<Atom>>() {
+					@Override
+					public Set<Atom> call() {
+						return collect(lazy.match(pattern, Substitutions.emptySubstitution()));
+					}
+				}));
+			}
+
+			// Then
+			for (Future<Set<Atom>> result : results) {
+				Assert.assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void remove() {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.createCompositeIndex(t, 0, 1);
+		Atom t123 = new DefaultAtom(t, constant(1), constant(2), constant(3));
+		Atom t124 = new DefaultAtom(t, constant(1), constant(2), constant(4));
+		store.add(t123);
+		store.add(t124);
+		store.add(TestUtils.pAB);
+
+		// When
+		Assert.assertTrue(store.remove(new DefaultAtom(t, constant(1), constant(2), constant(4))));
+		Assert.assertFalse(store.remove(t124));
+		Assert.assertTrue(store.remove(TestUtils.pAB));
+
+		// Then
+		Assert.assertEquals(1, store.size());
+		Assert.assertFalse(store.contains(t124));
+		Assert.assertTrue(store.contains(t123));
+		Assert.assertEquals(1, store.getDomainSize(t, 2));
+		Assert.assertEquals(3, store.getDomainSize());
+		Assert.assertEquals(0, store.size(TestUtils.p));
+		Assert.assertFalse(store.getPredicates().contains(TestUtils.p));
+		Assert.assertEquals(1, collect(store.match(new DefaultAtom(t, constant(1), constant(2), TestUtils.X),
+		    Substitutions.emptySubstitution())).size());
+		Assert.assertTrue(collect(store.match(new DefaultAtom(t, TestUtils.X, TestUtils.Y, constant(4)),
+		    Substitutions.emptySubstitution())).isEmpty());
+
+		// the removed atom can be added again
+		Assert.assertTrue(store.add(t124));
+		Assert.assertEquals(2, store.getDomainSize(t, 2));
+	}
+
+	private static Term constant(int i) {
+		return DefaultTermFactory.instance().createConstant(i);
+	}
+
+	private static <T> Set<T> collect(CloseableIteratorWithoutException<T> it) {
+		Set<T> set = new HashSet<T>();
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		it.close();
+		return set;
+	}
+
+}
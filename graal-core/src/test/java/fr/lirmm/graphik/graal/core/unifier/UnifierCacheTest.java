@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.unifier;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.core.DefaultVariableGenerator;
+import fr.lirmm.graphik.graal.core.FreshVarSubstitution;
+import fr.lirmm.graphik.graal.core.TestUtils;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
+import fr.lirmm.graphik.graal.core.factory.DefaultRuleFactory;
+import fr.lirmm.graphik.util.Partition;
+
+public class UnifierCacheTest {
+
+	private static Rule createRule() {
+		Rule rule = DefaultRuleFactory.instance().create();
+		rule.getBody().add(TestUtils.sX);
+		rule.getHead().add(TestUtils.pXY);
+		return rule;
+	}
+
+	@Test
+	public void samePattern() {
+		UnifierCache cache = new UnifierCache(16);
+		Rule rule = createRule();
+		Substitution renaming = new FreshVarSubstitution(new DefaultVariableGenerator("R"));
+
+		List<Partition<Term>> p1 = cache.getPartitions(TestUtils.pUV, rule, NoCompilation.instance(), renaming);
+		List<Partition<Term>> p2 = cache.getPartitions(TestUtils.pWT, rule, NoCompilation.instance(), renaming);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(1, p1.size());
+		Assert.assertEquals(1, p2.size());
+
+		Term x = renaming.createImageOf(TestUtils.X);
+		Term y = renaming.createImageOf(TestUtils.Y);
+		Assert.assertTrue(p1.get(0).getClass(TestUtils.U).contains(x));
+		Assert.assertTrue(p1.get(0).getClass(TestUtils.V).contains(y));
+		Assert.assertTrue(p2.get(0).getClass(TestUtils.W).contains(x));
+		Assert.assertTrue(p2.get(0).getClass(TestUtils.T).contains(y));
+		Assert.assertNull(p2.get(0).getClass(TestUtils.U));
+	}
+
+	@Test
+	public void differentPatterns() {
+		UnifierCache cache = new UnifierCache(16);
+		Rule rule = createRule();
+		Substitution renaming = new FreshVarSubstitution(new DefaultVariableGenerator("R"));
+
+		Assert.assertEquals(1, cache.getPartitions(TestUtils.pUV, rule, NoCompilation.instance(), renaming).size());
+		// Y is existential, it can not be unified with a constant
+		Assert.assertEquals(0, cache.getPartitions(TestUtils.pXA, rule, NoCompilation.instance(), renaming).size());
+		// Y is existential, it can not be unified with the frontier variable X
+		Assert.assertEquals(0, cache.getPartitions(TestUtils.pUU, rule, NoCompilation.instance(), renaming).size());
+		Assert.assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void capacity() {
+		UnifierCache cache = new UnifierCache(1);
+		Rule rule = createRule();
+		Substitution renaming = new FreshVarSubstitution(new DefaultVariableGenerator("R"));
+
+		cache.getPartitions(TestUtils.pUV, rule, NoCompilation.instance(), renaming);
+		cache.getPartitions(TestUtils.pUU, rule, NoCompilation.instance(), renaming);
+		Assert.assertEquals(1, cache.size());
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void ruleNotRetained() {
+		// Given
+		UnifierCache cache = new UnifierCache(16);
+		Rule rule = createRule();
+		Substitution renaming = new FreshVarSubstitution(new DefaultVariableGenerator("R"));
+		cache.getPartitions(TestUtils.pUV, rule, NoCompilation.instance(), renaming);
+		WeakReference<Rule> ref = new WeakReference<Rule>(rule);
+
+		// When
+		rule = null;
+		for (int i = 0; i < 50 && ref.get() != null; ++i) {
+			System.gc();
+		}
+
+		// Then
+		Assert.assertNull(ref.get());
+		Assert.assertEquals(1, cache.size());
+		cache.getPartitions(TestUtils.pUV, createRule(), NoCompilation.instance(), renaming);
+		Assert.assertEquals(1, cache.size());
+	}
+
+}
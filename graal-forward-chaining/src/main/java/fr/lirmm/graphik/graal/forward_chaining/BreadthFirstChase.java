@@ -45,14 +45,17 @@
 */
 package fr.lirmm.graphik.graal.forward_chaining;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
-import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
 import fr.lirmm.graphik.graal.api.core.Predicate;
 import fr.lirmm.graphik.graal.api.core.Query;
@@ -61,10 +64,11 @@ import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.forward_chaining.AbstractChase;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
+import fr.lirmm.graphik.graal.api.forward_chaining.DeltaRuleApplier;
+import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplicationException;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
 import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismWithCompilation;
-import fr.lirmm.graphik.graal.core.atomset.LinkedListAtomSet;
 import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
 import fr.lirmm.graphik.graal.core.ruleset.IndexedByBodyPredicatesRuleSet;
 import fr.lirmm.graphik.graal.forward_chaining.rule_applier.DefaultRuleApplier;
@@ -78,10 +82,16 @@ import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
  * homomorphisms from the rule bodies to the specified AtomSet then perform
  * the corresponding rule applications. At each step after the first one, rules
  * are checked based on the presence of a predicate of their body in the head of
- * a rule applied in the previous step. Furthermore, for optimization reasons,
- * linear rules (with a single atom in the body) are applied over a set of atoms
- * restricted to the atoms generated at the previous step which have the same
- * predicate as the body rule atom.
+ * a rule applied in the previous step. Furthermore, if the rule applier is a
+ * {@link DeltaRuleApplier}, these rules are evaluated in a semi-naive way: only
+ * the homomorphisms which use at least one atom generated at the previous step
+ * are computed. Otherwise, linear rules (with a single atom in the body) are
+ * applied over a set of atoms restricted to the atoms generated at the previous
+ * step.
+ * <br/>
+ * With a parallelism greater than 1, the rules of a step are applied
+ * concurrently: each application collects the atoms it produces into its own
+ * buffer, the atom set is only updated once all of them are done.
  * 
  * @author Clément Sipieter (INRIA) <clement@6pi.fr>
  *
@@ -90,7 +100,6 @@ public class BreadthFirstChase extends AbstractChase<Rule, AtomSet> {
 
 	private IndexedByBodyPredicatesRuleSet ruleSet;
 	private AtomSet atomSet;
-	private InMemoryAtomSet tmpData = new LinkedListAtomSet();
 
 	private Map<Rule, AtomSet> rulesToCheck;
 	private Map<Rule, AtomSet> nextRulesToCheck;
@@ -173,32 +182,24 @@ public class BreadthFirstChase extends AbstractChase<Rule, AtomSet> {
 					this.getProfiler().start("saturationTime");
 				}
 
+				List<Callable<List<Atom>>> applications = new ArrayList<Callable<List<Atom>>>();
 				for (Entry<Rule, AtomSet> e : this.rulesToCheck.entrySet()) {
-					System.out.println("for loop");
-					String key = null;
-					Rule rule = e.getKey();
-					AtomSet data = e.getValue();
-
-					if (this.getProfiler().isProfilingEnabled()) {
-						key = "Rule " + rule.getLabel() + " application time";
-						this.getProfiler().clear(key);
-						this.getProfiler().trace(rule.toString());
-						this.getProfiler().start(key);
-					}
-					CloseableIterator<Atom> it = this.getRuleApplier().delegatedApply(rule, data, this.atomSet);
-					tmpData.addAll(it);
-					it.close();
+					applications.add(new Application(e.getKey(), e.getValue()));
+				}
 
-					if (this.getProfiler().isProfilingEnabled()) {
-						this.getProfiler().stop(key);
+				// keep only the atoms which are really new, the delta of the
+				// next step must be disjoint from the previous atoms
+				InMemoryAtomSet delta = new DefaultInMemoryGraphStore();
+				for (List<Atom> buffer : this.invokeAll(applications)) {
+					for (Atom a : buffer) {
+						if (!this.atomSet.contains(a)) {
+							delta.add(a);
+						}
 					}
 				}
 
-				this.dispatchNewData(this.tmpData);
-				
-				this.atomSet.addAll(this.tmpData);
-				System.out.println("here");
-				this.tmpData.clear();
+				this.dispatchNewData(delta);
+				this.atomSet.addAll(delta);
 
 				if (this.getProfiler().isProfilingEnabled()) {
 					this.getProfiler().stop("saturationTime");
@@ -224,22 +225,68 @@ public class BreadthFirstChase extends AbstractChase<Rule, AtomSet> {
 			Atom a = it.next();
 			Predicate p = a.getPredicate();
 			for (Rule r : ruleSet.getRulesByBodyPredicate(p)) {
-				System.out.println("rule"+r.toString());
-				if (linearRuleCheck(r)) {
-					AtomSet set = nextRulesToCheck.get(r);
-					if (set == null) {
-						set = new DefaultInMemoryGraphStore();
-						nextRulesToCheck.put(r, set);
-					}
-					try {
-						set.add(a);
-					} catch (AtomSetException e) {
-						throw new ChaseException("Exception while adding data into a tmp store", e);
-					}
-				} else {
-					nextRulesToCheck.put(r, atomSet);
+				nextRulesToCheck.put(r, newData);
+			}
+		}
+	}
+
+	/**
+	 * Applies the specified rule over the specified data, which is either the
+	 * whole atom set or the atoms generated at the previous step.
+	 */
+	@SuppressWarnings("unchecked")
+	private CloseableIterator<Atom> apply(Rule rule, AtomSet data) throws RuleApplicationException {
+		RuleApplier<Rule, ? super AtomSet> applier = this.getRuleApplier();
+		if (data == this.atomSet) {
+			return applier.delegatedApply(rule, this.atomSet, this.atomSet);
+		} else if (applier instanceof DeltaRuleApplier) {
+			return ((DeltaRuleApplier<Rule, ? super AtomSet>) applier).delegatedApplyOnDelta(rule,
+			    (InMemoryAtomSet) data, this.atomSet, this.atomSet);
+		} else if (linearRuleCheck(rule)) {
+			return applier.delegatedApply(rule, data, this.atomSet);
+		} else {
+			return applier.delegatedApply(rule, this.atomSet, this.atomSet);
+		}
+	}
+
+	/**
+	 * Collects the atoms produced by a rule application of the current step.
+	 */
+	private class Application implements Callable<List<Atom>> {
+
+		private final Rule    rule;
+		private final AtomSet data;
+
+		Application(Rule rule, AtomSet data) {
+			this.rule = rule;
+			this.data = data;
+		}
+
+		@Override
+		public List<Atom> call() throws Exception {
+			boolean profiling = getParallelism() == 1 && getProfiler().isProfilingEnabled();
+			String key = null;
+			if (profiling) {
+				key = "Rule " + rule.getLabel() + " application time";
+				getProfiler().clear(key);
+				getProfiler().trace(rule.toString());
+				getProfiler().start(key);
+			}
+
+			List<Atom> buffer = new LinkedList<Atom>();
+			CloseableIterator<Atom> it = apply(this.rule, this.data);
+			try {
+				while (it.hasNext()) {
+					buffer.add(it.next());
 				}
+			} finally {
+				it.close();
+			}
+
+			if (profiling) {
+				getProfiler().stop(key);
 			}
+			return buffer;
 		}
 	}
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.forward_chaining.AbstractChase;
+import fr.lirmm.graphik.graal.api.forward_chaining.Chase;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+
+/**
+ * Runs the steps of the specified chase and removes the redundant atoms of the
+ * atom set with a {@link CoreProcessor} every given number of steps and at the
+ * end of the saturation. The atom set must support atom removal.
+ * <br/>
+ * If the rule applier of the decorated chase records its triggers, its
+ * {@link TriggerStore} must be given so that it is cleared when atoms are
+ * removed.
+ */
+public class CoreChase extends AbstractChase<Rule, AtomSet> {
+
+	private final Chase         chase;
+	private final AtomSet       atomSet;
+	private final CoreProcessor coreProcessor;
+	private final int           frequency;
+	private final TriggerStore  triggerStore;
+
+	private int stepCount = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The core is only computed at the end of the saturation.
+	 */
+	public CoreChase(Chase chase, AtomSet atomSet) {
+		this(chase, atomSet, 0);
+	}
+
+	/**
+	 * @param frequency
+	 *            the number of steps between two core computations, 0 to
+	 *            compute the core only at the end of the saturation.
+	 */
+	public CoreChase(Chase chase, AtomSet atomSet, int frequency) {
+		this(chase, atomSet, frequency, new CoreProcessor());
+	}
+
+	public CoreChase(Chase chase, AtomSet atomSet, int frequency, CoreProcessor coreProcessor) {
+		this(chase, atomSet, frequency, coreProcessor, null);
+	}
+
+	/**
+	 * @param triggerStore
+	 *            the trigger store of the rule applier of the decorated chase,
+	 *            cleared when atoms are removed; may be null.
+	 */
+	public CoreChase(Chase chase, AtomSet atomSet, int frequency, CoreProcessor coreProcessor,
+	    TriggerStore triggerStore) {
+		// the rules are applied by the decorated chase
+		super(null);
+		this.chase = chase;
+		this.atomSet = atomSet;
+		this.frequency = frequency;
+		this.coreProcessor = coreProcessor;
+		this.triggerStore = triggerStore;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void next() throws ChaseException {
+		this.chase.next();
+		++this.stepCount;
+		if (!this.chase.hasNext() || (this.frequency > 0 && this.stepCount % this.frequency == 0)) {
+			this.getProfiler().start("coreTime");
+			int nbRemoved = this.coreProcessor.execute(this.atomSet);
+			this.getProfiler().stop("coreTime");
+			if (nbRemoved > 0 && this.triggerStore != null) {
+				this.triggerStore.clear();
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.chase.hasNext();
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.core.factory.DefaultAtomSetFactory;
+import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
+import fr.lirmm.graphik.graal.homomorphism.BacktrackHomomorphism;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Removes redundant atoms from an atom set, the variables of the atom set
+ * being the nulls introduced by existential rules. The atoms are grouped into
+ * blocks, a block being a connected component of the atoms which contain a
+ * variable, two atoms being connected if they share a variable. If a
+ * homomorphism h of a block B into the atom set M does not map B onto
+ * itself, the atoms of B which are not in h(B) are removed. The variables of B
+ * do not occur outside B, so h extended by the identity is an endomorphism of
+ * M and the remaining atoms are exactly h(M): the result is a subset of M and
+ * an image of M, hence equivalent to M. Blocks are processed until no atom can
+ * be removed; the result is not guaranteed to be the core of the atom set.
+ * <br/>
+ * The homomorphisms are computed by a {@link BacktrackHomomorphism} from the
+ * atoms of a block only, so the search is bounded by the size of the blocks;
+ * blocks larger than the maximum block size are skipped.
+ * <br/>
+ * The atom set must support atom removal.
+ */
+public class CoreProcessor {
+
+	private final BacktrackHomomorphism solver = new BacktrackHomomorphism();
+	private int                         maxBlockSize = 32;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the maximum number of atoms of the blocks considered for removal.
+	 */
+	public void setMaxBlockSize(int maxBlockSize) {
+		this.maxBlockSize = maxBlockSize;
+	}
+
+	public int getMaxBlockSize() {
+		return this.maxBlockSize;
+	}
+
+	/**
+	 * Removes the redundant atoms of the specified atom set.
+	 * 
+	 * @return the number of atoms removed.
+	 * @throws ChaseException
+	 *             if the atom set does not remove a redundant atom.
+	 */
+	public int execute(AtomSet atomSet) throws ChaseException {
+		int nbRemoved = 0;
+		boolean isChanged = true;
+		try {
+			while (isChanged) {
+				isChanged = false;
+				for (List<Atom> block : computeBlocks(atomSet)) {
+					if (block.size() > this.maxBlockSize) {
+						continue;
+					}
+					Set<Atom> image = this.findSmallerImage(block, atomSet);
+					if (image != null) {
+						// at least one atom is removed, so the loop terminates
+						for (Atom a : block) {
+							if (!image.contains(a)) {
+								if (!atomSet.remove(a)) {
+									throw new ChaseException("Redundant atom not removed from the atom set: " + a);
+								}
+								++nbRemoved;
+							}
+						}
+						isChanged = true;
+					}
+				}
+			}
+		} catch (AtomSetException e) {
+			throw new ChaseException("Error while computing the core", e);
+		} catch (HomomorphismException e) {
+			throw new ChaseException("Error while computing the core", e);
+		} catch (IteratorException e) {
+			throw new ChaseException("Error while computing the core", e);
+		} catch (UnsupportedOperationException e) {
+			throw new ChaseException("The atom set does not support atom removal", e);
+		}
+		return nbRemoved;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the image of the first homomorphism of the block into the atom
+	 *         set which does not contain the whole block, or null if there is
+	 *         none.
+	 */
+	private Set<Atom> findSmallerImage(List<Atom> block, AtomSet atomSet)
+	    throws HomomorphismException, IteratorException {
+		InMemoryAtomSet atoms = DefaultAtomSetFactory.instance().create();
+		for (Atom a : block) {
+			atoms.add(a);
+		}
+		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(atoms,
+		    new LinkedList<Term>(atoms.getVariables()));
+
+		Set<Atom> result = null;
+		CloseableIterator<Substitution> it = this.solver.execute(query, atomSet);
+		try {
+			while (result == null && it.hasNext()) {
+				Substitution h = it.next();
+				Set<Atom> image = new HashSet<Atom>();
+				for (Atom a : block) {
+					image.add(h.createImageOf(a));
+				}
+				if (!image.containsAll(block)) {
+					result = image;
+				}
+			}
+		} finally {
+			it.close();
+		}
+		return result;
+	}
+
+	private static List<List<Atom>> computeBlocks(AtomSet atomSet) throws IteratorException {
+		Map<Variable, List<Atom>> atomsByVariable = new HashMap<Variable, List<Atom>>();
+		CloseableIterator<Atom> it = atomSet.iterator();
+		try {
+			while (it.hasNext()) {
+				Atom a = it.next();
+				for (Variable v : a.getVariables()) {
+					List<Atom> atoms = atomsByVariable.get(v);
+					if (atoms == null) {
+						atoms = new ArrayList<Atom>();
+						atomsByVariable.put(v, atoms);
+					}
+					atoms.add(a);
+				}
+			}
+		} finally {
+			it.close();
+		}
+
+		List<List<Atom>> blocks = new LinkedList<List<Atom>>();
+		Set<Variable> visited = new HashSet<Variable>();
+		for (Variable start : atomsByVariable.keySet()) {
+			if (!visited.add(start)) {
+				continue;
+			}
+			Set<Atom> block = new LinkedHashSet<Atom>();
+			LinkedList<Variable> toVisit = new LinkedList<Variable>();
+			toVisit.add(start);
+			while (!toVisit.isEmpty()) {
+				for (Atom a : atomsByVariable.get(toVisit.poll())) {
+					if (block.add(a)) {
+						for (Variable v : a.getVariables()) {
+							if (visited.add(v)) {
+								toVisit.add(v);
+							}
+						}
+					}
+				}
+			}
+			blocks.add(new ArrayList<Atom>(block));
+		}
+		return blocks;
+	}
+
+}
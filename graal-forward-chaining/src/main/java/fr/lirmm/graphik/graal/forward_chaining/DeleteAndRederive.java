@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplicationException;
+import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.Substitutions;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Maintains an atom set saturated with the rules of a
+ * {@link GraphOfRuleDependencies} when some of its explicit facts are removed,
+ * following the delete and rederive (DRed) approach:
+ * <ol>
+ * <li>over-deletion: the atoms which have a derivation using a removed atom
+ * are removed, and so on, the rules to check at each round being those
+ * triggered, in the GRD, by the rules which removed atoms at the previous
+ * round. Explicit facts are never over-deleted.</li>
+ * <li>rederivation: the deleted atoms which are still produced by a rule
+ * applied on the remaining atoms are put back, until a fixpoint is
+ * reached.</li>
+ * <li>repair: the rules with existential variables which may have lost the
+ * atoms satisfying one of their triggers are applied again with the rule
+ * applier, as well as the rules they trigger.</li>
+ * </ol>
+ * An atom produced by a rule with existential variables is considered as a
+ * consequence of a trigger if it matches the head of the rule with the
+ * existential variables mapped to variables (nulls).
+ * <br/>
+ * If the rule applier records its triggers in a {@link TriggerStore}, this
+ * store must be given so that it is cleared when atoms are removed, otherwise
+ * the repair step skips the triggers already applied.
+ */
+public class DeleteAndRederive {
+
+	private final GraphOfRuleDependencies            grd;
+	private final AtomSet                            atomSet;
+	private final InMemoryAtomSet                    explicitFacts;
+	private final RuleApplier<Rule, ? super AtomSet> ruleApplier;
+	private final TriggerStore                       triggerStore;
+
+	private Map<Predicate, List<Rule>> rulesByHeadPredicate;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param grd
+	 *            the GRD of the rules the atom set is saturated with.
+	 * @param atomSet
+	 *            the saturated atom set.
+	 * @param explicitFacts
+	 *            the facts of the atom set which are not produced by the
+	 *            rules, updated by {@link #remove(CloseableIterator)}.
+	 * @param ruleApplier
+	 *            the rule applier used by the repair step.
+	 * @param triggerStore
+	 *            the trigger store of the rule applier, cleared when atoms are
+	 *            removed; may be null.
+	 */
+	public DeleteAndRederive(GraphOfRuleDependencies grd, AtomSet atomSet, InMemoryAtomSet explicitFacts,
+	    RuleApplier<Rule, ? super AtomSet> ruleApplier, TriggerStore triggerStore) {
+		this.grd = grd;
+		this.atomSet = atomSet;
+		this.explicitFacts = explicitFacts;
+		this.ruleApplier = ruleApplier;
+		this.triggerStore = triggerStore;
+	}
+
+	public DeleteAndRederive(GraphOfRuleDependencies grd, AtomSet atomSet, InMemoryAtomSet explicitFacts,
+	    RuleApplier<Rule, ? super AtomSet> ruleApplier) {
+		this(grd, atomSet, explicitFacts, ruleApplier, null);
+	}
+
+	public DeleteAndRederive(GraphOfRuleDependencies grd, AtomSet atomSet, InMemoryAtomSet explicitFacts) {
+		this(grd, atomSet, explicitFacts, new RestrictedChaseRuleApplier<AtomSet>());
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Removes the specified explicit facts and maintains the saturation of the
+	 * atom set.
+	 *
+	 * @return the atoms finally removed from the atom set.
+	 * @throws ChaseException
+	 */
+	public Set<Atom> remove(CloseableIterator<Atom> atoms) throws ChaseException {
+		try {
+			Set<Atom> removed = new LinkedHashSet<Atom>();
+			while (atoms.hasNext()) {
+				Atom a = atoms.next();
+				if (this.atomSet.contains(a)) {
+					removed.add(a);
+				}
+				this.explicitFacts.remove(a);
+			}
+			if (removed.isEmpty()) {
+				return removed;
+			}
+
+			Set<Atom> deleted = new LinkedHashSet<Atom>(removed);
+			deleted.addAll(this.overDelete(removed));
+			for (Atom a : deleted) {
+				this.atomSet.remove(a);
+			}
+			if (this.triggerStore != null) {
+				this.triggerStore.clear();
+			}
+			this.rederive(deleted);
+			this.repair(deleted);
+			return deleted;
+		} catch (AtomSetException e) {
+			throw new ChaseException("An error occurs during the maintenance of the atom set.", e);
+		} catch (IteratorException e) {
+			throw new ChaseException("An error occurs during the maintenance of the atom set.", e);
+		} catch (HomomorphismException e) {
+			throw new ChaseException("An error occurs during the maintenance of the atom set.", e);
+		} catch (RuleApplicationException e) {
+			throw new ChaseException("An error occurs during the maintenance of the atom set.", e);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the atoms, other than the specified ones, which have a
+	 *         derivation using one of the specified atoms.
+	 */
+	private Set<Atom> overDelete(Set<Atom> removed)
+	    throws AtomSetException, IteratorException, HomomorphismException {
+		Set<Atom> overDeleted = new LinkedHashSet<Atom>();
+		InMemoryAtomSet delta = new DefaultInMemoryGraphStore();
+		for (Atom a : removed) {
+			delta.add(a);
+		}
+
+		Set<Rule> rules = new LinkedHashSet<Rule>();
+		for (Rule r : this.grd.getRules()) {
+			rules.add(r);
+		}
+
+		while (!delta.isEmpty()) {
+			InMemoryAtomSet nextDelta = new DefaultInMemoryGraphStore();
+			Set<Rule> nextRules = new LinkedHashSet<Rule>();
+			for (Rule rule : rules) {
+				boolean deleted = false;
+				for (Substitution h : this.homomorphismsUsing(rule.getBody(), delta)) {
+					for (Atom a : this.consequences(rule, h)) {
+						if (!removed.contains(a) && !this.explicitFacts.contains(a) && this.atomSet.contains(a)
+						    && overDeleted.add(a)) {
+							nextDelta.add(a);
+							deleted = true;
+						}
+					}
+				}
+				if (deleted) {
+					nextRules.addAll(this.grd.getTriggeredRules(rule));
+				}
+			}
+			delta = nextDelta;
+			rules = nextRules;
+		}
+		return overDeleted;
+	}
+
+	/**
+	 * Puts back the deleted atoms which are still produced by a rule, and
+	 * removes them from the specified set.
+	 */
+	private void rederive(Set<Atom> deleted) throws AtomSetException, HomomorphismException {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			Iterator<Atom> it = deleted.iterator();
+			while (it.hasNext()) {
+				Atom a = it.next();
+				if (this.isProduced(a)) {
+					this.atomSet.add(a);
+					it.remove();
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies again the rules with existential variables which can produce
+	 * one of the specified deleted atoms, then the rules they trigger.
+	 */
+	private void repair(Set<Atom> deleted)
+	    throws AtomSetException, IteratorException, RuleApplicationException {
+		Set<Predicate> predicates = new LinkedHashSet<Predicate>();
+		for (Atom a : deleted) {
+			predicates.add(a.getPredicate());
+		}
+		Set<Rule> rules = new LinkedHashSet<Rule>();
+		for (Predicate p : predicates) {
+			for (Rule r : this.getRulesByHeadPredicate(p)) {
+				if (!r.getExistentials().isEmpty()) {
+					rules.add(r);
+				}
+			}
+		}
+
+		while (!rules.isEmpty()) {
+			Set<Rule> nextRules = new LinkedHashSet<Rule>();
+			for (Rule rule : rules) {
+				List<Atom> produced = new LinkedList<Atom>();
+				CloseableIterator<Atom> it = this.ruleApplier.delegatedApply(rule, this.atomSet);
+				while (it.hasNext()) {
+					Atom a = it.next();
+					if (!this.atomSet.contains(a)) {
+						produced.add(a);
+					}
+				}
+				it.close();
+				if (!produced.isEmpty()) {
+					for (Atom a : produced) {
+						this.atomSet.add(a);
+					}
+					nextRules.addAll(this.grd.getTriggeredRules(rule));
+				}
+			}
+			rules = nextRules;
+		}
+	}
+
+	/**
+	 * @return the homomorphisms from the specified body to the atom set which
+	 *         map at least one atom into the specified delta.
+	 */
+	private Set<Substitution> homomorphismsUsing(InMemoryAtomSet body, InMemoryAtomSet delta)
+	    throws IteratorException, HomomorphismException {
+		List<Term> ans = new LinkedList<Term>(body.getVariables());
+		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(body, ans);
+
+		Set<Substitution> homomorphisms = new LinkedHashSet<Substitution>();
+		CloseableIteratorWithoutException<Atom> bodyIt = body.iterator();
+		while (bodyIt.hasNext()) {
+			Atom b = bodyIt.next();
+			CloseableIteratorWithoutException<Atom> deltaIt = delta.match(b, Substitutions.emptySubstitution());
+			while (deltaIt.hasNext()) {
+				Substitution seed = match(b, deltaIt.next(), new HashMapSubstitution());
+				if (seed == null) {
+					continue;
+				}
+				CloseableIterator<Substitution> results = SmartHomomorphism.instance().execute(query, this.atomSet,
+				    seed);
+				while (results.hasNext()) {
+					Substitution h = new HashMapSubstitution(seed);
+					Substitution s = results.next();
+					for (Variable v : s.getTerms()) {
+						h.put(v, s.createImageOf(v));
+					}
+					homomorphisms.add(h);
+				}
+				results.close();
+			}
+		}
+		return homomorphisms;
+	}
+
+	/**
+	 * @return the atoms of the atom set which can have been produced by the
+	 *         trigger (rule, h).
+	 */
+	private List<Atom> consequences(Rule rule, Substitution h) throws IteratorException, HomomorphismException {
+		List<Atom> atoms = new LinkedList<Atom>();
+		Set<Variable> existentials = rule.getExistentials();
+		if (existentials.isEmpty()) {
+			CloseableIteratorWithoutException<Atom> it = h.createImageOf(rule.getHead()).iterator();
+			while (it.hasNext()) {
+				atoms.add(it.next());
+			}
+			return atoms;
+		}
+
+		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(rule.getHead(),
+		    new LinkedList<Term>(existentials));
+		CloseableIterator<Substitution> results = SmartHomomorphism.instance().execute(query, this.atomSet,
+		    restrict(h, rule.getFrontier()));
+		while (results.hasNext()) {
+			Substitution s = results.next();
+			Substitution image = new HashMapSubstitution(h);
+			boolean nulls = true;
+			for (Variable v : existentials) {
+				Term t = s.createImageOf(v);
+				nulls = nulls && t.isVariable();
+				image.put(v, t);
+			}
+			if (nulls) {
+				CloseableIteratorWithoutException<Atom> it = image.createImageOf(rule.getHead()).iterator();
+				while (it.hasNext()) {
+					atoms.add(it.next());
+				}
+			}
+		}
+		results.close();
+		return atoms;
+	}
+
+	/**
+	 * @return true if a rule produces the specified atom from the atom set.
+	 */
+	private boolean isProduced(Atom a) throws HomomorphismException {
+		for (Rule rule : this.getRulesByHeadPredicate(a.getPredicate())) {
+			CloseableIteratorWithoutException<Atom> headIt = rule.getHead().iterator();
+			while (headIt.hasNext()) {
+				Atom h = headIt.next();
+				if (!h.getPredicate().equals(a.getPredicate())) {
+					continue;
+				}
+				Substitution s = match(h, a, new HashMapSubstitution());
+				if (s == null) {
+					continue;
+				}
+				boolean nulls = true;
+				for (Variable v : rule.getExistentials()) {
+					nulls = nulls && s.createImageOf(v).isVariable();
+				}
+				if (nulls && SmartHomomorphism.instance().exist(
+				    DefaultConjunctiveQueryFactory.instance().create(rule.getBody()), this.atomSet,
+				    restrict(s, rule.getFrontier()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private List<Rule> getRulesByHeadPredicate(Predicate p) {
+		if (this.rulesByHeadPredicate == null) {
+			this.rulesByHeadPredicate = new HashMap<Predicate, List<Rule>>();
+			for (Rule r : this.grd.getRules()) {
+				for (Predicate hp : r.getHead().getPredicates()) {
+					List<Rule> list = this.rulesByHeadPredicate.get(hp);
+					if (list == null) {
+						list = new LinkedList<Rule>();
+						this.rulesByHeadPredicate.put(hp, list);
+					}
+					list.add(r);
+				}
+			}
+		}
+		List<Rule> rules = this.rulesByHeadPredicate.get(p);
+		return (rules == null) ? new LinkedList<Rule>() : rules;
+	}
+
+	/**
+	 * Extends s into a substitution mapping the specified pattern onto the
+	 * specified atom.
+	 *
+	 * @return s, or null if there is no such substitution.
+	 */
+	private static Substitution match(Atom pattern, Atom atom, Substitution s) {
+		if (!pattern.getPredicate().equals(atom.getPredicate())) {
+			return null;
+		}
+		int i = 0;
+		for (Term t : pattern) {
+			Term image = atom.getTerm(i++);
+			if (t.isVariable() && !s.getTerms().contains(t)) {
+				s.put((Variable) t, image);
+			} else if (!s.createImageOf(t).equals(image)) {
+				return null;
+			}
+		}
+		return s;
+	}
+
+	private static Substitution restrict(Substitution s, Set<Variable> vars) {
+		Substitution restricted = new HashMapSubstitution();
+		for (Variable v : vars) {
+			if (s.getTerms().contains(v)) {
+				restricted.put(v, s.createImageOf(v));
+			}
+		}
+		return restricted;
+	}
+
+}
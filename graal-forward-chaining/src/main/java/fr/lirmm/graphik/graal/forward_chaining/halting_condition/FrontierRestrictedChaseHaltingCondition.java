@@ -46,19 +46,24 @@
 package fr.lirmm.graphik.graal.forward_chaining.halting_condition;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.graal.api.core.Term;
 import fr.lirmm.graphik.graal.api.core.Variable;
-import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
+import fr.lirmm.graphik.graal.api.forward_chaining.BatchChaseHaltingCondition;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismFactoryException;
 import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
@@ -66,30 +71,92 @@ import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 
 /**
  * This HaltingCondition will produce new data according to a rule, a
  * substitution and specified data if it has not already been applied with an
  * other substitution that maps the rule's frontier in the same way. This chase
  * is also known as semi-oblivious chase and is equivalent to the skolem chase.
+ * <br/>
+ * In batched mode, the triggers of a rule found during a step are checked
+ * together: a trigger is discarded if a previous trigger of the batch has the
+ * same frontier image, and the head atoms, whose existential variables are
+ * replaced by skolem constants, are looked up in the data instead of
+ * evaluating the head as a query.
  * 
  * @author Clément Sipieter (INRIA) <clement@6pi.fr>
  *
  */
-public class FrontierRestrictedChaseHaltingCondition implements ChaseHaltingCondition {
+public class FrontierRestrictedChaseHaltingCondition implements BatchChaseHaltingCondition {
 
 	private Map<Rule,Integer> ruleIndex = new TreeMap<Rule,Integer>();
 	private int _currentRuleIndex = 0;
+	private final boolean batched;
+
+	public FrontierRestrictedChaseHaltingCondition() {
+		this(false);
+	}
+
+	/**
+	 * @param batched
+	 *            true to check together the triggers of a rule found during a
+	 *            step.
+	 */
+	public FrontierRestrictedChaseHaltingCondition(boolean batched) {
+		this.batched = batched;
+	}
+
+	@Override
+	public boolean isBatched() {
+		return this.batched;
+	}
 
 	@Override
 	public CloseableIterator<Atom> apply(Rule rule, Substitution substitution, AtomSet data)
 	                                                                                 throws HomomorphismFactoryException,
 	                                                                                 HomomorphismException {
-		if (ruleIndex.get(rule) == null) {
-			ruleIndex.put(rule, _currentRuleIndex++);
+		this.skolemize(rule, substitution);
+
+		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(rule.getHead());
+
+		if (SmartHomomorphism.instance().exist(query, data, substitution)) {
+			return new CloseableIteratorAdapter<Atom>(Collections.<Atom> emptyList().iterator());
+		}
+
+		return substitution.createImageOf(rule.getHead()).iterator();
+	}
+
+	@Override
+	public CloseableIterator<Atom> applyAll(Rule rule, List<Substitution> substitutions, AtomSet data)
+	    throws HomomorphismFactoryException, HomomorphismException {
+		List<Atom> toAdd = new LinkedList<Atom>();
+		Set<String> frontiers = new HashSet<String>();
+		try {
+			for (Substitution substitution : substitutions) {
+				if (frontiers.add(this.skolemize(rule, substitution))) {
+					CloseableIteratorWithoutException<Atom> it = substitution.createImageOf(rule.getHead()).iterator();
+					while (it.hasNext()) {
+						Atom a = it.next();
+						if (!data.contains(a)) {
+							toAdd.add(a);
+						}
+					}
+				}
+			}
+		} catch (AtomSetException e) {
+			throw new HomomorphismException("Error while checking the head atoms", e);
 		}
+		return new CloseableIteratorAdapter<Atom>(toAdd.iterator());
+	}
 
-		final int index = ruleIndex.get(rule).intValue();
+	/**
+	 * Replaces the existential variables of the rule by skolem constants.
+	 * 
+	 * @return the key of the frontier image.
+	 */
+	private String skolemize(Rule rule, Substitution substitution) {
+		final int index = this.getRuleIndex(rule);
 		StringBuilder frontierSb = new StringBuilder();
 		SortedSet<Variable> frontierSet = new TreeSet<Variable>(rule.getFrontier());
 		for (Term t : frontierSet) {
@@ -104,14 +171,16 @@ public class FrontierRestrictedChaseHaltingCondition implements ChaseHaltingCond
 			substitution.put(t,
 			    DefaultTermFactory.instance().createConstant("f_" + index + "_" + t.getIdentifier() + frontier));
 		}
+		return frontier;
+	}
 
-		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(rule.getHead());
-
-		if (SmartHomomorphism.instance().exist(query, data, substitution)) {
-			return new CloseableIteratorAdapter<Atom>(Collections.<Atom> emptyList().iterator());
+	private synchronized int getRuleIndex(Rule rule) {
+		Integer index = ruleIndex.get(rule);
+		if (index == null) {
+			index = _currentRuleIndex++;
+			ruleIndex.put(rule, index);
 		}
-
-		return substitution.createImageOf(rule.getHead()).iterator();
+		return index.intValue();
 	}
 
 };
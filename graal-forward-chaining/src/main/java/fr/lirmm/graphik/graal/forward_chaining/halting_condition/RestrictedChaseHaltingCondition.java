@@ -45,32 +45,68 @@
  */
 package fr.lirmm.graphik.graal.forward_chaining.halting_condition;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
 import fr.lirmm.graphik.graal.api.core.Variable;
-import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
+import fr.lirmm.graphik.graal.api.forward_chaining.BatchChaseHaltingCondition;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismFactoryException;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
 import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
 import fr.lirmm.graphik.util.profiler.AbstractProfilable;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 
 /**
  * This HaltingCondition will produce new data according to a rule, a
  * substitution s and specified data if s cannot be extended to a homomorphism
  * from B ∪ H to F where B is the rule body, H the rule HEAD and F the data.
+ * <br/>
+ * In batched mode, the triggers of a rule found during a step are grouped by
+ * the image of the rule frontier. The head is evaluated once per distinct
+ * image, seeded with it, so only the data joining with the batch is read and
+ * the plan of the seeded head is shared by the whole batch. The triggers of a
+ * satisfied image are discarded, as well as the triggers whose image is the
+ * one of a previous trigger of the batch.
 
  * @author Clément Sipieter (INRIA) <clement@6pi.fr>
  *
  */
-public class RestrictedChaseHaltingCondition extends AbstractProfilable implements ChaseHaltingCondition {
+public class RestrictedChaseHaltingCondition extends AbstractProfilable implements BatchChaseHaltingCondition {
+
+	private final boolean batched;
+
+	public RestrictedChaseHaltingCondition() {
+		this(false);
+	}
+
+	/**
+	 * @param batched
+	 *            true to check the triggers of a rule found during a step
+	 *            with a single evaluation of the rule head.
+	 */
+	public RestrictedChaseHaltingCondition(boolean batched) {
+		this.batched = batched;
+	}
+
+	@Override
+	public boolean isBatched() {
+		return this.batched;
+	}
 
 	@Override
 	public CloseableIterator<Atom> apply(Rule rule, Substitution substitution, AtomSet data)
@@ -88,4 +124,48 @@ public class RestrictedChaseHaltingCondition extends AbstractProfilable implemen
 		return substitution.createImageOf(rule.getHead()).iterator();
 	}
 
+	@Override
+	public CloseableIterator<Atom> applyAll(Rule rule, List<Substitution> substitutions, AtomSet data)
+	    throws HomomorphismFactoryException, HomomorphismException {
+		List<Atom> toAdd = new LinkedList<Atom>();
+		if (substitutions.isEmpty()) {
+			return new CloseableIteratorAdapter<Atom>(toAdd.iterator());
+		}
+
+		List<Variable> frontier = new ArrayList<Variable>(new TreeSet<Variable>(rule.getFrontier()));
+		ConjunctiveQuery query = DefaultConjunctiveQueryFactory.instance().create(rule.getHead(),
+		    Collections.<Term>emptyList());
+		Set<List<Term>> checked = new HashSet<List<Term>>();
+		for (Substitution substitution : substitutions) {
+			List<Term> image = frontierImage(frontier, substitution);
+			if (checked.add(image) && !SmartHomomorphism.instance().exist(query, data, seed(frontier, image))) {
+				// replace variables by fresh symbol
+				for (Variable t : rule.getExistentials()) {
+					substitution.put(t, data.getFreshSymbolGenerator().getFreshSymbol());
+				}
+				CloseableIteratorWithoutException<Atom> head = substitution.createImageOf(rule.getHead()).iterator();
+				while (head.hasNext()) {
+					toAdd.add(head.next());
+				}
+			}
+		}
+		return new CloseableIteratorAdapter<Atom>(toAdd.iterator());
+	}
+
+	private static Substitution seed(List<Variable> frontier, List<Term> image) {
+		Substitution seed = new HashMapSubstitution();
+		for (int i = 0; i < frontier.size(); ++i) {
+			seed.put(frontier.get(i), image.get(i));
+		}
+		return seed;
+	}
+
+	private static List<Term> frontierImage(List<Variable> frontier, Substitution substitution) {
+		List<Term> image = new ArrayList<Term>(frontier.size());
+		for (Variable v : frontier) {
+			image.add(substitution.createImageOf(v));
+		}
+		return image;
+	}
+
 }
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining.halting_condition;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismFactoryException;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * This HaltingCondition implements the skolem chase: the null introduced for
+ * an existential variable is a function of the rule, the variable and the
+ * image of the rule frontier. The nulls are fresh symbols of the data, created
+ * on the first application of a trigger and then found in a lookup table, so
+ * applying a trigger again produces the same atoms and only the atoms not
+ * already in the data are returned. No homomorphism check is done.
+ */
+public class SkolemChaseHaltingCondition implements ChaseHaltingCondition {
+
+	private final Map<Rule, Variable[]> frontiers = new HashMap<Rule, Variable[]>();
+	private final Map<SkolemKey, Term>  nulls     = new HashMap<SkolemKey, Term>();
+
+	@Override
+	public CloseableIterator<Atom> apply(Rule rule, Substitution substitution, AtomSet data)
+	    throws HomomorphismFactoryException, HomomorphismException {
+		Variable[] frontier = this.getFrontier(rule);
+		Term[] image = new Term[frontier.length];
+		for (int i = 0; i < frontier.length; ++i) {
+			image[i] = substitution.createImageOf(frontier[i]);
+		}
+		for (Variable v : rule.getExistentials()) {
+			substitution.put(v, this.getNull(rule, v, image, data));
+		}
+
+		List<Atom> toAdd = new LinkedList<Atom>();
+		CloseableIteratorWithoutException<Atom> it = substitution.createImageOf(rule.getHead()).iterator();
+		try {
+			while (it.hasNext()) {
+				Atom a = it.next();
+				if (!data.contains(a)) {
+					toAdd.add(a);
+				}
+			}
+		} catch (AtomSetException e) {
+			throw new HomomorphismException("Error while checking the head atoms", e);
+		}
+		return new CloseableIteratorAdapter<Atom>(toAdd.iterator());
+	}
+
+	/**
+	 * Forgets the nulls already created.
+	 */
+	public synchronized void clear() {
+		this.nulls.clear();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private synchronized Variable[] getFrontier(Rule rule) {
+		Variable[] frontier = this.frontiers.get(rule);
+		if (frontier == null) {
+			frontier = new TreeSet<Variable>(rule.getFrontier()).toArray(new Variable[0]);
+			this.frontiers.put(rule, frontier);
+		}
+		return frontier;
+	}
+
+	private synchronized Term getNull(Rule rule, Variable v, Term[] frontierImage, AtomSet data) {
+		SkolemKey key = new SkolemKey(rule, v, frontierImage);
+		Term t = this.nulls.get(key);
+		if (t == null) {
+			t = data.getFreshSymbolGenerator().getFreshSymbol();
+			this.nulls.put(key, t);
+		}
+		return t;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final class SkolemKey {
+
+		private final Rule     rule;
+		private final Variable variable;
+		private final Term[]   frontierImage;
+		private final int      hashCode;
+
+		SkolemKey(Rule rule, Variable variable, Term[] frontierImage) {
+			this.rule = rule;
+			this.variable = variable;
+			this.frontierImage = frontierImage;
+			this.hashCode = (rule.hashCode() * 31 + variable.hashCode()) * 31 + Arrays.hashCode(frontierImage);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SkolemKey)) {
+				return false;
+			}
+			SkolemKey other = (SkolemKey) obj;
+			return this.hashCode == other.hashCode && this.rule.equals(other.rule)
+			       && this.variable.equals(other.variable) && Arrays.equals(this.frontierImage, other.frontierImage);
+		}
+	}
+
+}
@@ -42,31 +42,53 @@
  */
 package fr.lirmm.graphik.graal.forward_chaining.rule_applier;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
 import fr.lirmm.graphik.graal.api.core.Query;
 import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
+import fr.lirmm.graphik.graal.api.forward_chaining.DeltaRuleApplier;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplicationException;
-import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
 import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismFactoryException;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
+import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
 import fr.lirmm.graphik.graal.forward_chaining.halting_condition.RestrictedChaseHaltingCondition;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 import fr.lirmm.graphik.util.stream.IteratorException;
 
 /**
  * @author Clément Sipieter (INRIA) {@literal <clement@6pi.fr>}
  *
  */
-public abstract class AbstractRuleApplier<T extends AtomSet> implements RuleApplier<Rule, T> {
+public abstract class AbstractRuleApplier<T extends AtomSet> implements DeltaRuleApplier<Rule, T> {
 
 	private ChaseHaltingCondition haltingCondition;
 	private Homomorphism<? super Query, ? super T> solver;
+	private TriggerStore triggerStore = null;
 
 	// //////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -120,19 +142,19 @@ public abstract class AbstractRuleApplier<T extends AtomSet> implements RuleAppl
 	public boolean apply(Rule rule, T atomSet) throws RuleApplicationException {
 		boolean isChanged = false;
 		Query query = this.generateQuery(rule);
-		System.out.println("ab rule applier:" + query.toString());
 		try {
 			CloseableIterator<Substitution> subIt = this.executeQuery(query, atomSet);
 			while (subIt.hasNext()) {
 				Substitution substitution = subIt.next();
-				System.out.println("substitution: " + substitution.toString());
+				if (this.triggerStore != null && !this.triggerStore.add(rule, substitution)) {
+					continue;
+				}
 				CloseableIterator<Atom> it = this.getHaltingCondition().apply(rule, substitution, atomSet);
 				if (it.hasNext()) {
 					atomSet.addAll(it);
 					isChanged = true;
 				}
 			}
-			System.out.println("\n");
 			subIt.close();
 		} catch (HomomorphismFactoryException e) {
 			throw new RuleApplicationException("Error during rule application", e);
@@ -164,13 +186,106 @@ public abstract class AbstractRuleApplier<T extends AtomSet> implements RuleAppl
 		} catch (HomomorphismException e) {
 			throw new RuleApplicationException("Error during rule application", e);
 		}
-		return new RuleApplierIterator(subIt, rule, atomSetOnWichCheck, haltingCondition);
+		return new RuleApplierIterator(subIt, rule, atomSetOnWichCheck, haltingCondition,
+		                               this.triggerStore);
+	}
+
+	/**
+	 * For each position i in the query of the rule, the homomorphisms mapping
+	 * the i-th atom into delta and each previous atom onto an atom outside of
+	 * delta are computed, so that a homomorphism is found only once. Equality
+	 * atoms are not matched against delta.
+	 * <br/>
+	 * If the query generated for the rule is not a conjunctive query, its
+	 * answers are not those of its atoms and the rule is applied on the whole
+	 * atom set.
+	 */
+	@Override
+	public CloseableIterator<Atom> delegatedApplyOnDelta(Rule rule, InMemoryAtomSet delta, T atomSetOnWichQuerying,
+	    T atomSetOnWichCheck) throws RuleApplicationException {
+		Query query = this.generateQuery(rule);
+		if (!(query instanceof ConjunctiveQuery)) {
+			return this.delegatedApply(rule, atomSetOnWichQuerying, atomSetOnWichCheck);
+		}
+		ConjunctiveQuery cq = (ConjunctiveQuery) query;
+		List<Term> ans = cq.getAnswerVariables();
+		ConjunctiveQuery bodyQuery = DefaultConjunctiveQueryFactory.instance().create(cq.getAtomSet(),
+		    new LinkedList<Term>(cq.getAtomSet().getVariables()));
+		List<Atom> body = new ArrayList<Atom>();
+		CloseableIteratorWithoutException<Atom> bodyIt = cq.getAtomSet().iterator();
+		while (bodyIt.hasNext()) {
+			Atom a = bodyIt.next();
+			if (!Predicate.EQUALITY.equals(a.getPredicate())) {
+				body.add(a);
+			}
+		}
+		if (body.isEmpty()) {
+			return this.delegatedApply(rule, atomSetOnWichQuerying, atomSetOnWichCheck);
+		}
+		RulesCompilation rc = this.getCompilation();
+
+		List<Substitution> triggers = new LinkedList<Substitution>();
+		Set<Substitution> seen = new HashSet<Substitution>();
+		try {
+			for (int i = 0; i < body.size(); ++i) {
+				for (Pair<Atom, Substitution> rew : rc.getRewritingOf(body.get(i))) {
+					CloseableIterator<Atom> deltaIt = delta.match(rew.getLeft());
+					while (deltaIt.hasNext()) {
+						Substitution seed = unifier(body.get(i), rew, deltaIt.next());
+						if (seed == null) {
+							continue;
+						}
+						CloseableIterator<Substitution> subIt = this.executeQuery(bodyQuery, atomSetOnWichQuerying, seed);
+						while (subIt.hasNext()) {
+							Substitution h = new HashMapSubstitution(seed);
+							h.put(subIt.next());
+							if (isOutsideDelta(body, i, h, delta, atomSetOnWichQuerying, rc)) {
+								Substitution trigger = new HashMapSubstitution();
+								for (Term t : ans) {
+									if (t.isVariable()) {
+										trigger.put((Variable) t, h.createImageOf(t));
+									}
+								}
+								if (seen.add(trigger)) {
+									triggers.add(trigger);
+								}
+							}
+						}
+						subIt.close();
+					}
+					deltaIt.close();
+				}
+			}
+		} catch (HomomorphismFactoryException e) {
+			throw new RuleApplicationException("Error during rule application", e);
+		} catch (HomomorphismException e) {
+			throw new RuleApplicationException("Error during rule application", e);
+		} catch (AtomSetException e) {
+			throw new RuleApplicationException("Error during rule application", e);
+		} catch (IteratorException e) {
+			throw new RuleApplicationException("Error during rule application", e);
+		}
+		return new RuleApplierIterator(new CloseableIteratorAdapter<Substitution>(triggers.iterator()), rule,
+		                               atomSetOnWichCheck, haltingCondition, this.triggerStore);
 	}
 
 	// //////////////////////////////////////////////////////////////////////////
 	//
 	// //////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Sets the store of the triggers already applied: a homomorphism of a rule
+	 * body whose frontier image is in the store is skipped. Null disables the
+	 * check.
+	 */
+	public void setTriggerStore(TriggerStore triggerStore) {
+		this.triggerStore = triggerStore;
+	}
+
+	public TriggerStore getTriggerStore() {
+		return this.triggerStore;
+	}
+
 	protected ChaseHaltingCondition getHaltingCondition() {
 		return this.haltingCondition;
 	}
@@ -184,4 +299,69 @@ public abstract class AbstractRuleApplier<T extends AtomSet> implements RuleAppl
 		return this.solver.execute(query, atomSet);
 	}
 
+	protected CloseableIterator<Substitution> executeQuery(Query query, T atomSet, Substitution s)
+			throws HomomorphismFactoryException, HomomorphismException {
+		return this.solver.execute(query, atomSet, s);
+	}
+
+	protected RulesCompilation getCompilation() {
+		return NoCompilation.instance();
+	}
+
+	// //////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// //////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the substitution of the variables of the specified body atom
+	 *         mapping its rewriting onto the specified fact, or null if there
+	 *         is none.
+	 */
+	private static Substitution unifier(Atom bodyAtom, Pair<Atom, Substitution> rewriting, Atom fact) {
+		Map<Term, Term> match = new HashMap<Term, Term>();
+		int i = 0;
+		for (Term t : rewriting.getLeft()) {
+			Term f = fact.getTerm(i++);
+			if (t.isVariable()) {
+				Term previous = match.put(t, f);
+				if (previous != null && !previous.equals(f)) {
+					return null;
+				}
+			} else if (!t.equals(f)) {
+				return null;
+			}
+		}
+		Substitution s = new HashMapSubstitution();
+		for (Variable v : bodyAtom.getVariables()) {
+			Term image = rewriting.getRight().createImageOf(v);
+			Term value = image.isVariable() ? match.get(image) : image;
+			if (value == null) {
+				return null;
+			}
+			s.put(v, value);
+		}
+		return s;
+	}
+
+	/**
+	 * @return true iff the images of the body atoms before the specified
+	 *         position can be obtained from atoms outside of delta.
+	 */
+	private static boolean isOutsideDelta(List<Atom> body, int position, Substitution h, InMemoryAtomSet delta,
+	    AtomSet atomSet, RulesCompilation rc) throws AtomSetException {
+		for (int j = 0; j < position; ++j) {
+			boolean outside = false;
+			for (Pair<Atom, Substitution> rew : rc.getRewritingOf(h.createImageOf(body.get(j)))) {
+				if (!delta.contains(rew.getLeft()) && atomSet.contains(rew.getLeft())) {
+					outside = true;
+					break;
+				}
+			}
+			if (!outside) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 }
\ No newline at end of file
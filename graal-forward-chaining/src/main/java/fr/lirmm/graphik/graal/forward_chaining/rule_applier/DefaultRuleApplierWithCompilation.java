@@ -91,6 +91,7 @@ public class DefaultRuleApplierWithCompilation<T extends AtomSet> extends Abstra
 	public DefaultRuleApplierWithCompilation(HomomorphismWithCompilation<? super Query, ? super T> h,
 			ChaseHaltingCondition cond, RulesCompilation compilation) {
 		super(h, cond);
+		this.compilation = compilation;
 	}
 
 	// //////////////////////////////////////////////////////////////////////////
@@ -101,6 +102,7 @@ public class DefaultRuleApplierWithCompilation<T extends AtomSet> extends Abstra
 		this.compilation = compilation;
 	}
 
+	@Override
 	protected RulesCompilation getCompilation() {
 		return compilation;
 	}
@@ -115,6 +117,12 @@ public class DefaultRuleApplierWithCompilation<T extends AtomSet> extends Abstra
 		return getSolver().execute(query, atomSet, this.compilation);
 	}
 
+	@Override
+	protected CloseableIterator<Substitution> executeQuery(Query query, T atomSet, Substitution s)
+			throws HomomorphismFactoryException, HomomorphismException {
+		return getSolver().execute(query, atomSet, this.compilation, s);
+	}
+
 	@Override
 	protected ConjunctiveQuery generateQuery(Rule rule) {
 		return DefaultConjunctiveQueryFactory.instance().create(rule.getBody(),
@@ -48,11 +48,12 @@ import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQueryWithNegatedParts;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.forward_chaining.DeltaRuleApplier;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplicationException;
-import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.core.RuleWrapper2ConjunctiveQueryWithNegatedParts;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
@@ -65,14 +66,52 @@ import fr.lirmm.graphik.util.stream.IteratorException;
  * @author Clément Sipieter (INRIA) {@literal <clement@6pi.fr>}
  *
  */
-public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplier<Rule, T> {
+public class RestrictedChaseRuleApplier<T extends AtomSet> implements DeltaRuleApplier<Rule, T> {
 
-	private static final RuleApplier<Rule, AtomSet> FALLBACK = new DefaultRuleApplier<AtomSet>();
+	private static final DefaultRuleApplier<AtomSet> FALLBACK = new DefaultRuleApplier<AtomSet>();
+
+	private TriggerStore                triggerStore = null;
+	private DefaultRuleApplier<AtomSet> fallback     = FALLBACK;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public RestrictedChaseRuleApplier() {
+	}
+
+	/**
+	 * @param triggerStore
+	 *            the store of the triggers already applied, see
+	 *            {@link #setTriggerStore(TriggerStore)}.
+	 */
+	public RestrictedChaseRuleApplier(TriggerStore triggerStore) {
+		this.setTriggerStore(triggerStore);
+	}
 
 	// /////////////////////////////////////////////////////////////////////////
 	// PUBLIC METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
+	/**
+	 * Sets the store of the triggers already applied: a homomorphism of a rule
+	 * body whose frontier image is in the store is skipped, so no duplicate
+	 * head is generated for it. Null disables the check.
+	 */
+	public void setTriggerStore(TriggerStore triggerStore) {
+		this.triggerStore = triggerStore;
+		if (triggerStore == null) {
+			this.fallback = FALLBACK;
+		} else {
+			this.fallback = new DefaultRuleApplier<AtomSet>();
+			this.fallback.setTriggerStore(triggerStore);
+		}
+	}
+
+	public TriggerStore getTriggerStore() {
+		return this.triggerStore;
+	}
+
 	@Override
 	public boolean apply(Rule rule, T atomSet) throws RuleApplicationException {
 		try {
@@ -82,8 +121,11 @@ public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplie
 			
 			results = SmartHomomorphism.instance().execute(query, atomSet);
 			while (results.hasNext()) {
-				res = true;
 				Substitution proj = results.next();
+				if (this.triggerStore != null && !this.triggerStore.add(rule, proj)) {
+					continue;
+				}
+				res = true;
 	
 				// replace variables by fresh symbol
 				for (Variable t : rule.getExistentials()) {
@@ -110,28 +152,8 @@ public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplie
 	public  CloseableIterator<Atom> delegatedApply(Rule rule, T atomSet) throws RuleApplicationException {
 		try {
 			ConjunctiveQueryWithNegatedParts query = new RuleWrapper2ConjunctiveQueryWithNegatedParts(rule);
-			System.out.println("1. Query123:" + query.toString() +"\n");
-			
-			//showing substitutions
-			CloseableIterator<Substitution> tmp_results = SmartHomomorphism.instance().execute(query, atomSet);
-			try {
-				while(tmp_results.hasNext()) {
-					Substitution substitution = null;
-					try {
-						substitution = tmp_results.next();
-					} catch (IteratorException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-					System.out.println("2.1. substitution: "+ substitution.toString());
-				}
-			} catch (IteratorException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			System.out.println("2.2. \n");
 			CloseableIterator<Substitution> results = SmartHomomorphism.instance().execute(query, atomSet);
-			return new RuleApplierIterator(results, rule, atomSet);
+			return new RuleApplierIterator(results, rule, atomSet, this.triggerStore);
 		} catch (HomomorphismException e) {
 			throw new RuleApplicationException("", e);
 		}
@@ -145,10 +167,21 @@ public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplie
 			return this.delegatedApply(rule, atomSetOnWichQuerying);
 		} else {
 //			System.out.println("here2");
-			return FALLBACK.delegatedApply(rule, atomSetOnWichQuerying, atomSetOnWichCheck);
+			return this.fallback.delegatedApply(rule, atomSetOnWichQuerying, atomSetOnWichCheck);
 		}
 	}
 
+	/**
+	 * The semi-naive application checks the triggers with a
+	 * {@link fr.lirmm.graphik.graal.forward_chaining.halting_condition.RestrictedChaseHaltingCondition}
+	 * instead of a negated part.
+	 */
+	@Override
+	public CloseableIterator<Atom> delegatedApplyOnDelta(Rule rule, InMemoryAtomSet delta, T atomSetOnWichQuerying,
+	    T atomSetOnWichCheck) throws RuleApplicationException {
+		return this.fallback.delegatedApplyOnDelta(rule, delta, atomSetOnWichQuerying, atomSetOnWichCheck);
+	}
+
 	
 	// /////////////////////////////////////////////////////////////////////////
 	// OBJECT OVERRIDE METHODS
@@ -165,9 +198,12 @@ public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplie
 		private boolean hasNextCallDone;
 		private Rule rule;
 		private AtomSet atomset;
+		private TriggerStore triggers;
 		
-		public RuleApplierIterator(CloseableIterator<Substitution> it, Rule rule, AtomSet atomset) {
+		public RuleApplierIterator(CloseableIterator<Substitution> it, Rule rule, AtomSet atomset,
+		    TriggerStore triggers) {
 			this.substitutionIt = it;
+			this.triggers = triggers;
 			this.rule = rule;
 			this.atomset = atomset;
 			this.hasNextCallDone = false;
@@ -185,6 +221,9 @@ public class RestrictedChaseRuleApplier<T extends AtomSet> implements RuleApplie
 				}
 				while ((this.localIt == null || !this.localIt.hasNext()) && this.substitutionIt.hasNext()) {
 					Substitution proj = this.substitutionIt.next();
+					if (this.triggers != null && !this.triggers.add(rule, proj)) {
+						continue;
+					}
 					
 					// replace variables by fresh symbol
 					for (Variable t : rule.getExistentials()) {
@@ -42,10 +42,14 @@
  */
 package fr.lirmm.graphik.graal.forward_chaining.rule_applier;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.forward_chaining.BatchChaseHaltingCondition;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseHaltingCondition;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismFactoryException;
@@ -61,14 +65,27 @@ class RuleApplierIterator extends AbstractCloseableIterator<Atom> {
 	private Rule rule;
 	private ChaseHaltingCondition haltingCondition;
 	private AtomSet atomset;
+	private TriggerStore triggers;
+	private boolean batchApplied = false;
 	
 	public RuleApplierIterator(CloseableIterator<Substitution> it, Rule rule, AtomSet atomset, ChaseHaltingCondition haltingCondition) {
+		this(it, rule, atomset, haltingCondition, null);
+	}
+
+	/**
+	 * @param triggers
+	 *            the triggers already applied, skipped by this iterator; may
+	 *            be null.
+	 */
+	public RuleApplierIterator(CloseableIterator<Substitution> it, Rule rule, AtomSet atomset,
+	    ChaseHaltingCondition haltingCondition, TriggerStore triggers) {
 		this.substitutionIt = it;
 		this.localIt = null;
 		this.hasNextCallDone = false;
 		this.rule = rule;
 		this.haltingCondition = haltingCondition;
 		this.atomset = atomset;
+		this.triggers = triggers;
 	}
 	
 	@Override
@@ -80,19 +97,51 @@ class RuleApplierIterator extends AbstractCloseableIterator<Atom> {
 				this.localIt.close();
 				this.localIt = null;
 			}
-			while ((this.localIt == null || !this.localIt.hasNext()) && this.substitutionIt.hasNext()) {
-				try {
-					localIt = haltingCondition.apply(rule, substitutionIt.next(), atomset);
-				} catch (HomomorphismFactoryException e) {
-					throw new IteratorException("Error during rule application", e);
-				} catch (HomomorphismException e) {
-					throw new IteratorException("Error during rule application", e);
+			if (this.haltingCondition instanceof BatchChaseHaltingCondition
+			    && ((BatchChaseHaltingCondition) this.haltingCondition).isBatched()) {
+				if (!this.batchApplied) {
+					this.batchApplied = true;
+					this.applyAll((BatchChaseHaltingCondition) this.haltingCondition);
+				}
+			} else {
+				while ((this.localIt == null || !this.localIt.hasNext()) && this.substitutionIt.hasNext()) {
+					Substitution substitution = substitutionIt.next();
+					if (this.triggers != null && !this.triggers.add(rule, substitution)) {
+						continue;
+					}
+					try {
+						localIt = haltingCondition.apply(rule, substitution, atomset);
+					} catch (HomomorphismFactoryException e) {
+						throw new IteratorException("Error during rule application", e);
+					} catch (HomomorphismException e) {
+						throw new IteratorException("Error during rule application", e);
+					}
 				}
 			}
 		}
 		return this.localIt != null && this.localIt.hasNext();
 	}
 
+	/**
+	 * Checks all the triggers at once.
+	 */
+	private void applyAll(BatchChaseHaltingCondition condition) throws IteratorException {
+		List<Substitution> substitutions = new LinkedList<Substitution>();
+		while (this.substitutionIt.hasNext()) {
+			Substitution substitution = this.substitutionIt.next();
+			if (this.triggers == null || this.triggers.add(rule, substitution)) {
+				substitutions.add(substitution);
+			}
+		}
+		try {
+			this.localIt = condition.applyAll(rule, substitutions, atomset);
+		} catch (HomomorphismFactoryException e) {
+			throw new IteratorException("Error during rule application", e);
+		} catch (HomomorphismException e) {
+			throw new IteratorException("Error during rule application", e);
+		}
+	}
+
 	@Override
 	public Atom next() throws IteratorException {
 		if (!this.hasNextCallDone)
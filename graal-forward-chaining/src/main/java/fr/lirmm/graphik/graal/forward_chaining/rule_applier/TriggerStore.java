@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining.rule_applier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+
+/**
+ * The set of the triggers already applied by a rule applier. A trigger is
+ * identified by its rule and the image of the frontier of the rule, so the
+ * homomorphisms which only differ outside the frontier are applied once.
+ * Rules and terms are encoded by integer ids, packed two by two in longs.
+ * <br/>
+ * The atoms produced by the recorded triggers must stay in the atom set: the
+ * store has to be cleared if atoms are removed.
+ */
+public class TriggerStore {
+
+	private final Map<Rule, Integer> ruleIds   = new HashMap<Rule, Integer>();
+	private final List<Variable[]>   frontiers = new ArrayList<Variable[]>();
+	private final Map<Term, Integer> termIds   = new HashMap<Term, Integer>();
+	private final Set<Object>        triggers  = new HashSet<Object>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Records the trigger of the specified rule by the specified homomorphism
+	 * of its body.
+	 *
+	 * @return true if this trigger was not already recorded.
+	 */
+	public synchronized boolean add(Rule rule, Substitution homomorphism) {
+		return this.triggers.add(this.encode(rule, homomorphism));
+	}
+
+	/**
+	 * @return true if the trigger of the specified rule by the specified
+	 *         homomorphism of its body is recorded.
+	 */
+	public synchronized boolean contains(Rule rule, Substitution homomorphism) {
+		return this.triggers.contains(this.encode(rule, homomorphism));
+	}
+
+	public synchronized int size() {
+		return this.triggers.size();
+	}
+
+	public synchronized void clear() {
+		this.triggers.clear();
+		this.termIds.clear();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return a Long if the rule id and the frontier image fit in one long, a
+	 *         {@link PackedTrigger} otherwise.
+	 */
+	private Object encode(Rule rule, Substitution homomorphism) {
+		Integer ruleId = this.ruleIds.get(rule);
+		if (ruleId == null) {
+			ruleId = this.ruleIds.size();
+			this.ruleIds.put(rule, ruleId);
+			this.frontiers.add(new TreeSet<Variable>(rule.getFrontier()).toArray(new Variable[0]));
+		}
+		Variable[] frontier = this.frontiers.get(ruleId);
+
+		long[] packed = new long[(frontier.length + 2) / 2];
+		packed[0] = ((long) ruleId) << 32;
+		for (int i = 0; i < frontier.length; ++i) {
+			long id = this.getTermId(homomorphism.createImageOf(frontier[i])) & 0xFFFFFFFFL;
+			int pos = i + 1;
+			packed[pos / 2] |= (pos % 2 == 0) ? id << 32 : id;
+		}
+		return (packed.length == 1) ? (Object) packed[0] : new PackedTrigger(packed);
+	}
+
+	private int getTermId(Term t) {
+		Integer id = this.termIds.get(t);
+		if (id == null) {
+			id = this.termIds.size();
+			this.termIds.put(t, id);
+		}
+		return id;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static final class PackedTrigger {
+
+		private final long[] packed;
+		private final int    hashCode;
+
+		PackedTrigger(long[] packed) {
+			this.packed = packed;
+			this.hashCode = Arrays.hashCode(packed);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof PackedTrigger && Arrays.equals(this.packed, ((PackedTrigger) obj).packed);
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.forward_chaining.Chase;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.forward_chaining.halting_condition.FrontierRestrictedChaseHaltingCondition;
+import fr.lirmm.graphik.graal.forward_chaining.halting_condition.RestrictedChaseHaltingCondition;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.DefaultRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+
+public class BreadthFirstChaseTest {
+
+	@Test
+	public void transitiveClosure() throws Exception {
+		for (boolean restricted : new boolean[] { true, false }) {
+			// Given
+			DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+			for (int i = 0; i < 10; ++i) {
+				store.add(DlgpParser.parseAtom("p(a" + i + ",a" + (i + 1) + ")."));
+			}
+			LinkedListRuleSet rules = new LinkedListRuleSet();
+			rules.add(DlgpParser.parseRule("p(X,Z) :- p(X,Y), p(Y,Z)."));
+
+			// When
+			Chase chase = (restricted) ? new BreadthFirstChase(rules, store)
+			                           : new BreadthFirstChase(rules, store, new DefaultRuleApplier<AtomSet>());
+			chase.execute();
+
+			// Then
+			Assert.assertEquals(55, store.size(new Predicate("p", 2)));
+		}
+	}
+
+	@Test
+	public void joinsAndExistentials() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a0,a1), p(a1,a2), p(a2,a3), p(a3,a4)."));
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		for (Rule r : new Rule[] { DlgpParser.parseRule("q(X,Y) :- p(X,Y)."),
+		                           DlgpParser.parseRule("r(X,Z) :- q(X,Y), q(Y,Z)."),
+		                           DlgpParser.parseRule("t(X,U) :- r(X,Y), p(Y,Z).") }) {
+			rules.add(r);
+		}
+
+		// When
+		new BreadthFirstChase(rules, store).execute();
+
+		// Then
+		Assert.assertEquals(4, store.size(new Predicate("q", 2)));
+		Assert.assertEquals(3, store.size(new Predicate("r", 2)));
+		Assert.assertEquals(2, store.size(new Predicate("t", 2)));
+	}
+
+	@Test
+	public void parallelApplication() throws Exception {
+		int[] expected = null;
+		for (int parallelism : new int[] { 1, 4 }) {
+			// Given
+			DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+			for (int i = 0; i < 10; ++i) {
+				store.add(DlgpParser.parseAtom("p(a" + i + ",a" + (i + 1) + ")."));
+			}
+			LinkedListRuleSet rules = new LinkedListRuleSet();
+			for (Rule r : new Rule[] { DlgpParser.parseRule("p(X,Z) :- p(X,Y), p(Y,Z)."),
+			                           DlgpParser.parseRule("q(X,Y) :- p(X,Y)."),
+			                           DlgpParser.parseRule("r(X,Z) :- q(X,Y), q(Y,Z)."),
+			                           DlgpParser.parseRule("t(X,U) :- r(X,Y), p(Y,Z).") }) {
+				rules.add(r);
+			}
+
+			// When
+			BreadthFirstChase chase = new BreadthFirstChase(rules, store);
+			chase.setParallelism(parallelism);
+			chase.execute();
+
+			// Then
+			int[] sizes = new int[] { store.size(new Predicate("p", 2)), store.size(new Predicate("q", 2)),
+			                          store.size(new Predicate("r", 2)), store.size(new Predicate("t", 2)) };
+			if (expected == null) {
+				expected = sizes;
+			} else {
+				Assert.assertArrayEquals(expected, sizes);
+			}
+		}
+	}
+
+	@Test
+	public void triggerStore() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(a,d), p(b,c)."));
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		rules.add(DlgpParser.parseRule("q(X,U) :- p(X,Y)."));
+		TriggerStore triggers = new TriggerStore();
+
+		// When
+		new BreadthFirstChase(rules, store, new RestrictedChaseRuleApplier<AtomSet>(triggers)).execute();
+
+		// Then
+		Assert.assertEquals(2, store.size(new Predicate("q", 2)));
+		Assert.assertEquals(2, triggers.size());
+	}
+
+	@Test
+	public void batchedHaltingConditions() throws Exception {
+		for (boolean batched : new boolean[] { false, true }) {
+			for (boolean restricted : new boolean[] { true, false }) {
+				// Given
+				DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+				store.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(b,c), q(b,d)."));
+				LinkedListRuleSet rules = new LinkedListRuleSet();
+				rules.add(DlgpParser.parseRule("q(X,Z) :- p(X,Y)."));
+				rules.add(DlgpParser.parseRule("r(X) :- q(X,Y)."));
+
+				// When
+				if (restricted) {
+					new BreadthFirstChase(rules, store, new RestrictedChaseHaltingCondition(batched)).execute();
+				} else {
+					new BreadthFirstChase(rules, store, new FrontierRestrictedChaseHaltingCondition(batched)).execute();
+				}
+
+				// Then
+				// the two triggers of X=a are checked together only in batched mode
+				Assert.assertEquals((restricted && batched) ? 2 : 3, store.size(new Predicate("q", 2)));
+				Assert.assertEquals(2, store.size(new Predicate("r", 1)));
+			}
+		}
+	}
+
+}
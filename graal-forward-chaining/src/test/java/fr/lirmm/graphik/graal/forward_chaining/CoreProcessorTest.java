@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+
+public class CoreProcessorTest {
+
+	@Test
+	public void retractions() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), q(a,b), s(b,c), q(a,X), s(X,Y), t(Z,Z), r(U,V), r(V,U), r(U,U)."));
+
+		// When
+		int nbRemoved = new CoreProcessor().execute(store);
+
+		// Then
+		Assert.assertEquals(4, nbRemoved);
+		Assert.assertEquals(5, store.size());
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("q(a,b).")));
+		Assert.assertEquals(1, store.size(new Predicate("q", 2)));
+		Assert.assertEquals(1, store.size(new Predicate("s", 2)));
+		Assert.assertEquals(1, store.size(new Predicate("t", 2)));
+		Assert.assertEquals(1, store.size(new Predicate("r", 2)));
+	}
+
+	@Test
+	public void coreChase() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c)."));
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		rules.add(DlgpParser.parseRule("q(X,Z) :- p(X,Y)."));
+		rules.add(DlgpParser.parseRule("q(X,Y) :- p(X,Y)."));
+
+		// When
+		new CoreChase(new BreadthFirstChase(rules, store), store).execute();
+
+		// Then
+		Assert.assertEquals(2, store.size(new Predicate("q", 2)));
+		Assert.assertTrue(store.getVariables().isEmpty());
+	}
+
+	@Test
+	public void coreChaseClearsTriggers() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c)."));
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		rules.add(DlgpParser.parseRule("q(X,Z) :- p(X,Y)."));
+		rules.add(DlgpParser.parseRule("q(X,Y) :- p(X,Y)."));
+		TriggerStore triggers = new TriggerStore();
+
+		// When
+		new CoreChase(new BreadthFirstChase(rules, store, new RestrictedChaseRuleApplier<AtomSet>(triggers)), store, 1,
+		              new CoreProcessor(), triggers).execute();
+
+		// Then
+		Assert.assertEquals(2, store.size(new Predicate("q", 2)));
+		Assert.assertEquals(0, triggers.size());
+	}
+
+	@Test(expected = ChaseException.class)
+	public void atomNotRemoved() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore() {
+			@Override
+			public boolean remove(Atom atom) {
+				return false;
+			}
+		};
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,X)."));
+
+		// When
+		new CoreProcessor().execute(store);
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining.halting_condition;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.Constant;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.factory.DefaultAtomSetFactory;
+import fr.lirmm.graphik.graal.core.factory.DefaultSubstitutionFactory;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.forward_chaining.BreadthFirstChase;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.SkolemChaseRuleApplier;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class SkolemChaseHaltingConditionTest {
+
+	@Test
+	public void sameTriggerSameNull() throws Exception {
+		InMemoryAtomSet atomset = DefaultAtomSetFactory.instance().create(DlgpParser.parseAtomSet("p(a,b), p(a,c)."));
+		Rule rule = DlgpParser.parseRule("q(X,Z):-p(X,Y).");
+
+		Variable x = DefaultTermFactory.instance().createVariable("X");
+		Variable y = DefaultTermFactory.instance().createVariable("Y");
+		Constant a = DefaultTermFactory.instance().createConstant("a");
+		Constant b = DefaultTermFactory.instance().createConstant("b");
+		Constant c = DefaultTermFactory.instance().createConstant("c");
+
+		SkolemChaseHaltingCondition condition = new SkolemChaseHaltingCondition();
+		Substitution s = DefaultSubstitutionFactory.instance().createSubstitution();
+		s.put(x, a);
+		s.put(y, b);
+		CloseableIterator<Atom> toAdd = condition.apply(rule, s, atomset);
+		Assert.assertTrue(toAdd.hasNext());
+		Atom atom1 = toAdd.next();
+		Assert.assertFalse(toAdd.hasNext());
+		toAdd.close();
+
+		// the same frontier image, before and after the atom is added
+		s = DefaultSubstitutionFactory.instance().createSubstitution();
+		s.put(x, a);
+		s.put(y, c);
+		toAdd = condition.apply(rule, s, atomset);
+		Assert.assertTrue(toAdd.hasNext());
+		Assert.assertEquals(atom1, toAdd.next());
+		toAdd.close();
+
+		atomset.add(atom1);
+		toAdd = condition.apply(rule, s, atomset);
+		Assert.assertFalse(toAdd.hasNext());
+		toAdd.close();
+	}
+
+	@Test
+	public void skolemChase() throws Exception {
+		// Given
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(b,c), q(a,d)."));
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		rules.add(DlgpParser.parseRule("q(X,Z) :- p(X,Y)."));
+		rules.add(DlgpParser.parseRule("r(X) :- q(X,Y)."));
+
+		// When
+		new BreadthFirstChase(rules, store, new SkolemChaseRuleApplier<AtomSet>()).execute();
+
+		// Then
+		Assert.assertEquals(3, store.size(new Predicate("q", 2)));
+		Assert.assertEquals(2, store.size(new Predicate("r", 1)));
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.util.graph.scc.StronglyConnectedComponentsGraph;
+
+/**
+ * A static execution plan of the chase compiled from a
+ * {@link GraphOfRuleDependencies}. The plan is the list of the strongly
+ * connected components of the GRD in a topological order. A component made of
+ * one rule which does not depend on itself is a stage applied exactly once;
+ * the other components are recursive stages, saturated by a semi-naive loop in
+ * which each rule knows the indexes of the rules of its stage it triggers.
+ * <br/>
+ * A plan does not depend on the data, so it can be compiled once and executed
+ * by several {@link CompiledChase}.
+ */
+public class ChasePlan {
+
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public ChasePlan(GraphOfRuleDependencies grd) {
+		StronglyConnectedComponentsGraph<Rule> sccg = grd.getStronglyConnectedComponentsGraph();
+		int[] sccLayer = sccg.computeLayers(sccg.getSources(), true);
+		int levelmax = -1;
+		for (int layer : sccLayer) {
+			levelmax = Math.max(levelmax, layer);
+		}
+		for (int level = 0; level <= levelmax; ++level) {
+			for (int scc = 0; scc < sccLayer.length; ++scc) {
+				if (sccLayer[scc] == level) {
+					this.stages.add(compile(grd, sccg.getComponent(scc)));
+				}
+			}
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the number of stages of this plan.
+	 */
+	public int size() {
+		return this.stages.size();
+	}
+
+	/**
+	 * @return the rules of the specified stage.
+	 */
+	public List<Rule> getRules(int stage) {
+		return Collections.unmodifiableList(this.stages.get(stage).rules);
+	}
+
+	/**
+	 * @return true if the rules of the specified stage depend on each other.
+	 */
+	public boolean isRecursive(int stage) {
+		return this.stages.get(stage).triggered != null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.stages.size(); ++i) {
+			sb.append(i).append(this.isRecursive(i) ? " loop " : " once ").append(this.getRules(i)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PACKAGE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	Stage getStage(int stage) {
+		return this.stages.get(stage);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static Stage compile(GraphOfRuleDependencies grd, Set<Rule> component) {
+		List<Rule> rules = new ArrayList<Rule>(component);
+		Map<Rule, Integer> index = new HashMap<Rule, Integer>();
+		for (int i = 0; i < rules.size(); ++i) {
+			index.put(rules.get(i), i);
+		}
+
+		int[][] triggered = new int[rules.size()][];
+		boolean isRecursive = false;
+		for (int i = 0; i < rules.size(); ++i) {
+			List<Integer> local = new ArrayList<Integer>();
+			for (Rule r : grd.getTriggeredRules(rules.get(i))) {
+				Integer j = index.get(r);
+				if (j != null) {
+					local.add(j);
+				}
+			}
+			isRecursive |= !local.isEmpty();
+			triggered[i] = new int[local.size()];
+			for (int k = 0; k < local.size(); ++k) {
+				triggered[i][k] = local.get(k);
+			}
+		}
+		return new Stage(rules, isRecursive ? triggered : null);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PACKAGE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	static final class Stage {
+
+		final List<Rule> rules;
+
+		/**
+		 * For each rule, the indexes of the rules of the stage it triggers;
+		 * null if the stage is applied once.
+		 */
+		final int[][] triggered;
+
+		Stage(List<Rule> rules, int[][] triggered) {
+			this.rules = rules;
+			this.triggered = triggered;
+		}
+	}
+
+}
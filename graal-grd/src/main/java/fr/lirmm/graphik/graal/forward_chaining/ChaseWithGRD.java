@@ -49,10 +49,14 @@ import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,20 +64,26 @@ import org.slf4j.LoggerFactory;
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.forward_chaining.AbstractChase;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.api.forward_chaining.DeltaRuleApplier;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
 import fr.lirmm.graphik.graal.core.grd.DefaultGraphOfRuleDependencies;
 import fr.lirmm.graphik.graal.forward_chaining.rule_applier.DefaultRuleApplierWithCompilation;
 import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
 
 /**
  * This chase (forward-chaining) algorithm use GRD to define the Rules that will
- * be triggered in the next step.
+ * be triggered in the next step. With a parallelism greater than 1, the rules
+ * of a step are applied concurrently, each application collecting the atoms it
+ * produces into its own buffer.
  * 
  * @author Clément Sipieter (INRIA) <clement@6pi.fr>
  *
@@ -94,6 +104,12 @@ public class ChaseWithGRD<T extends AtomSet> extends AbstractChase<Rule, T> {
 	 */
 	private Queue<Rule> queue = new LinkedList<Rule>();
 
+	/**
+	 * The atoms added to the atom set by the previous step, null if the rules
+	 * are evaluated over the whole atom set
+	 */
+	private InMemoryAtomSet delta = null;
+
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTOR
 	// /////////////////////////////////////////////////////////////////////////
@@ -109,8 +125,22 @@ public class ChaseWithGRD<T extends AtomSet> extends AbstractChase<Rule, T> {
 		setTimeout(Duration.ofMinutes(1));
 	}
 
+	/**
+	 * Constructs a chase which only computes the consequences of the specified
+	 * atoms, added to an atom set already saturated with the rules of the
+	 * specified GRD. The atoms must have been added to the atom set. If the
+	 * rule applier is a {@link DeltaRuleApplier}, the rules are evaluated in a
+	 * semi-naive way: only the homomorphisms which use at least one atom added
+	 * at the previous step are computed.
+	 */
+	public ChaseWithGRD(GraphOfRuleDependencies grd, T atomSet, RuleApplier<Rule, ? super T> ruleApplier,
+	    InMemoryAtomSet newAtoms) {
+		this(grd, atomSet, ruleApplier);
+		this.delta = newAtoms;
+	}
+
 	public ChaseWithGRD(GraphOfRuleDependencies grd, T atomSet) {
-		this(grd, atomSet, new RestrictedChaseRuleApplier<T>());
+		this(grd, atomSet, new RestrictedChaseRuleApplier<T>(new TriggerStore()));
 	}
 
 	public ChaseWithGRD(Iterator<Rule> rules, T atomSet) {
@@ -118,11 +148,21 @@ public class ChaseWithGRD<T extends AtomSet> extends AbstractChase<Rule, T> {
 	}
 
 	public ChaseWithGRD(Iterable<Rule> rules, T atomSet, RulesCompilation compilation) throws ChaseException, IOException {
-		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, new DefaultRuleApplierWithCompilation<T>(compilation));
+		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, ChaseWithGRD.<T> compilationApplier(compilation));
 	}
 
 	public ChaseWithGRD(Iterator<Rule> rules, T atomSet, RulesCompilation compilation) throws ChaseException, IOException {
-		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, new DefaultRuleApplierWithCompilation<T>(compilation));
+		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, ChaseWithGRD.<T> compilationApplier(compilation));
+	}
+
+	/**
+	 * @return a rule applier with compilation which skips the triggers it has
+	 *         already applied.
+	 */
+	static <T extends AtomSet> DefaultRuleApplierWithCompilation<T> compilationApplier(RulesCompilation compilation) {
+		DefaultRuleApplierWithCompilation<T> applier = new DefaultRuleApplierWithCompilation<T>(compilation);
+		applier.setTriggerStore(new TriggerStore());
+		return applier;
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -146,58 +186,81 @@ public class ChaseWithGRD<T extends AtomSet> extends AbstractChase<Rule, T> {
 
 	@Override
 	public void next() throws ChaseException {
-		Queue<Rule> newQueue   = new LinkedList<Rule>();
-		List<Atom>  newAtomSet = new LinkedList<Atom>();
+		Set<Atom> newAtomSet = this.computeStep();
+		try {
+			atomSet.addAll(new CloseableIteratorAdapter<Atom>(newAtomSet.iterator()));
+		} catch (Exception e) {
+			throw new ChaseException("An error occur pending saturation step.", e);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Applies the rules of the current step and computes the rules of the
+	 * next one, without modifying the atom set.
+	 * 
+	 * @return the atoms produced by this step, without duplicates.
+	 */
+	Set<Atom> computeStep() throws ChaseException {
+		Set<Rule> newQueue = new LinkedHashSet<Rule>();
+		Set<Atom> newAtomSet = new LinkedHashSet<Atom>();
 
 		if (timeout_endTime == null)
 			timeout_endTime = Instant.now().plus(timeout_duration);
 
 		try {
-
+			List<Rule> rules = new ArrayList<Rule>(queue.size());
+			List<Callable<List<Atom>>> applications = new ArrayList<Callable<List<Atom>>>(queue.size());
 			while (!queue.isEmpty()) {
 				Rule rule = queue.poll();
 
 				if (rule == null)
 					continue;
 
-				CloseableIterator<Atom> it = this.getRuleApplier().delegatedApply(rule, this.atomSet);
-
-				// Nothing more to do for this iteration
-				if (!it.hasNext()) {
-					it.close();
-					continue;
+				rules.add(rule);
+				applications.add(new Application(rule, this.delta));
+			}
+			List<List<Atom>> buffers = this.invokeAll(applications);
+
+			// Merge the buffers, dropping the atoms produced twice
+			for (int i = 0; i < rules.size(); ++i) {
+				List<Atom> buffer = buffers.get(i);
+				if (this.delta != null) {
+					// keep only the atoms which are really new, the delta of
+					// the next step must be disjoint from the previous atoms
+					Iterator<Atom> it = buffer.iterator();
+					while (it.hasNext()) {
+						if (this.atomSet.contains(it.next())) {
+							it.remove();
+						}
+					}
 				}
-				long timeout_cnt = checkTimeoutEvery;
 
-				// Add the generated atoms in the atom set
-				while (it.hasNext()) {
-					newAtomSet.add(it.next());
-
-					// Check the timeout
-					if (--timeout_cnt == 0) {
-
-						if (Instant.now().isAfter(timeout_endTime))
-							throw new ChaseException("Timeout; allowed time: " + timeout_duration);
+				// Nothing more to do for this rule
+				if (buffer.isEmpty())
+					continue;
 
-						timeout_cnt = checkTimeoutEvery;
-					}
-				}
-				it.close();
+				newAtomSet.addAll(buffer);
 
 				// Make the next queue to use
-				for (Rule triggeredRule : this.grd.getTriggeredRules(rule)) {
+				for (Rule triggeredRule : this.grd.getTriggeredRules(rules.get(i))) {
 
 					if (LOGGER.isDebugEnabled()) {
 						LOGGER.debug("-- -- Dependency: " + triggeredRule);
 					}
 
-					if (!newQueue.contains(triggeredRule)) {
-						newQueue.add(triggeredRule);
-					}
+					newQueue.add(triggeredRule);
 				}
 			}
-			queue = newQueue;
-			atomSet.addAll(new CloseableIteratorAdapter<Atom>(newAtomSet.iterator()));
+			queue = new LinkedList<Rule>(newQueue);
+			if (this.delta != null) {
+				this.delta = new DefaultInMemoryGraphStore();
+				this.delta.addAll(new CloseableIteratorAdapter<Atom>(newAtomSet.iterator()));
+			}
 		} catch (Exception e) {
 			throw new ChaseException("An error occur pending saturation step.", e);
 		}
@@ -205,10 +268,57 @@ public class ChaseWithGRD<T extends AtomSet> extends AbstractChase<Rule, T> {
 		// End of the process: reset the timeout
 		if (!hasNext())
 			timeout_endTime = null;
+
+		return newAtomSet;
 	}
 
-	@Override
-	public boolean hasNext() {
-		return !queue.isEmpty();
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Collects the atoms produced by a rule application of the current step.
+	 */
+	private class Application implements Callable<List<Atom>> {
+
+		private final Rule            rule;
+		private final InMemoryAtomSet delta;
+
+		Application(Rule rule, InMemoryAtomSet delta) {
+			this.rule = rule;
+			this.delta = delta;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public List<Atom> call() throws Exception {
+			List<Atom> buffer = new LinkedList<Atom>();
+			RuleApplier<Rule, ? super T> applier = getRuleApplier();
+			CloseableIterator<Atom> it;
+			if (this.delta != null && applier instanceof DeltaRuleApplier) {
+				it = ((DeltaRuleApplier<Rule, ? super T>) applier).delegatedApplyOnDelta(this.rule, this.delta,
+				    atomSet, atomSet);
+			} else {
+				it = applier.delegatedApply(this.rule, atomSet);
+			}
+			try {
+				long timeout_cnt = checkTimeoutEvery;
+				while (it.hasNext()) {
+					buffer.add(it.next());
+
+					// Check the timeout
+					if (--timeout_cnt == 0) {
+
+						if (Instant.now().isAfter(timeout_endTime))
+							throw new ChaseException("Timeout; allowed time: " + timeout_duration);
+
+						timeout_cnt = checkTimeoutEvery;
+					}
+				}
+			} finally {
+				it.close();
+			}
+			return buffer;
+		}
 	}
 }
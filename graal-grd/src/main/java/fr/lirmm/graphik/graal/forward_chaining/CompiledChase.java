@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.forward_chaining;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.forward_chaining.AbstractChase;
+import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
+import fr.lirmm.graphik.graal.api.forward_chaining.DeltaRuleApplier;
+import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.grd.DefaultGraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+/**
+ * This Chase executes a {@link ChasePlan}: each step runs one stage of the
+ * plan. The rules of a non recursive stage are applied once; a recursive
+ * stage is saturated in rounds, the first one applying all the rules of the
+ * stage and the next ones only the rules triggered by a rule which produced
+ * new atoms in the previous round. If the rule applier is a
+ * {@link DeltaRuleApplier}, these rules are evaluated in a semi-naive way,
+ * from the atoms added by the previous round.
+ */
+public class CompiledChase<T extends AtomSet> extends AbstractChase<Rule, T> {
+
+	private final ChasePlan plan;
+	private final T         atomSet;
+	private int             stage = 0;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public CompiledChase(ChasePlan plan, T atomSet, RuleApplier<Rule, ? super T> ruleApplier) {
+		super(ruleApplier);
+		this.plan = plan;
+		this.atomSet = atomSet;
+	}
+
+	public CompiledChase(ChasePlan plan, T atomSet) {
+		this(plan, atomSet, new RestrictedChaseRuleApplier<T>(new TriggerStore()));
+	}
+
+	public CompiledChase(GraphOfRuleDependencies grd, T atomSet) {
+		this(new ChasePlan(grd), atomSet);
+	}
+
+	public CompiledChase(Iterator<Rule> rules, T atomSet) {
+		this(new DefaultGraphOfRuleDependencies(rules), atomSet);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void next() throws ChaseException {
+		ChasePlan.Stage s = this.plan.getStage(this.stage++);
+		int nbRules = s.rules.size();
+
+		boolean[] active = new boolean[nbRules];
+		for (int i = 0; i < nbRules; ++i) {
+			active[i] = true;
+		}
+		InMemoryAtomSet delta = null;
+		boolean hasActiveRule = true;
+		while (hasActiveRule) {
+			List<Integer> applied = new ArrayList<Integer>(nbRules);
+			List<Callable<List<Atom>>> applications = new ArrayList<Callable<List<Atom>>>(nbRules);
+			for (int i = 0; i < nbRules; ++i) {
+				if (active[i]) {
+					applied.add(i);
+					applications.add(new Application(s.rules.get(i), delta));
+				}
+			}
+			List<List<Atom>> buffers = this.invokeAll(applications);
+
+			boolean[] nextActive = new boolean[nbRules];
+			hasActiveRule = false;
+			InMemoryAtomSet newAtoms = new DefaultInMemoryGraphStore();
+			try {
+				for (int k = 0; k < applied.size(); ++k) {
+					boolean produced = false;
+					for (Atom a : buffers.get(k)) {
+						if (!this.atomSet.contains(a) && newAtoms.add(a)) {
+							produced = true;
+						}
+					}
+					if (produced && s.triggered != null) {
+						for (int j : s.triggered[applied.get(k)]) {
+							nextActive[j] = true;
+							hasActiveRule = true;
+						}
+					}
+				}
+				this.atomSet.addAll(newAtoms.iterator());
+			} catch (Exception e) {
+				throw new ChaseException("An error occur pending saturation step.", e);
+			}
+			active = nextActive;
+			delta = newAtoms;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return this.stage < this.plan.size();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Collects the atoms produced by a rule application of the current round.
+	 */
+	private class Application implements Callable<List<Atom>> {
+
+		private final Rule            rule;
+		private final InMemoryAtomSet delta;
+
+		Application(Rule rule, InMemoryAtomSet delta) {
+			this.rule = rule;
+			this.delta = delta;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public List<Atom> call() throws Exception {
+			List<Atom> buffer = new LinkedList<Atom>();
+			RuleApplier<Rule, ? super T> applier = getRuleApplier();
+			CloseableIterator<Atom> it;
+			if (this.delta != null && applier instanceof DeltaRuleApplier) {
+				it = ((DeltaRuleApplier<Rule, ? super T>) applier).delegatedApplyOnDelta(this.rule, this.delta,
+				    atomSet, atomSet);
+			} else {
+				it = applier.delegatedApply(this.rule, atomSet);
+			}
+			try {
+				while (it.hasNext()) {
+					buffer.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+			return buffer;
+		}
+	}
+
+}
@@ -43,10 +43,12 @@
 package fr.lirmm.graphik.graal.forward_chaining;
 
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
@@ -55,13 +57,12 @@ import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
 import fr.lirmm.graphik.graal.api.core.Rule;
 import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.forward_chaining.AbstractChase;
-import fr.lirmm.graphik.graal.api.forward_chaining.Chase;
 import fr.lirmm.graphik.graal.api.forward_chaining.ChaseException;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplicationException;
 import fr.lirmm.graphik.graal.api.forward_chaining.RuleApplier;
 import fr.lirmm.graphik.graal.core.grd.DefaultGraphOfRuleDependencies;
-import fr.lirmm.graphik.graal.forward_chaining.rule_applier.DefaultRuleApplierWithCompilation;
 import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
 import fr.lirmm.graphik.util.graph.scc.StronglyConnectedComponentsGraph;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
 import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
@@ -72,7 +73,9 @@ import fr.lirmm.graphik.util.stream.IteratorException;
  * Components Graph (SCCG) of the Graph Of Rule Dependencies (GRD). It applies
  * rules layer by layer, indeed a rule from a layer of the SCCG can not trigger
  * a rule from a previous layer. <br/>
- * This chase is not breadth first.
+ * This chase is not breadth first. With a parallelism greater than 1, the
+ * SCCs of a layer, which do not depend on each other, are saturated
+ * concurrently.
  * 
  * @author Clément Sipieter (INRIA) {@literal <clement@6pi.fr>}
  *
@@ -107,7 +110,7 @@ public class SccChase<T extends AtomSet> extends AbstractChase<Rule, T> {
 	}
 
 	public SccChase(GraphOfRuleDependencies grd, T atomSet) {
-		this(grd, atomSet, new RestrictedChaseRuleApplier<T>());
+		this(grd, atomSet, new RestrictedChaseRuleApplier<T>(new TriggerStore()));
 	}
 
 	// ==
@@ -117,7 +120,7 @@ public class SccChase<T extends AtomSet> extends AbstractChase<Rule, T> {
 	}
 
 	public SccChase(Iterator<Rule> rules, T atomSet, RulesCompilation compilation) {
-		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, new DefaultRuleApplierWithCompilation<T>(compilation));
+		this(new DefaultGraphOfRuleDependencies(rules, compilation), atomSet, ChaseWithGRD.<T> compilationApplier(compilation));
 	}
 
 	// compute scc layer
@@ -150,6 +153,10 @@ public class SccChase<T extends AtomSet> extends AbstractChase<Rule, T> {
 	@Override
 	public void next() throws ChaseException {
 		++this.level;
+		if (this.getParallelism() > 1) {
+			this.saturateLayerConcurrently();
+			return;
+		}
 		tmpAtom = new LinkedList<Atom>();
 
 		for (Integer scc : layers[level]) {
@@ -169,7 +176,8 @@ public class SccChase<T extends AtomSet> extends AbstractChase<Rule, T> {
 					throw new ChaseException("", e);
 				}
 			} else {
-				Chase chase = new ChaseWithGRD<T>(subGraph, atomSet, this.getRuleApplier());
+				ChaseWithGRD<T> chase = new ChaseWithGRD<T>(subGraph, atomSet, this.getRuleApplier());
+				chase.shareParallelismWith(this);
 				chase.execute();
 			}
 		}
@@ -180,9 +188,92 @@ public class SccChase<T extends AtomSet> extends AbstractChase<Rule, T> {
 		}
 	}
 
+	/**
+	 * Saturates the SCCs of the current layer concurrently. They do not depend
+	 * on each other, so each one runs its own chase until its local fixpoint;
+	 * the atom set is only modified between two rounds, once all the chases
+	 * have done their step of the round.
+	 */
+	private void saturateLayerConcurrently() throws ChaseException {
+		List<Callable<Set<Atom>>> round = new LinkedList<Callable<Set<Atom>>>();
+		List<ChaseWithGRD<T>> chases = new LinkedList<ChaseWithGRD<T>>();
+		for (Integer scc : layers[level]) {
+			Set<Rule> component = this.sccg.getComponent(scc);
+			GraphOfRuleDependencies subGraph = this.grd.getSubGraph(component);
+
+			if (component.size() == 1 && !subGraph.hasCircuit()) {
+				round.add(new Application(component.iterator().next()));
+			} else {
+				ChaseWithGRD<T> chase = new ChaseWithGRD<T>(subGraph, atomSet, this.getRuleApplier());
+				chase.shareParallelismWith(this);
+				chases.add(chase);
+			}
+		}
+
+		while (!round.isEmpty() || !chases.isEmpty()) {
+			Iterator<ChaseWithGRD<T>> it = chases.iterator();
+			while (it.hasNext()) {
+				final ChaseWithGRD<T> chase = it.next();
+				if (chase.hasNext()) {
+					round.add(new Callable<Set<Atom>>() {
+						@Override
+						public Set<Atom> call() throws Exception {
+							return chase.computeStep();
+						}
+					});
+				} else {
+					it.remove();
+				}
+			}
+
+			Set<Atom> newAtoms = new LinkedHashSet<Atom>();
+			for (Set<Atom> atoms : this.invokeAll(round)) {
+				newAtoms.addAll(atoms);
+			}
+			round.clear();
+			try {
+				atomSet.addAll(new CloseableIteratorAdapter<Atom>(newAtoms.iterator()));
+			} catch (AtomSetException e) {
+				throw new ChaseException("", e);
+			}
+		}
+	}
+
 	@Override
 	public boolean hasNext() {
 		return this.level < this.levelmax;
 	}
 
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Collects the atoms produced by the application of a rule which is alone
+	 * in its SCC and does not depend on itself.
+	 */
+	private class Application implements Callable<Set<Atom>> {
+
+		private final Rule rule;
+
+		Application(Rule rule) {
+			this.rule = rule;
+		}
+
+		@Override
+		public Set<Atom> call() throws Exception {
+			Set<Atom> buffer = new LinkedHashSet<Atom>();
+			CloseableIterator<Atom> it = getRuleApplier().delegatedApply(this.rule, atomSet);
+			try {
+				while (it.hasNext()) {
+					buffer.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+			return buffer;
+		}
+	}
+
 }
@@ -88,4 +88,13 @@ public class StaticChase {
 		chase.next();
 	}
 
+	/**
+	 * Executes the specified plan, which can be compiled once from a GRD and
+	 * executed over several atom sets.
+	 */
+	public static void executeChase(AtomSet atomSet, ChasePlan plan) throws ChaseException {
+		Chase chase = new CompiledChase<AtomSet>(plan, atomSet);
+		chase.execute();
+	}
+
 }
@@ -289,4 +289,31 @@ public class ChaseWithGRDAndCompilationTest {
 		expected.addAll(DlgpParser.parseAtomSet("p(a,b,c),q(a,b,X),u(a,b,Y),q(b,a,Z),u(b,a,A)."));
 		checkResult(atoms, expected);
 	}
+
+	@Test
+	public void parallelCompilationWithACycle() throws Exception {
+		Ontology onto = new DefaultOntology();
+		InMemoryAtomSet atoms = new LinkedListAtomSet();
+
+		onto.add(DlgpParser.parseRule("q(X,Y,ZE) :- p(X,Y,Z)."));
+		
+		// Compilables{
+		onto.add(DlgpParser.parseRule("t(X,Y,Z) :- q(X,Y,Z)."));
+		onto.add(DlgpParser.parseRule("s(X,Y,Z) :- t(X,Y,Z)."));
+		onto.add(DlgpParser.parseRule("p(Y,X,Z) :- s(X,Y,Z)."));
+		// }
+		onto.add(DlgpParser.parseRule("u(X,Y,ZE) :- s(X,Y,Z)."));
+
+		atoms.add(DlgpParser.parseAtom("p(a,b,c)."));
+
+		IDCompilation compilation = new IDCompilation();
+		compilation.compile(onto.iterator());
+		ChaseWithGRD<AtomSet> GRDChase = new ChaseWithGRD<AtomSet>(onto.iterator(), atoms, compilation);
+		GRDChase.setParallelism(4);
+		GRDChase.execute();
+
+		InMemoryAtomSet expected = new LinkedListAtomSet();
+		expected.addAll(DlgpParser.parseAtomSet("p(a,b,c),q(a,b,X),u(a,b,Y),q(b,a,Z),u(b,a,A)."));
+		checkResult(atoms, expected);
+	}
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.grd;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.io.ParseException;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.forward_chaining.ChasePlan;
+import fr.lirmm.graphik.graal.forward_chaining.CompiledChase;
+import fr.lirmm.graphik.graal.forward_chaining.SccChase;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+
+public class CompiledChaseTest {
+
+	private static LinkedListRuleSet rules() throws ParseException {
+		LinkedListRuleSet rules = new LinkedListRuleSet();
+		for (Rule r : new Rule[] { DlgpParser.parseRule("q(X,Y) :- p(X,Y)."),
+		                           DlgpParser.parseRule("q(X,Z) :- q(X,Y), q(Y,Z)."),
+		                           DlgpParser.parseRule("r(X,U) :- q(X,Y)."),
+		                           DlgpParser.parseRule("s(X,Y) :- r(X,Y)."),
+		                           DlgpParser.parseRule("r(Y,X) :- s(X,Y).") }) {
+			rules.add(r);
+		}
+		return rules;
+	}
+
+	@Test
+	public void plan() throws Exception {
+		ChasePlan plan = new ChasePlan(new DefaultGraphOfRuleDependencies(rules().iterator()));
+
+		Assert.assertEquals(4, plan.size());
+		Assert.assertFalse(plan.isRecursive(0));
+		Assert.assertTrue(plan.isRecursive(1));
+		Assert.assertFalse(plan.isRecursive(2));
+		Assert.assertTrue(plan.isRecursive(3));
+		Assert.assertEquals(2, plan.getRules(3).size());
+	}
+
+	@Test
+	public void sameResultAsSccChase() throws Exception {
+		ChasePlan plan = new ChasePlan(new DefaultGraphOfRuleDependencies(rules().iterator()));
+		int[] expected = null;
+		for (boolean compiled : new boolean[] { false, true }) {
+			// Given
+			DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+			for (int i = 0; i < 8; ++i) {
+				store.add(DlgpParser.parseAtom("p(a" + i + ",a" + (i + 1) + ")."));
+			}
+
+			// When
+			if (compiled) {
+				new CompiledChase<AtomSet>(plan, store).execute();
+			} else {
+				new SccChase<AtomSet>(rules().iterator(), store).execute();
+			}
+
+			// Then
+			int[] sizes = new int[] { store.size(new Predicate("q", 2)), store.size(new Predicate("r", 2)),
+			                          store.size(new Predicate("s", 2)) };
+			if (expected == null) {
+				expected = sizes;
+			} else {
+				Assert.assertArrayEquals(expected, sizes);
+			}
+		}
+		Assert.assertEquals(36, expected[0]);
+	}
+
+}
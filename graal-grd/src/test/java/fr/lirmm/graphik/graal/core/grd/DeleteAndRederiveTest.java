@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.core.grd;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
+import fr.lirmm.graphik.graal.forward_chaining.ChaseWithGRD;
+import fr.lirmm.graphik.graal.forward_chaining.DeleteAndRederive;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+public class DeleteAndRederiveTest {
+
+	@Test
+	public void transitiveClosure() throws Exception {
+		// Given
+		GraphOfRuleDependencies grd = grd("p(X,Z) :- p(X,Y), p(Y,Z).");
+		InMemoryAtomSet explicit = new DefaultInMemoryGraphStore();
+		explicit.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,d), p(a,c)."));
+		DefaultInMemoryGraphStore store = saturate(grd, explicit);
+		Assert.assertEquals(6, store.size());
+
+		// When
+		new DeleteAndRederive(grd, store, explicit).remove(DlgpParser.parseAtomSet("p(b,c)."));
+
+		// Then
+		Assert.assertEquals(atoms(saturate(grd, explicit)), atoms(store));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("p(a,d).")));
+		Assert.assertFalse(store.contains(DlgpParser.parseAtom("p(b,d).")));
+	}
+
+	@Test
+	public void existentialConsequences() throws Exception {
+		// Given
+		GraphOfRuleDependencies grd = grd("r(X,Y) :- q(X). s(X) :- r(X,Y).");
+		InMemoryAtomSet explicit = new DefaultInMemoryGraphStore();
+		explicit.addAll(DlgpParser.parseAtomSet("q(a), r(b,c)."));
+		DefaultInMemoryGraphStore store = saturate(grd, explicit);
+
+		// When
+		new DeleteAndRederive(grd, store, explicit).remove(DlgpParser.parseAtomSet("q(a)."));
+
+		// Then
+		Assert.assertEquals(2, store.size());
+		Assert.assertEquals(0, store.size(new Predicate("q", 1)));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("r(b,c).")));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("s(b).")));
+	}
+
+	@Test
+	public void repairTriggers() throws Exception {
+		// Given
+		GraphOfRuleDependencies grd = grd("r(X,Y) :- q(X). s(X) :- r(X,Y).");
+		InMemoryAtomSet explicit = new DefaultInMemoryGraphStore();
+		explicit.addAll(DlgpParser.parseAtomSet("q(a), r(a,b)."));
+		DefaultInMemoryGraphStore store = saturate(grd, explicit);
+		Assert.assertEquals(3, store.size());
+
+		// When
+		new DeleteAndRederive(grd, store, explicit).remove(DlgpParser.parseAtomSet("r(a,b)."));
+
+		// Then
+		Assert.assertFalse(store.contains(DlgpParser.parseAtom("r(a,b).")));
+		Assert.assertEquals(1, store.size(new Predicate("r", 2)));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("s(a).")));
+	}
+
+	@Test
+	public void repairWithTriggerStore() throws Exception {
+		// Given
+		GraphOfRuleDependencies grd = grd("r(X,Y) :- q(X). s(X) :- r(X,Y).");
+		InMemoryAtomSet explicit = new DefaultInMemoryGraphStore();
+		explicit.addAll(DlgpParser.parseAtomSet("q(a), q(b), r(a,c)."));
+		TriggerStore triggers = new TriggerStore();
+		RestrictedChaseRuleApplier<AtomSet> applier = new RestrictedChaseRuleApplier<AtomSet>(triggers);
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(explicit);
+		new ChaseWithGRD<AtomSet>(grd, store, applier).execute();
+		Assert.assertEquals(6, store.size());
+
+		// When
+		new DeleteAndRederive(grd, store, explicit, applier, triggers).remove(DlgpParser.parseAtomSet("r(a,c)."));
+
+		// Then
+		Assert.assertFalse(store.contains(DlgpParser.parseAtom("r(a,c).")));
+		Assert.assertEquals(2, store.size(new Predicate("r", 2)));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("s(a).")));
+		Assert.assertTrue(store.contains(DlgpParser.parseAtom("s(b).")));
+	}
+
+	private static GraphOfRuleDependencies grd(String rules) throws Exception {
+		LinkedListRuleSet ruleSet = new LinkedListRuleSet();
+		DlgpParser parser = new DlgpParser(rules);
+		while (parser.hasNext()) {
+			ruleSet.add((Rule) parser.next());
+		}
+		parser.close();
+		return new DefaultGraphOfRuleDependencies(ruleSet);
+	}
+
+	private static DefaultInMemoryGraphStore saturate(GraphOfRuleDependencies grd, InMemoryAtomSet facts)
+	    throws Exception {
+		DefaultInMemoryGraphStore store = new DefaultInMemoryGraphStore();
+		store.addAll(facts);
+		new ChaseWithGRD<DefaultInMemoryGraphStore>(grd, store).execute();
+		return store;
+	}
+
+	private static Set<Atom> atoms(InMemoryAtomSet atomSet) {
+		Set<Atom> set = new HashSet<Atom>();
+		CloseableIteratorWithoutException<Atom> it = atomSet.iterator();
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		return set;
+	}
+
+}
@@ -288,4 +288,37 @@ public class SccChaseWithCompilationTest {
 		expected.addAll(DlgpParser.parseAtomSet("p(a,b,c),q(a,b,X),u(a,b,Y),q(b,a,Z),u(b,a,A)."));
 		checkResult(atoms, expected);
 	}
+
+	@Test
+	public void parallelIndependentComponents() throws Exception {
+		Ontology onto = new DefaultOntology();
+		InMemoryAtomSet atoms = new LinkedListAtomSet();
+
+		onto.add(DlgpParser.parseRule("q(X,Y,ZE) :- p(X,Y,Z)."));
+
+		// Compilables{
+		onto.add(DlgpParser.parseRule("t(X,Y,Z) :- q(X,Y,Z)."));
+		onto.add(DlgpParser.parseRule("s(X,Y,Z) :- t(X,Y,Z)."));
+		onto.add(DlgpParser.parseRule("p(Y,X,Z) :- s(X,Y,Z)."));
+		// }
+		onto.add(DlgpParser.parseRule("u(X,Y,ZE) :- s(X,Y,Z)."));
+
+		// an independent component of the same layer
+		onto.add(DlgpParser.parseRule("v(Y,X) :- v(X,Y), o(X)."));
+		onto.add(DlgpParser.parseRule("o(Y) :- v(X,Y), o(X)."));
+
+		atoms.add(DlgpParser.parseAtom("p(a,b,c)."));
+		atoms.addAll(DlgpParser.parseAtomSet("v(c,d), o(c)."));
+
+		IDCompilation compilation = new IDCompilation();
+		compilation.compile(onto.iterator());
+		SccChase<AtomSet> chase = new SccChase<AtomSet>(onto.iterator(), atoms, compilation);
+		chase.setParallelism(4);
+		chase.execute();
+
+		InMemoryAtomSet expected = new LinkedListAtomSet();
+		expected.addAll(DlgpParser.parseAtomSet(
+		    "p(a,b,c),q(a,b,X),u(a,b,Y),q(b,a,Z),u(b,a,A),v(c,d),v(d,c),o(c),o(d)."));
+		checkResult(atoms, expected);
+	}
 }
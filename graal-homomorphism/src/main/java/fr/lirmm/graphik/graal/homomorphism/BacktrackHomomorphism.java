@@ -43,16 +43,26 @@
 package fr.lirmm.graphik.graal.homomorphism;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
 import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismWithCompilation;
+import fr.lirmm.graphik.graal.api.store.Store;
+import fr.lirmm.graphik.graal.core.Substitutions;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
 import fr.lirmm.graphik.graal.homomorphism.backjumping.BackJumping;
 import fr.lirmm.graphik.graal.homomorphism.backjumping.GraphBaseBackJumping;
 import fr.lirmm.graphik.graal.homomorphism.bbc.BCC;
@@ -66,6 +76,7 @@ import fr.lirmm.graphik.graal.homomorphism.utils.EqualityHandlerConverter;
 import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
 import fr.lirmm.graphik.util.profiler.Profilable;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 import fr.lirmm.graphik.util.stream.converter.ConverterCloseableIterator;
 
 /**
@@ -87,6 +98,10 @@ public class BacktrackHomomorphism extends AbstractHomomorphismWithCompilation<C
 	private ForwardChecking fc;
 	private BackJumping     bj;
 
+	private int             parallelism = 1;
+	private ForkJoinPool    pool = null;
+	private boolean         reuseAnswers = false;
+
 	/**
 	 * Constructs an instance with {@link BCC}, {@link StarBootstrapper},
 	 * {@link NFC2} and {@link GraphBaseBackJumping}.
@@ -347,6 +362,58 @@ public class BacktrackHomomorphism extends AbstractHomomorphismWithCompilation<C
 		this.bootstrapper = bs;
 	}
 
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the number of threads used to evaluate a query. With more than one
+	 * thread, the candidates of the first scheduled variable are split among
+	 * workers which backtrack concurrently; the answers are then returned in no
+	 * particular order. Each worker uses a copy of the configured
+	 * forward-checking and back-jumping; if one of them can not be copied, the
+	 * evaluation is sequential. The evaluations of this instance share one pool
+	 * of threads.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 (the default) means sequential
+	 *            evaluation.
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+		}
+		if (parallelism != this.parallelism) {
+			if (this.pool != null) {
+				// the running evaluations complete
+				this.pool.shutdown();
+			}
+			this.pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	/**
+	 * If enabled, the iterators returned by this instance write each answer
+	 * into the same substitution, which is only valid until the following call
+	 * to hasNext() or next(). This avoids an allocation per answer for
+	 * consumers which copy what they keep, or only read the answers. It has no
+	 * effect with a parallelism greater than 1.
+	 * 
+	 * @param reuseAnswers
+	 */
+	public void setReuseAnswers(boolean reuseAnswers) {
+		this.reuseAnswers = reuseAnswers;
+	}
+
+	public boolean isReuseAnswers() {
+		return this.reuseAnswers;
+	}
+
 	// /////////////////////////////////////////////////////////////////////////
 	// HOMOMORPHISM METHODS
 	// /////////////////////////////////////////////////////////////////////////
@@ -356,9 +423,22 @@ public class BacktrackHomomorphism extends AbstractHomomorphismWithCompilation<C
 	    RulesCompilation compilation, Substitution s) throws HomomorphismException {
 		Pair<ConjunctiveQuery, Substitution> pair = EqualityUtils.processEquality(q);
 
-		CloseableIterator<Substitution> results = new BacktrackIterator(pair.getLeft().getAtomSet(), Collections.<InMemoryAtomSet>emptyList(), a, pair.getLeft().getAnswerVariables(),
-		                                                            this.scheduler, this.bootstrapper, this.fc,
-		                                                            this.bj, compilation, s, this.getProfiler());
+		CloseableIterator<Substitution> results;
+		ForkJoinPool pool = this.pool;
+		if (pool != null && this.fc.copy() != null && this.bj.copy() != null) {
+			BacktrackIteratorData data = new BacktrackIteratorData(pair.getLeft().getAtomSet(), s.getTerms(),
+			                                                       Collections.<InMemoryAtomSet>emptyList(), a,
+			                                                       pair.getLeft().getAnswerVariables(), this.scheduler,
+			                                                       this.bootstrapper, this.fc, this.bj, compilation,
+			                                                       this.getProfiler());
+			results = new ParallelBacktrackIterator(data, s, pool);
+		} else {
+			BacktrackIterator it = new BacktrackIterator(pair.getLeft().getAtomSet(), Collections.<InMemoryAtomSet>emptyList(), a, pair.getLeft().getAnswerVariables(),
+			                                             this.scheduler, this.bootstrapper, this.fc,
+			                                             this.bj, compilation, s, this.getProfiler());
+			it.setReuseAnswers(this.reuseAnswers);
+			results = it;
+		}
 		
 		if(!pair.getRight().getTerms().isEmpty()) {
 			results =  new ConverterCloseableIterator<Substitution, Substitution>(results, new EqualityHandlerConverter(pair.getRight()));
@@ -366,4 +446,86 @@ public class BacktrackHomomorphism extends AbstractHomomorphismWithCompilation<C
 		return results;
 	}
 
+	/**
+	 * Counts the different answers without building them. The answer variables
+	 * are scheduled first, so the levels which do not bind an answer variable
+	 * are explored once per answer, until a first witness is found, whatever
+	 * the number of their own solutions. The forward checking and the
+	 * backjumping of this instance depend on its scheduler, so fresh
+	 * {@link NFC2} and {@link GraphBaseBackJumping} are used.
+	 */
+	@Override
+	public long count(ConjunctiveQuery q, AtomSet a) throws HomomorphismException {
+		ConjunctiveQuery query = EqualityUtils.processEquality(q).getLeft();
+		BacktrackIterator it = new BacktrackIterator(query.getAtomSet(), Collections.<InMemoryAtomSet>emptyList(), a,
+		                                             query.getAnswerVariables(), DefaultScheduler.instance(),
+		                                             this.bootstrapper, new NFC2(), new GraphBaseBackJumping(),
+		                                             NoCompilation.instance(), Substitutions.emptySubstitution(),
+		                                             this.getProfiler());
+		try {
+			return it.count();
+		} catch (BacktrackException e) {
+			throw new HomomorphismException("Error while counting answers", e);
+		} finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * Estimates the number of answers from the statistics of the {@link Store}
+	 * without evaluating the query: the product of the sizes of the atom
+	 * predicates, divided for each constant by the number of different terms at
+	 * its position, and for each variable by the numbers of different terms at
+	 * its positions but the smallest one. The estimation is bounded by the
+	 * product of the smallest domains of the answer variables. If the data is
+	 * not a {@link Store}, the exact count is returned.
+	 */
+	@Override
+	public long estimateCount(ConjunctiveQuery q, AtomSet a) throws HomomorphismException {
+		if (!(a instanceof Store)) {
+			return this.count(q, a);
+		}
+		Store store = (Store) a;
+		double estimation = 1.;
+		Map<Variable, double[]> domains = new HashMap<Variable, double[]>();
+		CloseableIteratorWithoutException<Atom> it = q.getAtomSet().iterator();
+		while (it.hasNext()) {
+			Atom atom = it.next();
+			Predicate p = atom.getPredicate();
+			estimation *= store.size(p);
+			int i = 0;
+			for (Term t : atom) {
+				double domainSize = Math.max(1, store.getDomainSize(p, i));
+				if (t.isVariable()) {
+					// {product, min} of the domain sizes of each variable
+					double[] d = domains.get(t);
+					if (d == null) {
+						domains.put((Variable) t, new double[] { domainSize, domainSize });
+					} else {
+						d[0] *= domainSize;
+						d[1] = Math.min(d[1], domainSize);
+					}
+				} else {
+					estimation /= domainSize;
+				}
+				++i;
+			}
+		}
+		if (estimation == 0.) {
+			return 0;
+		}
+
+		double bound = 1.;
+		for (double[] d : domains.values()) {
+			estimation /= d[0] / d[1];
+		}
+		for (Term t : q.getAnswerVariables()) {
+			double[] d = domains.get(t);
+			if (d != null) {
+				bound *= d[1];
+			}
+		}
+		return (long) Math.ceil(Math.min(estimation, bound));
+	}
+
 }
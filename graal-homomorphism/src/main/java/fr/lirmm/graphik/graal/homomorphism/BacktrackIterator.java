@@ -56,7 +56,7 @@ import fr.lirmm.graphik.graal.api.core.Term;
 import fr.lirmm.graphik.graal.api.core.Variable;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.PreparedExistentialHomomorphism;
-import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.Substitutions;
 import fr.lirmm.graphik.graal.homomorphism.backjumping.BackJumping;
 import fr.lirmm.graphik.graal.homomorphism.bootstrapper.Bootstrapper;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.ForwardChecking;
@@ -68,6 +68,7 @@ import fr.lirmm.graphik.util.profiler.Profilable;
 import fr.lirmm.graphik.util.profiler.Profiler;
 import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
 import fr.lirmm.graphik.util.stream.IteratorException;
 
 /**
@@ -82,6 +83,25 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 	private Substitution next = null;
 	
 	private Var vars[];
+	private ForwardChecking fc;
+	private BackJumping bj;
+
+	/*
+	 * restricts the candidates of the first variable, null if unrestricted.
+	 */
+	private Collection<Term> firstDomain;
+	private boolean isWorker;
+	/*
+	 * if true, the same substitution is returned for each answer.
+	 */
+	private boolean reuseAnswers = false;
+	private boolean countOnly = false;
+	private IndexedSubstitution answer = null;
+	/*
+	 * close() is also called by the finalizer, the data must be released once
+	 * since it may be in use by an other iterator afterwards.
+	 */
+	private volatile boolean isClosed = false;
 	
 	private int level;
 	private boolean goBack;
@@ -93,14 +113,47 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 	// /////////////////////////////////////////////////////////////////////////
 	
 	public BacktrackIterator(BacktrackIteratorData data, Substitution initialSubstitution) throws HomomorphismException {
-		
-		this.data = data;
-		synchronized (this.data) {
-			if(this.data.isOpen) {
+		synchronized (data) {
+			if(data.isOpen) {
 				throw new HomomorphismException("Prepared Homomorphism already in use");
 			}
-			this.data.isOpen = true;			
+			data.isOpen = true;			
 		}
+		this.init(data, initialSubstitution, data.fc, data.bj);
+		this.profiler = data.profiler;
+	}
+
+	/**
+	 * Constructs a worker iterator which explores only the specified candidates
+	 * of the first variable. The shared data are only read, the
+	 * forward-checking and back-jumping states are held by the specified
+	 * instances, so several workers can run concurrently on the same data.
+	 * 
+	 * @param data
+	 * @param initialSubstitution
+	 * @param fc
+	 *            a forward-checking instance owned by this worker.
+	 * @param bj
+	 *            a back-jumping instance owned by this worker.
+	 * @param firstDomain
+	 *            the candidates of the first variable to explore.
+	 */
+	BacktrackIterator(BacktrackIteratorData data, Substitution initialSubstitution, ForwardChecking fc,
+	    BackJumping bj, Collection<Term> firstDomain) {
+		fc.setBackJumping(bj);
+		fc.init(data.varsOrder, data.index);
+		bj.init(data.varsOrder);
+		this.init(data, initialSubstitution, fc, bj);
+		this.firstDomain = firstDomain;
+		this.isWorker = true;
+		this.profiler = NoProfiler.instance();
+	}
+
+	private void init(BacktrackIteratorData data, Substitution initialSubstitution, ForwardChecking fc,
+	    BackJumping bj) {
+		this.data = data;
+		this.fc = fc;
+		this.bj = bj;
 		this.vars = new Var[this.data.varsOrder.length];
 		for(int i = 0; i < vars.length; ++i) {
 			this.vars[i] = new Var(this.data.varsOrder[i]);
@@ -116,7 +169,6 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 				this.vars[i].postAtomsFixed.add(initialSubstitution.createImageOf(a));
 			}
 		}
-		this.profiler = data.profiler;
 		this.initialSubstitution = initialSubstitution;
 		
 		this.level = 0;
@@ -150,13 +202,18 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 
 	@Override
 	public boolean hasNext() throws IteratorException {
-		if (this.next == null) {
+		if (this.next == null && !this.isClosed) {
 			try {
 				this.next = computeNext();
 			} catch (BacktrackException e) {
 				this.next = null;
+				this.close();
 				throw new IteratorException("An errors occurs during backtrack iteration", e);
 			}
+			if (this.next == null) {
+				// release the data as soon as the iteration is finished
+				this.close();
+			}
 		}
 		return this.next != null;
 	}
@@ -173,12 +230,66 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 
 	@Override
 	public void close() {
+		synchronized (this.data) {
+			if (this.isClosed) {
+				return;
+			}
+			this.isClosed = true;
+		}
 		for (int i = 1; i < this.data.varsOrder.length; ++i) {
 			if (this.vars[i].domain != null) {
 				this.vars[i].domain.close();
 			}
 		}
-		this.data.isOpen = false;
+		if (!this.isWorker) {
+			// the data may be re-bound to an other initial substitution
+			synchronized (this.data) {
+				this.data.clear();
+				this.data.isOpen = false;
+				if (this.data.releaseData) {
+					this.data.data = null;
+					this.data.compilation = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * If enabled, each answer is written into the same substitution instance,
+	 * which is only valid until the following call to hasNext() or next(). The
+	 * consumer must copy the answers it keeps.
+	 * 
+	 * @param reuseAnswers
+	 */
+	void setReuseAnswers(boolean reuseAnswers) {
+		this.reuseAnswers = reuseAnswers;
+		this.answer = null;
+	}
+
+	/**
+	 * Counts the remaining answers without building them. As for the
+	 * iteration, the levels following the last answer variable are only
+	 * explored until a first witness is found, so the answers are different
+	 * when the answer variables are scheduled first.
+	 * 
+	 * @return the number of remaining answers.
+	 * @throws BacktrackException
+	 */
+	long count() throws BacktrackException {
+		long count = 0;
+		this.countOnly = true;
+		try {
+			if (this.next != null) {
+				this.next = null;
+				++count;
+			}
+			while (this.computeNext() != null) {
+				++count;
+			}
+		} finally {
+			this.countOnly = false;
+		}
+		return count;
 	}
 
 	// /////////////////////////////////////////////////////////////////////////
@@ -199,7 +310,7 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 				// check if the full instantiated atoms from the query are in data
 				if (BacktrackUtils.isHomomorphism(this.data.varsOrder[level].preAtoms, this.data.data, this.initialSubstitution, this.data.index, this.vars, this.data.compilation)) {
 					if (this.existNegParts()) {
-						this.data.bj.success();
+						this.bj.success();
 						backtrack(false);
 					} else {
 						++level;
@@ -214,8 +325,8 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 				profiler.incr("#calls", 1);
 
 				if (level > this.data.levelMax) { // Homomorphism found
-					Substitution sol = solutionFound(this.data.ans);
-					this.data.bj.success();
+					Substitution sol = (this.countOnly) ? Substitutions.emptySubstitution() : solutionFound();
+					this.bj.success();
 					backtrack(false);
 					if (profiler != null) {
 						profiler.stop("backtrackingTime");
@@ -262,7 +373,7 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 	 *            homomorphism).
 	 */
 	private void backtrack(boolean failure) {
-		int previousLevel = (failure) ? this.data.bj.previousLevel(currentVar().shared, this.vars) : currentVar().shared.previousLevel;
+		int previousLevel = (failure) ? this.bj.previousLevel(currentVar().shared, this.vars) : currentVar().shared.previousLevel;
 
 		this.goBack = true;
 		for (; level > previousLevel; --level) {
@@ -276,7 +387,7 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 		for (PreparedExistentialHomomorphism negPart : this.currentVar().shared.negatedPartsToCheck) {
 			try {
 				if (negPart.exist(s)) {
-					this.data.bj.success();
+					this.bj.success();
 					return true;
 				}
 			} catch (HomomorphismException e) {
@@ -286,35 +397,39 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 		return false;
 	}
 
-	private Substitution solutionFound(List<Term> ans) {
-		Substitution s = new HashMapSubstitution();
-		for (Term t : ans) {
-			if (t.isVariable()) {
-				Integer idx = this.data.index.get((Variable) t);
-				if (idx != null) {
-					Var v = this.vars[idx];
-					s.put(v.shared.value, v.image);
-				}
+	private Substitution solutionFound() {
+		IndexedSubstitution s = this.answer;
+		if (s == null) {
+			s = new IndexedSubstitution(this.data.index, this.data.variables);
+			if (this.reuseAnswers) {
+				this.answer = s;
 			}
+		} else {
+			s.clear();
+		}
+		for (int idx : this.data.ansLevels) {
+			s.set(idx, this.vars[idx].image);
 		}
 
 		return s;
 	}
-
 	private Substitution currentSubstitution(Var[] vars) {
-		Substitution s = new HashMapSubstitution();
+		IndexedSubstitution s = new IndexedSubstitution(this.data.index, this.data.variables);
 		for (int i = 1; i <= this.level; ++i) {
-			s.put(vars[i].shared.value, vars[i].image);
+			s.set(i, vars[i].image);
 		}
 		return s;
 	}
-
 	private boolean getFirstValue(Var var, AtomSet g) throws BacktrackException {
-		if (this.data.fc.isInit(this.level)) {
-			var.domain = this.data.fc.getCandidatsIterator(g, var, initialSubstitution, this.data.index, this.vars, this.data.compilation);
+		// preAtomsFixed are already images by the initial substitution
+		if (this.level == 1 && this.firstDomain != null) {
+			var.domain = new HomomorphismIteratorChecker(var, new CloseableIteratorAdapter<Term>(this.firstDomain.iterator()),
+					var.preAtomsFixed, g, Substitutions.emptySubstitution(), this.data.index, this.vars, this.data.compilation);
+		} else if (this.fc.isInit(this.level)) {
+			var.domain = this.fc.getCandidatsIterator(g, var, initialSubstitution, this.data.index, this.vars, this.data.compilation);
 		} else {
 			var.domain = new HomomorphismIteratorChecker(var, this.data.bootstrapper.exec(var.shared, var.preAtomsFixed, var.postAtomsFixed, g, this.data.compilation),
-					var.shared.preAtoms, g, initialSubstitution, this.data.index, this.vars, this.data.compilation);
+					var.preAtomsFixed, g, Substitutions.emptySubstitution(), this.data.index, this.vars, this.data.compilation);
 		}
 		return this.hasMoreValues(var, g);
 	}
@@ -323,10 +438,10 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 		try {
 			while (var.domain.hasNext()) {
 				// TODO explicit var.success
-				this.data.bj.level(var.shared.level);
+				this.bj.level(var.shared.level);
 				var.image = var.domain.next();
 
-				if (this.data.scheduler.isAllowed(var, var.image) && this.data.fc.checkForward(var, g, initialSubstitution, this.data.index, this.vars, this.data.compilation)
+				if (this.data.scheduler.isAllowed(var, var.image) && this.fc.checkForward(var, g, initialSubstitution, this.data.index, this.vars, this.data.compilation)
 						&& !this.existNegParts()) {
 					return true;
 				}
@@ -355,8 +470,8 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 		this.profiler = profiler;
 		this.data.bootstrapper.setProfiler(profiler);
 		this.data.scheduler.setProfiler(profiler);
-		this.data.fc.setProfiler(profiler);
-		this.data.bj.setProfiler(profiler);
+		this.fc.setProfiler(profiler);
+		this.bj.setProfiler(profiler);
 	}
 
 	@Override
@@ -384,8 +499,8 @@ class BacktrackIterator extends AbstractCloseableIterator<Substitution>
 			sb.append(s.substring(0, s.length() - 1)).append("->").append(v.image);
 			sb.append(v.shared.negatedPartsToCheck.isEmpty() ? "   " : " \u00AC ");
 			sb.append("\tFC{");
-			this.data.fc.append(sb, i).append("}");
-			this.data.bj.append(sb, i).append(" ");
+			this.fc.append(sb, i).append("}");
+			this.bj.append(sb, i).append(" ");
 			
 			sb.append(this.data.scheduler.getInfos(v));
 			sb.append("\n");
@@ -42,6 +42,7 @@
  */
 package fr.lirmm.graphik.graal.homomorphism;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -81,13 +82,31 @@ class BacktrackIteratorData {
 	RulesCompilation compilation;
 	VarSharedData[] varsOrder;
 	Map<Variable, Integer> index;
+	/*
+	 * the variable of each level and the levels of the answer variables, to
+	 * build answers without lookups in index.
+	 */
+	Variable[] variables;
+	int[] ansLevels;
 
 	int levelMax;
 	List<Term> ans;
 	Collection<InMemoryAtomSet> negParts;
 	Profiler profiler;
 	
+	/*
+	 * Only the fc and bj states are modified during the search, so this flag
+	 * guards their use. The other fields are read only once preprocessed,
+	 * workers holding their own fc and bj can share them.
+	 */
 	boolean isOpen = false;
+
+	/*
+	 * If set, the data and the compilation are released when the iterator
+	 * using them is closed, so a cached plan does not keep them alive between
+	 * two executions.
+	 */
+	boolean releaseData = false;
 	
 	public BacktrackIteratorData(InMemoryAtomSet query, Set<Variable> variablesToParameterize,
 			Collection<InMemoryAtomSet> negParts, AtomSet data, List<Term> ans, Scheduler scheduler,
@@ -128,11 +147,24 @@ class BacktrackIteratorData {
 
 		// Index Var structures by original variable object
 		this.index = new TreeMap<Variable, Integer>();
+		this.variables = new Variable[this.varsOrder.length];
 		for (VarSharedData v : this.varsOrder) {
 			if (v.value != null) { //
 				this.index.put(v.value, v.level);
+				this.variables[v.level] = v.value;
 			}
 		}
+		List<Integer> levels = new ArrayList<Integer>(this.ans.size());
+		for (Term t : this.ans) {
+			Integer level = t.isVariable() ? this.index.get(t) : null;
+			if (level != null && !levels.contains(level)) {
+				levels.add(level);
+			}
+		}
+		this.ansLevels = new int[levels.size()];
+		for (int i = 0; i < this.ansLevels.length; ++i) {
+			this.ansLevels[i] = levels.get(i);
+		}
 
 		if (this.ans.isEmpty()) {
 			this.varsOrder[this.levelMax + 1].previousLevel = -1;
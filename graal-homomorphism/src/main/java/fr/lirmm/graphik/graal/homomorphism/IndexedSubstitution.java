@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.AbstractSubstitution;
+
+/**
+ * A substitution over the variables of a prepared query, whose images are
+ * stored in an array indexed by the level of each variable (see
+ * {@link BacktrackIteratorData#index}). Building an answer is then a single
+ * array allocation instead of one map entry per variable. Variables which are
+ * not in the index are stored in a map created on demand.
+ */
+class IndexedSubstitution extends AbstractSubstitution {
+
+	private final Map<Variable, Integer> index;
+	private final Variable[]             variables;
+	private final Term[]                 images;
+	private Map<Variable, Term>          others;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param index
+	 *            the level of each indexed variable.
+	 * @param variables
+	 *            the variable of each level, null for levels without variable.
+	 */
+	IndexedSubstitution(Map<Variable, Integer> index, Variable[] variables) {
+		this.index = index;
+		this.variables = variables;
+		this.images = new Term[variables.length];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PACKAGE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the image of the variable of the specified level, without any
+	 * check.
+	 */
+	void set(int level, Term image) {
+		this.images[level] = image;
+	}
+
+	/**
+	 * Removes all images, so that this instance can be reused for another
+	 * answer.
+	 */
+	void clear() {
+		Arrays.fill(this.images, null);
+		this.others = null;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Set<Variable> getTerms() {
+		Set<Variable> terms = new LinkedHashSet<Variable>();
+		for (int i = 0; i < this.images.length; ++i) {
+			if (this.images[i] != null) {
+				terms.add(this.variables[i]);
+			}
+		}
+		if (this.others != null) {
+			terms.addAll(this.others.keySet());
+		}
+		return terms;
+	}
+
+	@Override
+	public Set<Term> getValues() {
+		Set<Term> values = new HashSet<Term>();
+		for (Term t : this.images) {
+			if (t != null) {
+				values.add(t);
+			}
+		}
+		if (this.others != null) {
+			values.addAll(this.others.values());
+		}
+		return values;
+	}
+
+	@Override
+	public Term createImageOf(Term term) {
+		Term image = this.get(term);
+		return (image == null) ? term : image;
+	}
+
+	@Override
+	public boolean put(Variable var, Term image) {
+		Term actual = this.get(var);
+		if (actual != null && !actual.equals(image)) {
+			return false;
+		}
+		this.set(var, image);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Variable var) {
+		Integer i = this.index.get(var);
+		if (i != null) {
+			Term old = this.images[i];
+			this.images[i] = null;
+			return old != null;
+		}
+		return this.others != null && this.others.remove(var) != null;
+	}
+
+	@Override
+	public boolean aggregate(Variable var, Term image) {
+		Term varImage = this.createImageOf(var);
+		Term imageImage = this.createImageOf(image);
+
+		if (!varImage.equals(imageImage)) {
+			if (varImage.isConstant()) {
+				if (imageImage.isConstant()) {
+					return imageImage.equals(varImage);
+				} else {
+					Term tmp = varImage;
+					varImage = imageImage;
+					imageImage = tmp;
+				}
+			}
+
+			for (Variable t : this.getTerms()) {
+				if (varImage.equals(this.createImageOf(t)) && !t.equals(imageImage)) {
+					this.set(t, imageImage);
+				}
+			}
+			this.set((Variable) varImage, imageImage);
+		}
+		return true;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// OBJECT METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/*
+	 * Same hash as the map based substitutions, so that both can be mixed in
+	 * hash based collections.
+	 */
+	@Override
+	public int hashCode() {
+		int result = 1;
+		for (int i = 0; i < this.images.length; ++i) {
+			if (this.images[i] != null) {
+				result += hash(this.variables[i], this.images[i]);
+			}
+		}
+		if (this.others != null) {
+			for (Map.Entry<Variable, Term> e : this.others.entrySet()) {
+				result += hash(e.getKey(), e.getValue());
+			}
+		}
+		return result;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private Term get(Term term) {
+		if (!term.isVariable()) {
+			return null;
+		}
+		Integer i = this.index.get(term);
+		if (i != null) {
+			return this.images[i];
+		}
+		return (this.others == null) ? null : this.others.get(term);
+	}
+
+	private void set(Variable var, Term image) {
+		Integer i = this.index.get(var);
+		if (i != null) {
+			this.images[i] = image;
+		} else {
+			if (this.others == null) {
+				this.others = new HashMap<Variable, Term>();
+			}
+			this.others.put(var, image);
+		}
+	}
+
+	private static int hash(Variable var, Term image) {
+		int a = 31 * var.hashCode();
+		int b = 67 * image.hashCode();
+		return a + b + (a * b);
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityHandlerConverter;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
+import fr.lirmm.graphik.util.stream.converter.ConverterCloseableIterator;
+
+/**
+ * Worst-case optimal join evaluation of conjunctive queries based on the
+ * Leapfrog Triejoin algorithm (Veldhuizen, ICDT 2014). The matches of each
+ * atom are loaded into a sorted trie, so the intermediate work is bounded by
+ * the worst-case output size of the query. It is well suited to cyclic queries
+ * (triangles, cycles, cliques...) on in memory data, where backtracking
+ * variable by variable may explore many dead ends.
+ *
+ * Each answer is produced once, whatever the number of witnesses for the
+ * existential variables. Existence checks are delegated to
+ * {@link BacktrackHomomorphism}, which stops at the first witness instead of
+ * loading all the matches of each atom.
+ */
+public class LeapfrogTriejoinHomomorphism extends AbstractHomomorphism<ConjunctiveQuery, AtomSet>
+                                          implements Homomorphism<ConjunctiveQuery, AtomSet> {
+
+	private static final LeapfrogTriejoinHomomorphism INSTANCE = new LeapfrogTriejoinHomomorphism();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static LeapfrogTriejoinHomomorphism instance() {
+		return INSTANCE;
+	}
+
+	private LeapfrogTriejoinHomomorphism() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// HOMOMORPHISM METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public CloseableIterator<Substitution> execute(ConjunctiveQuery q, AtomSet a, Substitution s)
+	    throws HomomorphismException {
+		Pair<ConjunctiveQuery, Substitution> pair = EqualityUtils.processEquality(q);
+		CloseableIterator<Substitution> results;
+		try {
+			results = new LeapfrogTriejoinIterator(pair.getLeft().getAtomSet(), pair.getLeft().getAnswerVariables(),
+			                                       a, s);
+		} catch (AtomSetException e) {
+			throw new HomomorphismException("Error while loading data", e);
+		} catch (IteratorException e) {
+			throw new HomomorphismException("Error while loading data", e);
+		}
+
+		if (!pair.getRight().getTerms().isEmpty()) {
+			results = new ConverterCloseableIterator<Substitution, Substitution>(results,
+			    new EqualityHandlerConverter(pair.getRight()));
+		}
+		return results;
+	}
+
+	@Override
+	public boolean exist(ConjunctiveQuery q, AtomSet a) throws HomomorphismException {
+		return new BacktrackHomomorphism().exist(q, a);
+	}
+
+	@Override
+	public boolean exist(ConjunctiveQuery q, AtomSet a, Substitution s) throws HomomorphismException {
+		return new BacktrackHomomorphism().exist(q, a, s);
+	}
+
+}
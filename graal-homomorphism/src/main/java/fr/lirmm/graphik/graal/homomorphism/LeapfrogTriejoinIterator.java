@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Leapfrog Triejoin evaluation of a conjunctive query. Terms are encoded into
+ * ints, the matches of each query atom are projected on its variables and
+ * sorted according to a global variable order, then the variables are bound
+ * one at a time by intersecting the sorted keys of all atoms containing the
+ * current variable.
+ *
+ * Answer variables come first in the variable order: once they are all bound,
+ * a single witness is looked for the remaining variables, so each answer is
+ * produced exactly once.
+ */
+class LeapfrogTriejoinIterator extends AbstractCloseableIterator<Substitution>
+		implements CloseableIteratorWithoutException<Substitution> {
+
+	private static final int NOT_STARTED = -1;
+	private static final int DONE = -2;
+
+	private final Variable[] vars;
+	private final int nbAnswerVars;
+	private final List<Term> dictionary = new ArrayList<Term>();
+
+	private final TrieIterator[][] iterators;
+	private final int[] p;
+	private final boolean[] atEnd;
+	private final int[] values;
+
+	private boolean empty = false;
+	private int depth = NOT_STARTED;
+	private Substitution next = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public LeapfrogTriejoinIterator(InMemoryAtomSet query, List<Term> ans, AtomSet data, Substitution s)
+	    throws AtomSetException, IteratorException {
+		Set<Variable> frozen = s.getTerms();
+		this.vars = computeVarsOrder(query, ans, frozen);
+		int n = 0;
+		for (Variable v : this.vars) {
+			if (ans.contains(v)) {
+				++n;
+			}
+		}
+		this.nbAnswerVars = n;
+
+		Map<Variable, Integer> index = new HashMap<Variable, Integer>();
+		for (int i = 0; i < this.vars.length; ++i) {
+			index.put(this.vars[i], i);
+		}
+
+		List<List<TrieIterator>> participants = new ArrayList<List<TrieIterator>>(this.vars.length);
+		for (int i = 0; i < this.vars.length; ++i) {
+			participants.add(new LinkedList<TrieIterator>());
+		}
+
+		Map<Term, Integer> ids = new HashMap<Term, Integer>();
+		CloseableIteratorWithoutException<Atom> it = query.iterator();
+		while (!this.empty && it.hasNext()) {
+			Atom atom = it.next();
+			int[] atomVars = this.atomVars(atom, frozen, index);
+			TrieIterator trie = this.buildTrie(atom, atomVars, index, data, s, ids);
+			if (trie == null) {
+				this.empty = true;
+			} else {
+				for (int v : atomVars) {
+					participants.get(v).add(trie);
+				}
+			}
+		}
+		it.close();
+
+		this.iterators = new TrieIterator[this.vars.length][];
+		for (int i = 0; i < this.vars.length; ++i) {
+			this.iterators[i] = participants.get(i).toArray(new TrieIterator[participants.get(i).size()]);
+		}
+		this.p = new int[this.vars.length];
+		this.atEnd = new boolean[this.vars.length];
+		this.values = new int[this.vars.length];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CLOSEABLE ITERATOR METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() {
+		if (this.next == null && this.computeNext()) {
+			Substitution s = new HashMapSubstitution();
+			for (int i = 0; i < this.nbAnswerVars; ++i) {
+				s.put(this.vars[i], this.dictionary.get(this.values[i]));
+			}
+			this.next = s;
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Substitution next() {
+		Substitution tmp = null;
+		if (this.hasNext()) {
+			tmp = this.next;
+			this.next = null;
+		}
+		return tmp;
+	}
+
+	@Override
+	public void close() {
+		this.depth = DONE;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// LEAPFROG TRIEJOIN
+	// /////////////////////////////////////////////////////////////////////////
+
+	private boolean computeNext() {
+		if (this.depth == DONE) {
+			return false;
+		} else if (this.depth == NOT_STARTED) {
+			if (this.empty) {
+				this.depth = DONE;
+				return false;
+			}
+			if (this.vars.length == 0) {
+				this.depth = DONE;
+				return true;
+			}
+			this.depth = 0;
+			this.open(0);
+		} else {
+			// an answer was found at the last level
+			if (this.nbAnswerVars == 0) {
+				this.depth = DONE;
+				return false;
+			}
+			while (this.depth >= this.nbAnswerVars) {
+				this.up(this.depth--);
+			}
+			this.leapfrogNext(this.depth);
+		}
+
+		while (true) {
+			if (this.atEnd[this.depth]) {
+				this.up(this.depth);
+				if (this.depth == 0) {
+					this.depth = DONE;
+					return false;
+				}
+				--this.depth;
+				this.leapfrogNext(this.depth);
+			} else if (this.depth == this.vars.length - 1) {
+				this.values[this.depth] = this.iterators[this.depth][this.p[this.depth]].key();
+				return true;
+			} else {
+				this.values[this.depth] = this.iterators[this.depth][this.p[this.depth]].key();
+				++this.depth;
+				this.open(this.depth);
+			}
+		}
+	}
+
+	private void open(int d) {
+		TrieIterator[] its = this.iterators[d];
+		for (TrieIterator it : its) {
+			it.open();
+		}
+		this.atEnd[d] = false;
+		for (TrieIterator it : its) {
+			if (it.atEnd()) {
+				this.atEnd[d] = true;
+				return;
+			}
+		}
+		// insertion sort by key, there are few iterators per variable
+		for (int i = 1; i < its.length; ++i) {
+			TrieIterator tmp = its[i];
+			int j = i - 1;
+			while (j >= 0 && its[j].key() > tmp.key()) {
+				its[j + 1] = its[j];
+				--j;
+			}
+			its[j + 1] = tmp;
+		}
+		this.p[d] = 0;
+		this.leapfrogSearch(d);
+	}
+
+	private void up(int d) {
+		for (TrieIterator it : this.iterators[d]) {
+			it.up();
+		}
+	}
+
+	private void leapfrogSearch(int d) {
+		TrieIterator[] its = this.iterators[d];
+		int k = its.length;
+		int max = its[(this.p[d] + k - 1) % k].key();
+		while (true) {
+			TrieIterator it = its[this.p[d]];
+			if (it.key() == max) {
+				return;
+			}
+			it.seek(max);
+			if (it.atEnd()) {
+				this.atEnd[d] = true;
+				return;
+			}
+			max = it.key();
+			this.p[d] = (this.p[d] + 1) % k;
+		}
+	}
+
+	private void leapfrogNext(int d) {
+		TrieIterator it = this.iterators[d][this.p[d]];
+		it.next();
+		if (it.atEnd()) {
+			this.atEnd[d] = true;
+		} else {
+			this.p[d] = (this.p[d] + 1) % this.iterators[d].length;
+			this.leapfrogSearch(d);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PREPROCESSING
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Answer variables first, then greedily the variable occurring in the
+	 * largest number of atoms, preferring variables connected to the ones
+	 * already ordered.
+	 */
+	private static Variable[] computeVarsOrder(InMemoryAtomSet query, List<Term> ans, Set<Variable> frozen) {
+		final Map<Variable, Integer> occurrences = new HashMap<Variable, Integer>();
+		List<Set<Variable>> atoms = new LinkedList<Set<Variable>>();
+		CloseableIteratorWithoutException<Atom> it = query.iterator();
+		while (it.hasNext()) {
+			Set<Variable> atomVars = it.next().getVariables();
+			atomVars.removeAll(frozen);
+			atoms.add(atomVars);
+			for (Variable v : atomVars) {
+				Integer n = occurrences.get(v);
+				occurrences.put(v, (n == null) ? 1 : n + 1);
+			}
+		}
+		it.close();
+
+		List<Variable> order = new ArrayList<Variable>(occurrences.size());
+		List<Variable> remaining = new LinkedList<Variable>(occurrences.keySet());
+		while (!remaining.isEmpty()) {
+			Variable best = null;
+			int[] bestScore = null;
+			for (Variable v : remaining) {
+				int[] score = { ans.contains(v) ? 1 : 0, isConnected(v, atoms, order) ? 1 : 0, occurrences.get(v) };
+				if (bestScore == null || compare(score, bestScore) > 0) {
+					bestScore = score;
+					best = v;
+				}
+			}
+			remaining.remove(best);
+			order.add(best);
+		}
+		return order.toArray(new Variable[order.size()]);
+	}
+
+	private static boolean isConnected(Variable v, List<Set<Variable>> atoms, List<Variable> order) {
+		for (Set<Variable> atomVars : atoms) {
+			if (atomVars.contains(v) && !Collections.disjoint(atomVars, order)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int compare(int[] score1, int[] score2) {
+		return LexicographicComparator.INSTANCE.compare(score1, score2);
+	}
+
+	/**
+	 * Returns the indexes of the variables of the specified atom, in
+	 * increasing order.
+	 */
+	private int[] atomVars(Atom atom, Set<Variable> frozen, Map<Variable, Integer> index) {
+		Set<Variable> atomVars = atom.getVariables();
+		atomVars.removeAll(frozen);
+		int[] result = new int[atomVars.size()];
+		int i = 0;
+		for (Variable v : atomVars) {
+			result[i++] = index.get(v);
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Returns a trie over the matches of the specified atom projected on its
+	 * variables, or null if there is no match.
+	 */
+	private TrieIterator buildTrie(Atom atom, int[] atomVars, Map<Variable, Integer> index, AtomSet data,
+	    Substitution s, Map<Term, Integer> ids) throws AtomSetException, IteratorException {
+		Atom image = s.createImageOf(atom);
+		int arity = atom.getPredicate().getArity();
+
+		// first position of each variable of the atom
+		int[] positions = new int[atomVars.length];
+		Arrays.fill(positions, -1);
+		int[] firstPosition = new int[arity];
+		for (int i = 0; i < arity; ++i) {
+			Term t = image.getTerm(i);
+			firstPosition[i] = -1;
+			Integer idx = t.isVariable() ? index.get(t) : null;
+			if (idx != null) {
+				int j = Arrays.binarySearch(atomVars, idx);
+				if (positions[j] < 0) {
+					positions[j] = i;
+				}
+				firstPosition[i] = positions[j];
+			}
+		}
+
+		List<int[]> tuples = new ArrayList<int[]>();
+		CloseableIterator<Atom> it = data.match(atom, s);
+		while (it.hasNext()) {
+			Atom a = it.next();
+			if (matches(a, image, firstPosition)) {
+				int[] tuple = new int[atomVars.length];
+				for (int j = 0; j < atomVars.length; ++j) {
+					tuple[j] = this.encode(a.getTerm(positions[j]), ids);
+				}
+				tuples.add(tuple);
+			}
+		}
+		it.close();
+
+		if (tuples.isEmpty()) {
+			return null;
+		}
+
+		int[][] rows = tuples.toArray(new int[tuples.size()][]);
+		Arrays.sort(rows, LexicographicComparator.INSTANCE);
+		int n = 1;
+		for (int i = 1; i < rows.length; ++i) {
+			if (LexicographicComparator.INSTANCE.compare(rows[i], rows[n - 1]) != 0) {
+				rows[n++] = rows[i];
+			}
+		}
+		return new TrieIterator(Arrays.copyOf(rows, n), atomVars.length);
+	}
+
+	/**
+	 * Checks constants and repeated variables, in case the data does not.
+	 */
+	private static boolean matches(Atom a, Atom image, int[] firstPosition) {
+		for (int i = 0; i < firstPosition.length; ++i) {
+			if (firstPosition[i] < 0) {
+				if (!a.getTerm(i).equals(image.getTerm(i))) {
+					return false;
+				}
+			} else if (firstPosition[i] != i && !a.getTerm(i).equals(a.getTerm(firstPosition[i]))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int encode(Term t, Map<Term, Integer> ids) {
+		Integer id = ids.get(t);
+		if (id == null) {
+			id = this.dictionary.size();
+			ids.put(t, id);
+			this.dictionary.add(t);
+		}
+		return id;
+	}
+
+	private static final class LexicographicComparator implements Comparator<int[]> {
+
+		static final LexicographicComparator INSTANCE = new LexicographicComparator();
+
+		@Override
+		public int compare(int[] o1, int[] o2) {
+			for (int i = 0; i < o1.length; ++i) {
+				if (o1[i] != o2[i]) {
+					return (o1[i] < o2[i]) ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+	}
+
+}
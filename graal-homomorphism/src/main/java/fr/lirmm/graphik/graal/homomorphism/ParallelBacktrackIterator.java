@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Runs the backtrack in parallel by splitting the candidates of the first
+ * scheduled variable into chunks, each chunk being explored by a worker
+ * {@link BacktrackIterator} on a {@link ForkJoinPool}. Workers only read the
+ * shared {@link BacktrackIteratorData}; each one owns its {@link Var} array
+ * and a copy of the configured forward checking and back-jumping. The answers
+ * of all workers are merged, in no particular order, into this iterator.
+ * <br/>
+ * The pool is shared, the workers stop at their next answer once the
+ * iterator is closed. The first error of a worker stops the others and is
+ * thrown by the following call to {@link #hasNext()}.
+ */
+class ParallelBacktrackIterator extends AbstractCloseableIterator<Substitution>
+                                implements CloseableIterator<Substitution> {
+
+	private static final int    CHUNKS_PER_THREAD = 4;
+	private static final int    BUFFER_SIZE       = 1024;
+	private static final long   POLL_TIMEOUT      = 10;
+	private static final Object END               = new Object();
+
+	private final BacktrackIteratorData data;
+	private final BlockingQueue<Object> buffer = new LinkedBlockingQueue<Object>(BUFFER_SIZE);
+	private final AtomicInteger         running = new AtomicInteger();
+
+	private volatile boolean   isClosed = false;
+	private volatile Throwable error    = null;
+
+	private Substitution next = null;
+	private boolean      isFinished = false;
+	private boolean      isReleased = false;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param data
+	 * @param initialSubstitution
+	 * @param pool
+	 *            the pool running the workers.
+	 * @throws HomomorphismException
+	 */
+	public ParallelBacktrackIterator(BacktrackIteratorData data, Substitution initialSubstitution, ForkJoinPool pool)
+	    throws HomomorphismException {
+		synchronized (data) {
+			if (data.isOpen) {
+				throw new HomomorphismException("Prepared Homomorphism already in use");
+			}
+			data.isOpen = true;
+		}
+		this.data = data;
+
+		List<List<Term>> chunks;
+		try {
+			chunks = this.split(this.computeFirstDomain(initialSubstitution), pool.getParallelism() * CHUNKS_PER_THREAD);
+		} catch (HomomorphismException e) {
+			this.release();
+			throw e;
+		}
+		if (chunks.isEmpty()) {
+			this.isFinished = true;
+			this.release();
+		} else {
+			this.running.set(chunks.size());
+			for (List<Term> chunk : chunks) {
+				pool.execute(new Worker(initialSubstitution, chunk));
+			}
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CLOSEABLE ITERATOR METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() throws IteratorException {
+		if (this.next == null && !this.isFinished) {
+			Object o = null;
+			try {
+				while (o == null && this.error == null) {
+					o = this.buffer.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				throw new IteratorException("Interrupted while waiting for an answer", e);
+			}
+			if (this.error != null) {
+				this.close();
+				if (this.error instanceof Error) {
+					throw (Error) this.error;
+				}
+				throw new IteratorException("An errors occurs during parallel backtrack iteration", this.error);
+			} else if (o == END) {
+				// all the workers are done
+				this.isFinished = true;
+				this.release();
+			} else {
+				this.next = (Substitution) o;
+				if (this.data.ans.isEmpty()) {
+					// a boolean query has at most one answer
+					this.isFinished = true;
+					this.stop();
+				}
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Substitution next() throws IteratorException {
+		Substitution tmp = null;
+		if (this.hasNext()) {
+			tmp = this.next;
+			this.next = null;
+		}
+		return tmp;
+	}
+
+	@Override
+	public void close() {
+		this.stop();
+		this.isFinished = true;
+		this.next = null;
+		this.release();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Stops the workers, they end at their next answer.
+	 */
+	private void stop() {
+		this.isClosed = true;
+		this.buffer.clear();
+	}
+
+	private void release() {
+		if (!this.isReleased) {
+			this.isReleased = true;
+			synchronized (this.data) {
+				this.data.isOpen = false;
+			}
+		}
+	}
+
+	/**
+	 * Computes the candidates of the first variable with the bootstrapper; the
+	 * workers check them against the query atoms.
+	 * 
+	 * @return the candidates, or null if there is no variable to split on.
+	 */
+	private List<Term> computeFirstDomain(Substitution initialSubstitution) throws HomomorphismException {
+		if (this.data.levelMax < 1) {
+			return null;
+		}
+		List<Term> domain = new ArrayList<Term>();
+		VarSharedData first = this.data.varsOrder[1];
+		List<Atom> preAtomsFixed = new LinkedList<Atom>();
+		for (Atom a : first.preAtoms) {
+			preAtomsFixed.add(initialSubstitution.createImageOf(a));
+		}
+		List<Atom> postAtomsFixed = new LinkedList<Atom>();
+		for (Atom a : first.postAtoms) {
+			postAtomsFixed.add(initialSubstitution.createImageOf(a));
+		}
+
+		CloseableIterator<Term> it = null;
+		try {
+			it = this.data.bootstrapper.exec(first, preAtomsFixed, postAtomsFixed, this.data.data,
+			                                 this.data.compilation);
+			while (it.hasNext()) {
+				domain.add(it.next());
+			}
+		} catch (BacktrackException e) {
+			throw new HomomorphismException("Error while computing the first variable domain", e);
+		} catch (IteratorException e) {
+			throw new HomomorphismException("Error while computing the first variable domain", e);
+		} finally {
+			if (it != null) {
+				it.close();
+			}
+		}
+		return domain;
+	}
+
+	private List<List<Term>> split(List<Term> domain, int nbChunks) {
+		List<List<Term>> chunks = new ArrayList<List<Term>>(nbChunks);
+		if (domain == null) {
+			// a single unrestricted worker
+			chunks.add(null);
+			return chunks;
+		}
+		int size = domain.size();
+		int chunkSize = (size + nbChunks - 1) / nbChunks;
+		for (int i = 0; i < size; i += chunkSize) {
+			chunks.add(domain.subList(i, Math.min(size, i + chunkSize)));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Records the first error of a worker and stops the others.
+	 */
+	private void fail(Throwable e) {
+		if (this.error == null) {
+			this.error = e;
+		}
+		this.isClosed = true;
+	}
+
+	private void publish(Object o) throws InterruptedException {
+		while (!this.isClosed && !this.buffer.offer(o, 10, TimeUnit.MILLISECONDS))
+			;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// WORKER
+	// /////////////////////////////////////////////////////////////////////////
+
+	private class Worker implements Runnable {
+
+		private final Substitution initialSubstitution;
+		private final List<Term>   chunk;
+
+		Worker(Substitution initialSubstitution, List<Term> chunk) {
+			this.initialSubstitution = initialSubstitution;
+			this.chunk = chunk;
+		}
+
+		@Override
+		public void run() {
+			BacktrackIterator it = null;
+			try {
+				it = new BacktrackIterator(data, this.initialSubstitution, data.fc.copy(), data.bj.copy(), this.chunk);
+				while (!isClosed && it.hasNext()) {
+					publish(it.next());
+				}
+			} catch (IteratorException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				fail(e);
+			} catch (InterruptedException e) {
+				if (!isClosed) {
+					fail(e);
+				}
+				Thread.currentThread().interrupt();
+			} catch (Error e) {
+				// reported to the consumer, and to the pool
+				fail(e);
+				throw e;
+			} finally {
+				if (it != null) {
+					it.close();
+				}
+				if (running.decrementAndGet() == 0) {
+					// the consumer waits for the end even if this worker was
+					// interrupted
+					boolean interrupted = Thread.interrupted();
+					try {
+						publish(END);
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+					if (interrupted) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+	}
+
+}
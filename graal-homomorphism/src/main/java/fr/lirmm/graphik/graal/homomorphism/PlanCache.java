@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.DefaultConjunctiveQuery;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.factory.DefaultAtomSetFactory;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.backjumping.GraphBaseBackJumping;
+import fr.lirmm.graphik.graal.homomorphism.bbc.BCC;
+import fr.lirmm.graphik.graal.homomorphism.bootstrapper.StarBootstrapper;
+import fr.lirmm.graphik.graal.homomorphism.forward_checking.NFC2;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.converter.ConversionException;
+import fr.lirmm.graphik.util.stream.converter.Converter;
+import fr.lirmm.graphik.util.stream.converter.ConverterCloseableIterator;
+
+/**
+ * A bounded LRU cache of prepared backtrack homomorphisms. Plans are keyed by
+ * the canonical form of the query up to variable renaming, the query variables
+ * bound by the initial substitution, the data and the rules compilation. A
+ * cached plan is re-bound to the initial substitution of each call, so the
+ * scheduling and the preprocessing of a query evaluated many times (a rule body
+ * during a chase for instance) are done once.
+ * <br/>
+ * The data and the compilation are weakly referenced by the keys and only
+ * bound to a plan during an execution, so the cache does not keep them alive.
+ * A plan is released when its iterator is closed or exhausted. While it is in
+ * use, {@link #execute} returns null and the caller evaluates the query
+ * without the cache, so an iterator which is never closed only disables the
+ * cache for its plan.
+ */
+class PlanCache {
+
+	private final Map<Key, PreparedBacktrackHomomorphism> plans;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param capacity
+	 *            the maximum number of plans kept.
+	 */
+	PlanCache(final int capacity) {
+		this.plans = new LinkedHashMap<Key, PreparedBacktrackHomomorphism>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2487405219530727340L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, PreparedBacktrackHomomorphism> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Evaluates the specified query with the cached plan of its canonical form,
+	 * preparing it if needed.
+	 *
+	 * @return the homomorphisms, or null if the plan of this query is already
+	 *         in use.
+	 * @throws HomomorphismException
+	 */
+	CloseableIterator<Substitution> execute(ConjunctiveQuery query, AtomSet data, RulesCompilation compilation,
+	    Substitution s) throws HomomorphismException {
+		CanonicalForm cf = new CanonicalForm(query, s);
+		Key key = new Key(cf, data, compilation);
+
+		PreparedBacktrackHomomorphism plan;
+		synchronized (this.plans) {
+			plan = this.plans.get(key);
+		}
+		if (plan == null) {
+			this.expungeStaleEntries();
+			BCC bcc = new BCC(new GraphBaseBackJumping(), true);
+			plan = new PreparedBacktrackHomomorphism(cf.query, cf.parameters, data, bcc.getBCCScheduler(),
+			                                         StarBootstrapper.instance(), new NFC2(),
+			                                         bcc.getBCCBackJumping(), compilation);
+			synchronized (this.plans) {
+				this.plans.put(key, plan);
+			}
+		}
+
+		CloseableIterator<Substitution> results = plan.tryExecute(data, compilation, cf.rename(s));
+		if (results == null) {
+			return null;
+		}
+		return new ConverterCloseableIterator<Substitution, Substitution>(results, cf);
+	}
+
+	int size() {
+		synchronized (this.plans) {
+			return this.plans.size();
+		}
+	}
+
+	void clear() {
+		synchronized (this.plans) {
+			this.plans.clear();
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Removes the plans of the data and compilations which were garbage
+	 * collected.
+	 */
+	private void expungeStaleEntries() {
+		synchronized (this.plans) {
+			Iterator<Key> it = this.plans.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().isStale()) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The query with its variables renamed in a canonical way: atoms are sorted
+	 * by their shape (predicate, constants and positions of the bound
+	 * variables), then variables are numbered in order of first occurrence.
+	 * Queries equal up to renaming and with the same atom order for equal
+	 * shapes get the same canonical form. Converts the answers of the canonical
+	 * query back to the original variables.
+	 */
+	private static class CanonicalForm implements Converter<Substitution, Substitution> {
+
+		final List<Atom>             atoms      = new ArrayList<Atom>();
+		final List<Term>             ans        = new LinkedList<Term>();
+		final Set<Variable>          parameters = new HashSet<Variable>();
+		final ConjunctiveQuery       query;
+
+		private final Map<Variable, Variable> toCanonical   = new HashMap<Variable, Variable>();
+		private final Map<Variable, Variable> fromCanonical = new HashMap<Variable, Variable>();
+
+		CanonicalForm(ConjunctiveQuery q, Substitution s) {
+			Set<Variable> bound = new HashSet<Variable>();
+			for (Variable v : s.getTerms()) {
+				bound.add(v);
+			}
+
+			final Map<Atom, String> shapes = new HashMap<Atom, String>();
+			List<Atom> sorted = new ArrayList<Atom>();
+			CloseableIteratorWithoutException<Atom> it = q.getAtomSet().iterator();
+			while (it.hasNext()) {
+				Atom a = it.next();
+				sorted.add(a);
+				shapes.put(a, shape(a, bound));
+			}
+			Collections.sort(sorted, new Comparator<Atom>() {
+				@Override
+				public int compare(Atom a1, Atom a2) {
+					return shapes.get(a1).compareTo(shapes.get(a2));
+				}
+			});
+
+			InMemoryAtomSet atomset = DefaultAtomSetFactory.instance().create();
+			for (Atom a : sorted) {
+				List<Term> terms = new ArrayList<Term>(a.getPredicate().getArity());
+				for (Term t : a) {
+					terms.add(t.isVariable() ? this.canonical((Variable) t) : t);
+				}
+				Atom canonical = new DefaultAtom(a.getPredicate(), terms);
+				this.atoms.add(canonical);
+				atomset.add(canonical);
+			}
+			for (Term t : q.getAnswerVariables()) {
+				this.ans.add(t.isVariable() ? this.canonical((Variable) t) : t);
+			}
+			for (Variable v : bound) {
+				Variable c = this.toCanonical.get(v);
+				if (c != null) {
+					this.parameters.add(c);
+				}
+			}
+			this.query = new DefaultConjunctiveQuery(atomset, this.ans);
+		}
+
+		/**
+		 * @return the specified substitution restricted to the query variables
+		 *         and expressed over the canonical ones.
+		 */
+		Substitution rename(Substitution s) {
+			Substitution renamed = new HashMapSubstitution();
+			for (Map.Entry<Variable, Variable> e : this.toCanonical.entrySet()) {
+				if (this.parameters.contains(e.getValue())) {
+					renamed.put(e.getValue(), s.createImageOf(e.getKey()));
+				}
+			}
+			return renamed;
+		}
+
+		@Override
+		public Substitution convert(Substitution s) throws ConversionException {
+			Substitution converted = new HashMapSubstitution();
+			for (Variable v : s.getTerms()) {
+				Variable original = this.fromCanonical.get(v);
+				converted.put(original == null ? v : original, s.createImageOf(v));
+			}
+			return converted;
+		}
+
+		private Variable canonical(Variable v) {
+			Variable c = this.toCanonical.get(v);
+			if (c == null) {
+				c = DefaultTermFactory.instance().createVariable("V" + this.toCanonical.size());
+				this.toCanonical.put(v, c);
+				this.fromCanonical.put(c, v);
+			}
+			return c;
+		}
+
+		private static String shape(Atom a, Set<Variable> bound) {
+			StringBuilder sb = new StringBuilder(a.getPredicate().toString()).append('(');
+			for (Term t : a) {
+				if (!t.isVariable()) {
+					sb.append(t.getType()).append(':').append(t.getIdentifier());
+				} else if (bound.contains(t)) {
+					sb.append('$');
+				} else {
+					sb.append('?');
+				}
+				sb.append(',');
+			}
+			return sb.append(')').toString();
+		}
+	}
+
+	private static class Key {
+
+		private final List<Atom>                      atoms;
+		private final List<Term>                      ans;
+		private final Set<Variable>                   parameters;
+		private final WeakReference<AtomSet>          data;
+		private final WeakReference<RulesCompilation> compilation;
+		private final int                             hashCode;
+
+		Key(CanonicalForm cf, AtomSet data, RulesCompilation compilation) {
+			this.atoms = cf.atoms;
+			this.ans = cf.ans;
+			this.parameters = cf.parameters;
+			this.data = new WeakReference<AtomSet>(data);
+			this.compilation = new WeakReference<RulesCompilation>(compilation);
+			this.hashCode = ((this.atoms.hashCode() * 31 + this.ans.hashCode()) * 31 + this.parameters.hashCode()) * 31
+			                + System.identityHashCode(data);
+		}
+
+		boolean isStale() {
+			return this.data.get() == null || this.compilation.get() == null;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			AtomSet data = this.data.get();
+			RulesCompilation compilation = this.compilation.get();
+			return data != null && compilation != null && data == other.data.get()
+			       && compilation == other.compilation.get() && this.hashCode == other.hashCode && this.atoms.equals(other.atoms)
+			       && this.ans.equals(other.ans) && this.parameters.equals(other.parameters);
+		}
+	}
+
+}
@@ -54,11 +54,13 @@ import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.graal.api.core.Variable;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.PreparedHomomorphism;
+import fr.lirmm.graphik.graal.homomorphism.backjumping.BackJumping;
 import fr.lirmm.graphik.graal.homomorphism.backjumping.GraphBaseBackJumping;
 import fr.lirmm.graphik.graal.homomorphism.backjumping.NoBackJumping;
 import fr.lirmm.graphik.graal.homomorphism.bbc.BCC;
 import fr.lirmm.graphik.graal.homomorphism.bootstrapper.Bootstrapper;
 import fr.lirmm.graphik.graal.homomorphism.bootstrapper.StatBootstrapper;
+import fr.lirmm.graphik.graal.homomorphism.forward_checking.ForwardChecking;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.NFC2;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.NoForwardChecking;
 import fr.lirmm.graphik.graal.homomorphism.scheduler.Scheduler;
@@ -87,6 +89,13 @@ class PreparedBacktrackHomomorphism implements PreparedHomomorphism {
 	}
 
 
+	public PreparedBacktrackHomomorphism(ConjunctiveQuery query, Set<Variable> variablesToParameterize, AtomSet data,
+	    Scheduler scheduler, Bootstrapper bootstrapper, ForwardChecking fc, BackJumping bj, RulesCompilation compilation)
+	    throws HomomorphismException {
+		this.data = new BacktrackIteratorData(query.getAtomSet(), variablesToParameterize, Collections.<InMemoryAtomSet>emptySet(),
+				data, query.getAnswerVariables(), scheduler, bootstrapper, fc, bj, compilation, NoProfiler.instance());
+	}
+
 	public PreparedBacktrackHomomorphism(ConjunctiveQuery query, Set<Variable> variablesToParameterize, Collection<InMemoryAtomSet> negParts, AtomSet data, Scheduler scheduler, Bootstrapper bootstrapper, RulesCompilation compilation, Profiler profiler) throws HomomorphismException {
 		
 		this.data = new BacktrackIteratorData(query.getAtomSet(), variablesToParameterize, negParts, data, query.getAnswerVariables(), scheduler, bootstrapper, NoForwardChecking.instance(), NoBackJumping.instance(), compilation, profiler);
@@ -114,6 +123,31 @@ class PreparedBacktrackHomomorphism implements PreparedHomomorphism {
 			throws HomomorphismException {
 		return new BacktrackIterator(this.data, s);
 	}
+
+	/**
+	 * Binds this prepared homomorphism to the specified data and compilation
+	 * for one execution. They are released once the returned iterator is
+	 * closed or exhausted.
+	 * 
+	 * @param data
+	 * @param compilation
+	 * @param s
+	 * @return the homomorphisms, or null if this prepared homomorphism is
+	 *         already in use.
+	 * @throws HomomorphismException
+	 */
+	CloseableIterator<Substitution> tryExecute(AtomSet data, RulesCompilation compilation, Substitution s)
+	    throws HomomorphismException {
+		synchronized (this.data) {
+			if (this.data.isOpen) {
+				return null;
+			}
+			this.data.data = data;
+			this.data.compilation = compilation;
+			this.data.releaseData = true;
+			return new BacktrackIterator(this.data, s);
+		}
+	}
 	
 	// /////////////////////////////////////////////////////////////////////////
 	// OBJECT OVERRIDE METHODS
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.UnionOfConjunctiveQueries;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismWithCompilation;
+import fr.lirmm.graphik.graal.core.DefaultConjunctiveQuery;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Evaluates a union of conjunctive queries by sharing the evaluation of the
+ * join prefixes common to several of its queries, as the rewritings of a query
+ * often differ only by a few atoms. See {@link SharedPrefixUCQIterator}.
+ * Unlike {@link DefaultUCQHomomorphism}, each query of the union returns an
+ * answer once, and the answers shared by several queries are filtered within
+ * a bounded window.
+ * <br/>
+ * The queries of the union must be plain conjunctive queries, their atoms
+ * being matched as they are against the data; see {@link #isSupported}.
+ */
+public final class SharedPrefixUCQHomomorphism
+                                              extends
+                                              AbstractHomomorphismWithCompilation<UnionOfConjunctiveQueries, AtomSet>
+                                              implements
+                                              HomomorphismWithCompilation<UnionOfConjunctiveQueries, AtomSet> {
+
+	// /////////////////////////////////////////////////////////////////////////
+	// SINGLETON
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static SharedPrefixUCQHomomorphism instance;
+
+	private SharedPrefixUCQHomomorphism() {
+		super();
+	}
+
+	public static synchronized SharedPrefixUCQHomomorphism instance() {
+		if (instance == null)
+			instance = new SharedPrefixUCQHomomorphism();
+
+		return instance;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// HOMOMORPHISM METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public CloseableIterator<Substitution> execute(UnionOfConjunctiveQueries queries, AtomSet atomset,
+	    RulesCompilation rc, Substitution s) throws HomomorphismException {
+		if (!isSupported(queries)) {
+			throw new HomomorphismException("The union contains a query which is not a plain conjunctive query");
+		}
+		return new SharedPrefixUCQIterator(queries, atomset, rc, s);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return true if all the queries of the specified union are
+	 *         {@link DefaultConjunctiveQuery}, whose answers are the
+	 *         homomorphisms of their atoms.
+	 */
+	public static boolean isSupported(UnionOfConjunctiveQueries queries) {
+		CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = queries.iterator();
+		try {
+			while (it.hasNext()) {
+				if (!(it.next().getQuery() instanceof DefaultConjunctiveQuery)) {
+					return false;
+				}
+			}
+		} finally {
+			it.close();
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.UnionOfConjunctiveQueries;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.factory.DefaultSubstitutionFactory;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Evaluates the conjunctive queries of a union through a prefix trie of their
+ * atoms. Each query is inserted along a path of the trie, its atoms being
+ * renamed in order of first occurrence of their variables, so that queries
+ * which share a join prefix up to variable renaming share the corresponding
+ * nodes. The trie is then explored depth first: the matches of a shared node
+ * are computed once and the exploration only branches on the differing atoms.
+ * <br/>
+ * Once all the answer variables of the queries ending below a node are bound,
+ * the subtree of this node is only explored until each of these queries has a
+ * witness, so each query returns an answer once. The answers shared by
+ * several queries are only filtered against the last {@value #MAX_SEEN}
+ * answers returned.
+ * <br/>
+ * The children of a node are explored in the order of the queries of the
+ * union.
+ */
+class SharedPrefixUCQIterator extends AbstractCloseableIterator<Substitution>
+                              implements CloseableIterator<Substitution> {
+
+	private static final int             MAX_SEEN  = 1 << 16;
+
+	private final AtomSet                data;
+	private final RulesCompilation       compilation;
+	private final boolean                isBooleanQuery;
+
+	private final Node                   root      = new Node(null, new int[0], 0);
+	private final List<Variable>         trieVars  = new ArrayList<Variable>();
+	private final Map<Variable, Integer> trieIndex = new HashMap<Variable, Integer>();
+	private final Term[]                 binding;
+
+	private final LinkedList<Frame>      stack     = new LinkedList<Frame>();
+	private final Map<Substitution, Boolean> seen  = new LinkedHashMap<Substitution, Boolean>(16, 0.75f, true) {
+		private static final long serialVersionUID = 3811468251478395372L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Substitution, Boolean> eldest) {
+			return this.size() > MAX_SEEN;
+		}
+	};
+	private Substitution                 next      = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public SharedPrefixUCQIterator(UnionOfConjunctiveQueries queries, AtomSet data, RulesCompilation compilation,
+	    Substitution initialSubstitution) {
+		this.data = data;
+		this.compilation = compilation;
+		this.isBooleanQuery = queries.isBoolean();
+
+		CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = queries.iterator();
+		while (it.hasNext()) {
+			EffectiveConjunctiveQuery ecq = it.next();
+			Substitution s = DefaultSubstitutionFactory.instance().createSubstitution(initialSubstitution);
+			if (ecq.getSubstitution() != null) {
+				s.put(ecq.getSubstitution());
+			}
+			this.insert(ecq.getQuery(), s);
+		}
+		it.close();
+		this.root.computeSubtreeLeaves();
+
+		this.binding = new Term[this.trieVars.size()];
+		Frame rootFrame = new Frame(this.root, null);
+		rootFrame.candidates = Collections.singletonList(new Term[0]);
+		this.stack.push(rootFrame);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CLOSEABLE ITERATOR METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() throws IteratorException {
+		if (this.next == null) {
+			try {
+				this.next = this.computeNext();
+			} catch (AtomSetException e) {
+				throw new IteratorException("An error occurs while matching a query atom", e);
+			}
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Substitution next() throws IteratorException {
+		Substitution tmp = null;
+		if (this.hasNext()) {
+			tmp = this.next;
+			this.next = null;
+		}
+		return tmp;
+	}
+
+	@Override
+	public void close() {
+		this.stack.clear();
+		this.seen.clear();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// TRIE CONSTRUCTION
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void insert(ConjunctiveQuery cq, Substitution s) {
+		Pair<ConjunctiveQuery, Substitution> pair = EqualityUtils.processEquality(cq);
+		ConjunctiveQuery q = pair.getLeft();
+
+		List<Atom> remaining = new LinkedList<Atom>();
+		CloseableIteratorWithoutException<Atom> it = q.getAtomSet().iterator();
+		while (it.hasNext()) {
+			remaining.add(s.createImageOf(it.next()));
+		}
+
+		Map<Variable, Integer> mapping = new HashMap<Variable, Integer>();
+		Node node = this.root;
+		while (!remaining.isEmpty()) {
+			Atom chosen = null;
+			Node child = null;
+			// follow an existing branch when possible
+			for (Atom a : remaining) {
+				child = node.children.get(this.canonical(a, mapping, false));
+				if (child != null) {
+					chosen = a;
+					break;
+				}
+			}
+			if (chosen == null) {
+				chosen = chooseNewAtom(remaining, mapping);
+			}
+			int before = mapping.size();
+			Atom canonical = this.canonical(chosen, mapping, true);
+			if (child == null) {
+				int[] newVars = new int[mapping.size() - before];
+				for (int i = 0; i < newVars.length; ++i) {
+					newVars[i] = before + i;
+				}
+				child = new Node(canonical, newVars, mapping.size());
+				node.children.put(canonical, child);
+			}
+			remaining.remove(chosen);
+			node = child;
+		}
+
+		Leaf leaf = new Leaf(pair.getRight());
+		for (Term t : q.getAnswerVariables()) {
+			Term image = s.createImageOf(t);
+			if (t.isVariable() && !leaf.ansVars.contains(t)) {
+				if (!image.isVariable()) {
+					leaf.add((Variable) t, -1, image);
+				} else if (mapping.containsKey(image)) {
+					leaf.add((Variable) t, mapping.get(image), null);
+				}
+			}
+		}
+		node.leaves.add(leaf);
+	}
+
+	/**
+	 * Renames the variables of the specified atom with the trie variables, the
+	 * ones not yet mapped being numbered in order of first occurrence.
+	 * 
+	 * @param update
+	 *            if true, the new variables are added to the mapping.
+	 */
+	private Atom canonical(Atom a, Map<Variable, Integer> mapping, boolean update) {
+		Map<Variable, Integer> local = (update) ? mapping : new HashMap<Variable, Integer>(mapping);
+		List<Term> terms = new ArrayList<Term>(a.getPredicate().getArity());
+		for (Term t : a) {
+			if (t.isVariable()) {
+				Integer idx = local.get(t);
+				if (idx == null) {
+					idx = local.size();
+					local.put((Variable) t, idx);
+				}
+				terms.add(this.trieVar(idx));
+			} else {
+				terms.add(t);
+			}
+		}
+		return new DefaultAtom(a.getPredicate(), terms);
+	}
+
+	private Variable trieVar(int idx) {
+		while (this.trieVars.size() <= idx) {
+			Variable v = DefaultTermFactory.instance().createVariable("_UCQ" + this.trieVars.size());
+			this.trieIndex.put(v, this.trieVars.size());
+			this.trieVars.add(v);
+		}
+		return this.trieVars.get(idx);
+	}
+
+	/**
+	 * @return the atom with the most terms already bound, preferring atoms
+	 *         connected to the previous ones.
+	 */
+	private static Atom chooseNewAtom(List<Atom> remaining, Map<Variable, Integer> mapping) {
+		Atom best = null;
+		int bestScore = -1;
+		for (Atom a : remaining) {
+			int score = 0;
+			boolean connected = mapping.isEmpty();
+			for (Term t : a) {
+				if (!t.isVariable()) {
+					++score;
+				} else if (mapping.containsKey(t)) {
+					++score;
+					connected = true;
+				}
+			}
+			if (connected) {
+				score += a.getPredicate().getArity() + 1;
+			}
+			if (score > bestScore) {
+				best = a;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// EVALUATION
+	// /////////////////////////////////////////////////////////////////////////
+
+	private Substitution computeNext() throws AtomSetException {
+		while (!this.stack.isEmpty()) {
+			Frame f = this.stack.peek();
+			if (f.entered) {
+				while (f.leafIdx < f.node.leaves.size()) {
+					Leaf l = f.node.leaves.get(f.leafIdx++);
+					if (f.scope != null && !f.scope.add(l)) {
+						continue;
+					}
+					Substitution answer = l.answer(this.binding);
+					if (this.seen.put(answer, Boolean.TRUE) == null) {
+						if (this.isBooleanQuery) {
+							this.stack.clear();
+						}
+						return answer;
+					}
+				}
+
+				Frame child = null;
+				while (child == null && f.childIdx < f.node.childList.size()) {
+					Node c = f.node.childList.get(f.childIdx++);
+					if (f.scope == null || !f.scope.containsAll(c.subtreeLeaves)) {
+						child = new Frame(c, f);
+						child.candidates = this.computeCandidates(c);
+						if (child.candidates.isEmpty()) {
+							child = null;
+						}
+					}
+				}
+				if (child != null) {
+					this.stack.push(child);
+					continue;
+				}
+
+				for (int idx : f.node.newVars) {
+					this.binding[idx] = null;
+				}
+				f.entered = false;
+			}
+
+			if (f.candidateIdx >= f.candidates.size() || f.isSatisfied()) {
+				this.stack.pop();
+			} else {
+				Term[] values = f.candidates.get(f.candidateIdx++);
+				for (int i = 0; i < values.length; ++i) {
+					this.binding[f.node.newVars[i]] = values[i];
+				}
+				f.enter();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the values of the new variables of the specified node for each
+	 *         match of its atom under the current binding.
+	 */
+	private List<Term[]> computeCandidates(Node node) throws AtomSetException {
+		List<Term> terms = new ArrayList<Term>(node.atom.getPredicate().getArity());
+		for (Term t : node.atom) {
+			Integer idx = this.trieIndex.get(t);
+			terms.add((idx != null && this.binding[idx] != null) ? this.binding[idx] : t);
+		}
+		Atom image = new DefaultAtom(node.atom.getPredicate(), terms);
+
+		List<Term[]> candidates = new ArrayList<Term[]>();
+		for (Pair<Atom, Substitution> rew : this.compilation.getRewritingOf(image)) {
+			Atom pattern = rew.getLeft();
+			CloseableIterator<Atom> it = this.data.match(pattern);
+			try {
+				while (it.hasNext()) {
+					Map<Term, Term> match = this.match(pattern, it.next());
+					if (match != null) {
+						Term[] values = new Term[node.newVars.length];
+						for (int i = 0; i < values.length; ++i) {
+							Term t = rew.getRight().createImageOf(this.trieVars.get(node.newVars[i]));
+							Term value = match.get(t);
+							values[i] = (value == null) ? t : value;
+						}
+						candidates.add(values);
+					}
+				}
+			} catch (IteratorException e) {
+				throw new AtomSetException(e);
+			} finally {
+				it.close();
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * @return the images of the free trie variables of the pattern, or null if
+	 *         the fact does not match it.
+	 */
+	private Map<Term, Term> match(Atom pattern, Atom fact) {
+		Map<Term, Term> match = new HashMap<Term, Term>();
+		int i = 0;
+		for (Term t : pattern) {
+			Term f = fact.getTerm(i++);
+			if (this.trieIndex.containsKey(t)) {
+				Term previous = match.put(t, f);
+				if (previous != null && !previous.equals(f)) {
+					return null;
+				}
+			} else if (!t.equals(f)) {
+				return null;
+			}
+		}
+		return match;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static class Node {
+
+		final Atom            atom;
+		final int[]           newVars;
+		final int             nbBoundVars;
+		final Map<Atom, Node> children      = new LinkedHashMap<Atom, Node>();
+		final List<Node>      childList     = new ArrayList<Node>();
+		final List<Leaf>      leaves        = new ArrayList<Leaf>();
+		final List<Leaf>      subtreeLeaves = new ArrayList<Leaf>();
+		boolean               existential;
+
+		Node(Atom atom, int[] newVars, int nbBoundVars) {
+			this.atom = atom;
+			this.newVars = newVars;
+			this.nbBoundVars = nbBoundVars;
+		}
+
+		/**
+		 * Computes the leaves of each subtree and whether all the answer
+		 * variables of these leaves are bound at each node.
+		 */
+		void computeSubtreeLeaves() {
+			this.childList.addAll(this.children.values());
+			this.subtreeLeaves.addAll(this.leaves);
+			for (Node c : this.childList) {
+				c.computeSubtreeLeaves();
+				this.subtreeLeaves.addAll(c.subtreeLeaves);
+			}
+			this.existential = true;
+			for (Leaf l : this.subtreeLeaves) {
+				for (int idx : l.ansIdx) {
+					if (idx >= this.nbBoundVars) {
+						this.existential = false;
+					}
+				}
+			}
+		}
+	}
+
+	private static class Leaf {
+
+		final List<Variable> ansVars = new ArrayList<Variable>();
+		/** the trie variable of each answer variable, or -1 if it is fixed */
+		final List<Integer>  ansIdx  = new ArrayList<Integer>();
+		final List<Term>     fixed   = new ArrayList<Term>();
+		final Substitution   normalizer;
+
+		Leaf(Substitution normalizer) {
+			this.normalizer = normalizer;
+		}
+
+		void add(Variable v, int idx, Term image) {
+			this.ansVars.add(v);
+			this.ansIdx.add(idx);
+			this.fixed.add(image);
+		}
+
+		Substitution answer(Term[] binding) {
+			Substitution s = new HashMapSubstitution();
+			for (int i = 0; i < this.ansVars.size(); ++i) {
+				int idx = this.ansIdx.get(i);
+				s.put(this.ansVars.get(i), (idx < 0) ? this.fixed.get(i) : binding[idx]);
+			}
+			if (!this.normalizer.getTerms().isEmpty()) {
+				s = s.compose(this.normalizer);
+			}
+			return s;
+		}
+	}
+
+	private static class Frame {
+
+		final Node     node;
+		final Frame    parent;
+		List<Term[]>   candidates;
+		int            candidateIdx = 0;
+		int            leafIdx      = 0;
+		int            childIdx     = 0;
+		boolean        entered      = false;
+		/** leaves with a witness for the current binding of the answer variables */
+		Set<Leaf>      scope        = null;
+
+		Frame(Node node, Frame parent) {
+			this.node = node;
+			this.parent = parent;
+		}
+
+		boolean isScopeOwner() {
+			return this.node.existential && (this.parent == null || !this.parent.node.existential);
+		}
+
+		void enter() {
+			this.entered = true;
+			this.leafIdx = 0;
+			this.childIdx = 0;
+			if (this.isScopeOwner()) {
+				this.scope = new HashSet<Leaf>();
+			} else if (this.parent != null) {
+				this.scope = this.parent.scope;
+			}
+		}
+
+		/**
+		 * @return true if the other matches of this node are useless because
+		 *         all the leaves below it already have a witness.
+		 */
+		boolean isSatisfied() {
+			return this.scope != null && !this.isScopeOwner() && this.scope.containsAll(this.node.subtreeLeaves);
+		}
+	}
+
+}
@@ -48,16 +48,19 @@ package fr.lirmm.graphik.graal.homomorphism;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.RulesCompilation;
 import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismChecker;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
 import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismWithCompilation;
+import fr.lirmm.graphik.graal.core.Substitutions;
 import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
 import fr.lirmm.graphik.graal.homomorphism.checker.AtomicQueryHomomorphismChecker;
 import fr.lirmm.graphik.graal.homomorphism.checker.AtomicQueryHomomorphismWithNegatedPartsChecker;
@@ -65,8 +68,12 @@ import fr.lirmm.graphik.graal.homomorphism.checker.BacktrackChecker;
 import fr.lirmm.graphik.graal.homomorphism.checker.BacktrackWithNegatedPartsChecker;
 import fr.lirmm.graphik.graal.homomorphism.checker.DefaultUnionConjunctiveQueriesChecker;
 import fr.lirmm.graphik.graal.homomorphism.checker.FullyInstantiatedQueryHomomorphismChecker;
+import fr.lirmm.graphik.graal.homomorphism.checker.SharedPrefixUCQChecker;
+import fr.lirmm.graphik.graal.homomorphism.checker.YannakakisChecker;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
 import fr.lirmm.graphik.util.profiler.AbstractProfilable;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
 
 /**
  * @author Clément Sipieter (INRIA) {@literal <clement@6pi.fr>}
@@ -76,7 +83,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SmartHomomorphism.class);
 
+	private static final int DEFAULT_PLAN_CACHE_SIZE = 128;
+
 	private SortedSet<HomomorphismChecker> elements;
+	private PlanCache planCache = new PlanCache(DEFAULT_PLAN_CACHE_SIZE);
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTOR
@@ -93,6 +103,8 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 			this.elements.add(AtomicQueryHomomorphismChecker.instance());
 			this.elements.add(BacktrackWithNegatedPartsChecker.instance());
 			this.elements.add(AtomicQueryHomomorphismWithNegatedPartsChecker.instance());
+			this.elements.add(YannakakisChecker.instance());
+			this.elements.add(SharedPrefixUCQChecker.instance());
 		}
 	}
 
@@ -116,6 +128,31 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 		return this.elements.add(checker);
 	}
 
+	/**
+	 * Sets the number of query plans kept by this instance. When a conjunctive
+	 * query is solved by a backtrack, its plan (variable order and
+	 * preprocessing) is cached, keyed by the query up to variable renaming, the
+	 * variables bound by the initial substitution, the data and the
+	 * compilation, and re-bound to the initial substitution of each call.
+	 * <br/>
+	 * With the default checkers, a conjunctive query is solved by a backtrack,
+	 * and so uses the cache, when it has at least two atoms and no equality,
+	 * and either the data is not in memory or the query is cyclic or not
+	 * free-connex. Acyclic and free-connex queries of three atoms or more over
+	 * in memory data go to {@link YannakakisHomomorphism}, atomic and fully
+	 * instantiated queries to their dedicated solvers.
+	 * 
+	 * @param size
+	 *            the maximum number of cached plans, 0 disables the cache.
+	 */
+	public synchronized void setPlanCacheSize(int size) {
+		this.planCache = (size > 0) ? new PlanCache(size) : null;
+	}
+
+	PlanCache getPlanCache() {
+		return this.planCache;
+	}
+
 	@Override
 	public CloseableIterator<Substitution> execute(Object query, AtomSet atomSet) throws HomomorphismException {
 		if (LOGGER.isDebugEnabled())
@@ -123,6 +160,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 		System.out.println("2. Execute query1: " + query);
 		for (HomomorphismChecker e : elements) {
 			if (e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, NoCompilation.instance(), Substitutions.emptySubstitution());
+				if (results != null) {
+					return results;
+				}
 				@SuppressWarnings("unchecked")
 				Homomorphism<Object, AtomSet> solver = (Homomorphism<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -141,6 +182,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		for (HomomorphismChecker e : elements) {
 			if (e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, NoCompilation.instance(), s);
+				if (results != null) {
+					return results;
+				}
 				@SuppressWarnings("unchecked")
 				Homomorphism<Object, AtomSet> solver = (Homomorphism<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -158,6 +203,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		for (HomomorphismChecker e : elements) {
 			if (e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, NoCompilation.instance(), Substitutions.emptySubstitution());
+				if (results != null) {
+					return exist(results);
+				}
 				@SuppressWarnings("unchecked")
 				Homomorphism<Object, AtomSet> solver = (Homomorphism<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -175,6 +224,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		for (HomomorphismChecker e : elements) {
 			if (e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, NoCompilation.instance(), s);
+				if (results != null) {
+					return exist(results);
+				}
 				@SuppressWarnings("unchecked")
 				Homomorphism<Object, AtomSet> solver = (Homomorphism<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -185,6 +238,19 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 		throw new HomomorphismException("Solver not found");
 	}
 
+	@Override
+	public long count(Object query, AtomSet atomSet) throws HomomorphismException {
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("Count query: {}", query);
+
+		return this.getSolver(query, atomSet).count(query, atomSet);
+	}
+
+	@Override
+	public long estimateCount(Object query, AtomSet atomSet) throws HomomorphismException {
+		return this.getSolver(query, atomSet).estimateCount(query, atomSet);
+	}
+
 	@Override
 	public CloseableIterator<Substitution> execute(Object query, AtomSet atomSet, RulesCompilation compilation)
 	    throws HomomorphismException {
@@ -198,6 +264,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		for (HomomorphismChecker e : elements) {
 			if (e.getSolver() instanceof HomomorphismWithCompilation && e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, compilation, Substitutions.emptySubstitution());
+				if (results != null) {
+					return results;
+				}
 				@SuppressWarnings("unchecked")
 				HomomorphismWithCompilation<Object, AtomSet> solver = (HomomorphismWithCompilation<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -217,11 +287,15 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		// is there really a compilation?
 		if (compilation == null || compilation == NoCompilation.instance()) {
-			return this.execute(query, atomSet);
+			return this.execute(query, atomSet, s);
 		}
 
 		for (HomomorphismChecker e : elements) {
 			if (e.getSolver() instanceof HomomorphismWithCompilation && e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, compilation, s);
+				if (results != null) {
+					return results;
+				}
 				@SuppressWarnings("unchecked")
 				HomomorphismWithCompilation<Object, AtomSet> solver = (HomomorphismWithCompilation<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -244,6 +318,10 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		for (HomomorphismChecker e : elements) {
 			if (e.getSolver() instanceof HomomorphismWithCompilation && e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, compilation, Substitutions.emptySubstitution());
+				if (results != null) {
+					return exist(results);
+				}
 				@SuppressWarnings("unchecked")
 				HomomorphismWithCompilation<Object, AtomSet> solver = (HomomorphismWithCompilation<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -262,11 +340,15 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 
 		// is there really a compilation?
 		if (compilation == null || compilation == NoCompilation.instance()) {
-			return this.exist(query, atomSet);
+			return this.exist(query, atomSet, s);
 		}
 
 		for (HomomorphismChecker e : elements) {
 			if (e.getSolver() instanceof HomomorphismWithCompilation && e.check(query, atomSet)) {
+				CloseableIterator<Substitution> results = this.executeWithPlanCache(e, query, atomSet, compilation, s);
+				if (results != null) {
+					return exist(results);
+				}
 				@SuppressWarnings("unchecked")
 				HomomorphismWithCompilation<Object, AtomSet> solver = (HomomorphismWithCompilation<Object, AtomSet>) e.getSolver();
 				if (LOGGER.isDebugEnabled())
@@ -276,4 +358,50 @@ public class SmartHomomorphism extends AbstractProfilable implements Homomorphis
 		}
 		throw new HomomorphismException("Solver not found");
 	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the homomorphisms computed from a cached plan, or null if the
+	 *         plan cache does not apply.
+	 */
+	private CloseableIterator<Substitution> executeWithPlanCache(HomomorphismChecker checker, Object query,
+	    AtomSet atomSet, RulesCompilation compilation, Substitution s) throws HomomorphismException {
+		PlanCache cache = this.planCache;
+		if (cache == null || !(checker instanceof BacktrackChecker)) {
+			return null;
+		}
+		Pair<ConjunctiveQuery, Substitution> pair = EqualityUtils.processEquality((ConjunctiveQuery) query);
+		if (!pair.getRight().getTerms().isEmpty()) {
+			return null;
+		}
+		if (LOGGER.isDebugEnabled())
+			LOGGER.debug("Solver: cached backtrack plan");
+		return cache.execute(pair.getLeft(), atomSet, compilation, s);
+	}
+
+	private Homomorphism<Object, AtomSet> getSolver(Object query, AtomSet atomSet) throws HomomorphismException {
+		for (HomomorphismChecker e : elements) {
+			if (e.check(query, atomSet)) {
+				@SuppressWarnings("unchecked")
+				Homomorphism<Object, AtomSet> solver = (Homomorphism<Object, AtomSet>) e.getSolver();
+				if (LOGGER.isDebugEnabled())
+					LOGGER.debug("Solver: {}", solver.getClass());
+				return solver;
+			}
+		}
+		throw new HomomorphismException("Solver not found");
+	}
+
+	private static boolean exist(CloseableIterator<Substitution> results) throws HomomorphismException {
+		try {
+			return results.hasNext();
+		} catch (IteratorException e) {
+			throw new HomomorphismException(e);
+		} finally {
+			results.close();
+		}
+	}
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+/**
+ * Trie view over lexicographically sorted int tuples, as used by the Leapfrog
+ * Triejoin. Each level of the trie corresponds to one column of the tuples;
+ * {@link #open()} descends to the children of the current key and
+ * {@link #up()} goes back to the parent level.
+ */
+class TrieIterator {
+
+	private final int[][] rows;
+	private final int[] begin;
+	private final int[] end;
+	private final int[] pos;
+	private int depth = -1;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param rows
+	 *            distinct tuples of the specified arity, sorted in
+	 *            lexicographic order.
+	 * @param arity
+	 */
+	TrieIterator(int[][] rows, int arity) {
+		this.rows = rows;
+		this.begin = new int[arity];
+		this.end = new int[arity];
+		this.pos = new int[arity];
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	void open() {
+		int d = this.depth + 1;
+		if (d == 0) {
+			this.begin[d] = 0;
+			this.end[d] = this.rows.length;
+		} else {
+			this.begin[d] = this.pos[this.depth];
+			this.end[d] = this.upperBound(this.depth, this.key(), this.pos[this.depth], this.end[this.depth]);
+		}
+		this.pos[d] = this.begin[d];
+		this.depth = d;
+	}
+
+	void up() {
+		--this.depth;
+	}
+
+	boolean atEnd() {
+		return this.pos[this.depth] >= this.end[this.depth];
+	}
+
+	int key() {
+		return this.rows[this.pos[this.depth]][this.depth];
+	}
+
+	/**
+	 * Moves to the next distinct key of the current level.
+	 */
+	void next() {
+		this.pos[this.depth] = this.upperBound(this.depth, this.key(), this.pos[this.depth], this.end[this.depth]);
+	}
+
+	/**
+	 * Moves to the least key of the current level greater than or equal to
+	 * the specified one.
+	 */
+	void seek(int key) {
+		this.pos[this.depth] = this.lowerBound(this.depth, key, this.pos[this.depth], this.end[this.depth]);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private int lowerBound(int column, int key, int lo, int hi) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.rows[mid][column] < key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private int upperBound(int column, int key, int lo, int hi) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.rows[mid][column] <= key) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+}
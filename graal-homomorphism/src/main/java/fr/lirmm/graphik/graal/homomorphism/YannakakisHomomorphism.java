@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityHandlerConverter;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
+import fr.lirmm.graphik.util.stream.converter.ConverterCloseableIterator;
+
+/**
+ * Evaluation of acyclic and free-connex conjunctive queries based on the
+ * Yannakakis algorithm (VLDB 1981). A full semi-join reducer is applied on the
+ * matches of each atom along a join forest of the query, then the reduced
+ * relations are projected on the answer variables and their join is
+ * enumerated without dead ends, so the work after loading the matches is
+ * linear in the size of the data and of the output.
+ *
+ * Each answer is produced once, whatever the number of witnesses for the
+ * existential variables. An {@link HomomorphismException} is thrown if the
+ * query is not acyclic or not free-connex, see
+ * {@link AcyclicityUtils#isFreeConnex}.
+ */
+public class YannakakisHomomorphism extends AbstractHomomorphism<ConjunctiveQuery, AtomSet>
+                                    implements Homomorphism<ConjunctiveQuery, AtomSet> {
+
+	private static final YannakakisHomomorphism INSTANCE = new YannakakisHomomorphism();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static YannakakisHomomorphism instance() {
+		return INSTANCE;
+	}
+
+	private YannakakisHomomorphism() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// HOMOMORPHISM METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public CloseableIterator<Substitution> execute(ConjunctiveQuery q, AtomSet a, Substitution s)
+	    throws HomomorphismException {
+		Pair<ConjunctiveQuery, Substitution> pair = EqualityUtils.processEquality(q);
+		CloseableIterator<Substitution> results;
+		try {
+			results = new YannakakisIterator(pair.getLeft().getAtomSet(), pair.getLeft().getAnswerVariables(), a, s);
+		} catch (AtomSetException e) {
+			throw new HomomorphismException("Error while loading data", e);
+		} catch (IteratorException e) {
+			throw new HomomorphismException("Error while loading data", e);
+		}
+
+		if (!pair.getRight().getTerms().isEmpty()) {
+			results = new ConverterCloseableIterator<Substitution, Substitution>(results,
+			    new EqualityHandlerConverter(pair.getRight()));
+		}
+		return results;
+	}
+
+}
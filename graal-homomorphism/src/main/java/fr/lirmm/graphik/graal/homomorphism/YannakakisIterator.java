@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+/**
+ * Yannakakis evaluation of an acyclic conjunctive query. The matches of each
+ * atom are projected on its variables, then a full semi-join reducer runs over
+ * a join forest of the query: bottom-up, each parent keeps the tuples joining
+ * with each of its children, then top-down, each child keeps the tuples
+ * joining with its parent. Afterwards, every remaining tuple takes part in an
+ * answer.
+ *
+ * The query must be free-connex: the answers are then the join of the
+ * projections of the reduced relations on the answer variables, along the
+ * join forest restricted to these variables. The projections are enumerated
+ * without dead ends, and each combination of their tuples is a distinct
+ * answer, so the work after the reduction is linear in the size of the output
+ * and no answer needs to be kept.
+ */
+class YannakakisIterator extends AbstractCloseableIterator<Substitution>
+		implements CloseableIteratorWithoutException<Substitution> {
+
+	private static final int NOT_STARTED = -1;
+	private static final int DONE = -2;
+
+	/*
+	 * enumerated nodes, parents first.
+	 */
+	private Node[] nodes = new Node[0];
+	private Variable[] ansVars = new Variable[0];
+	private int[] ansNodes;
+	private int[] ansPositions;
+
+	private Iterator<List<Term>>[] iterators;
+	private List<Term>[] current;
+	private int depth = NOT_STARTED;
+	private Substitution next = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	public YannakakisIterator(InMemoryAtomSet query, List<Term> ans, AtomSet data, Substitution s)
+	    throws HomomorphismException, AtomSetException, IteratorException {
+		List<Node> all = new ArrayList<Node>();
+		List<Set<Variable>> edges = new ArrayList<Set<Variable>>();
+		CloseableIteratorWithoutException<Atom> it = query.iterator();
+		while (it.hasNext()) {
+			Node node = new Node(s.createImageOf(it.next()));
+			all.add(node);
+			edges.add(new HashSet<Variable>(Arrays.asList(node.vars)));
+		}
+		it.close();
+
+		int[] parents = AcyclicityUtils.computeJoinForest(edges);
+		if (parents == null) {
+			throw new HomomorphismException("The query is not acyclic: " + query);
+		}
+		if (!AcyclicityUtils.isFreeConnex(edges, ans)) {
+			throw new HomomorphismException("The query is not free-connex: " + query);
+		}
+		for (int i = 0; i < parents.length; ++i) {
+			if (parents[i] >= 0) {
+				all.get(i).setParent(all.get(parents[i]));
+			}
+		}
+		// parents first
+		Collections.sort(all, DepthComparator.INSTANCE);
+
+		for (Node node : all) {
+			if (!node.load(data)) {
+				this.depth = DONE;
+				return;
+			}
+		}
+		if (!this.reduce(all)) {
+			this.depth = DONE;
+			return;
+		}
+		this.prepareEnumeration(all, ans);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CLOSEABLE ITERATOR METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() {
+		if (this.next == null && this.nextTuples()) {
+			Substitution s = new HashMapSubstitution();
+			for (int i = 0; i < this.ansVars.length; ++i) {
+				s.put(this.ansVars[i], this.current[this.ansNodes[i]].get(this.ansPositions[i]));
+			}
+			this.next = s;
+		}
+		return this.next != null;
+	}
+
+	@Override
+	public Substitution next() {
+		Substitution tmp = null;
+		if (this.hasNext()) {
+			tmp = this.next;
+			this.next = null;
+		}
+		return tmp;
+	}
+
+	@Override
+	public void close() {
+		this.depth = DONE;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Full semi-join reducer.
+	 * 
+	 * @param nodes
+	 *            sorted parents first.
+	 * @return false if a relation becomes empty.
+	 */
+	private boolean reduce(List<Node> nodes) {
+		for (int i = nodes.size() - 1; i >= 0; --i) {
+			Node child = nodes.get(i);
+			if (child.parent != null && !semijoin(child.parent, child.sharedInParent, child, child.shared)) {
+				return false;
+			}
+		}
+		for (Node child : nodes) {
+			if (child.parent != null && !semijoin(child, child.shared, child.parent, child.sharedInParent)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the tuples of target whose projection on targetPositions is a
+	 * projection of a tuple of source on sourcePositions.
+	 * 
+	 * @return false if target becomes empty.
+	 */
+	private static boolean semijoin(Node target, int[] targetPositions, Node source, int[] sourcePositions) {
+		Set<List<Term>> keys = new HashSet<List<Term>>();
+		for (List<Term> tuple : source.tuples) {
+			keys.add(project(tuple, sourcePositions));
+		}
+		Iterator<List<Term>> it = target.tuples.iterator();
+		while (it.hasNext()) {
+			if (!keys.contains(project(it.next(), targetPositions))) {
+				it.remove();
+			}
+		}
+		return !target.tuples.isEmpty();
+	}
+
+	/**
+	 * Projects the reduced relations on the answer variables, along the join
+	 * forest restricted to them. The projections of the nodes without answer
+	 * variable are dropped, their children becoming roots: the variables they
+	 * share with the rest of the forest would occur in the dropped node. The
+	 * nodes whose answer variables all occur in the projection of their parent
+	 * are dropped too, their children being attached to this projection.
+	 * 
+	 * @param all
+	 *            sorted parents first.
+	 */
+	@SuppressWarnings("unchecked")
+	private void prepareEnumeration(List<Node> all, List<Term> ans) {
+		Set<Variable> ansSet = new HashSet<Variable>();
+		for (Term t : ans) {
+			if (t.isVariable()) {
+				ansSet.add((Variable) t);
+			}
+		}
+
+		Map<Node, Node> projections = new HashMap<Node, Node>();
+		List<Node> enumerated = new ArrayList<Node>();
+		for (Node node : all) {
+			Node parent = (node.parent == null) ? null : projections.get(node.parent);
+			List<Variable> free = new ArrayList<Variable>();
+			List<Integer> positions = new ArrayList<Integer>();
+			for (int i = 0; i < node.vars.length; ++i) {
+				if (ansSet.contains(node.vars[i])) {
+					free.add(node.vars[i]);
+					positions.add(i);
+				}
+			}
+
+			Node projection = null;
+			if (!free.isEmpty()) {
+				if (parent != null && Arrays.asList(parent.vars).containsAll(free)) {
+					projection = parent;
+				} else {
+					projection = new Node(free.toArray(new Variable[free.size()]));
+					int[] p = Node.toArray(positions);
+					for (List<Term> tuple : node.tuples) {
+						projection.tuples.add(project(tuple, p));
+					}
+					if (parent != null) {
+						projection.setParent(parent);
+						projection.index();
+					}
+					projection.rank = enumerated.size();
+					enumerated.add(projection);
+				}
+			}
+			projections.put(node, projection);
+		}
+
+		List<Variable> vars = new ArrayList<Variable>();
+		List<Integer> varNodes = new ArrayList<Integer>();
+		List<Integer> varPositions = new ArrayList<Integer>();
+		for (Node node : enumerated) {
+			for (int i = 0; i < node.vars.length; ++i) {
+				if (!vars.contains(node.vars[i])) {
+					vars.add(node.vars[i]);
+					varNodes.add(node.rank);
+					varPositions.add(i);
+				}
+			}
+		}
+
+		this.nodes = enumerated.toArray(new Node[enumerated.size()]);
+		this.ansVars = vars.toArray(new Variable[vars.size()]);
+		this.ansNodes = new int[vars.size()];
+		this.ansPositions = new int[vars.size()];
+		for (int i = 0; i < this.ansNodes.length; ++i) {
+			this.ansNodes[i] = varNodes.get(i);
+			this.ansPositions[i] = varPositions.get(i);
+		}
+		this.iterators = new Iterator[this.nodes.length];
+		this.current = new List[this.nodes.length];
+	}
+
+	/**
+	 * Moves to the next combination of tuples of the enumerated nodes.
+	 */
+	private boolean nextTuples() {
+		if (this.depth == DONE) {
+			return false;
+		} else if (this.depth == NOT_STARTED) {
+			if (this.nodes.length == 0) {
+				this.depth = DONE;
+				return true;
+			}
+			this.depth = 0;
+			this.iterators[0] = this.candidates(0);
+		} else {
+			this.depth = this.nodes.length - 1;
+		}
+
+		while (this.depth >= 0) {
+			if (this.iterators[this.depth].hasNext()) {
+				this.current[this.depth] = this.iterators[this.depth].next();
+				if (this.depth == this.nodes.length - 1) {
+					return true;
+				}
+				++this.depth;
+				this.iterators[this.depth] = this.candidates(this.depth);
+			} else {
+				--this.depth;
+			}
+		}
+		this.depth = DONE;
+		return false;
+	}
+
+	/**
+	 * Since the relations are reduced, there is always at least one candidate.
+	 */
+	private Iterator<List<Term>> candidates(int rank) {
+		Node node = this.nodes[rank];
+		if (node.parent == null) {
+			return node.tuples.iterator();
+		}
+		List<Term> key = project(this.current[node.parent.rank], node.sharedInParent);
+		return node.byParentKey.get(key).iterator();
+	}
+
+	private static List<Term> project(List<Term> tuple, int[] positions) {
+		List<Term> key = new ArrayList<Term>(positions.length);
+		for (int p : positions) {
+			key.add(tuple.get(p));
+		}
+		return key;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * A query atom with the matching tuples over its variables, or the
+	 * projection of such a node.
+	 */
+	private static class Node {
+
+		final Atom         atom;
+		final Variable[]   vars;
+		Set<List<Term>>    tuples = new LinkedHashSet<List<Term>>();
+
+		Node               parent = null;
+		int[]              shared;
+		int[]              sharedInParent;
+
+		int                rank;
+		Map<List<Term>, List<List<Term>>> byParentKey;
+
+		Node(Atom atom) {
+			this.atom = atom;
+			List<Variable> vars = new LinkedList<Variable>();
+			for (Term t : atom) {
+				if (t.isVariable() && !vars.contains(t)) {
+					vars.add((Variable) t);
+				}
+			}
+			this.vars = vars.toArray(new Variable[vars.size()]);
+		}
+
+		Node(Variable[] vars) {
+			this.atom = null;
+			this.vars = vars;
+		}
+
+		void setParent(Node parent) {
+			this.parent = parent;
+			List<Integer> shared = new ArrayList<Integer>();
+			List<Integer> sharedInParent = new ArrayList<Integer>();
+			List<Variable> parentVars = Arrays.asList(parent.vars);
+			for (int i = 0; i < this.vars.length; ++i) {
+				int j = parentVars.indexOf(this.vars[i]);
+				if (j >= 0) {
+					shared.add(i);
+					sharedInParent.add(j);
+				}
+			}
+			this.shared = toArray(shared);
+			this.sharedInParent = toArray(sharedInParent);
+		}
+
+		int depth() {
+			int d = 0;
+			for (Node n = this.parent; n != null; n = n.parent) {
+				++d;
+			}
+			return d;
+		}
+
+		/**
+		 * @return false if there is no match.
+		 */
+		boolean load(AtomSet data) throws AtomSetException, IteratorException {
+			int arity = this.atom.getPredicate().getArity();
+			// position of the first occurrence of the term, -1 for constants
+			int[] first = new int[arity];
+			int[] positions = new int[this.vars.length];
+			Arrays.fill(positions, -1);
+			List<Variable> vars = Arrays.asList(this.vars);
+			for (int i = 0; i < arity; ++i) {
+				Term t = this.atom.getTerm(i);
+				first[i] = -1;
+				if (t.isVariable()) {
+					int v = vars.indexOf(t);
+					if (positions[v] < 0) {
+						positions[v] = i;
+					}
+					first[i] = positions[v];
+				}
+			}
+
+			CloseableIterator<Atom> it = data.match(this.atom);
+			while (it.hasNext()) {
+				Atom a = it.next();
+				if (matches(a, this.atom, first)) {
+					List<Term> tuple = new ArrayList<Term>(positions.length);
+					for (int p : positions) {
+						tuple.add(a.getTerm(p));
+					}
+					this.tuples.add(tuple);
+				}
+			}
+			it.close();
+			return !this.tuples.isEmpty();
+		}
+
+		void index() {
+			this.byParentKey = new HashMap<List<Term>, List<List<Term>>>();
+			for (List<Term> tuple : this.tuples) {
+				List<Term> key = project(tuple, this.shared);
+				List<List<Term>> list = this.byParentKey.get(key);
+				if (list == null) {
+					list = new LinkedList<List<Term>>();
+					this.byParentKey.put(key, list);
+				}
+				list.add(tuple);
+			}
+		}
+
+		/**
+		 * Checks constants and repeated variables, in case the data does not.
+		 */
+		private static boolean matches(Atom a, Atom image, int[] first) {
+			for (int i = 0; i < first.length; ++i) {
+				if (first[i] < 0) {
+					if (!a.getTerm(i).equals(image.getTerm(i))) {
+						return false;
+					}
+				} else if (first[i] != i && !a.getTerm(i).equals(a.getTerm(first[i]))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int[] toArray(List<Integer> list) {
+			int[] array = new int[list.size()];
+			for (int i = 0; i < array.length; ++i) {
+				array[i] = list.get(i);
+			}
+			return array;
+		}
+	}
+
+	private static final class DepthComparator implements Comparator<Node> {
+
+		static final DepthComparator INSTANCE = new DepthComparator();
+
+		@Override
+		public int compare(Node o1, Node o2) {
+			return o1.depth() - o2.depth();
+		}
+	}
+
+}
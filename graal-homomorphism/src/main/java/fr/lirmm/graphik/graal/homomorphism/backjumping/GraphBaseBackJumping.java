@@ -80,6 +80,11 @@ public class GraphBaseBackJumping extends AbstractProfilable implements BackJump
 		}
 	}
 	
+	@Override
+	public GraphBaseBackJumping copy() {
+		return new GraphBaseBackJumping();
+	}
+
 	@Override
 	public void clear() {
 		for(VarData d : data) {
@@ -69,6 +69,11 @@ public class NoBackJumping extends AbstractProfilable implements BackJumping {
 	public void init(VarSharedData[] vars) {
 	}
 
+	@Override
+	public NoBackJumping copy() {
+		return this;
+	}
+
 	@Override
 	public void clear() {
 	}
@@ -70,6 +70,12 @@ class BCCBackJumping extends AbstractProfilable implements BackJumping {
 		Arrays.fill(success, false);
 	}
 	
+	@Override
+	public BCCBackJumping copy() {
+		BackJumping copy = this.bj.copy();
+		return (copy == null) ? null : new BCCBackJumping(this.BCC, copy);
+	}
+
 	@Override
 	public void clear() {
 		this.bj.clear();
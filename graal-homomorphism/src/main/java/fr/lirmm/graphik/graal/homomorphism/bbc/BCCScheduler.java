@@ -55,6 +55,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSet;
@@ -162,7 +163,8 @@ class BCCScheduler extends AbstractScheduler implements Scheduler {
 			v.nextLevel = v.level + 1;
 			v.previousLevel = v.level - 1;
 			if (this.withForbiddenCandidate && this.BCC.varData[v.level].isAccesseur) {
-				this.BCC.varData[v.level].forbidden = new HashSet<Term>();
+				// shared by the workers of a parallel backtrack
+				this.BCC.varData[v.level].forbidden = Collections.newSetFromMap(new ConcurrentHashMap<Term, Boolean>());
 			}
 
 			if (ans.contains(v.value)) {
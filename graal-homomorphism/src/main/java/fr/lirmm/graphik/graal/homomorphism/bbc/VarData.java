@@ -64,7 +64,9 @@ public class VarData {
 	 * 
 	 */
 	public void clear() {
-		this.forbidden.clear();
+		if (this.forbidden != null) {
+			this.forbidden.clear();
+		}
 	}
 	
 	public String toString() {
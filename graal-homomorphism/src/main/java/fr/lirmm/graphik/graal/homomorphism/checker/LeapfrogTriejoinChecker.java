@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism.checker;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.homomorphism.AbstractChecker;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismChecker;
+import fr.lirmm.graphik.graal.api.store.Store;
+import fr.lirmm.graphik.graal.homomorphism.LeapfrogTriejoinHomomorphism;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
+
+/**
+ * Selects {@link LeapfrogTriejoinHomomorphism} for conjunctive queries which
+ * are still cyclic once their equalities are processed, over in memory stores.
+ * Those index their atoms by predicate and position, so the sorted tries are
+ * loaded with one indexed match per atom. Plain in memory atom sets, which
+ * scan all their atoms for each match, are left to the other solvers.
+ * <br/>
+ * The stores do not provide sorted access, so the tries are built from all the
+ * atoms of the query predicates, which costs more than a backtrack for
+ * selective queries over large data. This checker is therefore not registered
+ * by {@link fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism} by default,
+ * add it with
+ * {@link fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism#addChecker(HomomorphismChecker)}
+ * for workloads of unselective cyclic queries.
+ */
+public class LeapfrogTriejoinChecker extends AbstractChecker implements HomomorphismChecker {
+
+	private static final LeapfrogTriejoinChecker INSTANCE = new LeapfrogTriejoinChecker();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// SINGLETON
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static LeapfrogTriejoinChecker instance() {
+		return INSTANCE;
+	}
+
+	private LeapfrogTriejoinChecker() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public LeapfrogTriejoinHomomorphism getSolver() {
+		return LeapfrogTriejoinHomomorphism.instance();
+	}
+
+	@Override
+	public boolean check(Object query, AtomSet atomset) {
+		if (query instanceof ConjunctiveQuery && atomset instanceof InMemoryAtomSet && atomset instanceof Store) {
+			ConjunctiveQuery q = EqualityUtils.processEquality((ConjunctiveQuery) query).getLeft();
+			return !AcyclicityUtils.isAcyclic(q.getAtomSet());
+		}
+		return false;
+	}
+
+	@Override
+	public int getDefaultPriority() {
+		return 10;
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism.checker;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.homomorphism.AbstractChecker;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismChecker;
+import fr.lirmm.graphik.graal.homomorphism.YannakakisHomomorphism;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.graal.homomorphism.utils.EqualityUtils;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Selects {@link YannakakisHomomorphism} for conjunctive queries which are
+ * acyclic, free-connex and of at least three atoms once their equalities are
+ * processed, over in memory atom sets. Smaller queries are left to the
+ * backtrack, whose forward checking already avoids most dead ends.
+ */
+public class YannakakisChecker extends AbstractChecker implements HomomorphismChecker {
+
+	private static final int MIN_ATOMS = 3;
+
+	private static final YannakakisChecker INSTANCE = new YannakakisChecker();
+
+	// /////////////////////////////////////////////////////////////////////////
+	// SINGLETON
+	// /////////////////////////////////////////////////////////////////////////
+
+	public static YannakakisChecker instance() {
+		return INSTANCE;
+	}
+
+	private YannakakisChecker() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public YannakakisHomomorphism getSolver() {
+		return YannakakisHomomorphism.instance();
+	}
+
+	@Override
+	public boolean check(Object query, AtomSet atomset) {
+		if (query instanceof ConjunctiveQuery && atomset instanceof InMemoryAtomSet) {
+			ConjunctiveQuery q = EqualityUtils.processEquality((ConjunctiveQuery) query).getLeft();
+			InMemoryAtomSet atoms = q.getAtomSet();
+			return hasAtLeast(atoms, MIN_ATOMS) && AcyclicityUtils.isAcyclic(atoms)
+			       && AcyclicityUtils.isFreeConnex(atoms, q.getAnswerVariables());
+		}
+		return false;
+	}
+
+	@Override
+	public int getDefaultPriority() {
+		return 5;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static boolean hasAtLeast(InMemoryAtomSet atoms, int n) {
+		CloseableIteratorWithoutException<Atom> it = atoms.iterator();
+		int i = 0;
+		while (i < n && it.hasNext()) {
+			it.next();
+			++i;
+		}
+		it.close();
+		return i >= n;
+	}
+
+}
@@ -100,5 +100,17 @@ public interface ForwardChecking extends Profilable {
 	 * 
 	 */
 	void clear();
+
+	/**
+	 * Returns a new instance with the same configuration and no search state,
+	 * so that several backtracks can run concurrently on the same query plan.
+	 * The default implementation returns null, in which case the backtrack is
+	 * sequential.
+	 * 
+	 * @return a copy of this forward checking, or null if it can not be copied.
+	 */
+	default ForwardChecking copy() {
+		return null;
+	}
 		
 }
@@ -80,6 +80,11 @@ public class NFC0 extends AbstractNFC implements ForwardChecking {
 	// PUBLIC METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
+	@Override
+	public NFC0 copy() {
+		return new NFC0();
+	}
+
 	@Override
 	public boolean checkForward(Var v, AtomSet g, Substitution initialSubstitution, Map<Variable, Integer> map, Var[] varData, RulesCompilation rc) throws BacktrackException {
 
@@ -97,6 +97,15 @@ public class NFC2 extends AbstractNFC implements ForwardChecking {
 	// PUBLIC METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
+	@Override
+	public NFC2 copy() {
+		return new NFC2(this.checkMode);
+	}
+
+	protected boolean isCheckMode() {
+		return this.checkMode;
+	}
+
 	@Override
 	public boolean checkForward(Var v, AtomSet g, Substitution initialSubstitution, Map<Variable, Integer> map, Var[] varData, RulesCompilation rc) throws BacktrackException {
 
@@ -109,6 +109,11 @@ public class NFC2WithLimit extends NFC2 implements ForwardChecking {
 	// PUBLIC METHODS
 	// /////////////////////////////////////////////////////////////////////////
 
+	@Override
+	public NFC2WithLimit copy() {
+		return new NFC2WithLimit(this.LIMIT, this.isCheckMode());
+	}
+
 	@Override
 	public void init(VarSharedData[] vars, java.util.Map<Variable, Integer> map) {
 		super.init(vars, map);
@@ -87,6 +87,11 @@ public class NoForwardChecking extends AbstractProfilable implements ForwardChec
 		return false;
 	}
 	
+	@Override
+	public NoForwardChecking copy() {
+		return this;
+	}
+
 	@Override
 	public void clear() {
 	}
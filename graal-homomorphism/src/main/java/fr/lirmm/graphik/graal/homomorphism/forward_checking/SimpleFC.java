@@ -158,6 +158,11 @@ public class SimpleFC extends AbstractProfilable implements ForwardChecking {
 		return sb.append("SimpleFC");
 	}
 
+	@Override
+	public SimpleFC copy() {
+		return new SimpleFC();
+	}
+
 	@Override
 	public void clear() {
 	}
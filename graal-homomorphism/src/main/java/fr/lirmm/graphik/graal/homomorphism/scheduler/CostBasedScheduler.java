@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.store.Store;
+import fr.lirmm.graphik.graal.homomorphism.Var;
+import fr.lirmm.graphik.graal.homomorphism.VarSharedData;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Compute an order over variables from h based on the statistics of the
+ * {@link Store}. Answer variables are put first, then other variables. Within
+ * each group, the variables are chosen greedily: the next variable is the one
+ * with the smallest estimated number of candidates, given the terms already
+ * bound by the previous levels.
+ * <br/>
+ * The number of candidates of a variable X in an atom p(t1...tn) is estimated
+ * by size(p) divided by the number of different terms at each position whose
+ * term is bound (the selectivity of the join on this position), and bounded by
+ * the number of different terms at the position of X. The estimation for X is
+ * the smallest over the atoms in which it appears. The statistics of the atoms
+ * are read from the store once per query.
+ * <br/>
+ * If the data is not a {@link Store}, the {@link DefaultScheduler} order is
+ * used.
+ */
+public class CostBasedScheduler extends AbstractScheduler implements Scheduler {
+
+	private static CostBasedScheduler instance;
+
+	private CostBasedScheduler() {
+		super();
+	}
+
+	public static synchronized CostBasedScheduler instance() {
+		if (instance == null)
+			instance = new CostBasedScheduler();
+
+		return instance;
+	}
+
+	@Override
+	public VarSharedData[] execute(InMemoryAtomSet query, Set<Variable> preAffectedVars, List<Term> ans, AtomSet data,
+	    RulesCompilation rc) {
+		if (!(data instanceof Store)) {
+			return DefaultScheduler.instance().execute(query, preAffectedVars, ans, data, rc);
+		}
+		Store store = (Store) data;
+		InMemoryAtomSet h = (preAffectedVars.isEmpty()) ? query : computeFixedQuery(query, preAffectedVars);
+
+		Set<Variable> terms = h.getVariables();
+		List<Atom> atoms = new LinkedList<Atom>();
+		Map<Atom, List<AtomStatistics>> statistics = new HashMap<Atom, List<AtomStatistics>>();
+		CloseableIteratorWithoutException<Atom> it = h.iterator();
+		while (it.hasNext()) {
+			Atom a = it.next();
+			atoms.add(a);
+			statistics.put(a, computeStatistics(a, store, rc));
+		}
+
+		VarSharedData[] vars = new VarSharedData[terms.size() + 2];
+		int level = 0;
+		vars[level] = new VarSharedData(level);
+
+		Set<Variable> answerVars = new HashSet<Variable>();
+		for (Term t : ans) {
+			if (terms.contains(t)) {
+				answerVars.add((Variable) t);
+			}
+		}
+		terms.removeAll(answerVars);
+
+		Set<Term> bound = new HashSet<Term>();
+		level = this.schedule(answerVars, atoms, statistics, bound, vars, level);
+		int lastAnswerVariable = level;
+		level = this.schedule(terms, atoms, statistics, bound, vars, level);
+
+		++level;
+		vars[level] = new VarSharedData(level);
+		vars[level].previousLevel = lastAnswerVariable;
+
+		return vars;
+	}
+
+	@Override
+	public void clear() {
+
+	}
+
+	@Override
+	public boolean isAllowed(Var var, Term image) {
+		return true;
+	}
+
+	@Override
+	public String getInfos(Var var) {
+		return "";
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Put greedily the specified variables in vars, from the level following
+	 * the specified one.
+	 *
+	 * @return the level of the last scheduled variable.
+	 */
+	private int schedule(Set<Variable> toSchedule, List<Atom> atoms, Map<Atom, List<AtomStatistics>> statistics,
+	    Set<Term> bound, VarSharedData[] vars, int level) {
+		Set<Variable> remaining = new HashSet<Variable>(toSchedule);
+		while (!remaining.isEmpty()) {
+			Variable best = null;
+			double bestCost = 0.;
+			int bestConnections = 0;
+			for (Variable v : remaining) {
+				double cost = Double.MAX_VALUE;
+				int connections = 0;
+				for (Atom a : atoms) {
+					if (a.contains(v)) {
+						cost = Math.min(cost, estimateCandidates(statistics.get(a), v, bound));
+						if (isConnected(a, bound)) {
+							++connections;
+						}
+					}
+				}
+				if (best == null || cost < bestCost || (cost == bestCost && connections > bestConnections)) {
+					best = v;
+					bestCost = cost;
+					bestConnections = connections;
+				}
+			}
+			remaining.remove(best);
+			bound.add(best);
+			++level;
+			vars[level] = new VarSharedData(level);
+			vars[level].value = best;
+		}
+		return level;
+	}
+
+	/**
+	 * @return the statistics of the rewritings of the specified atom.
+	 */
+	private static List<AtomStatistics> computeStatistics(Atom atom, Store store, RulesCompilation rc) {
+		List<AtomStatistics> statistics = new ArrayList<AtomStatistics>();
+		for (Pair<Atom, Substitution> im : rc.getRewritingOf(atom)) {
+			statistics.add(new AtomStatistics(im.getLeft(), store));
+		}
+		return statistics;
+	}
+
+	private static double estimateCandidates(List<AtomStatistics> statistics, Variable v, Set<Term> bound) {
+		double sum = 0.;
+		for (AtomStatistics stats : statistics) {
+			double estimation = stats.size;
+			if (estimation > 0.) {
+				int position = -1;
+				int i = 0;
+				for (Term t : stats.atom) {
+					if (t.equals(v) && position < 0) {
+						position = i;
+					} else if (t.equals(v) || !t.isVariable() || bound.contains(t)) {
+						estimation /= Math.max(1, stats.domainSizes[i]);
+					}
+					++i;
+				}
+				if (position >= 0) {
+					estimation = Math.min(estimation, stats.domainSizes[position]);
+				}
+			}
+			sum += estimation;
+		}
+		return sum;
+	}
+
+	private static boolean isConnected(Atom a, Set<Term> bound) {
+		for (Term t : a) {
+			if (!t.isVariable() || bound.contains(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The size of the predicate of an atom and the numbers of different terms
+	 * at each of its positions.
+	 */
+	private static class AtomStatistics {
+
+		final Atom  atom;
+		final int   size;
+		final int[] domainSizes;
+
+		AtomStatistics(Atom atom, Store store) {
+			Predicate p = atom.getPredicate();
+			this.atom = atom;
+			this.size = store.size(p);
+			this.domainSizes = new int[p.getArity()];
+			if (this.size > 0) {
+				for (int i = 0; i < this.domainSizes.length; ++i) {
+					this.domainSizes[i] = store.getDomainSize(p, i);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * Structural properties of the hypergraph of a set of atoms, whose vertices
+ * are the variables and whose hyperedges are the atoms.
+ */
+public final class AcyclicityUtils {
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private AcyclicityUtils() {
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PUBLIC METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Checks the alpha-acyclicity of the hypergraph of the specified atoms.
+	 *
+	 * @param atoms
+	 * @return true if the specified atom set is acyclic, false otherwise.
+	 * @see #computeJoinForest(List)
+	 */
+	public static boolean isAcyclic(InMemoryAtomSet atoms) {
+		List<Set<Variable>> edges = new ArrayList<Set<Variable>>();
+		CloseableIteratorWithoutException<Atom> it = atoms.iterator();
+		while (it.hasNext()) {
+			edges.add(it.next().getVariables());
+		}
+		it.close();
+		return computeJoinForest(edges) != null;
+	}
+
+	/**
+	 * Checks whether the specified atoms are free-connex with respect to the
+	 * specified answer terms: the hypergraph stays acyclic when an edge made
+	 * of the answer variables is added. The answers of an acyclic and
+	 * free-connex query are the join of the projections of its atoms on the
+	 * answer variables.
+	 *
+	 * @param atoms
+	 * @param ans
+	 * @return true if the specified atom set is free-connex, false otherwise.
+	 */
+	public static boolean isFreeConnex(InMemoryAtomSet atoms, Collection<? extends Term> ans) {
+		List<Set<Variable>> edges = new ArrayList<Set<Variable>>();
+		CloseableIteratorWithoutException<Atom> it = atoms.iterator();
+		while (it.hasNext()) {
+			edges.add(it.next().getVariables());
+		}
+		it.close();
+		return isFreeConnex(edges, ans);
+	}
+
+	/**
+	 * @param edges
+	 *            the variables of each atom.
+	 * @param ans
+	 * @return true if the hypergraph stays acyclic when an edge made of the
+	 *         answer variables occurring in the specified edges is added.
+	 * @see #isFreeConnex(InMemoryAtomSet, Collection)
+	 */
+	public static boolean isFreeConnex(List<? extends Set<Variable>> edges, Collection<? extends Term> ans) {
+		Set<Variable> free = new HashSet<Variable>();
+		for (Set<Variable> edge : edges) {
+			for (Term t : ans) {
+				if (edge.contains(t)) {
+					free.add((Variable) t);
+				}
+			}
+		}
+		List<Set<Variable>> extended = new ArrayList<Set<Variable>>(edges);
+		extended.add(free);
+		return computeJoinForest(extended) != null;
+	}
+
+	/**
+	 * Computes a join forest of the specified hyperedges with the GYO
+	 * reduction: an ear, i.e. an edge whose variables shared with the other
+	 * remaining edges are all contained in one of them (its parent), is
+	 * removed until nothing remains. An edge sharing no variable with the
+	 * remaining ones is the root of a tree. The hypergraph is acyclic iff all
+	 * edges can be removed.
+	 * <br/>
+	 * In the forest, the variables shared by two edges occur in all the edges
+	 * of the path between them.
+	 *
+	 * @param edges
+	 *            the variables of each atom.
+	 * @return the index of the parent of each edge, -1 for roots, or null if
+	 *         the hypergraph is cyclic.
+	 */
+	public static int[] computeJoinForest(List<? extends Set<Variable>> edges) {
+		int n = edges.size();
+		int[] parents = new int[n];
+		List<Integer> remaining = new LinkedList<Integer>();
+		for (int i = 0; i < n; ++i) {
+			remaining.add(i);
+		}
+
+		while (!remaining.isEmpty()) {
+			boolean removed = false;
+			Iterator<Integer> it = remaining.iterator();
+			while (!removed && it.hasNext()) {
+				int e = it.next();
+				Set<Variable> shared = new HashSet<Variable>();
+				for (int f : remaining) {
+					if (f != e) {
+						for (Variable v : edges.get(e)) {
+							if (edges.get(f).contains(v)) {
+								shared.add(v);
+							}
+						}
+					}
+				}
+
+				int parent = -1;
+				if (!shared.isEmpty()) {
+					for (int f : remaining) {
+						if (f != e && edges.get(f).containsAll(shared)) {
+							parent = f;
+							break;
+						}
+					}
+				}
+				if (shared.isEmpty() || parent >= 0) {
+					parents[e] = parent;
+					it.remove();
+					removed = true;
+				}
+			}
+			if (!removed) {
+				return null;
+			}
+		}
+		return parents;
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.scheduler.CostBasedScheduler;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+
+public class CostBasedSchedulerTest {
+
+	@Test
+	public void selectiveVariableFirst() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		Predicate r = new Predicate("r", 2);
+		for (int i = 0; i < 100; ++i) {
+			for (int j = 0; j < 10; ++j) {
+				data.add(new DefaultAtom(r, constant(i), constant(j)));
+			}
+		}
+		data.add(new DefaultAtom(new Predicate("s", 1), constant(3)));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- r(X,Y), s(Y).");
+
+		// When
+		VarSharedData[] vars = CostBasedScheduler.instance().execute(query.getAtomSet(),
+		                                                             Collections.<Variable>emptySet(),
+		                                                             query.getAnswerVariables(), data,
+		                                                             NoCompilation.instance());
+
+		// Then
+		Assert.assertEquals(4, vars.length);
+		Assert.assertEquals("Y", vars[1].value.getLabel());
+		Assert.assertEquals("X", vars[2].value.getLabel());
+		Assert.assertEquals(2, vars[3].previousLevel);
+	}
+
+	@Test
+	public void answerVariablesFirst() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), q(c)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X) :- p(X,Y), q(Y).");
+
+		// When
+		VarSharedData[] vars = CostBasedScheduler.instance().execute(query.getAtomSet(),
+		                                                             Collections.<Variable>emptySet(),
+		                                                             query.getAnswerVariables(), data,
+		                                                             NoCompilation.instance());
+
+		// Then
+		List<String> order = new LinkedList<String>();
+		for (int i = 1; i < vars.length - 1; ++i) {
+			order.add(vars[i].value.getLabel());
+		}
+		Assert.assertEquals("[X, Y]", order.toString());
+		Assert.assertEquals(1, vars[3].previousLevel);
+	}
+
+	private static Term constant(int i) {
+		return DefaultTermFactory.instance().createConstant(i);
+	}
+
+}
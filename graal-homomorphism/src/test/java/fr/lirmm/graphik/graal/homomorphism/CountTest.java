@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class CountTest {
+
+	private static final String[] QUERIES = { "?(X,Y) :- p(X,Y).",
+	                                          "?(X) :- p(X,Y), q(Y,Z).",
+	                                          "?(X,Z) :- p(X,Y), p(Y,Z).",
+	                                          "?(X,W) :- p(X,Y), p(Y,Z), q(Z,W).",
+	                                          "?(X,Y) :- p(X,Y), X=Y.",
+	                                          "?(X) :- p(X,Y), p(Y,Z), p(Z,X).",
+	                                          "? :- p(X,Y), q(Y,X).",
+	                                          "? :- p(X,Y), q(Y,X), r(X)." };
+
+	@Test
+	public void sameCountAsExecute() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 20,
+		                   new Random(3));
+		BacktrackHomomorphism h = new BacktrackHomomorphism();
+
+		for (String q : QUERIES) {
+			ConjunctiveQuery query = DlgpParser.parseQuery(q);
+
+			// When
+			Set<Substitution> answers = new HashSet<Substitution>();
+			CloseableIterator<Substitution> it = h.execute(query, data);
+			while (it.hasNext()) {
+				answers.add(it.next());
+			}
+			it.close();
+
+			// Then
+			Assert.assertEquals(q, answers.size(), h.count(query, data));
+			Assert.assertEquals(q, answers.size(), SmartHomomorphism.instance().count(query, data));
+		}
+	}
+
+	@Test
+	public void differentAnswersOnly() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(a,d), p(b,e), p(c,e), p(d,e)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Z) :- p(X,Y), p(Y,Z).");
+
+		// Then
+		Assert.assertEquals(1, new BacktrackHomomorphism().count(query, data));
+		Assert.assertEquals(1, SmartHomomorphism.instance().count(query, data));
+	}
+
+	@Test
+	public void estimateCount() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), p(a,c), q(c,d)."));
+		BacktrackHomomorphism h = new BacktrackHomomorphism();
+
+		// Then
+		Assert.assertEquals(4, h.estimateCount(DlgpParser.parseQuery("?(X,Y) :- p(X,Y)."), data));
+		Assert.assertEquals(0, h.estimateCount(DlgpParser.parseQuery("?(X) :- p(X,Y), r(Y)."), data));
+		Assert.assertEquals(1, h.estimateCount(DlgpParser.parseQuery("? :- p(X,Y), q(Y,Z)."), data));
+		Assert.assertTrue(h.estimateCount(DlgpParser.parseQuery("?(X) :- p(X,Y), p(Y,Z)."), data) <= 3);
+	}
+
+}
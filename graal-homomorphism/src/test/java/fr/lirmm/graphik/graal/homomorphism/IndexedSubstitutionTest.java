@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class IndexedSubstitutionTest {
+
+	private static final Variable X = DefaultTermFactory.instance().createVariable("X");
+	private static final Variable Y = DefaultTermFactory.instance().createVariable("Y");
+	private static final Variable Z = DefaultTermFactory.instance().createVariable("Z");
+	private static final Term     A = DefaultTermFactory.instance().createConstant("a");
+	private static final Term     B = DefaultTermFactory.instance().createConstant("b");
+
+	@Test
+	public void sameAsMapBasedSubstitution() {
+		// Given
+		Map<Variable, Integer> index = new TreeMap<Variable, Integer>();
+		index.put(X, 1);
+		index.put(Y, 2);
+		IndexedSubstitution s = new IndexedSubstitution(index, new Variable[] { null, X, Y, null });
+		Substitution expected = new HashMapSubstitution();
+
+		// When
+		s.set(1, A);
+		Assert.assertTrue(s.put(Z, B));
+		expected.put(X, A);
+		expected.put(Z, B);
+
+		// Then
+		Assert.assertFalse(s.put(X, B));
+		Assert.assertEquals(A, s.createImageOf(X));
+		Assert.assertEquals(Y, s.createImageOf(Y));
+		Assert.assertEquals(expected.getTerms(), s.getTerms());
+		Assert.assertEquals(expected, s);
+		Assert.assertEquals(expected.hashCode(), s.hashCode());
+		Assert.assertTrue(s.remove(Z));
+		Assert.assertEquals(1, s.getTerms().size());
+	}
+
+	@Test
+	public void reuseAnswers() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), p(a,c)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- p(X,Y).");
+		BacktrackHomomorphism h = new BacktrackHomomorphism();
+		h.setReuseAnswers(true);
+
+		// When
+		Set<Substitution> answers = new HashSet<Substitution>();
+		Substitution previous = null;
+		CloseableIterator<Substitution> it = h.execute(query, data);
+		while (it.hasNext()) {
+			Substitution s = it.next();
+			if (previous != null) {
+				Assert.assertSame(previous, s);
+			}
+			previous = s;
+			answers.add(new HashMapSubstitution(s));
+		}
+		it.close();
+
+		// Then
+		Assert.assertEquals(4, answers.size());
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.atomset.LinkedListAtomSet;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.checker.LeapfrogTriejoinChecker;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class LeapfrogTriejoinHomomorphismTest {
+
+	private static final String[] QUERIES = { "?(X,Y,Z) :- p(X,Y), p(Y,Z), p(Z,X).",
+	                                          "?(X) :- p(X,Y), p(Y,Z), p(Z,X).",
+	                                          "?(X,Z) :- p(X,Y), q(Y,Z), p(Z,W), q(W,X).",
+	                                          "?(X,Y) :- p(X,Y), p(Y,X), q(X,X).",
+	                                          "? :- p(X,Y), p(Y,Z), q(Z,X).",
+	                                          "?(Y,Z) :- p(1,Y), p(Y,Z), p(Z,1)." };
+
+	@Test
+	public void acyclicity() throws Exception {
+		Assert.assertTrue(AcyclicityUtils.isAcyclic(DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z), q(Z,W).").getAtomSet()));
+		Assert.assertTrue(AcyclicityUtils.isAcyclic(DlgpParser.parseQuery("? :- t(X,Y,Z), p(X,Y), p(Y,Z), p(Z,X).").getAtomSet()));
+		Assert.assertFalse(AcyclicityUtils.isAcyclic(DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z), p(Z,X).").getAtomSet()));
+	}
+
+	@Test
+	public void checker() throws Exception {
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		Assert.assertTrue(LeapfrogTriejoinChecker.instance().check(DlgpParser.parseQuery(QUERIES[0]), data));
+		Assert.assertFalse(LeapfrogTriejoinChecker.instance().check(DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z)."), data));
+		Assert.assertFalse(LeapfrogTriejoinChecker.instance().check(DlgpParser.parseQuery(QUERIES[0]),
+		    new LinkedListAtomSet()));
+	}
+
+	@Test
+	public void withEquality() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,W) :- p(X,Y), p(Y,Z), p(Z,X), X=W.");
+
+		// When
+		Set<Substitution> expected = answers(new BacktrackHomomorphism(), query, data);
+		Set<Substitution> actual = answers(LeapfrogTriejoinHomomorphism.instance(), query, data);
+
+		// Then
+		Assert.assertEquals(3, actual.size());
+		Assert.assertEquals(expected, actual);
+		Assert.assertTrue(LeapfrogTriejoinHomomorphism.instance().exist(query, data));
+		Assert.assertFalse(LeapfrogTriejoinHomomorphism.instance().exist(
+		    DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z), p(Z,X), X=Y."), data));
+	}
+
+	@Test
+	public void sameAnswersAsBacktrack() throws Exception {
+		// Given
+		Random rand = new Random(7);
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 400, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 15, rand);
+
+		for (String q : QUERIES) {
+			ConjunctiveQuery query = DlgpParser.parseQuery(q);
+
+			// When
+			Set<Substitution> expected = answers(new BacktrackHomomorphism(), query, data);
+			Set<Substitution> actual = answers(LeapfrogTriejoinHomomorphism.instance(), query, data);
+
+			// Then
+			Assert.assertEquals(q, expected, actual);
+		}
+	}
+
+	@Test
+	public void withInitialSubstitution() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), p(b,d), p(d,a), p(c,b)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y,Z) :- p(X,Y), p(Y,Z), p(Z,X).");
+		Substitution s = new HashMapSubstitution();
+		s.put(DefaultTermFactory.instance().createVariable("X"), DefaultTermFactory.instance().createConstant("a"));
+
+		// When
+		CloseableIterator<Substitution> it = LeapfrogTriejoinHomomorphism.instance().execute(query, data, s);
+		int nb = 0;
+		while (it.hasNext()) {
+			it.next();
+			++nb;
+		}
+		it.close();
+
+		// Then
+		Assert.assertEquals(2, nb);
+	}
+
+	@Test
+	public void optInSmartHomomorphism() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), p(b,d), p(d,a), p(c,b)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery(QUERIES[0]);
+		SmartHomomorphism h = new SmartHomomorphism(true);
+
+		// When
+		boolean added = h.addChecker(LeapfrogTriejoinChecker.instance());
+		Set<Substitution> actual = new HashSet<Substitution>();
+		CloseableIterator<Substitution> it = h.execute(query, data);
+		while (it.hasNext()) {
+			actual.add(it.next());
+		}
+		it.close();
+
+		// Then
+		Assert.assertTrue(added);
+		Assert.assertEquals(answers(new BacktrackHomomorphism(), query, data), actual);
+	}
+
+	private static Set<Substitution> answers(Homomorphism<ConjunctiveQuery, AtomSet> h, ConjunctiveQuery q,
+	    AtomSet data) throws Exception {
+		Set<Substitution> set = new HashSet<Substitution>();
+		CloseableIterator<Substitution> it = h.execute(q, data);
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		it.close();
+		return set;
+	}
+
+}
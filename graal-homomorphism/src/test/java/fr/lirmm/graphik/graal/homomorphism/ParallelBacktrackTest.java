@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.homomorphism.forward_checking.NFC2;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.IteratorException;
+
+public class ParallelBacktrackTest {
+
+	private static final String[] QUERIES = { "?(X,Y,Z) :- p(X,Y), q(Y,Z).",
+	                                          "?(X) :- p(X,Y), q(Y,Z), p(Z,W).",
+	                                          "?(X,Z) :- p(X,Y), p(Y,Z), q(Z,X).",
+	                                          "? :- p(X,Y), q(Y,X).",
+	                                          "? :- p(X,X), q(X,X), p(X,Y), q(Y,Y)." };
+
+	@Test
+	public void sameAnswersAsSequential() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 20,
+		                   new Random(11));
+		BacktrackHomomorphism sequential = new BacktrackHomomorphism();
+		BacktrackHomomorphism parallel = new BacktrackHomomorphism();
+		parallel.setParallelism(4);
+
+		for (String q : QUERIES) {
+			ConjunctiveQuery query = DlgpParser.parseQuery(q);
+
+			// When
+			Map<Substitution, Integer> expected = count(sequential.execute(query, data));
+			Map<Substitution, Integer> actual = count(parallel.execute(query, data));
+
+			// Then
+			Assert.assertEquals(q, expected, actual);
+		}
+	}
+
+	@Test
+	public void closeBeforeEnd() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2) }, 20, new Random(3));
+		BacktrackHomomorphism h = new BacktrackHomomorphism();
+		h.setParallelism(2);
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y,Z) :- p(X,Y), p(Y,Z).");
+
+		// When
+		CloseableIterator<Substitution> it = h.execute(query, data);
+		Assert.assertTrue(it.hasNext());
+		it.next();
+		it.close();
+
+		// Then
+		Assert.assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void configuredForwardCheckingCopied() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 20,
+		                   new Random(5));
+		AtomicInteger copies = new AtomicInteger();
+		BacktrackHomomorphism parallel = new BacktrackHomomorphism(new CopyCountingFC(copies));
+		parallel.setParallelism(4);
+		ConjunctiveQuery query = DlgpParser.parseQuery(QUERIES[0]);
+
+		// When
+		Map<Substitution, Integer> actual = count(parallel.execute(query, data));
+
+		// Then
+		Assert.assertEquals(count(new BacktrackHomomorphism().execute(query, data)), actual);
+		Assert.assertTrue(copies.get() > 1);
+	}
+
+	@Test(expected = IteratorException.class)
+	public void workerErrorReported() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 20,
+		                   new Random(5));
+		BacktrackHomomorphism parallel = new BacktrackHomomorphism(new FailingFC());
+		parallel.setParallelism(4);
+
+		// When
+		count(parallel.execute(DlgpParser.parseQuery(QUERIES[0]), data));
+	}
+
+	private static class CopyCountingFC extends NFC2 {
+
+		private final AtomicInteger copies;
+
+		CopyCountingFC(AtomicInteger copies) {
+			this.copies = copies;
+		}
+
+		@Override
+		public CopyCountingFC copy() {
+			this.copies.incrementAndGet();
+			return new CopyCountingFC(this.copies);
+		}
+	}
+
+	private static class FailingFC extends NFC2 {
+
+		@Override
+		public FailingFC copy() {
+			return new FailingFC();
+		}
+
+		@Override
+		public boolean checkForward(Var v, AtomSet g, Substitution initialSubstitution, Map<Variable, Integer> map,
+		    Var[] varData, RulesCompilation rc) throws BacktrackException {
+			throw new IllegalStateException("failure");
+		}
+	}
+
+	private static Map<Substitution, Integer> count(CloseableIterator<Substitution> it) throws Exception {
+		Map<Substitution, Integer> map = new HashMap<Substitution, Integer>();
+		while (it.hasNext()) {
+			Substitution s = it.next();
+			Integer i = map.get(s);
+			map.put(s, i == null ? 1 : i + 1);
+		}
+		it.close();
+		return map;
+	}
+
+}
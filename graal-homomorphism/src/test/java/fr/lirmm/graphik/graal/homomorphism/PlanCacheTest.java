@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.Substitutions;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.compilation.NoCompilation;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class PlanCacheTest {
+
+	@Test
+	public void sameAnswersAsBacktrack() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 200, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 15,
+		                   new Random(5));
+		PlanCache cache = new PlanCache(8);
+		String[] queries = { "?(X,Y) :- p(X,Z), q(Z,Y).", "?(A,B) :- q(C,B), p(A,C).", "?(A) :- q(C,B), p(A,C)." };
+
+		for (String q : queries) {
+			ConjunctiveQuery query = DlgpParser.parseQuery(q);
+			for (int i = 0; i < 2; ++i) {
+				// When
+				Map<Substitution, Integer> expected = count(new BacktrackHomomorphism().execute(query, data));
+				Map<Substitution, Integer> actual = count(cache.execute(query, data, NoCompilation.instance(),
+				                                                         Substitutions.emptySubstitution()));
+
+				// Then
+				Assert.assertEquals(q, expected, actual);
+			}
+		}
+		// the two first queries are equal up to renaming
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void rebinding() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), p(a,c)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- p(X,Y).");
+		PlanCache cache = new PlanCache(8);
+
+		for (String c : new String[] { "a", "b", "d" }) {
+			Substitution s = new HashMapSubstitution();
+			s.put(DefaultTermFactory.instance().createVariable("X"), DefaultTermFactory.instance().createConstant(c));
+
+			// When
+			Map<Substitution, Integer> expected = count(new BacktrackHomomorphism().execute(query, data, s));
+			Map<Substitution, Integer> actual = count(cache.execute(query, data, NoCompilation.instance(), s));
+
+			// Then
+			Assert.assertEquals(c, expected, actual);
+		}
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void planInUse() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- p(X,Y).");
+		PlanCache cache = new PlanCache(8);
+
+		// When
+		CloseableIterator<Substitution> it = cache.execute(query, data, NoCompilation.instance(),
+		                                                   Substitutions.emptySubstitution());
+		Assert.assertTrue(it.hasNext());
+
+		// Then
+		Assert.assertNull(cache.execute(query, data, NoCompilation.instance(), Substitutions.emptySubstitution()));
+		it.close();
+		Assert.assertNotNull(cache.execute(query, data, NoCompilation.instance(), Substitutions.emptySubstitution()));
+	}
+
+	@Test
+	public void planReleasedOnceExhaustedOrClosed() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- p(X,Y).");
+		PlanCache cache = new PlanCache(8);
+
+		// When
+		CloseableIterator<Substitution> it = cache.execute(query, data, NoCompilation.instance(),
+		                                                   Substitutions.emptySubstitution());
+		while (it.hasNext()) {
+			it.next();
+		}
+
+		// Then
+		it = cache.execute(query, data, NoCompilation.instance(), Substitutions.emptySubstitution());
+		Assert.assertNotNull(it);
+		Assert.assertTrue(it.hasNext());
+		Assert.assertNull(cache.execute(query, data, NoCompilation.instance(), Substitutions.emptySubstitution()));
+		it.close();
+		Assert.assertNotNull(cache.execute(query, data, NoCompilation.instance(), Substitutions.emptySubstitution()));
+	}
+
+	@Test
+	public void dataNotRetained() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c)."));
+		PlanCache cache = new PlanCache(8);
+		count(cache.execute(DlgpParser.parseQuery("?(X,Y) :- p(X,Y)."), data, NoCompilation.instance(),
+		                    Substitutions.emptySubstitution()));
+		WeakReference<InMemoryAtomSet> ref = new WeakReference<InMemoryAtomSet>(data);
+
+		// When
+		data = null;
+		for (int i = 0; i < 50 && ref.get() != null; ++i) {
+			System.gc();
+		}
+
+		// Then
+		Assert.assertNull(ref.get());
+		Assert.assertEquals(1, cache.size());
+		count(cache.execute(DlgpParser.parseQuery("?(X) :- p(X,X)."), new DefaultInMemoryGraphStore(),
+		                    NoCompilation.instance(), Substitutions.emptySubstitution()));
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void smartHomomorphismNestedCalls() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y) :- p(X,Y).");
+
+		// When
+		int nb = 0;
+		CloseableIterator<Substitution> it = SmartHomomorphism.instance().execute(query, data);
+		while (it.hasNext()) {
+			it.next();
+			Assert.assertEquals(3, count(SmartHomomorphism.instance().execute(query, data)).size());
+			++nb;
+		}
+		it.close();
+
+		// Then
+		Assert.assertEquals(3, nb);
+	}
+
+	@Test
+	public void smartHomomorphismUsesCacheForBacktrackOnly() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(b,c), p(c,a), q(a,b)."));
+		SmartHomomorphism h = new SmartHomomorphism(true);
+		PlanCache cache = h.getPlanCache();
+
+		// When / Then
+		count(h.execute(DlgpParser.parseQuery("?(X) :- p(X,Y)."), data));
+		Assert.assertEquals(0, cache.size());
+		count(h.execute(DlgpParser.parseQuery("?(X,Y) :- p(X,Y), p(Y,Z), q(Z,W)."), data));
+		Assert.assertEquals(0, cache.size());
+		count(h.execute(DlgpParser.parseQuery("?(X,Z) :- p(X,Y), q(Y,Z)."), data));
+		Assert.assertEquals(1, cache.size());
+		count(h.execute(DlgpParser.parseQuery("?(X,Y,Z) :- p(X,Y), p(Y,Z), p(Z,X)."), data));
+		Assert.assertEquals(2, cache.size());
+		count(h.execute(DlgpParser.parseQuery("?(X,Z) :- p(X,Y), p(Y,Z), q(Z,W)."), data));
+		Assert.assertEquals(3, cache.size());
+	}
+
+	private static Map<Substitution, Integer> count(CloseableIterator<Substitution> it) throws Exception {
+		Map<Substitution, Integer> map = new HashMap<Substitution, Integer>();
+		while (it.hasNext()) {
+			Substitution s = it.next();
+			Integer i = map.get(s);
+			map.put(s, i == null ? 1 : i + 1);
+		}
+		it.close();
+		return map;
+	}
+
+}
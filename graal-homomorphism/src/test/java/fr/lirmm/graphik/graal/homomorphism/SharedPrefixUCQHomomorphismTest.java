@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.UnionOfConjunctiveQueries;
+import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
+import fr.lirmm.graphik.graal.core.DefaultUnionOfConjunctiveQueries;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.checker.SharedPrefixUCQChecker;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+
+public class SharedPrefixUCQHomomorphismTest {
+
+	private static final String[][] UCQS = {
+	    { "?(X) :- p(X,Y), p(Y,Z).", "?(X) :- p(X,Y), q(Y,Z).", "?(X) :- q(Y,X), p(X,W), q(W,V).",
+	      "?(X) :- p(X,Y), p(Y,Z), q(Z,X)." },
+	    { "?(X,Y) :- p(X,Y).", "?(X,Y) :- q(X,Z), p(Z,Y).", "?(X,Y) :- q(X,Y), p(Y,Y).", "?(X,Y) :- q(X,Z), q(Z,Y)." },
+	    { "? :- p(X,Y), q(Y,X).", "? :- p(X,Y), p(Y,X), q(X,Z)." },
+	    { "?(X) :- p(X,Y), Y=X.", "?(X) :- p(X,Y), q(Y,X)." } };
+
+	@Test
+	public void checker() throws Exception {
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		Assert.assertTrue(SharedPrefixUCQChecker.instance().check(ucq(UCQS[0]), data));
+		Assert.assertFalse(SharedPrefixUCQChecker.instance().check(ucq("?(X) :- p(X,Y)."), data));
+	}
+
+	@Test
+	public void checkerRejectsOtherQueries() throws Exception {
+		// Given
+		final ConjunctiveQuery q = DlgpParser.parseQuery("?(X) :- p(X,Y), q(Y,Z).");
+		ConjunctiveQuery other = (ConjunctiveQuery) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+		    new Class<?>[] { ConjunctiveQuery.class }, new InvocationHandler() {
+			    @Override
+			    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				    return method.invoke(q, args);
+			    }
+		    });
+		List<ConjunctiveQuery> list = new LinkedList<ConjunctiveQuery>();
+		list.add(DlgpParser.parseQuery("?(X) :- p(X,Y)."));
+		list.add(other);
+		UnionOfConjunctiveQueries ucq = new DefaultUnionOfConjunctiveQueries(q.getAnswerVariables(), list);
+
+		// Then
+		Assert.assertFalse(SharedPrefixUCQChecker.instance().check(ucq, new DefaultInMemoryGraphStore()));
+		Assert.assertFalse(SharedPrefixUCQHomomorphism.isSupported(ucq));
+	}
+
+	@Test
+	public void sameAnswersAsDefaultUCQHomomorphism() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 200, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 20,
+		                   new Random(11));
+
+		for (String[] queries : UCQS) {
+			UnionOfConjunctiveQueries ucq = ucq(queries);
+
+			// When
+			Set<Substitution> expected = answers(DefaultUCQHomomorphism.instance(), ucq, data);
+			Set<Substitution> actual = answers(SharedPrefixUCQHomomorphism.instance(), ucq, data);
+
+			// Then
+			Assert.assertEquals(queries[0], expected, actual);
+		}
+	}
+
+	@Test
+	public void noDuplicates() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(b,c), q(b,a), q(c,a)."));
+		UnionOfConjunctiveQueries ucq = ucq("?(X) :- p(X,Y).", "?(X) :- p(X,Y), q(Y,Z).");
+
+		// When
+		CloseableIterator<Substitution> it = SharedPrefixUCQHomomorphism.instance().execute(ucq, data);
+		int nb = 0;
+		while (it.hasNext()) {
+			it.next();
+			++nb;
+		}
+		it.close();
+
+		// Then
+		Assert.assertEquals(2, nb);
+	}
+
+	@Test
+	public void withInitialSubstitution() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), p(a,c), p(b,c), q(b,d), q(c,a)."));
+		UnionOfConjunctiveQueries ucq = ucq("?(X,Y) :- p(X,Y).", "?(X,Y) :- p(X,Z), q(Z,Y).");
+		Substitution s = new HashMapSubstitution();
+		s.put(DefaultTermFactory.instance().createVariable("X"), DefaultTermFactory.instance().createConstant("a"));
+
+		// When
+		Set<Substitution> actual = new HashSet<Substitution>();
+		CloseableIterator<Substitution> it = SharedPrefixUCQHomomorphism.instance().execute(ucq, data, s);
+		while (it.hasNext()) {
+			actual.add(it.next());
+		}
+		it.close();
+
+		// Then
+		Set<Substitution> expected = new HashSet<Substitution>();
+		for (String y : new String[] { "b", "c", "d", "a" }) {
+			Substitution answer = new HashMapSubstitution(s);
+			answer.put(DefaultTermFactory.instance().createVariable("Y"), DefaultTermFactory.instance().createConstant(y));
+			expected.add(answer);
+		}
+		Assert.assertEquals(expected, actual);
+	}
+
+	private static UnionOfConjunctiveQueries ucq(String... queries) throws Exception {
+		List<ConjunctiveQuery> list = new LinkedList<ConjunctiveQuery>();
+		for (String q : queries) {
+			list.add(DlgpParser.parseQuery(q));
+		}
+		return new DefaultUnionOfConjunctiveQueries(list.get(0).getAnswerVariables(), list);
+	}
+
+	private static Set<Substitution> answers(Homomorphism<UnionOfConjunctiveQueries, AtomSet> h,
+	    UnionOfConjunctiveQueries q, AtomSet data) throws Exception {
+		Set<Substitution> set = new HashSet<Substitution>();
+		CloseableIterator<Substitution> it = h.execute(q, data);
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		it.close();
+		return set;
+	}
+
+}
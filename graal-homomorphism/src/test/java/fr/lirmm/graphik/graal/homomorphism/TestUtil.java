@@ -61,6 +61,7 @@ import fr.lirmm.graphik.graal.homomorphism.bootstrapper.StarBootstrapper;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.NFC0;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.NFC2;
 import fr.lirmm.graphik.graal.homomorphism.forward_checking.SimpleFC;
+import fr.lirmm.graphik.graal.homomorphism.scheduler.CostBasedScheduler;
 
 /**
  * @author Clément Sipieter (INRIA) <clement@6pi.fr>
@@ -88,6 +89,8 @@ final class TestUtil {
 	public static Homomorphism[] getHomomorphisms() {
 
 		BCC bcc = new BCC();
+		BacktrackHomomorphism parallel = new BacktrackHomomorphism();
+		parallel.setParallelism(4);
 
 		return new Homomorphism[] {
 		        new BacktrackHomomorphism(),
@@ -97,7 +100,11 @@ final class TestUtil {
 		        new BacktrackHomomorphism(bcc.getBCCScheduler(), StarBootstrapper.instance(), new SimpleFC(),
 		                                  bcc.getBCCBackJumping()),
 		        new BacktrackHomomorphism(bcc.getBCCScheduler(), StarBootstrapper.instance(), new NFC2(),
-		                                  bcc.getBCCBackJumping()) };
+		                                  bcc.getBCCBackJumping()),
+		        parallel,
+		        new BacktrackHomomorphism(CostBasedScheduler.instance()),
+		        LeapfrogTriejoinHomomorphism.instance(),
+		        YannakakisHomomorphism.instance() };
 
 	}
 	
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.homomorphism;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.homomorphism.checker.YannakakisChecker;
+import fr.lirmm.graphik.graal.homomorphism.utils.AcyclicityUtils;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+public class YannakakisHomomorphismTest {
+
+	private static final String[] QUERIES = { "?(X,Y,Z,W) :- p(X,Y), q(Y,Z), p(Z,W).",
+	                                          "?(X) :- p(X,Y), q(Y,Z), p(Z,W).",
+	                                          "?(X,Z) :- p(X,Y), p(X,Z), q(Z,W), q(Y,U).",
+	                                          "?(Y,Z) :- p(X,Y), q(Y,Z), p(Z,W).",
+	                                          "?(Y) :- p(X,Y), q(Y,Y), p(Y,Z).",
+	                                          "?(X,Z) :- p(X,1), q(Z,2).",
+	                                          "? :- p(X,Y), q(Y,Z), p(Z,W).",
+	                                          "?(X,Y) :- t(X,Y,Z), p(X,Y), q(Y,Z)." };
+
+	@Test
+	public void joinForest() throws Exception {
+		int[] parents = AcyclicityUtils.computeJoinForest(edges("? :- p(X,Y), q(Y,Z), r(W)."));
+		Assert.assertNotNull(parents);
+		Assert.assertEquals(-1, parents[2]);
+		Assert.assertTrue(parents[0] == 1 || parents[1] == 0);
+		Assert.assertNull(AcyclicityUtils.computeJoinForest(edges("? :- p(X,Y), p(Y,Z), p(Z,X).")));
+	}
+
+	@Test
+	public void checker() throws Exception {
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		Assert.assertTrue(YannakakisChecker.instance().check(DlgpParser.parseQuery(QUERIES[0]), data));
+		Assert.assertFalse(YannakakisChecker.instance().check(DlgpParser.parseQuery("? :- p(X,Y), q(Y,Z)."), data));
+		Assert.assertFalse(YannakakisChecker.instance().check(DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z), p(Z,X)."),
+		                                                      data));
+	}
+
+	@Test
+	public void sameAnswersAsBacktrack() throws Exception {
+		// Given
+		Random rand = new Random(13);
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		TestUtil.addNAtoms(data, 300, new Predicate[] { new Predicate("p", 2), new Predicate("q", 2) }, 12, rand);
+		TestUtil.addNAtoms(data, 100, new Predicate[] { new Predicate("t", 3) }, 12, rand);
+
+		for (String q : QUERIES) {
+			ConjunctiveQuery query = DlgpParser.parseQuery(q);
+
+			// When
+			List<Substitution> expected = answers(new BacktrackHomomorphism(), query, data);
+			List<Substitution> actual = answers(YannakakisHomomorphism.instance(), query, data);
+
+			// Then
+			Assert.assertEquals(q, new HashSet<Substitution>(expected), new HashSet<Substitution>(actual));
+			Assert.assertEquals(q, new HashSet<Substitution>(actual).size(), actual.size());
+		}
+	}
+
+	@Test
+	public void withInitialSubstitution() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), q(b,c), p(c,d), p(b,b), q(b,b), p(e,b)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,Y,Z) :- p(X,Y), q(Y,Z), p(Z,W).");
+		Substitution s = new HashMapSubstitution();
+		s.put(DefaultTermFactory.instance().createVariable("X"), DefaultTermFactory.instance().createConstant("a"));
+
+		// When
+		List<Substitution> answers = answers(YannakakisHomomorphism.instance(), query, data, s);
+
+		// Then
+		Assert.assertEquals(2, answers.size());
+	}
+
+	@Test
+	public void withEquality() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		data.addAll(DlgpParser.parseAtomSet("p(a,b), q(b,c), r(c,d)."));
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,W) :- p(X,Y), q(Y,Z), r(Z,T), X=W.");
+
+		// When
+		List<Substitution> expected = answers(new BacktrackHomomorphism(), query, data);
+		List<Substitution> actual = answers(YannakakisHomomorphism.instance(), query, data);
+
+		// Then
+		Assert.assertTrue(YannakakisChecker.instance().check(query, data));
+		Assert.assertEquals(1, actual.size());
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void notFreeConnex() throws Exception {
+		// Given
+		InMemoryAtomSet data = new DefaultInMemoryGraphStore();
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X,W) :- p(X,Y), p(X,Z), q(Z,W), q(Y,U).");
+
+		// Then
+		Assert.assertFalse(YannakakisChecker.instance().check(query, data));
+		try {
+			YannakakisHomomorphism.instance().execute(query, data);
+			Assert.fail();
+		} catch (HomomorphismException e) {
+		}
+	}
+
+	@Test(expected = HomomorphismException.class)
+	public void cyclicQuery() throws Exception {
+		YannakakisHomomorphism.instance().execute(DlgpParser.parseQuery("? :- p(X,Y), p(Y,Z), p(Z,X)."),
+		                                          new DefaultInMemoryGraphStore());
+	}
+
+	private static List<Set<Variable>> edges(String query) throws Exception {
+		List<Set<Variable>> edges = new ArrayList<Set<Variable>>();
+		CloseableIteratorWithoutException<Atom> it = DlgpParser.parseQuery(query).getAtomSet().iterator();
+		while (it.hasNext()) {
+			edges.add(it.next().getVariables());
+		}
+		return edges;
+	}
+
+	private static List<Substitution> answers(Homomorphism<ConjunctiveQuery, AtomSet> h, ConjunctiveQuery q,
+	    AtomSet data) throws Exception {
+		return answers(h, q, data, new HashMapSubstitution());
+	}
+
+	private static List<Substitution> answers(Homomorphism<ConjunctiveQuery, AtomSet> h, ConjunctiveQuery q,
+	    AtomSet data, Substitution s) throws Exception {
+		List<Substitution> list = new ArrayList<Substitution>();
+		CloseableIterator<Substitution> it = h.execute(q, data, s);
+		while (it.hasNext()) {
+			list.add(it.next());
+		}
+		it.close();
+		return list;
+	}
+
+}
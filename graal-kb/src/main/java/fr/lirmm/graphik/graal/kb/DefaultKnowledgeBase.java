@@ -47,6 +47,7 @@ package fr.lirmm.graphik.graal.kb;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,7 @@ import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
 import fr.lirmm.graphik.graal.api.core.GraphOfRuleDependencies;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
 import fr.lirmm.graphik.graal.api.core.Ontology;
 import fr.lirmm.graphik.graal.api.core.Query;
 import fr.lirmm.graphik.graal.api.core.QueryLabeler;
@@ -89,6 +91,8 @@ import fr.lirmm.graphik.graal.core.ruleset.DefaultOntology;
 import fr.lirmm.graphik.graal.core.ruleset.LinkedListRuleSet;
 import fr.lirmm.graphik.graal.forward_chaining.BreadthFirstChase;
 import fr.lirmm.graphik.graal.forward_chaining.ChaseWithGRD;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.RestrictedChaseRuleApplier;
+import fr.lirmm.graphik.graal.forward_chaining.rule_applier.TriggerStore;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
 import fr.lirmm.graphik.graal.rulesetanalyser.Analyser;
 import fr.lirmm.graphik.graal.rulesetanalyser.RuleSetPropertyHierarchy;
@@ -98,6 +102,7 @@ import fr.lirmm.graphik.graal.rulesetanalyser.property.RuleSetProperty;
 import fr.lirmm.graphik.graal.rulesetanalyser.util.AnalyserRuleSet;
 import fr.lirmm.graphik.util.profiler.AbstractProfilable;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorAdapter;
 import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 import fr.lirmm.graphik.util.stream.IteratorException;
 import fr.lirmm.graphik.util.stream.filter.FilterIterator;
@@ -131,6 +136,9 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 	private GraphOfRuleDependencies fesGRD;
 
 	private Approach approach = Approach.REWRITING_FIRST;
+	private boolean streamingRewriting = false;
+	private RewritingCache rewritingCache = null;
+	private String rewritingSignature = null;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTOR
@@ -243,6 +251,55 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 		}
 	}
 
+	/**
+	 * Only the atoms which are not already facts are propagated: with the whole
+	 * ontology if this knowledge base has been saturated, with its FES part if
+	 * only this part has been applied, not at all otherwise. The propagation is
+	 * a {@link ChaseWithGRD} seeded with the new atoms, which evaluates the
+	 * rules in a semi-naive way.
+	 */
+	@Override
+	public void addAndPropagate(CloseableIterator<Atom> atoms) throws KnowledgeBaseException {
+		InMemoryAtomSet newAtoms = new DefaultInMemoryGraphStore();
+		try {
+			while (atoms.hasNext()) {
+				Atom a = atoms.next();
+				if (!this.store.contains(a)) {
+					newAtoms.add(a);
+				}
+			}
+			this.store.addAll(newAtoms.iterator());
+		} catch (IteratorException e) {
+			throw new KnowledgeBaseException(e);
+		} catch (AtomSetException e) {
+			throw new KnowledgeBaseException(e);
+		}
+		if (newAtoms.isEmpty()) {
+			return;
+		}
+
+		GraphOfRuleDependencies grd = null;
+		if (this.isSaturated) {
+			grd = this.getGraphOfRuleDependencies();
+		} else if (this.isFESSaturated) {
+			grd = this.getFESGraphOfRuleDependencies();
+		}
+		if (grd != null) {
+			ChaseWithGRD<AtomSet> chase = new ChaseWithGRD<>(grd, this.store, new RestrictedChaseRuleApplier<AtomSet>(new TriggerStore()),
+			                                                 newAtoms);
+			chase.setProfiler(this.getProfiler());
+			try {
+				chase.execute();
+			} catch (ChaseException e) {
+				throw new KnowledgeBaseException(e);
+			}
+		}
+		if (!this.isSaturated) {
+			// the semi-saturation does not cover the new atoms
+			this.isSemiSaturated = false;
+		}
+	}
+
 	@Override
 	public void semiSaturate() throws KnowledgeBaseException {
 		if (!this.isSemiSaturated) {
@@ -289,7 +346,20 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 					RuleSet fusRuleSet = this.getFUSRuleSet();
 
 					PureRewriter pure = new PureRewriter(false);
-					CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = pure.execute(cq, fusRuleSet, this.ruleCompilation);
+					List<EffectiveConjunctiveQuery> cached = this.getCachedRewritings(cq);
+					if (this.streamingRewriting && cached == null) {
+						pure.setStreaming(true);
+						CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = pure.execute(cq, fusRuleSet, this.ruleCompilation);
+						CloseableIterator<Substitution> resultIt = new RewritingAnswersIterator(it, this.store,
+						        this.isSemiSaturated ? null : this.ruleCompilation, cq.getAnswerVariables());
+						return new FilterIterator<Substitution, Substitution>(resultIt, new UniqFilter<Substitution>());
+					}
+					CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it;
+					if (cached != null) {
+						it = new CloseableIteratorAdapter<EffectiveConjunctiveQuery>(cached.iterator());
+					} else {
+						it = this.cacheRewritings(cq, pure.execute(cq, fusRuleSet, this.ruleCompilation));
+					}
 					UnionOfConjunctiveQueries ucq = new DefaultUnionOfConjunctiveQueries(cq.getAnswerVariables(), it);
 
 					CloseableIterator<Substitution> resultIt = null;
@@ -354,8 +424,13 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 					RuleSet fusRuleSet = this.getFUSRuleSet();
 
 					PureRewriter pure = new PureRewriter(false);
-					CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = pure.execute(cq, fusRuleSet,
-							this.ruleCompilation, remainingTime);
+					List<EffectiveConjunctiveQuery> cached = this.getCachedRewritings(cq);
+					CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it;
+					if (cached != null) {
+						it = new CloseableIteratorAdapter<EffectiveConjunctiveQuery>(cached.iterator());
+					} else {
+						it = this.cacheRewritings(cq, pure.execute(cq, fusRuleSet, this.ruleCompilation, remainingTime));
+					}
 					UnionOfConjunctiveQueries ucq = new DefaultUnionOfConjunctiveQueries(cq.getAnswerVariables(), it);
 
 					CloseableIterator<Substitution> resultIt = null;
@@ -433,6 +508,45 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 	public Approach getApproach() {
 		return this.approach;
 	}
+
+	/**
+	 * Enables the streaming of the rewritings in {@link #query(Query)}: the
+	 * rewritings are evaluated against the store as soon as they are computed,
+	 * so the first answers are returned before the end of the rewriting. The
+	 * evaluated rewritings are a non-minimal union of conjunctive queries: a
+	 * rewriting subsumed by a rewriting computed later is not retracted, it
+	 * is evaluated as well and its answers are filtered out as duplicates. A
+	 * rewriting which can not be evaluated with the rules compilation is
+	 * unfolded, the knowledge base is not semi-saturated in this mode.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreamingRewriting(boolean streaming) {
+		this.streamingRewriting = streaming;
+	}
+
+	public boolean isStreamingRewriting() {
+		return this.streamingRewriting;
+	}
+
+	/**
+	 * Sets the cache of the rewritings computed by the query methods. The
+	 * cached rewritings are reused for the queries equal up to variable
+	 * renaming, and are invalidated if the cache is used by a knowledge base
+	 * with other rules. The streaming mode (see
+	 * {@link #setStreamingRewriting(boolean)}) uses the cached rewritings but
+	 * does not fill the cache.
+	 * 
+	 * @param cache
+	 *            the cache to be used, or null to disable it.
+	 */
+	public void setRewritingCache(RewritingCache cache) {
+		this.rewritingCache = cache;
+	}
+
+	public RewritingCache getRewritingCache() {
+		return this.rewritingCache;
+	}
 	
 	@Override
 	public String toString() {
@@ -559,6 +673,48 @@ public class DefaultKnowledgeBase extends AbstractProfilable implements Knowledg
 		}
 	}
 
+	/**
+	 * @return the cached rewritings of the specified query, or null.
+	 */
+	protected List<EffectiveConjunctiveQuery> getCachedRewritings(ConjunctiveQuery query) {
+		if (this.rewritingCache == null) {
+			return null;
+		}
+		return this.rewritingCache.get(query, this.getRewritingSignature());
+	}
+
+	/**
+	 * Adds the specified rewritings to the cache, if any.
+	 * 
+	 * @return an iterator over the specified rewritings.
+	 */
+	protected CloseableIteratorWithoutException<EffectiveConjunctiveQuery> cacheRewritings(ConjunctiveQuery query,
+	    CloseableIteratorWithoutException<EffectiveConjunctiveQuery> rewritings) {
+		if (this.rewritingCache == null) {
+			return rewritings;
+		}
+		List<EffectiveConjunctiveQuery> list = new ArrayList<EffectiveConjunctiveQuery>();
+		while (rewritings.hasNext()) {
+			list.add(rewritings.next());
+		}
+		rewritings.close();
+		this.rewritingCache.put(query, this.getRewritingSignature(), list);
+		return new CloseableIteratorAdapter<EffectiveConjunctiveQuery>(list.iterator());
+	}
+
+	/**
+	 * The signature is computed over the whole ontology and the approach, as
+	 * the compiled rules are removed from the FUS rule set.
+	 */
+	protected String getRewritingSignature() {
+		if (this.rewritingSignature == null) {
+			this.compileRule();
+			this.rewritingSignature = this.approach + ":"
+			                          + RewritingCache.computeSignature(this.ruleset, this.ruleCompilation);
+		}
+		return this.rewritingSignature;
+	}
+
 	protected void load(Parser<Object> parser) throws AtomSetException {
 		Object o;
 		try {
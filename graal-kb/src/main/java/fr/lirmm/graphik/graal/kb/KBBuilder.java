@@ -73,6 +73,8 @@ public class KBBuilder {
 	private Store store = new DefaultInMemoryGraphStore();
 	private RuleSet ontology = new LinkedListRuleSet();
 	private Approach approach;
+	private boolean streamingRewriting = false;
+	private RewritingCache rewritingCache = null;
 
 	// /////////////////////////////////////////////////////////////////////////
 	// CONSTRUCTORS
@@ -92,6 +94,8 @@ public class KBBuilder {
 		if(this.approach != null) {
 			kb.setPriority(this.approach);
 		}
+		kb.setStreamingRewriting(this.streamingRewriting);
+		kb.setRewritingCache(this.rewritingCache);
 		return kb;
 	}
 
@@ -253,5 +257,25 @@ public class KBBuilder {
 		this.approach = approach;
 	}
 
+	/**
+	 * Set whether the rewritings of a query are evaluated as soon as they are
+	 * computed, see {@link DefaultKnowledgeBase#setStreamingRewriting(boolean)}.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreamingRewriting(boolean streaming) {
+		this.streamingRewriting = streaming;
+	}
+
+	/**
+	 * Set the cache of the rewritings of the generated KnowledgeBase, see
+	 * {@link DefaultKnowledgeBase#setRewritingCache(RewritingCache)}.
+	 * 
+	 * @param cache
+	 */
+	public void setRewritingCache(RewritingCache cache) {
+		this.rewritingCache = cache;
+	}
+
 
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.kb;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import fr.lirmm.graphik.graal.api.core.AtomSet;
+import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.api.homomorphism.HomomorphismException;
+import fr.lirmm.graphik.graal.backward_chaining.pure.PureRewriter;
+import fr.lirmm.graphik.graal.core.DefaultUnionOfConjunctiveQueries;
+import fr.lirmm.graphik.graal.core.factory.DefaultSubstitutionFactory;
+import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
+import fr.lirmm.graphik.util.stream.AbstractCloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.IteratorException;
+import fr.lirmm.graphik.util.stream.SingletonCloseableIteratorWithoutException;
+import fr.lirmm.graphik.util.stream.converter.ConversionException;
+import fr.lirmm.graphik.util.stream.converter.Converter;
+import fr.lirmm.graphik.util.stream.converter.ConverterCloseableIterator;
+
+/**
+ * Evaluates the rewritings of a query one by one, as they are returned by the
+ * rewriter, so the first answers are available before the end of the
+ * rewriting. A rewriting which can not be evaluated with the rules compilation
+ * on the store is unfolded, and its unfoldings are evaluated without it.
+ * <br/>
+ * The answers of a rewriting are extended with the images of the answer
+ * variables by its substitution, which may bind them to constants or to other
+ * answer variables.
+ */
+class RewritingAnswersIterator extends AbstractCloseableIterator<Substitution> {
+
+	private final CloseableIteratorWithoutException<EffectiveConjunctiveQuery> rewritings;
+	private final AtomSet store;
+	private final RulesCompilation compilation;
+	private final List<Term> ans;
+
+	private final Queue<EffectiveConjunctiveQuery> unfoldings = new LinkedList<EffectiveConjunctiveQuery>();
+	private CloseableIterator<Substitution> current = null;
+	private boolean isFinished = false;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param rewritings
+	 * @param store
+	 * @param compilation
+	 *            the rules compilation used to evaluate the rewritings, or
+	 *            null to evaluate them without compilation.
+	 * @param ans
+	 *            the answer variables of the rewritten query.
+	 */
+	public RewritingAnswersIterator(CloseableIteratorWithoutException<EffectiveConjunctiveQuery> rewritings,
+	    AtomSet store, RulesCompilation compilation, List<Term> ans) {
+		this.rewritings = rewritings;
+		this.store = store;
+		this.compilation = compilation;
+		this.ans = ans;
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CLOSEABLE ITERATOR METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public boolean hasNext() throws IteratorException {
+		while (!this.isFinished && (this.current == null || !this.current.hasNext())) {
+			if (this.current != null) {
+				this.current.close();
+				this.current = null;
+			}
+			if (!this.unfoldings.isEmpty()) {
+				this.current = this.evaluate(this.unfoldings.poll(), null);
+			} else if (this.rewritings.hasNext()) {
+				this.current = this.evaluate(this.rewritings.next(), this.compilation);
+			} else {
+				this.isFinished = true;
+			}
+		}
+		return !this.isFinished;
+	}
+
+	@Override
+	public Substitution next() throws IteratorException {
+		if (!this.hasNext()) {
+			return null;
+		}
+		Substitution s = this.current.next();
+		if (this.ans.isEmpty()) {
+			// a boolean query has at most one answer
+			this.close();
+		}
+		return s;
+	}
+
+	@Override
+	public void close() {
+		this.isFinished = true;
+		if (this.current != null) {
+			this.current.close();
+			this.current = null;
+		}
+		this.rewritings.close();
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the answers of the specified rewriting, or null if it was
+	 *         unfolded because the compilation can not be used on the store.
+	 */
+	private CloseableIterator<Substitution> evaluate(EffectiveConjunctiveQuery ecq, RulesCompilation compilation)
+	    throws IteratorException {
+		Substitution s = DefaultSubstitutionFactory.instance().createSubstitution();
+		if (ecq.getSubstitution() != null) {
+			s.put(ecq.getSubstitution());
+		}
+		try {
+			CloseableIterator<Substitution> results;
+			if (compilation == null) {
+				results = SmartHomomorphism.instance().execute(ecq.getQuery(), this.store, s);
+			} else {
+				results = SmartHomomorphism.instance().execute(ecq.getQuery(), this.store, compilation, s);
+			}
+			if (!s.getTerms().isEmpty()) {
+				results = new ConverterCloseableIterator<Substitution, Substitution>(results,
+				    new AnswerConverter(this.ans, s));
+			}
+			return results;
+		} catch (HomomorphismException e) {
+			if (compilation == null) {
+				throw new IteratorException("Exception during querying following rewriting: " + ecq, e);
+			}
+			CloseableIteratorWithoutException<EffectiveConjunctiveQuery> it = PureRewriter.unfold(
+			    new DefaultUnionOfConjunctiveQueries(this.ans,
+			                                         new SingletonCloseableIteratorWithoutException<EffectiveConjunctiveQuery>(ecq)),
+			    compilation);
+			while (it.hasNext()) {
+				this.unfoldings.add(it.next());
+			}
+			return null;
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Maps each answer variable of the rewritten query to the image, by an
+	 * answer of a rewriting, of its image by the substitution of the
+	 * rewriting.
+	 */
+	private static class AnswerConverter implements Converter<Substitution, Substitution> {
+
+		private final List<Term> ans;
+		private final Substitution substitution;
+
+		AnswerConverter(List<Term> ans, Substitution substitution) {
+			this.ans = ans;
+			this.substitution = substitution;
+		}
+
+		@Override
+		public Substitution convert(Substitution answer) throws ConversionException {
+			Substitution s = DefaultSubstitutionFactory.instance().createSubstitution();
+			for (Term t : this.ans) {
+				Term image = answer.createImageOf(this.substitution.createImageOf(t));
+				if (t.isVariable() && !image.equals(t)) {
+					s.put((Variable) t, image);
+				}
+			}
+			return s;
+		}
+	}
+
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (C) Inria Sophia Antipolis - Méditerranée / LIRMM
+ * (Université de Montpellier & CNRS) (2014 - 2017)
+ *
+ * Contributors :
+ *
+ * Clément SIPIETER <clement.sipieter@inria.fr>
+ * Mélanie KÖNIG
+ * Swan ROCHER
+ * Jean-François BAGET
+ * Michel LECLÈRE
+ * Marie-Laure MUGNIER <mugnier@lirmm.fr>
+ *
+ *
+ * This file is part of Graal <https://graphik-team.github.io/graal/>.
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+package fr.lirmm.graphik.graal.kb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.lirmm.graphik.graal.api.core.Atom;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
+import fr.lirmm.graphik.graal.api.core.Predicate;
+import fr.lirmm.graphik.graal.api.core.Rule;
+import fr.lirmm.graphik.graal.api.core.RulesCompilation;
+import fr.lirmm.graphik.graal.api.core.Substitution;
+import fr.lirmm.graphik.graal.api.core.Term;
+import fr.lirmm.graphik.graal.api.core.Variable;
+import fr.lirmm.graphik.graal.core.DefaultAtom;
+import fr.lirmm.graphik.graal.core.DefaultEffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.core.DefaultVariableGenerator;
+import fr.lirmm.graphik.graal.core.atomset.LinkedListAtomSet;
+import fr.lirmm.graphik.graal.core.factory.DefaultConjunctiveQueryFactory;
+import fr.lirmm.graphik.graal.core.factory.DefaultSubstitutionFactory;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
+import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
+import fr.lirmm.graphik.graal.io.dlp.DlgpWriter;
+import fr.lirmm.graphik.util.DefaultURI;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
+
+/**
+ * A bounded LRU cache of the rewritings of conjunctive queries. Queries are
+ * keyed by a canonical form up to variable renaming: atoms are sorted by their
+ * shape (predicate, constants and positions of the answer variables), then
+ * variables are renamed in order of first occurrence, answer variables first.
+ * The rewritings are stored over the canonical variables and renamed back to
+ * the variables of the query on each hit.
+ * <br/>
+ * The cached rewritings are only valid for a given rule set and rules
+ * compilation, identified by a signature (see
+ * {@link #computeSignature(Iterable, RulesCompilation)}): the cache is cleared
+ * when it is used with another signature.
+ * <br/>
+ * If a file is specified, the entries are appended to it in DLGP and loaded
+ * back at the first use of the cache with the same signature.
+ */
+public class RewritingCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RewritingCache.class);
+
+	private static final String HEADER          = "rewriting cache v2 ";
+	private static final String KEY_LABEL       = "key";
+	private static final String REWRITING_LABEL = "rew";
+
+	/**
+	 * The predicate of the atoms encoding the substitution of a rewriting in
+	 * the file, distinct from the equalities of the rewritings.
+	 */
+	private static final Predicate SUBSTITUTION = new Predicate(
+	    new DefaultURI("http://graphik-team.github.io/graal/rewriting-cache#", "substitution"), 2);
+
+	private final Map<String, Entry> entries;
+	private final int                capacity;
+	private final File               file;
+
+	private String signature = null;
+
+	// /////////////////////////////////////////////////////////////////////////
+	// CONSTRUCTORS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param capacity
+	 *            the maximum number of queries whose rewritings are kept.
+	 */
+	public RewritingCache(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * @param capacity
+	 *            the maximum number of queries whose rewritings are kept.
+	 * @param file
+	 *            the file in which the rewritings are persisted, or null.
+	 */
+	public RewritingCache(final int capacity, File file) {
+		this.capacity = capacity;
+		this.file = file;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 3216451287823571120L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return this.size() > capacity;
+			}
+		};
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @return the cached rewritings of the specified query, over its variables,
+	 *         or null if they are not in this cache.
+	 */
+	public synchronized List<EffectiveConjunctiveQuery> get(ConjunctiveQuery query, String signature) {
+		this.checkSignature(signature);
+		CanonicalForm cf = new CanonicalForm(query);
+		Entry e = this.entries.get(cf.key);
+		if (e == null) {
+			return null;
+		}
+
+		final Set<String> names = new HashSet<String>();
+		for (Variable v : cf.answerVariables) {
+			names.add(v.getIdentifier().toString());
+		}
+		final DefaultVariableGenerator gen = new DefaultVariableGenerator("C");
+		Renaming toQuery = new Renaming() {
+			@Override
+			Variable fresh() {
+				Variable v;
+				do {
+					v = gen.getFreshSymbol();
+				} while (names.contains(v.getIdentifier().toString()));
+				return v;
+			}
+		};
+		for (int i = 0; i < cf.answerVariables.size(); ++i) {
+			toQuery.map.put(canonical(i), cf.answerVariables.get(i));
+		}
+
+		List<EffectiveConjunctiveQuery> rewritings = new ArrayList<EffectiveConjunctiveQuery>(e.rewritings.size());
+		for (EffectiveConjunctiveQuery ecq : e.rewritings) {
+			rewritings.add(toQuery.copy().image(ecq));
+		}
+		return rewritings;
+	}
+
+	/**
+	 * Adds the specified rewritings of the specified query to this cache.
+	 */
+	public synchronized void put(ConjunctiveQuery query, String signature, List<EffectiveConjunctiveQuery> rewritings) {
+		this.checkSignature(signature);
+		CanonicalForm cf = new CanonicalForm(query);
+
+		List<EffectiveConjunctiveQuery> canonicalRewritings = new ArrayList<EffectiveConjunctiveQuery>(rewritings.size());
+		for (EffectiveConjunctiveQuery ecq : rewritings) {
+			Renaming toCanonical = new CanonicalRenaming(cf.answerVariables.size());
+			for (int i = 0; i < cf.answerVariables.size(); ++i) {
+				toCanonical.map.put(cf.answerVariables.get(i), canonical(i));
+			}
+			canonicalRewritings.add(toCanonical.image(ecq));
+		}
+
+		Entry e = new Entry(cf.query, canonicalRewritings);
+		this.entries.put(cf.key, e);
+		if (this.file != null) {
+			try {
+				this.append(e);
+			} catch (IOException ex) {
+				LOGGER.warn("Error while writing the rewriting cache in " + this.file, ex);
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Removes all the entries of this cache, and of its file if any.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+		if (this.file != null && this.signature != null) {
+			try {
+				this.rewriteFile();
+			} catch (IOException e) {
+				LOGGER.warn("Error while writing the rewriting cache in " + this.file, e);
+			}
+		}
+	}
+
+	/**
+	 * Computes a signature of the specified rules and rules compilation, which
+	 * does not depend on the order of the rules nor on their labels.
+	 */
+	public static String computeSignature(Iterable<Rule> rules, RulesCompilation compilation) {
+		List<String> strings = new ArrayList<String>();
+		for (Rule r : rules) {
+			strings.add(r.getBody() + " -> " + r.getHead());
+		}
+		Collections.sort(strings);
+		strings.add(compilation.getClass().getName());
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (String s : strings) {
+				md.update(s.getBytes(StandardCharsets.UTF_8));
+				md.update((byte) '\n');
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new Error("SHA-256 is not available", e);
+		}
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE METHODS
+	// /////////////////////////////////////////////////////////////////////////
+
+	private void checkSignature(String signature) {
+		if (signature.equals(this.signature)) {
+			return;
+		}
+		boolean isFirstUse = this.signature == null;
+		this.signature = signature;
+		this.entries.clear();
+		if (this.file == null) {
+			return;
+		}
+		try {
+			if (isFirstUse && this.file.exists()) {
+				this.load();
+			}
+			this.rewriteFile();
+		} catch (IOException e) {
+			LOGGER.warn("Error while writing the rewriting cache in " + this.file, e);
+		}
+	}
+
+	/**
+	 * Loads the entries of the file if it was written with the current
+	 * signature.
+	 */
+	private void load() {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(this.file));
+			String header = reader.readLine();
+			if (header == null || !header.equals("% " + HEADER + this.signature)) {
+				return;
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Error while reading the rewriting cache in " + this.file, e);
+			return;
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		DlgpParser parser = null;
+		try {
+			parser = new DlgpParser(this.file);
+			ConjunctiveQuery key = null;
+			List<EffectiveConjunctiveQuery> rewritings = null;
+			while (parser.hasNext()) {
+				Object o = parser.next();
+				if (!(o instanceof ConjunctiveQuery)) {
+					continue;
+				}
+				ConjunctiveQuery q = (ConjunctiveQuery) o;
+				if (KEY_LABEL.equals(q.getLabel())) {
+					if (key != null) {
+						this.loadEntry(key, rewritings);
+					}
+					key = q;
+					rewritings = new LinkedList<EffectiveConjunctiveQuery>();
+				} else if (REWRITING_LABEL.equals(q.getLabel()) && key != null) {
+					rewritings.add(toEffectiveQuery(q));
+				}
+			}
+			if (key != null) {
+				this.loadEntry(key, rewritings);
+			}
+		} catch (IOException e) {
+			this.entries.clear();
+			LOGGER.warn("Error while reading the rewriting cache in " + this.file, e);
+		} finally {
+			if (parser != null) {
+				parser.close();
+			}
+		}
+	}
+
+	private void loadEntry(ConjunctiveQuery key, List<EffectiveConjunctiveQuery> rewritings) {
+		key.setLabel("");
+		CanonicalForm cf = new CanonicalForm(key);
+		this.entries.put(cf.key, new Entry(cf.query, rewritings));
+	}
+
+	private void rewriteFile() throws IOException {
+		DlgpWriter writer = new DlgpWriter(new FileWriter(this.file, false));
+		try {
+			writer.writeComment(HEADER + this.signature);
+			for (Entry e : this.entries.values()) {
+				write(writer, e);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void append(Entry e) throws IOException {
+		DlgpWriter writer = new DlgpWriter(new FileWriter(this.file, true));
+		try {
+			write(writer, e);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void write(DlgpWriter writer, Entry e) throws IOException {
+		ConjunctiveQuery key = DefaultConjunctiveQueryFactory.instance().create(e.query);
+		key.setLabel(KEY_LABEL);
+		writer.write(key);
+		for (EffectiveConjunctiveQuery ecq : e.rewritings) {
+			InMemoryAtomSet atoms = new LinkedListAtomSet(ecq.getQuery().getAtomSet());
+			if (ecq.getSubstitution() != null) {
+				for (Variable v : ecq.getSubstitution().getTerms()) {
+					atoms.add(new DefaultAtom(SUBSTITUTION, v, ecq.getSubstitution().createImageOf(v)));
+				}
+			}
+			ConjunctiveQuery q = DefaultConjunctiveQueryFactory.instance().create(atoms, ecq.getQuery().getAnswerVariables());
+			q.setLabel(REWRITING_LABEL);
+			writer.write(q);
+		}
+	}
+
+	/**
+	 * Moves the substitution atoms of the specified query into the
+	 * substitution of an effective query.
+	 */
+	private static EffectiveConjunctiveQuery toEffectiveQuery(ConjunctiveQuery q) {
+		InMemoryAtomSet atoms = new LinkedListAtomSet();
+		Substitution s = DefaultSubstitutionFactory.instance().createSubstitution();
+		CloseableIteratorWithoutException<Atom> it = q.getAtomSet().iterator();
+		while (it.hasNext()) {
+			Atom a = it.next();
+			if (a.getPredicate().equals(SUBSTITUTION) && a.getTerm(0).isVariable()) {
+				s.put((Variable) a.getTerm(0), a.getTerm(1));
+			} else {
+				atoms.add(a);
+			}
+		}
+		return new DefaultEffectiveConjunctiveQuery(
+		    DefaultConjunctiveQueryFactory.instance().create(atoms, q.getAnswerVariables()), s);
+	}
+
+	private static Variable canonical(int i) {
+		return DefaultTermFactory.instance().createVariable("V" + i);
+	}
+
+	// /////////////////////////////////////////////////////////////////////////
+	// PRIVATE CLASSES
+	// /////////////////////////////////////////////////////////////////////////
+
+	private static class Entry {
+
+		final ConjunctiveQuery                query;
+		final List<EffectiveConjunctiveQuery> rewritings;
+
+		Entry(ConjunctiveQuery query, List<EffectiveConjunctiveQuery> rewritings) {
+			this.query = query;
+			this.rewritings = rewritings;
+		}
+	}
+
+	/**
+	 * The canonical form of a query, see {@link RewritingCache}.
+	 */
+	private static class CanonicalForm {
+
+		final List<Variable>   answerVariables = new ArrayList<Variable>();
+		final ConjunctiveQuery query;
+		final String           key;
+
+		CanonicalForm(ConjunctiveQuery q) {
+			final Map<Variable, Integer> answerIndex = new HashMap<Variable, Integer>();
+			for (Term t : q.getAnswerVariables()) {
+				if (t.isVariable() && !answerIndex.containsKey(t)) {
+					answerIndex.put((Variable) t, this.answerVariables.size());
+					this.answerVariables.add((Variable) t);
+				}
+			}
+
+			final Map<Atom, String> shapes = new HashMap<Atom, String>();
+			List<Atom> sorted = new ArrayList<Atom>();
+			CloseableIteratorWithoutException<Atom> it = q.getAtomSet().iterator();
+			while (it.hasNext()) {
+				Atom a = it.next();
+				sorted.add(a);
+				shapes.put(a, shape(a, answerIndex));
+			}
+			Collections.sort(sorted, new Comparator<Atom>() {
+				@Override
+				public int compare(Atom a1, Atom a2) {
+					return shapes.get(a1).compareTo(shapes.get(a2));
+				}
+			});
+
+			Renaming toCanonical = new CanonicalRenaming(this.answerVariables.size());
+			for (int i = 0; i < this.answerVariables.size(); ++i) {
+				toCanonical.map.put(this.answerVariables.get(i), canonical(i));
+			}
+			InMemoryAtomSet atoms = new LinkedListAtomSet();
+			StringBuilder sb = new StringBuilder("?(");
+			List<Term> ans = new LinkedList<Term>();
+			for (Term t : q.getAnswerVariables()) {
+				Term c = toCanonical.image(t);
+				ans.add(c);
+				sb.append(termKey(c)).append(',');
+			}
+			sb.append(") :- ");
+			for (Atom a : sorted) {
+				Atom c = toCanonical.image(a);
+				atoms.add(c);
+				sb.append(c.getPredicate()).append('(');
+				for (Term t : c) {
+					sb.append(termKey(t)).append(',');
+				}
+				sb.append("), ");
+			}
+			this.query = DefaultConjunctiveQueryFactory.instance().create(atoms, ans);
+			this.key = sb.toString();
+		}
+
+		private static String shape(Atom a, Map<Variable, Integer> answerIndex) {
+			StringBuilder sb = new StringBuilder(a.getPredicate().toString()).append('(');
+			for (Term t : a) {
+				if (!t.isVariable()) {
+					sb.append(termKey(t));
+				} else if (answerIndex.containsKey(t)) {
+					sb.append('$').append(answerIndex.get(t));
+				} else {
+					sb.append('?');
+				}
+				sb.append(',');
+			}
+			return sb.append(')').toString();
+		}
+
+		private static String termKey(Term t) {
+			char kind = t.isVariable() ? 'V' : (t.isLiteral() ? 'L' : 'C');
+			return kind + ":" + t.getIdentifier();
+		}
+	}
+
+	/**
+	 * A renaming of the variables of queries: the variables which are not
+	 * mapped are mapped to fresh variables, in order of first occurrence.
+	 */
+	private static abstract class Renaming {
+
+		final Map<Variable, Variable> map = new HashMap<Variable, Variable>();
+
+		abstract Variable fresh();
+
+		Renaming copy() {
+			final Renaming outer = this;
+			Renaming copy = new Renaming() {
+				@Override
+				Variable fresh() {
+					return outer.fresh();
+				}
+			};
+			copy.map.putAll(this.map);
+			return copy;
+		}
+
+		Term image(Term t) {
+			if (!t.isVariable()) {
+				return t;
+			}
+			Variable v = this.map.get(t);
+			if (v == null) {
+				v = this.fresh();
+				this.map.put((Variable) t, v);
+			}
+			return v;
+		}
+
+		Atom image(Atom a) {
+			List<Term> terms = new ArrayList<Term>(a.getPredicate().getArity());
+			for (Term t : a) {
+				terms.add(this.image(t));
+			}
+			return new DefaultAtom(a.getPredicate(), terms);
+		}
+
+		EffectiveConjunctiveQuery image(EffectiveConjunctiveQuery ecq) {
+			List<Term> ans = new LinkedList<Term>();
+			for (Term t : ecq.getQuery().getAnswerVariables()) {
+				ans.add(this.image(t));
+			}
+			InMemoryAtomSet atoms = new LinkedListAtomSet();
+			CloseableIteratorWithoutException<Atom> it = ecq.getQuery().getAtomSet().iterator();
+			while (it.hasNext()) {
+				atoms.add(this.image(it.next()));
+			}
+			Substitution s = DefaultSubstitutionFactory.instance().createSubstitution();
+			if (ecq.getSubstitution() != null) {
+				for (Variable v : ecq.getSubstitution().getTerms()) {
+					s.put((Variable) this.image(v), this.image(ecq.getSubstitution().createImageOf(v)));
+				}
+			}
+			return new DefaultEffectiveConjunctiveQuery(DefaultConjunctiveQueryFactory.instance().create(atoms, ans), s);
+		}
+	}
+
+	/**
+	 * Maps the variables which are not answer variables to V(k), V(k+1)...
+	 * where k is the number of answer variables.
+	 */
+	private static class CanonicalRenaming extends Renaming {
+
+		private int next;
+
+		CanonicalRenaming(int nbAnswerVariables) {
+			this.next = nbAnswerVariables;
+		}
+
+		@Override
+		Variable fresh() {
+			return canonical(this.next++);
+		}
+	}
+
+}
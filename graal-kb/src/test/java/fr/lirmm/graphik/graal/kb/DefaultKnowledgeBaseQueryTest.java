@@ -42,18 +42,33 @@
  */
 package fr.lirmm.graphik.graal.kb;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import fr.lirmm.graphik.graal.api.core.Atom;
 import fr.lirmm.graphik.graal.api.core.AtomSetException;
+import fr.lirmm.graphik.graal.api.core.ConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.EffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.api.core.Predicate;
 import fr.lirmm.graphik.graal.api.core.Substitution;
 import fr.lirmm.graphik.graal.api.io.ParseException;
 import fr.lirmm.graphik.graal.api.kb.Approach;
 import fr.lirmm.graphik.graal.api.kb.KnowledgeBase;
 import fr.lirmm.graphik.graal.api.kb.KnowledgeBaseException;
 import fr.lirmm.graphik.graal.api.util.TimeoutException;
+import fr.lirmm.graphik.graal.core.DefaultEffectiveConjunctiveQuery;
+import fr.lirmm.graphik.graal.core.HashMapSubstitution;
+import fr.lirmm.graphik.graal.core.term.DefaultTermFactory;
 import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
 import fr.lirmm.graphik.util.stream.CloseableIterator;
+import fr.lirmm.graphik.util.stream.CloseableIteratorWithoutException;
 import fr.lirmm.graphik.util.stream.IteratorException;
 
 /**
@@ -80,6 +95,119 @@ public class DefaultKnowledgeBaseQueryTest {
 		kb.close();
 	}
 	
+	@Test
+	public void testStreamingQuery() throws AtomSetException, ParseException, KnowledgeBaseException, IteratorException {
+		DefaultKnowledgeBase kb = new DefaultKnowledgeBase(
+				new DlgpParser("p(X) :- q(X). q(X) :- r(X). r(X) :- s(X). s(a). r(b). q(c). p(d). q(a)."));
+		kb.setStreamingRewriting(true);
+		CloseableIterator<Substitution> res = kb.query(DlgpParser.parseQuery("?(X) :- p(X)."));
+		int nb = 0;
+		while (res.hasNext()) {
+			res.next();
+			++nb;
+		}
+		Assert.assertEquals(4, nb);
+		res.close();
+		kb.close();
+	}
+
+	@Test
+	public void testStreamingQueryWithConstantInRewriting()
+	    throws AtomSetException, ParseException, KnowledgeBaseException, IteratorException {
+		String kbString = "r(Y,X), q(Z,Z) :- r(Y,Z). r(b,X) :- s(Y,T). s(X,a) :- s(Y,T). q(Z,Z) :- r(Z,T)."
+		                  + " s(b,b). q(a,a). s(a,a). q(a,a).";
+		DefaultKnowledgeBase kb = new DefaultKnowledgeBase(new DlgpParser(kbString));
+		DefaultKnowledgeBase streamingKb = new DefaultKnowledgeBase(new DlgpParser(kbString));
+		streamingKb.setStreamingRewriting(true);
+
+		Set<Substitution> expected = collect(kb.query(DlgpParser.parseQuery("?(T) :- r(T,Z).")));
+		Set<Substitution> actual = collect(streamingKb.query(DlgpParser.parseQuery("?(T) :- r(T,Z).")));
+
+		Substitution tb = new HashMapSubstitution();
+		tb.put(DefaultTermFactory.instance().createVariable("T"), DefaultTermFactory.instance().createConstant("b"));
+		Assert.assertTrue(expected.contains(tb));
+		Assert.assertEquals(expected, actual);
+		kb.close();
+		streamingKb.close();
+	}
+
+	@Test
+	public void testRewritingCache()
+	    throws AtomSetException, ParseException, KnowledgeBaseException, IteratorException, IOException {
+		String kbString = "p(X) :- q(X,Y), s(Y). q(X,Y) :- r(X,Y). r(a,b). s(b). q(c,d). s(d). q(e,f).";
+		File file = File.createTempFile("rewritings", ".dlp");
+		file.deleteOnExit();
+
+		RewritingCache cache = new RewritingCache(8, file);
+		DefaultKnowledgeBase kb = new DefaultKnowledgeBase(new DlgpParser(kbString));
+		kb.setRewritingCache(cache);
+		Assert.assertEquals(2, count(kb.query(DlgpParser.parseQuery("?(X) :- p(X)."))));
+		Assert.assertEquals(2, count(kb.query(DlgpParser.parseQuery("?(Z) :- p(Z)."))));
+		Assert.assertEquals(1, cache.size());
+		kb.close();
+
+		RewritingCache reloaded = new RewritingCache(8, file);
+		kb = new DefaultKnowledgeBase(new DlgpParser(kbString));
+		kb.setRewritingCache(reloaded);
+		Assert.assertNotNull(reloaded.get(DlgpParser.parseQuery("?(U) :- p(U)."), kb.getRewritingSignature()));
+		Assert.assertEquals(2, count(kb.query(DlgpParser.parseQuery("?(U) :- p(U)."))));
+		kb.close();
+
+		kb = new DefaultKnowledgeBase(new DlgpParser("p(X) :- q(X,Y). " + kbString));
+		kb.setRewritingCache(reloaded);
+		Assert.assertEquals(3, count(kb.query(DlgpParser.parseQuery("?(X) :- p(X)."))));
+		kb.close();
+	}
+
+	@Test
+	public void testRewritingCacheEqualities() throws Exception {
+		File file = File.createTempFile("rewritings", ".dlp");
+		file.deleteOnExit();
+		ConjunctiveQuery query = DlgpParser.parseQuery("?(X) :- p(X).");
+		Substitution s = new HashMapSubstitution();
+		s.put(DefaultTermFactory.instance().createVariable("X"), DefaultTermFactory.instance().createConstant("a"));
+		EffectiveConjunctiveQuery rewriting = new DefaultEffectiveConjunctiveQuery(
+		    DlgpParser.parseQuery("?(X) :- q(X,Y), Y=Z, r(Z)."), s);
+
+		new RewritingCache(8, file).put(query, "signature", Collections.singletonList(rewriting));
+		List<EffectiveConjunctiveQuery> reloaded = new RewritingCache(8, file).get(query, "signature");
+
+		Assert.assertNotNull(reloaded);
+		Assert.assertEquals(1, reloaded.size());
+		EffectiveConjunctiveQuery actual = reloaded.get(0);
+		int equalities = 0;
+		CloseableIteratorWithoutException<Atom> it = actual.getQuery().getAtomSet().iterator();
+		while (it.hasNext()) {
+			if (Predicate.EQUALITY.equals(it.next().getPredicate())) {
+				++equalities;
+			}
+		}
+		Assert.assertEquals(3, actual.getQuery().getAtomSet().size());
+		Assert.assertEquals(1, equalities);
+		Assert.assertEquals(1, actual.getSubstitution().getTerms().size());
+		Assert.assertEquals(DefaultTermFactory.instance().createConstant("a"),
+		    actual.getSubstitution().createImageOf(DefaultTermFactory.instance().createVariable("X")));
+	}
+
+	private static Set<Substitution> collect(CloseableIterator<Substitution> it) throws IteratorException {
+		Set<Substitution> set = new HashSet<Substitution>();
+		while (it.hasNext()) {
+			set.add(it.next());
+		}
+		it.close();
+		return set;
+	}
+
+	private static int count(CloseableIterator<Substitution> it) throws IteratorException {
+		int nb = 0;
+		while (it.hasNext()) {
+			it.next();
+			++nb;
+		}
+		it.close();
+		return nb;
+	}
+
 	/**
 	 * Test method for
 	 * {@link fr.lirmm.graphik.graal.kb.DefaultKnowledgeBase#query(fr.lirmm.graphik.graal.api.core.Query, long)}.
@@ -358,4 +358,27 @@ public class DefaultKnowledgeBaseTest {
 		Assert.assertEquals(1, Iterators.count(results));
 	}
 
+	@Test
+	public void addAndPropagate() throws KBBuilderException, KnowledgeBaseException, IteratorException, AtomSetException {
+		String rules = "p(X,Z) :- p(X,Y), p(Y,Z). q(X) :- p(X,X). r(X,Y) :- q(X).";
+		KBBuilder kbb = new KBBuilder();
+		kbb.addAll(new DlgpParser(rules + "p(a,b). p(b,c)."));
+		kbb.setApproach(Approach.SATURATION_ONLY);
+		KnowledgeBase kb = kbb.build();
+		kb.saturate();
+
+		kb.addAndPropagate(DlgpParser.parseAtomSet("p(c,a). p(a,b)."));
+
+		KBBuilder expectedBuilder = new KBBuilder();
+		expectedBuilder.addAll(new DlgpParser(rules + "p(a,b). p(b,c). p(c,a)."));
+		expectedBuilder.setApproach(Approach.SATURATION_ONLY);
+		KnowledgeBase expected = expectedBuilder.build();
+		expected.saturate();
+
+		// 9 p atoms, 3 q atoms and 3 r atoms
+		Assert.assertEquals(Iterators.count(expected.getFacts().iterator()), Iterators.count(kb.getFacts().iterator()));
+		Assert.assertEquals(15, Iterators.count(kb.getFacts().iterator()));
+		Assert.assertTrue(kb.getFacts().contains(DlgpParser.parseAtom("q(b).")));
+	}
+
 }
@@ -52,6 +52,7 @@ import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.core.InMemoryAtomSet;
 import fr.lirmm.graphik.graal.api.io.ParseException;
 import fr.lirmm.graphik.graal.core.atomset.LinkedListAtomSet;
+import fr.lirmm.graphik.graal.core.atomset.columnar.ColumnarInMemoryStore;
 import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
 import fr.lirmm.graphik.graal.io.dlp.DlgpParser;
 
@@ -69,7 +70,7 @@ public class InMemoryAtomSetTest {
 
 	@DataPoints
 	public static InMemoryAtomSet[] getAtomSet() {
-		InMemoryAtomSet[] atomsets = { new DefaultInMemoryGraphStore(), new LinkedListAtomSet() };
+		InMemoryAtomSet[] atomsets = { new DefaultInMemoryGraphStore(), new ColumnarInMemoryStore(), new LinkedListAtomSet() };
 		return atomsets;
 	}
 
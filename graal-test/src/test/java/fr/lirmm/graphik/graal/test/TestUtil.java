@@ -59,6 +59,7 @@ import fr.lirmm.graphik.graal.api.core.AtomSet;
 import fr.lirmm.graphik.graal.api.core.AtomSetException;
 import fr.lirmm.graphik.graal.api.homomorphism.Homomorphism;
 import fr.lirmm.graphik.graal.core.atomset.LinkedListAtomSet;
+import fr.lirmm.graphik.graal.core.atomset.columnar.ColumnarInMemoryStore;
 import fr.lirmm.graphik.graal.core.atomset.graph.DefaultInMemoryGraphStore;
 import fr.lirmm.graphik.graal.homomorphism.BacktrackHomomorphism;
 import fr.lirmm.graphik.graal.homomorphism.SmartHomomorphism;
@@ -188,8 +189,8 @@ public final class TestUtil {
 				Assert.assertTrue("Error while creating SailStore", false);
 			}
 
-			return new AtomSet[] { new DefaultInMemoryGraphStore(), new LinkedListAtomSet(), defaultRDBMSStore,
-			                       plainTableRDBMSStore, neo4jStore, sailStore };
+			return new AtomSet[] { new DefaultInMemoryGraphStore(), new ColumnarInMemoryStore(), new LinkedListAtomSet(),
+			                       defaultRDBMSStore, plainTableRDBMSStore, neo4jStore, sailStore };
 		} catch (SQLException e) {
 			throw new Error(e);
 		} catch (AtomSetException e) {